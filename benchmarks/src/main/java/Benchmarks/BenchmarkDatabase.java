@@ -0,0 +1,96 @@
+package Benchmarks;
+
+// Our custom classes imported
+import Util.ConnectionUtil;
+
+// External Libraries
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Puts the benchmark database into a known state before a trial.
+ *
+ * Every benchmark forks with socialmedia.db.url pointing at a file database under target/, so the benchmarks
+ * never touch the application's own h2/ database, and the data is written through the same connection pool and
+ * migrations the application uses.
+ */
+public final class BenchmarkDatabase {
+
+    /**
+     * JVM arguments every benchmark fork runs with
+     */
+    public static final String DB_URL_ARG = "-Dsocialmedia.db.url=jdbc:h2:./target/benchdb/social;";
+
+    /**
+     * Password of every seeded account
+     */
+    public static final String PASSWORD = "password";
+
+    private static final int BATCH_SIZE = 1000;
+
+    private BenchmarkDatabase(){
+    }
+
+    /**
+     * Drops and recreates every table, then adds accounts "user1" to "user{accounts}" and spreads messages over
+     * them round robin. Message n is posted by account (n % accounts) + 1, so the message_ids of one account are
+     * evenly spread through the table, as they would be in practice.
+     *
+     * The tables are created with one account and one message of their own (see SocialMedia.sql), so the seeded
+     * accounts start at account_id 2 and the seeded messages at message_id 2.
+     *
+     * @param accounts the number of accounts to add
+     * @param messages the number of messages to add
+     */
+    public static void reset(int accounts, int messages){
+        ConnectionUtil.resetTestDatabase();
+        try(Connection connection = ConnectionUtil.getConnection()){
+            connection.setAutoCommit(false);
+            try(PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO Account (username, password) VALUES (?, ?)")){
+                for(int i = 1; i <= accounts; i++){
+                    insert.setString(1, "user" + i);
+                    insert.setString(2, PASSWORD);
+                    insert.addBatch();
+                    if(i % BATCH_SIZE == 0){
+                        insert.executeBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+            try(PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO Message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)")){
+                for(int i = 0; i < messages; i++){
+                    insert.setInt(1, 2 + i % accounts);
+                    insert.setString(2, "benchmark message " + i);
+                    insert.setLong(3, 1_669_947_792L + i);
+                    insert.addBatch();
+                    if((i + 1) % BATCH_SIZE == 0){
+                        insert.executeBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+            connection.commit();
+            connection.setAutoCommit(true);
+        }
+        catch(SQLException e){
+            throw new IllegalStateException("Could not seed the benchmark database", e);
+        }
+    }
+
+    /**
+     * @return the account_id of seeded account n, counting from 0
+     */
+    public static int accountId(int n){
+        return 2 + n;
+    }
+
+    /**
+     * @return the message_id of seeded message n, counting from 0
+     */
+    public static int messageId(int n){
+        return 2 + n;
+    }
+}
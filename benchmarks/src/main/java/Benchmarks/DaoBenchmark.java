@@ -0,0 +1,72 @@
+package Benchmarks;
+
+// Our custom classes imported
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+
+// External Libraries
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The DAOs straight against H2, with no caching in front of them. Measures what every cache miss costs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.DB_URL_ARG)
+public class DaoBenchmark {
+
+    static final int ACCOUNTS = 100;
+    static final int MESSAGES = 10_000;
+
+    AccountDAO accountDao;
+    MessageDAO messageDao;
+
+    @Setup
+    public void setup(){
+        BenchmarkDatabase.reset(ACCOUNTS, MESSAGES);
+        accountDao = new AccountDAO();
+        messageDao = new MessageDAO();
+    }
+
+    @Benchmark
+    public Message insertMessage(){
+        int account = ThreadLocalRandom.current().nextInt(ACCOUNTS);
+        return messageDao.insertMessage(new Message(BenchmarkDatabase.accountId(account), "benchmark message",
+            System.currentTimeMillis() / 1000));
+    }
+
+    @Benchmark
+    public Message getMessageByID(){
+        return messageDao.getMessageByID(BenchmarkDatabase.messageId(ThreadLocalRandom.current().nextInt(MESSAGES)));
+    }
+
+    @Benchmark
+    public Account getAccountByUsername(){
+        int account = ThreadLocalRandom.current().nextInt(ACCOUNTS);
+        return accountDao.getAccountByUsername("user" + (account + 1));
+    }
+
+    @Benchmark
+    public List<Message> getMessagesFromUserPage(){
+        int account = ThreadLocalRandom.current().nextInt(ACCOUNTS);
+        return messageDao.getMessagesFromUserPage(BenchmarkDatabase.accountId(account), 0, 20);
+    }
+}
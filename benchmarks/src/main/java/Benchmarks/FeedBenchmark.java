@@ -0,0 +1,109 @@
+package Benchmarks;
+
+// Our custom classes imported
+import DAO.StorageEngine;
+import Model.Follow;
+import Model.Message;
+import Service.FeedService;
+import Service.MessageService;
+
+// External Libraries
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Home feed pages and the posts that feed them, with every account following 50 others. With fanout=push each
+ * post is copied into its followers' feeds and a page is read from the feed; with fanout=pull every followed
+ * account is treated as having too many followers, so each page merges the timelines of all 50. The cost of a
+ * pushed page should stay close to that of a single timeline page (see TimelineBenchmark).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.DB_URL_ARG)
+public class FeedBenchmark {
+
+    static final int ACCOUNTS = 1_000;
+    static final int MESSAGES = 100_000;
+    static final int FOLLOWING = 50;
+    static final int PAGE_SIZE = 20;
+
+    @Param({"sql", "memory"})
+    String engine;
+
+    @Param({"push", "pull"})
+    String fanout;
+
+    MessageService messageService;
+    FeedService feedService;
+
+    // The message each account's second page starts after
+    int[] secondPageCursors;
+
+    @Setup
+    public void setup() throws IOException{
+        BenchmarkDatabase.reset(ACCOUNTS, MESSAGES);
+        System.setProperty("socialmedia.storage.engine", engine);
+        System.setProperty("socialmedia.storage.memory.log.path",
+            Files.createTempDirectory("feed-benchmark").resolve("memory.log").toString());
+        System.setProperty("socialmedia.feed.fanoutMaxFollowers", fanout.equals("push") ? "1000" : "0");
+        StorageEngine storage = StorageEngine.fromConfig();
+        messageService = new MessageService(storage.getMessageStore());
+        feedService = new FeedService(storage.getAccountStore(), messageService);
+        messageService.setFeedService(feedService);
+
+        List<Follow> follows = new ArrayList<>();
+        for(int i = 0; i < ACCOUNTS; i++){
+            for(int j = 1; j <= FOLLOWING; j++){
+                int followee = (i + j * 19) % ACCOUNTS;
+                follows.add(new Follow(BenchmarkDatabase.accountId(i), BenchmarkDatabase.accountId(followee)));
+            }
+        }
+        if(!feedService.importFollows(follows)){
+            throw new IllegalStateException("Could not seed the follows");
+        }
+
+        secondPageCursors = new int[ACCOUNTS];
+        for(int i = 0; i < ACCOUNTS; i++){
+            List<Message> firstPage = feedService.getFeedPage(BenchmarkDatabase.accountId(i), 0, PAGE_SIZE);
+            secondPageCursors[i] = firstPage.get(firstPage.size() - 1).getMessage_id();
+        }
+    }
+
+    @Benchmark
+    public List<Message> firstPage(){
+        int account = ThreadLocalRandom.current().nextInt(ACCOUNTS);
+        return feedService.getFeedPage(BenchmarkDatabase.accountId(account), 0, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Message> secondPage(){
+        int account = ThreadLocalRandom.current().nextInt(ACCOUNTS);
+        return feedService.getFeedPage(BenchmarkDatabase.accountId(account), secondPageCursors[account], PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Message createMessage(){
+        int account = ThreadLocalRandom.current().nextInt(ACCOUNTS);
+        return messageService.createMessage(new Message(BenchmarkDatabase.accountId(account), "benchmark message",
+            System.currentTimeMillis() / 1000));
+    }
+}
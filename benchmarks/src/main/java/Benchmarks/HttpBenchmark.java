@@ -0,0 +1,160 @@
+package Benchmarks;
+
+// Our custom classes imported
+import Controller.SocialMediaController;
+
+// External Libraries
+import io.javalin.Javalin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Whole requests through Javalin, started in-process on a free port and called over loopback. The numbers
+ * include the HTTP client, so compare them between runs rather than reading them as server time alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.DB_URL_ARG)
+public class HttpBenchmark {
+
+    static final int ACCOUNTS = 100;
+    static final int MESSAGES = 10_000;
+
+    Javalin app;
+    String baseUrl;
+
+    // The ETag of each account's full timeline, as a client that already holds it would send in If-None-Match
+    String[] timelineETags = new String[ACCOUNTS];
+
+    @Setup
+    public void setup() throws IOException {
+        BenchmarkDatabase.reset(ACCOUNTS, MESSAGES);
+        app = new SocialMediaController().startAPI().start(0);
+        baseUrl = "http://127.0.0.1:" + app.port() + "/";
+
+        for(int i = 0; i < ACCOUNTS; i++){
+            HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "accounts/"
+                + BenchmarkDatabase.accountId(i) + "/messages").openConnection();
+            timelineETags[i] = connection.getHeaderField("ETag");
+            try(InputStream in = connection.getInputStream()){
+                in.readAllBytes();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown(){
+        app.stop();
+    }
+
+    @Benchmark
+    public int postMessage() throws IOException {
+        int account = BenchmarkDatabase.accountId(ThreadLocalRandom.current().nextInt(ACCOUNTS));
+        return send("POST", "messages", "{\"posted_by\":" + account
+            + ",\"message_text\":\"benchmark message\",\"time_posted_epoch\":1669947792}");
+    }
+
+    @Benchmark
+    public int getMessageByID() throws IOException {
+        int message = BenchmarkDatabase.messageId(ThreadLocalRandom.current().nextInt(MESSAGES));
+        return send("GET", "messages/" + message, null);
+    }
+
+    @Benchmark
+    public int login() throws IOException {
+        int account = ThreadLocalRandom.current().nextInt(ACCOUNTS);
+        return send("POST", "login", "{\"username\":\"user" + (account + 1)
+            + "\",\"password\":\"" + BenchmarkDatabase.PASSWORD + "\"}");
+    }
+
+    @Benchmark
+    public int getMessagesFromUserPage() throws IOException {
+        int account = BenchmarkDatabase.accountId(ThreadLocalRandom.current().nextInt(ACCOUNTS));
+        return send("GET", "accounts/" + account + "/messages?limit=20", null);
+    }
+
+    /**
+     * An account's whole timeline, about 100 messages, uncompressed.
+     */
+    @Benchmark
+    public int getAllMessagesFromUser() throws IOException {
+        int account = BenchmarkDatabase.accountId(ThreadLocalRandom.current().nextInt(ACCOUNTS));
+        return send("GET", "accounts/" + account + "/messages", null, null, null, 200);
+    }
+
+    /**
+     * The same, gzipped. The client reads the compressed bytes without inflating them.
+     */
+    @Benchmark
+    public int getAllMessagesFromUserGzip() throws IOException {
+        int account = BenchmarkDatabase.accountId(ThreadLocalRandom.current().nextInt(ACCOUNTS));
+        return send("GET", "accounts/" + account + "/messages", null, "Accept-Encoding", "gzip", 200);
+    }
+
+    /**
+     * The same, revalidated by a client whose copy is current, which is answered with a 304 and no body.
+     */
+    @Benchmark
+    public int getAllMessagesFromUserNotModified() throws IOException {
+        int i = ThreadLocalRandom.current().nextInt(ACCOUNTS);
+        return send("GET", "accounts/" + BenchmarkDatabase.accountId(i) + "/messages", null,
+            "If-None-Match", timelineETags[i], 304);
+    }
+
+    private int send(String method, String path, String body) throws IOException {
+        return send(method, path, body, null, null, 200);
+    }
+
+    /**
+     * Sends one request and reads the whole response. HttpURLConnection keeps the connection alive between
+     * calls, and costs the client less per request than java.net.http.HttpClient, which is what is being measured.
+     *
+     * @param header A request header to send, or null
+     * @return the status code, after checking it is the expected one so a broken endpoint cannot post a fast result
+     */
+    private int send(String method, String path, String body, String header, String value, int expectedStatus)
+            throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod(method);
+        if(header != null){
+            connection.setRequestProperty(header, value);
+        }
+        if(body != null){
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try(OutputStream out = connection.getOutputStream()){
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        if(status != expectedStatus){
+            throw new IllegalStateException(method + " " + path + " returned " + status);
+        }
+        try(InputStream in = connection.getInputStream()){
+            in.readAllBytes();
+        }
+        return status;
+    }
+}
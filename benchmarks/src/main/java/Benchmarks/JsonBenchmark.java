@@ -0,0 +1,100 @@
+package Benchmarks;
+
+// Our custom classes imported
+import Model.Message;
+import Service.MessageJsonCache;
+import Util.JsonUtil;
+
+// External Libraries
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serializing and deserializing Model.Message with the shared mapper from JsonUtil. The freshMapper benchmark
+ * builds a new ObjectMapper per call, as the controller used to, to show what sharing one saves. writePageCached
+ * writes the same page through Service.MessageJsonCache, as the controller does for GET responses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+
+    Message message;
+    byte[] messageJson;
+    List<Message> page;
+    // Equal to page but built from new objects, as each database read returns, so the cache compares the text
+    List<Message> reloadedPage;
+    MessageJsonCache jsonCache;
+
+    @Setup
+    public void setup() throws IOException {
+        message = new Message(1, 1, "benchmark message", 1669947792);
+        messageJson = JsonUtil.getMapper().writeValueAsBytes(message);
+        page = new ArrayList<Message>();
+        for(int i = 0; i < 100; i++){
+            page.add(new Message(i + 1, 1, "benchmark message " + i, 1669947792 + i));
+        }
+        reloadedPage = new ArrayList<Message>();
+        for(Message m : page){
+            reloadedPage.add(new Message(m.getMessage_id(), m.getPosted_by(), new String(m.getMessage_text()),
+                m.getTime_posted_epoch()));
+        }
+        jsonCache = new MessageJsonCache(1024);
+        jsonCache.writeArray(page, OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public byte[] writeMessage() throws IOException {
+        return JsonUtil.getMapper().writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public Message readMessage() throws IOException {
+        return JsonUtil.getMapper().readValue(messageJson, Message.class);
+    }
+
+    @Benchmark
+    public byte[] writePage() throws IOException {
+        return JsonUtil.getMapper().writeValueAsBytes(page);
+    }
+
+    /**
+     * The page written to a response stream by Jackson, as the controller does with the JSON cache disabled.
+     */
+    @Benchmark
+    public void writePageToStream() throws IOException {
+        JsonUtil.getMapper().writeValue(OutputStream.nullOutputStream(), reloadedPage);
+    }
+
+    /**
+     * The same, through the JSON cache, as the controller does with it enabled.
+     */
+    @Benchmark
+    public void writePageCached() throws IOException {
+        jsonCache.writeArray(reloadedPage, OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public String writeMessageFreshMapper() throws IOException {
+        return new ObjectMapper().writeValueAsString(message);
+    }
+}
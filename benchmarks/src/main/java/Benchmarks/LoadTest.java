@@ -0,0 +1,173 @@
+package Benchmarks;
+
+// Our custom classes imported
+import Controller.SocialMediaController;
+import Util.ServerUtil;
+
+// External Libraries
+import io.javalin.Javalin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop load test of the whole server at rising concurrency, for comparing request execution modes.
+ *
+ * Each client repeatedly sends a request and waits for the answer: mostly timeline pages and single message reads,
+ * with one post in ten. JMH measures one caller at a time, so this is what shows how the server behaves once there
+ * are more requests in flight than request threads.
+ *
+ * Run it once per mode, on Java 21 or later for virtual threads:
+ * <pre>
+ * java -Dsocialmedia.server.threads=platform -Dsocialmedia.db.url=jdbc:h2:./target/benchdb/social; \
+ *     -cp target/benchmarks.jar Benchmarks.LoadTest 10 100 500 1000
+ * java -Dsocialmedia.server.threads=virtual ... (same)
+ * </pre>
+ * The arguments are the concurrency levels to run, each for socialmedia.loadtest.seconds (default 10) after a
+ * warm-up of the same length. Lowering socialmedia.server.maxThreads makes the platform pool saturate sooner.
+ */
+public class LoadTest {
+
+    static final int ACCOUNTS = 100;
+    static final int MESSAGES = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        int[] levels = args.length == 0 ? new int[]{10, 100, 500, 1000}
+            : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+        int seconds = Integer.getInteger("socialmedia.loadtest.seconds", 10);
+
+        BenchmarkDatabase.reset(ACCOUNTS, MESSAGES);
+        Javalin app = new SocialMediaController().startAPI().start(0);
+        String baseUrl = "http://127.0.0.1:" + app.port() + "/";
+        System.out.println("Request threads: " + (ServerUtil.useVirtualThreads() ? "virtual" : "platform") + ", "
+            + Runtime.getRuntime().availableProcessors() + " cpus");
+        System.out.printf("%8s %10s %10s %10s %10s %8s%n", "clients", "req/s", "p50 ms", "p99 ms", "max ms", "errors");
+
+        try{
+            for(int clients : levels){
+                run(baseUrl, clients, seconds);
+                Result result = run(baseUrl, clients, seconds);
+                System.out.printf("%8d %10.0f %10.2f %10.2f %10.2f %8d%n", clients, result.count / (double) seconds,
+                    result.percentile(0.50), result.percentile(0.99), result.percentile(1.0), result.errors);
+            }
+        }
+        finally{
+            app.stop();
+        }
+    }
+
+    /**
+     * Latencies of every request in a run, in microseconds, and the number that failed
+     */
+    static class Result {
+        long[] latencies;
+        int count;
+        long errors;
+
+        double percentile(double p){
+            if(count == 0){
+                return 0;
+            }
+            int index = (int) Math.min(count - 1, Math.ceil(p * count) - 1);
+            return latencies[Math.max(index, 0)] / 1000.0;
+        }
+    }
+
+    static Result run(String baseUrl, int clients, int seconds) throws InterruptedException {
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        List<long[]> perClient = new ArrayList<long[]>();
+        int[] counts = new int[clients];
+        AtomicLong errors = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(clients);
+
+        for(int c = 0; c < clients; c++){
+            long[] latencies = new long[1 << 16];
+            perClient.add(latencies);
+            int client = c;
+            Thread thread = new Thread(() -> {
+                try{
+                    while(System.nanoTime() < end){
+                        long start = System.nanoTime();
+                        if(!send(baseUrl)){
+                            errors.incrementAndGet();
+                        }
+                        long elapsed = (System.nanoTime() - start) / 1000;
+                        if(counts[client] < latencies.length){
+                            latencies[counts[client]++] = elapsed;
+                        }
+                    }
+                }
+                finally{
+                    done.countDown();
+                }
+            }, "load-client-" + c);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+
+        Result result = new Result();
+        for(int c = 0; c < clients; c++){
+            result.count += counts[c];
+        }
+        result.latencies = new long[result.count];
+        int offset = 0;
+        for(int c = 0; c < clients; c++){
+            System.arraycopy(perClient.get(c), 0, result.latencies, offset, counts[c]);
+            offset += counts[c];
+        }
+        Arrays.sort(result.latencies);
+        result.errors = errors.get();
+        return result;
+    }
+
+    /**
+     * @return true if the request was answered with a 2xx
+     */
+    static boolean send(String baseUrl){
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int roll = random.nextInt(10);
+        try{
+            HttpURLConnection connection;
+            if(roll == 0){
+                connection = (HttpURLConnection) new URL(baseUrl + "messages").openConnection();
+                connection.setRequestMethod("POST");
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/json");
+                try(OutputStream out = connection.getOutputStream()){
+                    out.write(("{\"posted_by\":" + BenchmarkDatabase.accountId(random.nextInt(ACCOUNTS))
+                        + ",\"message_text\":\"load test\",\"time_posted_epoch\":1669947792}")
+                        .getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            else if(roll < 6){
+                connection = (HttpURLConnection) new URL(baseUrl + "accounts/"
+                    + BenchmarkDatabase.accountId(random.nextInt(ACCOUNTS)) + "/messages?limit=20").openConnection();
+            }
+            else{
+                connection = (HttpURLConnection) new URL(baseUrl + "messages/"
+                    + BenchmarkDatabase.messageId(random.nextInt(MESSAGES))).openConnection();
+            }
+            int status = connection.getResponseCode();
+            try(InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()){
+                if(in != null){
+                    in.readAllBytes();
+                }
+            }
+            return status / 100 == 2;
+        }
+        catch(IOException e){
+            return false;
+        }
+    }
+}
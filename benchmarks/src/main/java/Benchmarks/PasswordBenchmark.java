@@ -0,0 +1,64 @@
+package Benchmarks;
+
+// Our custom classes imported
+import Model.Account;
+import Service.AccountService;
+
+// External Libraries
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Login throughput at each password hashing cost, with and without the login verification cache. Without the
+ * cache every login pays a full PBKDF2 verification on the hashing executor; with it only the first login of each
+ * account does. Run with -t to see the executor cap concurrent logins at socialmedia.password.threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.DB_URL_ARG)
+public class PasswordBenchmark {
+
+    static final int ACCOUNTS = 20;
+
+    @Param({"10000", "100000", "600000"})
+    int iterations;
+
+    @Param({"true", "false"})
+    boolean loginCache;
+
+    AccountService accountService;
+
+    @Setup
+    public void setup(){
+        System.setProperty("socialmedia.password.iterations", Integer.toString(iterations));
+        System.setProperty("socialmedia.cache.logins.maxSize", loginCache ? "10000" : "0");
+        BenchmarkDatabase.reset(ACCOUNTS, 0);
+        accountService = new AccountService();
+
+        // The seeded passwords are plaintext; the first login of each rehashes it at this cost
+        for(int i = 0; i < ACCOUNTS; i++){
+            accountService.loginUser(new Account("user" + (i + 1), BenchmarkDatabase.PASSWORD));
+        }
+    }
+
+    @Benchmark
+    public Account login(){
+        int account = ThreadLocalRandom.current().nextInt(ACCOUNTS);
+        return accountService.loginUser(new Account("user" + (account + 1), BenchmarkDatabase.PASSWORD));
+    }
+}
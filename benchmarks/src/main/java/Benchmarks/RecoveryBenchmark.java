@@ -0,0 +1,118 @@
+package Benchmarks;
+
+// Our custom classes imported
+import DAO.MessageStore;
+import DAO.StorageEngine;
+import Model.Message;
+
+// External Libraries
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Startup time of the in-memory storage engine against the size of what it recovers from. The setup writes the
+ * messages, then rewrites a tenth of them and deletes a twentieth, so the log holds more than the live state.
+ * Each call then opens the engine from disk:
+ * <ul>
+ * <li>log - no snapshot was taken, so every record since the accounts were copied from H2 is replayed.</li>
+ * <li>snapshot - a snapshot was taken on the way down, so only the live accounts and messages are loaded.</li>
+ * </ul>
+ * The sizes of the log and snapshot are printed by the setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkDatabase.DB_URL_ARG, "-Xmx2g"})
+public class RecoveryBenchmark {
+
+    static final int ACCOUNTS = 1_000;
+    static final int BATCH_SIZE = 1_000;
+
+    @Param({"100000", "1000000"})
+    int messages;
+
+    @Param({"log", "snapshot"})
+    String start;
+
+    Path directory;
+
+    @Setup
+    public void setup() throws IOException{
+        BenchmarkDatabase.reset(ACCOUNTS, 0);
+        directory = Files.createTempDirectory("recovery-benchmark");
+        System.setProperty("socialmedia.storage.engine", "memory");
+        System.setProperty("socialmedia.storage.memory.log.path", directory.resolve("memory.log").toString());
+        System.setProperty("socialmedia.storage.memory.log.fsync", "never");
+        System.setProperty("socialmedia.storage.memory.snapshot.intervalMillis", "0");
+        System.setProperty("socialmedia.storage.memory.snapshot.onClose", Boolean.toString(start.equals("snapshot")));
+
+        StorageEngine storage = StorageEngine.fromConfig();
+        MessageStore messageStore = storage.getMessageStore();
+        List<Message> batch = new ArrayList<Message>(BATCH_SIZE);
+        for(int i = 0; i < messages; i++){
+            batch.add(new Message(BenchmarkDatabase.accountId(i % ACCOUNTS), "benchmark message " + i,
+                1_669_947_792L + i));
+            if(batch.size() == BATCH_SIZE || i == messages - 1){
+                messageStore.insertMessages(batch);
+                batch.clear();
+            }
+        }
+        for(int id = 1; id <= messages; id += 10){
+            messageStore.updateMessageText(id, "edited benchmark message " + id);
+        }
+        for(int id = 5; id <= messages; id += 20){
+            messageStore.deleteMessageByID(id);
+        }
+        storage.close();
+
+        try(Stream<Path> files = Files.list(directory)){
+            files.forEach(file -> {
+                try{
+                    System.out.println(file.getFileName() + ": " + Files.size(file) + " bytes");
+                }
+                catch(IOException e){
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException{
+        try(Stream<Path> files = Files.walk(directory)){
+            for(Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator){
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public MessageStore recover(){
+        StorageEngine storage = StorageEngine.fromConfig();
+        // Nothing was written, so closing leaves the files as they were for the next call
+        storage.close();
+        return storage.getMessageStore();
+    }
+}
@@ -0,0 +1,82 @@
+package Benchmarks;
+
+// Our custom classes imported
+import Model.Message;
+import Service.MessageSearchIndex;
+
+// External Libraries
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * First pages of search results from the message search index, without the database. Messages are 5 to 20 words
+ * drawn from a 50,000 word vocabulary with a Zipf-like distribution, as in natural text, so there are both very
+ * common and very rare terms. Queries cover a rare term, a common term, two terms together and a prefix.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class SearchBenchmark {
+
+    static final int VOCABULARY = 50_000;
+
+    @Param({"100000", "1000000"})
+    int messages;
+
+    MessageSearchIndex index;
+
+    @Setup
+    public void setup(){
+        Random random = new Random(42);
+        index = new MessageSearchIndex();
+        StringBuilder text = new StringBuilder();
+        for(int id = 1; id <= messages; id++){
+            text.setLength(0);
+            int words = 5 + random.nextInt(16);
+            for(int w = 0; w < words; w++){
+                text.append(word(random)).append(' ');
+            }
+            index.messageCreated(new Message(id, 1, text.toString(), id));
+        }
+    }
+
+    // Word n is drawn with probability roughly proportional to 1/n
+    static String word(Random random){
+        return "w" + (int) Math.pow(VOCABULARY, random.nextDouble());
+    }
+
+    @Benchmark
+    public MessageSearchIndex.Result rareTerm(){
+        return index.search("w31337", 0, 20);
+    }
+
+    @Benchmark
+    public MessageSearchIndex.Result commonTerm(){
+        return index.search("w2", 0, 20);
+    }
+
+    @Benchmark
+    public MessageSearchIndex.Result twoTerms(){
+        return index.search("w5 w40", 0, 20);
+    }
+
+    @Benchmark
+    public MessageSearchIndex.Result prefix(){
+        return index.search("w123*", 0, 20);
+    }
+}
@@ -0,0 +1,97 @@
+package Benchmarks;
+
+// Our custom classes imported
+import DAO.StorageEngine;
+import Model.Account;
+import Model.Message;
+import Service.AccountService;
+import Service.MessageService;
+
+// External Libraries
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The services, with their caches enabled at the default sizes. Compare with DaoBenchmark to see what the caches
+ * save; the seeded data fits in the caches, so reads are mostly hits once warmed up. Run under each storage engine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.DB_URL_ARG)
+public class ServiceBenchmark {
+
+    static final int ACCOUNTS = 100;
+    static final int MESSAGES = 10_000;
+
+    /**
+     * The storage engine under the services. The memory engine logs to a fresh temporary file, so its writes pay
+     * for the log as they would in production.
+     */
+    @Param({"sql", "memory"})
+    String engine;
+
+    AccountService accountService;
+    MessageService messageService;
+
+    @Setup
+    public void setup(){
+        BenchmarkDatabase.reset(ACCOUNTS, MESSAGES);
+        System.setProperty("socialmedia.storage.engine", engine);
+        try{
+            Path log = Files.createTempFile("storage-benchmark", ".log");
+            log.toFile().deleteOnExit();
+            System.setProperty("socialmedia.storage.memory.log.path", log.toString());
+        }
+        catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+        StorageEngine storage = StorageEngine.fromConfig();
+        accountService = new AccountService(storage.getAccountStore());
+        messageService = new MessageService(storage.getMessageStore());
+    }
+
+    @Benchmark
+    public Message createMessage(){
+        int account = ThreadLocalRandom.current().nextInt(ACCOUNTS);
+        return messageService.createMessage(new Message(BenchmarkDatabase.accountId(account), "benchmark message",
+            System.currentTimeMillis() / 1000));
+    }
+
+    @Benchmark
+    public Message getMessageByID(){
+        return messageService.getMessageByID(
+            BenchmarkDatabase.messageId(ThreadLocalRandom.current().nextInt(MESSAGES)));
+    }
+
+    @Benchmark
+    public Account loginUser(){
+        int account = ThreadLocalRandom.current().nextInt(ACCOUNTS);
+        return accountService.loginUser(new Account("user" + (account + 1), BenchmarkDatabase.PASSWORD));
+    }
+
+    @Benchmark
+    public List<Message> getMessagesFromUserPage(){
+        int account = ThreadLocalRandom.current().nextInt(ACCOUNTS);
+        return messageService.getMessagesFromUserPage(BenchmarkDatabase.accountId(account), 0, 20);
+    }
+}
@@ -0,0 +1,71 @@
+package Benchmarks;
+
+// Our custom classes imported
+import DAO.AccountDAO;
+import Model.Account;
+import Util.SessionTokens;
+
+// External Libraries
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of authenticating a request with a session token, against looking the account up in the database as a
+ * server-side session store would. Checking a token is one HMAC and, with revocation on, one map lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.DB_URL_ARG)
+public class SessionTokenBenchmark {
+
+    static final int ACCOUNTS = 1000;
+    static final int REVOKED = 10_000;
+
+    SessionTokens sessionTokens;
+    String[] tokens;
+    AccountDAO accountDao;
+
+    @Setup
+    public void setup(){
+        BenchmarkDatabase.reset(ACCOUNTS, 0);
+        accountDao = new AccountDAO();
+        sessionTokens = SessionTokens.fromConfig();
+        tokens = new String[ACCOUNTS];
+        for(int i = 0; i < ACCOUNTS; i++){
+            tokens[i] = sessionTokens.issue(BenchmarkDatabase.accountId(i));
+        }
+        // Give the revocation check a realistically sized set to look in
+        for(int i = 0; i < REVOKED; i++){
+            sessionTokens.revoke(sessionTokens.issue(BenchmarkDatabase.accountId(i % ACCOUNTS)));
+        }
+    }
+
+    @Benchmark
+    public String issue(){
+        return sessionTokens.issue(BenchmarkDatabase.accountId(ThreadLocalRandom.current().nextInt(ACCOUNTS)));
+    }
+
+    @Benchmark
+    public int verify(){
+        return sessionTokens.verify(tokens[ThreadLocalRandom.current().nextInt(ACCOUNTS)]);
+    }
+
+    @Benchmark
+    public Account databaseLookup(){
+        return accountDao.getAccountByUsername("user" + (ThreadLocalRandom.current().nextInt(ACCOUNTS) + 1));
+    }
+}
@@ -0,0 +1,70 @@
+package Benchmarks;
+
+// Our custom classes imported
+import DAO.MessageDAO;
+import Model.Message;
+
+// External Libraries
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-account timeline queries as the message table grows. With the timeline index the cost of a page should
+ * stay roughly flat across table sizes; a cost that grows with rows means the query has fallen back to a sort.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.DB_URL_ARG)
+public class TimelineBenchmark {
+
+    static final int ACCOUNTS = 1_000;
+    static final int PAGE_SIZE = 20;
+
+    @Param({"100000", "1000000"})
+    int rows;
+
+    MessageDAO messageDao;
+
+    // The message each account's second page starts after
+    int[] secondPageCursors;
+
+    @Setup
+    public void setup(){
+        BenchmarkDatabase.reset(ACCOUNTS, rows);
+        messageDao = new MessageDAO();
+        secondPageCursors = new int[ACCOUNTS];
+        for(int i = 0; i < ACCOUNTS; i++){
+            List<Message> firstPage = messageDao.getMessagesFromUserPage(BenchmarkDatabase.accountId(i), 0, PAGE_SIZE);
+            secondPageCursors[i] = firstPage.get(firstPage.size() - 1).getMessage_id();
+        }
+    }
+
+    @Benchmark
+    public List<Message> firstPage(){
+        int account = ThreadLocalRandom.current().nextInt(ACCOUNTS);
+        return messageDao.getMessagesFromUserPage(BenchmarkDatabase.accountId(account), 0, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Message> secondPage(){
+        int account = ThreadLocalRandom.current().nextInt(ACCOUNTS);
+        return messageDao.getMessagesFromUserPage(BenchmarkDatabase.accountId(account), secondPageCursors[account],
+            PAGE_SIZE);
+    }
+}
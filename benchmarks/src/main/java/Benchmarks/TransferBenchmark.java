@@ -0,0 +1,148 @@
+package Benchmarks;
+
+// Our custom classes imported
+import DAO.StorageEngine;
+import Model.ImportResult;
+import Service.AccountService;
+import Service.DataTransferService;
+import Service.FeedService;
+import Service.MessageService;
+
+// External Libraries
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A whole export and a whole import of 1000 accounts and 100k messages through DataTransferService, on each
+ * storage engine. Both imports read back the export taken in the setup: importAll into the store it came from,
+ * so every row replaces itself, and importIntoEmpty into a store just reset to the seed data, as when restoring a
+ * backup. Divide the rows by the time for rows per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.DB_URL_ARG)
+public class TransferBenchmark {
+
+    static final int ACCOUNTS = 1_000;
+    static final int MESSAGES = 100_000;
+
+    @Param({"sql", "memory"})
+    String engine;
+
+    DataTransferService transfer;
+    byte[] exported;
+
+    @Setup
+    public void setup() throws IOException{
+        BenchmarkDatabase.reset(ACCOUNTS, MESSAGES);
+        useNewLogDirectory();
+        System.setProperty("socialmedia.storage.engine", engine);
+        System.setProperty("socialmedia.storage.memory.log.fsync", "never");
+        System.setProperty("socialmedia.storage.memory.snapshot.intervalMillis", "0");
+        transfer = openTransfer(StorageEngine.fromConfig());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transfer.export(out);
+        exported = out.toByteArray();
+        System.out.println("Export: " + exported.length + " bytes");
+    }
+
+    /**
+     * Services over the engine, with the memory engine logging to a fresh temporary directory
+     */
+    static DataTransferService openTransfer(StorageEngine storage){
+        MessageService messageService = new MessageService(storage.getMessageStore());
+        return new DataTransferService(new AccountService(storage.getAccountStore()), messageService,
+            new FeedService(storage.getAccountStore(), messageService));
+    }
+
+    static void useNewLogDirectory() throws IOException{
+        System.setProperty("socialmedia.storage.memory.log.path",
+            Files.createTempDirectory("transfer-benchmark").resolve("memory.log").toString());
+    }
+
+    /**
+     * A store holding only the seed data, made afresh before each call
+     */
+    @State(Scope.Benchmark)
+    public static class EmptyStore {
+        StorageEngine storage;
+        DataTransferService transfer;
+
+        @Setup(Level.Invocation)
+        public void setup() throws IOException{
+            BenchmarkDatabase.reset(0, 0);
+            useNewLogDirectory();
+            storage = StorageEngine.fromConfig();
+            transfer = openTransfer(storage);
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown(){
+            storage.close();
+        }
+    }
+
+    @Benchmark
+    public long exportAll() throws IOException{
+        CountingOutputStream out = new CountingOutputStream();
+        transfer.export(out);
+        return out.count;
+    }
+
+    @Benchmark
+    public ImportResult importAll() throws IOException{
+        ImportResult result = transfer.importFrom(new ByteArrayInputStream(exported));
+        if(result.getError() != null){
+            throw new IllegalStateException(result.toString());
+        }
+        return result;
+    }
+
+    @Benchmark
+    public ImportResult importIntoEmpty(EmptyStore store) throws IOException{
+        ImportResult result = store.transfer.importFrom(new ByteArrayInputStream(exported));
+        if(result.getError() != null){
+            throw new IllegalStateException(result.toString());
+        }
+        return result;
+    }
+
+    /**
+     * Stands in for the response, so the export is timed without keeping it
+     */
+    static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b){
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len){
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package Benchmarks;
+
+// Our custom classes imported
+import DAO.AccountDAO;
+
+// External Libraries
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The "is this username taken?" check made before every registration, with and without the username Bloom filter.
+ * A fresh name is answered from memory by the filter; a taken name is looked up either way.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.DB_URL_ARG)
+public class UsernameFilterBenchmark {
+
+    static final int ACCOUNTS = 100_000;
+
+    @Param({"true", "false"})
+    boolean usernameFilter;
+
+    AccountDAO accountDao;
+
+    @Setup
+    public void setup(){
+        System.setProperty("socialmedia.accounts.usernameFilter.enabled", Boolean.toString(usernameFilter));
+        BenchmarkDatabase.reset(ACCOUNTS, 0);
+        accountDao = new AccountDAO();
+    }
+
+    @Benchmark
+    public boolean freshUsername(){
+        return accountDao.isUsernameTaken("fresh" + ThreadLocalRandom.current().nextInt());
+    }
+
+    @Benchmark
+    public boolean takenUsername(){
+        return accountDao.isUsernameTaken("user" + (ThreadLocalRandom.current().nextInt(ACCOUNTS) + 1));
+    }
+}
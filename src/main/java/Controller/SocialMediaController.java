@@ -1,29 +1,123 @@
 package Controller;
 
 // Custom Classes Imported
+import DAO.StorageEngine;
 import Model.Message;
 import Model.Account;
+import Model.Follow;
+import Model.MessageBatchResult;
+import Model.ImportResult;
+import Service.MessageJsonCache;
+import Service.MessageSearchIndex;
 import Service.MessageService;
 import Service.AccountService;
+import Service.DataTransferService;
+import Service.FeedService;
+import Util.ConfigUtil;
+import Util.HttpMetrics;
+import Util.JsonUtil;
+import Util.Metrics;
+import Util.ServerUtil;
+import Util.SessionTokens;
 
 // External Libraries
 import io.javalin.Javalin;
+import io.javalin.compression.CompressionStrategy;
+import io.javalin.compression.Gzip;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.ForbiddenResponse;
+import io.javalin.http.HandlerType;
+import io.javalin.http.Header;
+import io.javalin.http.UnauthorizedResponse;
+import io.javalin.json.JavalinJackson;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
 import java.util.List;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import com.fasterxml.jackson.core.JsonGenerator;
 
 /**
  * Routes and handles any requests sent to the platform. Leverages the AccountService and MessageService 
  * classes for accomplish its task.
  */
 public class SocialMediaController {
+    /**
+     * Page size used when a client pages with after but does not give a limit
+     */
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    /**
+     * The largest page a client may ask for
+     */
+    private static final int MAX_PAGE_SIZE = 1000;
+    /**
+     * Response header carrying the cursor for the next page
+     */
+    private static final String NEXT_CURSOR_HEADER = "X-Next-After";
+    /**
+     * Response header carrying the session token issued by a successful login
+     */
+    private static final String SESSION_TOKEN_HEADER = "X-Session-Token";
+    /**
+     * Page size for search results when the client does not give a limit
+     */
+    private static final int DEFAULT_SEARCH_PAGE_SIZE = 20;
+    /**
+     * How deep into the ranked results a client may page. Each page ranks every result above it.
+     */
+    private static final int MAX_SEARCH_OFFSET = 10_000;
+    /**
+     * Response headers carrying the number of search matches and the offset of the next page of them
+     */
+    private static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+    private static final String NEXT_OFFSET_HEADER = "X-Next-Offset";
+
+    /**
+     * Where accounts and messages are kept, chosen by socialmedia.storage.engine
+     */
+    StorageEngine storage;
     AccountService accountService;
     MessageService messageService;
+    FeedService feedService;
+
+    /**
+     * The most messages accepted by one POST /messages/batch
+     */
+    int maxBatchSize;
+
+    SessionTokens sessionTokens;
+
+    /**
+     * If true, creating, updating and deleting messages needs a session token for the account that owns them
+     */
+    boolean sessionRequired;
+
+    DataTransferService dataTransferService;
+
+    /**
+     * The bearer token GET /admin/export and POST /admin/import require, from socialmedia.admin.token. Null if it
+     * is not set, in which case those routes do not exist.
+     */
+    String adminToken;
     
     public SocialMediaController(){
-        accountService = new AccountService();
-        messageService = new MessageService();
+        storage = StorageEngine.fromConfig();
+        accountService = new AccountService(storage.getAccountStore());
+        messageService = new MessageService(storage.getMessageStore());
+        feedService = new FeedService(storage.getAccountStore(), messageService);
+        messageService.setFeedService(feedService);
+        maxBatchSize = ConfigUtil.getInt("socialmedia.batch.maxSize", 1000);
+        sessionTokens = SessionTokens.fromConfig();
+        sessionRequired = ConfigUtil.getBoolean("socialmedia.session.required", false);
+        dataTransferService = new DataTransferService(accountService, messageService, feedService);
+        adminToken = ConfigUtil.getString("socialmedia.admin.token", null);
+        if(adminToken != null && adminToken.isBlank()){
+            adminToken = null;
+        }
     }
 
     
@@ -32,46 +126,199 @@ public class SocialMediaController {
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
+        Javalin app = Javalin.create(config -> {
+            config.jsonMapper(new JavalinJackson(JsonUtil.getMapper()));
+            // Platform or virtual request threads, see ServerUtil
+            config.jetty.server(ServerUtil::createServer);
+            // Runs once each request has been answered, however it was answered
+            config.requestLogger.http((context, executionTimeMs) -> HttpMetrics.record(context.method().name(),
+                routeOf(context), context.statusCode(), (long) (executionTimeMs * 1_000_000)));
+            config.compression.custom(compressionStrategy());
+        });
+        if(compressionEnabled()){
+            // Whether a response is compressed depends on Accept-Encoding, so shared caches must key on it too
+            app.before(context -> context.header(Header.VARY, Header.ACCEPT_ENCODING));
+        }
 
         //Account related handlers
         app.post("register", this::registerUser);
         app.post("login", this::loginUser);
+        app.post("logout", this::logoutUser);
 
         // Message related handlers
         app.get("messages", this::getAllMessages);
         app.get("accounts/{account_id}/messages", this::getAllMessagesFromUser);
+        if(messageService.getSearchIndex() != null){
+            // Before messages/{message_id}, which would otherwise take "search" for a message_id
+            app.get("messages/search", this::searchMessages);
+        }
         app.get("messages/{message_id}", this::getMessageByID);
         app.post("messages", this::postCreateMessage);
+        app.post("messages/batch", this::postCreateMessages);
         app.patch("messages/{message_id}", this::updateMessageText);
         app.delete("messages/{message_id}", this::deleteMessageByID);
 
+        // Follow and feed related handlers
+        app.put("accounts/{account_id}/following/{followee_id}", this::follow);
+        app.delete("accounts/{account_id}/following/{followee_id}", this::unfollow);
+        app.get("accounts/{account_id}/following", this::getFollowing);
+        app.get("accounts/{account_id}/followers", this::getFollowers);
+        app.get("accounts/{account_id}/feed", this::getFeed);
+
+        app.get("metrics", this::getMetrics);
+
+        // Backup and migration, only when an admin token is configured
+        if(adminToken != null){
+            app.get("admin/export", this::exportData);
+            app.post("admin/import", this::importData);
+        }
+
+        // The write-behind queue or the password hashing queue is full; ask the client to retry shortly
+        app.exception(RejectedExecutionException.class, (exception, context) -> {
+            context.header("Retry-After", "1");
+            context.status(429);
+        });
+        app.events(event -> event.serverStopped(() -> {
+            // Drain queued writes into the store before closing it
+            messageService.close();
+            storage.close();
+        }));
+
         return app;
     }
 
 
+    /**
+     * Responses are gzipped, at socialmedia.compression.gzipLevel (1 to 9, 0 to turn compression off), for clients
+     * that accept it. The default of 1 already shrinks message lists about eightfold, at half the CPU of level 6
+     * for 5% more bytes. Only bodies whose first write to the output stream is at least
+     * socialmedia.compression.minSize bytes (default 1500) are compressed; smaller ones gain little and fit in a
+     * packet either way. JSON is written through an 8 KB buffer, so that first write is the whole body or 8 KB.
+     */
+    private static CompressionStrategy compressionStrategy(){
+        if(!compressionEnabled()){
+            return CompressionStrategy.NONE;
+        }
+        CompressionStrategy compression = new CompressionStrategy(null,
+            new Gzip(Math.min(ConfigUtil.getInt("socialmedia.compression.gzipLevel", 1), 9)));
+        compression.setMinSizeForCompression(ConfigUtil.getInt("socialmedia.compression.minSize", 1500));
+        return compression;
+    }
+
+    private static boolean compressionEnabled(){
+        return ConfigUtil.getInt("socialmedia.compression.gzipLevel", 1) > 0;
+    }
+
+
+    /**
+     * @return the path pattern the request matched, eg messages/{message_id}, or "unmatched" if none did, so
+     *  metrics have one series per route rather than one per path requested
+     */
+    private static String routeOf(Context context){
+        // No endpoint was found, eg a 404, so the request never got past the BEFORE stage
+        if(context.handlerType() == HandlerType.BEFORE){
+            return "unmatched";
+        }
+        return context.endpointHandlerPath();
+    }
+
+
+    /**
+     * Sends every metric in the Prometheus text format: request counts by route and status code, request latency
+     * by route, and the time spent in each DAO method.
+     * 
+     * Sends a HTTP 200 status code
+     * 
+     * @param context The Javalin Context object to write the metrics to
+     */
+    private void getMetrics(Context context){
+        StringBuilder metrics = new StringBuilder(8192);
+        Metrics.write(metrics);
+        context.contentType("text/plain; version=0.0.4; charset=utf-8");
+        context.result(metrics.toString());
+    }
+
+
+    /**
+     * Streams every account and message as newline-delimited JSON, see DataTransferService.
+     * 
+     * Sends a HTTP 200 status code with the records
+     * Sends a HTTP 401 status code if the request does not carry the admin token
+     * Drops the connection if the rows cannot all be read or written, since the file has no trailer and a partial
+     * one would otherwise look whole
+     * 
+     * @param context The Javalin Context object to write the records to
+     */
+    private void exportData(Context context){
+        requireAdmin(context);
+        context.contentType(DataTransferService.CONTENT_TYPE);
+        try{
+            dataTransferService.export(context.outputStream());
+        }
+        catch(IOException e){
+            ServerUtil.abort(context.req(), e);
+        }
+    }
+
+
+    /**
+     * Saves the accounts and messages in a newline-delimited JSON body, as written by GET /admin/export. The body
+     * is read as it arrives, so it may be any size.
+     * 
+     * Sends a HTTP 200 status code with the number of accounts and messages saved
+     * Sends a HTTP 400 status code with the same counts, the line the import stopped at and why, if a line could
+     * not be read or saved
+     * Sends a HTTP 401 status code if the request does not carry the admin token
+     * 
+     * @param context The Javalin Context object holding the records. Also returns the result
+     * @throws IOException Thrown if the body cannot be read
+     */
+    private void importData(Context context) throws IOException{
+        requireAdmin(context);
+        ImportResult result = dataTransferService.importFrom(context.bodyInputStream());
+        if(result.getError() != null){
+            context.status(400);
+        }
+        sendJson(context, result);
+    }
+
+
+    /**
+     * Checks the request carries "Authorization: Bearer &lt;token&gt;" with the admin token, comparing in constant time
+     * 
+     * @throws UnauthorizedResponse if it does not (401)
+     */
+    private void requireAdmin(Context context){
+        String token = bearerToken(context);
+        if(token == null || !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+            adminToken.getBytes(StandardCharsets.UTF_8))){
+            throw new UnauthorizedResponse();
+        }
+    }
+
+
     /**
      * Attempts to register user using the information in the body of the request.
      * Sends a HTTP 200 status code if this is done successfully
      * Sends a HTTP 400 status code if the user details are invalid.
+     * Sends a HTTP 429 status code if too many passwords are already waiting to be hashed
      * 
      * For an account to be valid, the username must be at least 1 character long
      * and the password must be at least 4 characters long.
      * 
      * @param context The Javalin Context object that contains the account information
-     * @throws JsonProcessingException Thrown if body is not of expected format.
+     * @throws IOException Thrown if body is not of expected format.
      */
-    private void registerUser(Context context) throws JsonProcessingException{
+    private void registerUser(Context context) throws IOException{
         // Extract account information from request body
-        ObjectMapper objM = new ObjectMapper();
-        Account newAccount = objM.readValue(context.body(), Account.class);
+        Account newAccount = context.bodyStreamAsClass(Account.class);
 
         // Attempt to register user in the database
         newAccount = accountService.registerUser(newAccount);
 
         if(newAccount != null){
             // User has be registered, return account info
-            context.json(newAccount);
+            sendJson(context, newAccount);
         }
         else{
             // Something went wrong, send the cooresponding status code
@@ -81,24 +328,26 @@ public class SocialMediaController {
 
 
     /**
-     * Attempts to login the user given the account details in the body of the request.
+     * Attempts to login the user given the account details in the body of the request. A successful login
+     * returns a session token in the X-Session-Token header, to be sent back as "Authorization: Bearer &lt;token&gt;".
      * 
      * Sends a HTTP 200 status code if login was successful
      * Sends a HTTP 401 status code if details are invaild
+     * Sends a HTTP 429 status code if too many passwords are already waiting to be checked
      * 
      * @param context The Javalin context that contains the login details
-     * @throws JsonProcessingException Thrown if body is not expected format
+     * @throws IOException Thrown if body is not expected format
      */
-    private void loginUser(Context context) throws JsonProcessingException{
+    private void loginUser(Context context) throws IOException{
         // Extract account information from request body
-        ObjectMapper objM = new ObjectMapper();
-        Account loginDetails = objM.readValue(context.body(), Account.class);
+        Account loginDetails = context.bodyStreamAsClass(Account.class);
 
         Account returnedAccount = accountService.loginUser(loginDetails);
 
         if(returnedAccount != null){
             // Details were valid, log user in
-            context.json(returnedAccount);
+            context.header(SESSION_TOKEN_HEADER, sessionTokens.issue(returnedAccount.getAccount_id()));
+            sendJson(context, returnedAccount);
         }
         else{
             // Invalid details were entered
@@ -107,23 +356,330 @@ public class SocialMediaController {
     }
 
 
+    /**
+     * Revokes the session token sent in the Authorization header, so it can no longer be used.
+     * 
+     * Sends a HTTP 200 status code whether or not the token was valid
+     * 
+     * @param context The Javalin context that holds the token
+     */
+    private void logoutUser(Context context){
+        sessionTokens.revoke(bearerToken(context));
+    }
+
+
+    /**
+     * @return the token from an "Authorization: Bearer &lt;token&gt;" header, or null if there is none
+     */
+    private String bearerToken(Context context){
+        String authorization = context.header("Authorization");
+        if(authorization == null || !authorization.regionMatches(true, 0, "Bearer ", 0, 7)){
+            return null;
+        }
+        return authorization.substring(7).trim();
+    }
+
+
+    /**
+     * When sessions are required, checks the request carries a valid session token for the given account. Only
+     * the token is checked, with one HMAC and no database access.
+     * 
+     * @param account_id The account the request acts for
+     * @throws UnauthorizedResponse if there is no valid token (401)
+     * @throws ForbiddenResponse if the token is for a different account (403)
+     */
+    private void requireSessionFor(Context context, int account_id){
+        if(!sessionRequired){
+            return;
+        }
+        int sessionAccount = sessionTokens.verify(bearerToken(context));
+        if(sessionAccount < 0){
+            throw new UnauthorizedResponse();
+        }
+        if(sessionAccount != account_id){
+            throw new ForbiddenResponse();
+        }
+    }
+
+
+    /**
+     * When sessions are required, checks the request carries a valid session token for the author of a message.
+     * Messages that do not exist are let through, for the handler to answer as usual.
+     */
+    private void requireSessionForMessage(Context context, int message_id){
+        if(!sessionRequired){
+            return;
+        }
+        if(sessionTokens.verify(bearerToken(context)) < 0){
+            throw new UnauthorizedResponse();
+        }
+        Message message = messageService.getMessageByID(message_id);
+        if(message != null){
+            requireSessionFor(context, message.getPosted_by());
+        }
+    }
+
+
     /**
      * Queries the database for all messages available.
+     * 
+     * Optional query parameters:
+     *  after  - keyset cursor, only messages with a greater message_id are returned
+     *  limit  - page size (1 to 1000, 100 if only after is given)
+     *  stream - if true, the JSON array is written to the response as rows are read, in constant memory
+     * 
+     * Without any of these the full list is returned, as before. When a page is full, the X-Next-After
+     * response header holds the cursor for the next page.
+     * 
+     * The response carries an ETag that changes whenever any message is written. Sends a HTTP 304 status code
+     * and no body if the If-None-Match request header holds it.
+     * 
+     * Sends a HTTP 400 status code if after or limit are invalid
+     * 
      * @param context The Javalin Context object for returning the query to the site.
+     * @throws IOException Thrown if a streamed response cannot be written
      */
-    private void getAllMessages(Context context){
-        context.json(messageService.getAllMessages());
+    private void getAllMessages(Context context) throws IOException{
+        if(isNotModified(context, messageService.getMessagesVersion())){
+            return;
+        }
+        if(isStreamRequested(context)){
+            int after = afterParam(context);
+            int limit = limitParam(context, Integer.MAX_VALUE);
+            streamMessages(context, consumer -> messageService.forEachMessage(after, limit, consumer));
+        }
+        else if(isPageRequested(context)){
+            int limit = limitParam(context, DEFAULT_PAGE_SIZE);
+            sendPage(context, messageService.getMessagesPage(afterParam(context), limit), limit);
+        }
+        else{
+            sendMessages(context, messageService.getAllMessages());
+        }
     }
 
 
     /**
-     * Queries the database for all messages send by this user
+     * Queries the database for all messages send by this user, newest first. Accepts the same after, limit and
+     * stream query parameters as getAllMessages, where after is the message_id of the last message already seen.
+     * Its ETag changes when a message of this account is written, rather than any message.
+     * 
      * @param context The Javalin Context object for returning the query to the site.
+     * @throws IOException Thrown if a streamed response cannot be written
+     */
+    private void getAllMessagesFromUser(Context context) throws IOException{
+        int account_id = Integer.parseInt(context.pathParam("account_id"));
+        if(isNotModified(context, messageService.getMessagesFromUserVersion(account_id))){
+            return;
+        }
+
+        if(isStreamRequested(context)){
+            int after = afterParam(context);
+            int limit = limitParam(context, Integer.MAX_VALUE);
+            streamMessages(context, consumer -> messageService.forEachMessageFromUser(account_id, after, limit, consumer));
+        }
+        else if(isPageRequested(context)){
+            int limit = limitParam(context, DEFAULT_PAGE_SIZE);
+            sendPage(context, messageService.getMessagesFromUserPage(account_id, afterParam(context), limit), limit);
+        }
+        else{
+            List<Message> messages = messageService.getAllMessagesFromUser(account_id);
+            sendMessages(context, messages);
+        }
+    }
+
+
+    /**
+     * Searches message text. Every word of the query must appear in a message for it to match, and a word ending
+     * in * matches any word starting with it. Matches come best first, see MessageSearchIndex.
+     * 
+     * Query parameters:
+     *  q      - the words to search for (required)
+     *  limit  - page size (1 to 1000, default 20)
+     *  offset - how many of the best matches to skip (0 to 10000, default 0)
+     * 
+     * The X-Total-Count response header holds the number of matches and, if there are more after this page,
+     * X-Next-Offset holds the offset of the next one.
+     * 
+     * Sends a HTTP 400 status code if q is missing or blank, or limit or offset are invalid
+     * 
+     * @param context The Javalin Context object for returning the results
+     * @throws IOException Thrown if the response cannot be written
+     */
+    private void searchMessages(Context context) throws IOException{
+        String query = context.queryParamAsClass("q", String.class)
+            .check(q -> !q.isBlank(), "q must not be blank")
+            .get();
+        int offset = context.queryParamAsClass("offset", Integer.class)
+            .check(o -> o >= 0 && o <= MAX_SEARCH_OFFSET, "offset must be between 0 and " + MAX_SEARCH_OFFSET)
+            .getOrDefault(0);
+        int limit = limitParam(context, DEFAULT_SEARCH_PAGE_SIZE);
+
+        MessageSearchIndex.Result result = messageService.searchMessages(query, offset, limit);
+        context.header(TOTAL_COUNT_HEADER, Integer.toString(result.getTotal()));
+        int next = offset + result.getMessage_ids().size();
+        if(next < result.getTotal() && next <= MAX_SEARCH_OFFSET){
+            context.header(NEXT_OFFSET_HEADER, Integer.toString(next));
+        }
+        sendMessages(context, messageService.getMessagesByID(result.getMessage_ids()));
+    }
+
+
+    /**
+     * Tags the response with an ETag made from the version of the collection it lists, and compares that with the
+     * tags in the request's If-None-Match header. The version is read before the collection, so the tag can only
+     * be older than the body, never newer, and a client holding it will at worst fetch again needlessly.
+     * 
+     * The tag is weak, since the same version may be sent gzipped or not, and it does not depend on the query
+     * string: caches keep a separate copy per URL anyway.
+     * 
+     * @param version The collection's version, from MessageService
+     * @return true if the client's copy is current, in which case a HTTP 304 status code has been set and the
+     *  handler sends nothing more, without querying or serializing the collection
+     */
+    private boolean isNotModified(Context context, long version){
+        String etag = "W/\"" + Long.toString(version, 36) + "\"";
+        context.header(Header.ETAG, etag);
+
+        String ifNoneMatch = context.header(Header.IF_NONE_MATCH);
+        if(ifNoneMatch == null){
+            return false;
+        }
+        for(String tag : ifNoneMatch.split(",")){
+            tag = tag.trim();
+            // If-None-Match uses the weak comparison, so W/"x" and "x" match
+            if(tag.equals("*") || tag.equals(etag) || etag.equals("W/" + tag)){
+                context.status(304);
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * @return true if the client asked for a keyset page rather than the full list
+     */
+    private boolean isPageRequested(Context context){
+        return context.queryParam("after") != null || context.queryParam("limit") != null;
+    }
+
+
+    /**
+     * @return true if the client asked for the list to be streamed
+     */
+    private boolean isStreamRequested(Context context){
+        return Boolean.parseBoolean(context.queryParam("stream"));
+    }
+
+
+    /**
+     * @return the after cursor from the query string, 0 if absent
      */
-    private void getAllMessagesFromUser(Context context){
-        List<Message> messages = messageService.getAllMessagesFromUser(
-            Integer.parseInt(context.pathParam("account_id")));
-        context.json(messages);
+    private int afterParam(Context context){
+        return context.queryParamAsClass("after", Integer.class)
+            .check(after -> after >= 0, "after must not be negative")
+            .getOrDefault(0);
+    }
+
+
+    /**
+     * @param defaultLimit the page size to use if the client did not supply one
+     * @return the limit from the query string, which must be between 1 and MAX_PAGE_SIZE
+     */
+    private int limitParam(Context context, int defaultLimit){
+        return context.queryParamAsClass("limit", Integer.class)
+            .check(limit -> limit > 0 && limit <= MAX_PAGE_SIZE, "limit must be between 1 and " + MAX_PAGE_SIZE)
+            .getOrDefault(defaultLimit);
+    }
+
+
+    /**
+     * Sends a page of messages. If the page is full there may be more, so the message_id of the last
+     * message is sent back in the X-Next-After header for the client to use as its next after cursor.
+     */
+    private void sendPage(Context context, List<Message> page, int limit) throws IOException{
+        if(!page.isEmpty() && page.size() == limit){
+            context.header(NEXT_CURSOR_HEADER, Integer.toString(page.get(page.size() - 1).getMessage_id()));
+        }
+        sendMessages(context, page);
+    }
+
+
+    /**
+     * Serializes the value with the shared mapper straight into the response output stream, without building
+     * an intermediate String or byte array.
+     * 
+     * @param context The Javalin Context object whose output stream is written to
+     * @param value The object to send as JSON
+     * @throws IOException Thrown if the response cannot be written
+     */
+    private void sendJson(Context context, Object value) throws IOException{
+        context.contentType(ContentType.APPLICATION_JSON);
+        JsonUtil.getMapper().writeValue(context.outputStream(), value);
+    }
+
+
+    /**
+     * Sends a list of messages as JSON, copying each message's bytes from the JSON cache when it holds them rather
+     * than serializing it again.
+     * 
+     * @param context The Javalin Context object whose output stream is written to
+     * @param messages The messages to send as a JSON array
+     * @throws IOException Thrown if the response cannot be written
+     */
+    private void sendMessages(Context context, List<Message> messages) throws IOException{
+        MessageJsonCache jsonCache = messageService.getJsonCache();
+        if(jsonCache == null){
+            sendJson(context, messages);
+            return;
+        }
+        context.contentType(ContentType.APPLICATION_JSON);
+        jsonCache.writeArray(messages, context.outputStream());
+    }
+
+
+    /**
+     * Sends one message as JSON, through the JSON cache if enabled.
+     */
+    private void sendMessage(Context context, Message message) throws IOException{
+        MessageJsonCache jsonCache = messageService.getJsonCache();
+        if(jsonCache == null){
+            sendJson(context, message);
+            return;
+        }
+        context.contentType(ContentType.APPLICATION_JSON);
+        context.outputStream().write(jsonCache.encode(message));
+    }
+
+
+    /**
+     * Writes a JSON array to the response one element at a time, as the source produces messages. Nothing
+     * is collected in between, so the memory used does not depend on the number of messages.
+     * 
+     * @param context The Javalin Context object whose output stream is written to
+     * @param source Produces the messages, passing each to the consumer it is given
+     * @throws IOException Thrown if the response cannot be written
+     */
+    private void streamMessages(Context context, Consumer<Consumer<Message>> source) throws IOException{
+        context.contentType(ContentType.APPLICATION_JSON);
+
+        try(JsonGenerator generator = JsonUtil.getMapper().getFactory().createGenerator(context.outputStream())){
+            generator.writeStartArray();
+            try{
+                source.accept(message -> {
+                    try{
+                        generator.writeObject(message);
+                    }
+                    catch(IOException e){
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            catch(UncheckedIOException e){
+                throw e.getCause();
+            }
+            generator.writeEndArray();
+        }
     }
 
 
@@ -131,8 +687,9 @@ public class SocialMediaController {
      * Returns a message from the given ID
      * 
      * @param context The Javalin Context object for getting the message_id and returning the query to the site.
+     * @throws IOException Thrown if the response cannot be written
      */
-    private void getMessageByID(Context context){
+    private void getMessageByID(Context context) throws IOException{
         Message message = messageService.getMessageByID(Integer.parseInt(context.pathParam("message_id")));
         
         if(message == null){
@@ -140,7 +697,7 @@ public class SocialMediaController {
             context.status(200);
         }
         else{
-            context.json(message);
+            sendMessage(context, message);
         }
     }
 
@@ -149,20 +706,25 @@ public class SocialMediaController {
      * Inserts message into database and returns the message for the user to see.
      * 
      * Sends a HTTP 200 status code if message was created
+     * Sends a HTTP 202 status code if message was queued by write-behind but not yet written (message_id is 0)
      * Sends a HTTP 400 status code if message was invalid
+     * Sends a HTTP 429 status code if the write-behind queue is full
      * 
      * For a message to be valid, the message_text must not be blank and must be under 255 characters and
      * the posted_by variable must match an existing account_id.
      * 
-     * @param context The Javalin Context object for running the post request. Also returns message as string
-     * @throws JsonProcessingException Thrown if body is not in expected format
+     * @param context The Javalin Context object for running the post request. Also returns the created message
+     * @throws IOException Thrown if body is not in expected format
      */
-    private void postCreateMessage(Context context) throws JsonProcessingException{
-        ObjectMapper objM = new ObjectMapper();
-        Message message = objM.readValue(context.body(), Message.class);
+    private void postCreateMessage(Context context) throws IOException{
+        Message message = context.bodyStreamAsClass(Message.class);
+        requireSessionFor(context, message.getPosted_by());
         message = messageService.createMessage(message);
         if(message!=null){
-            context.json(objM.writeValueAsString(message));
+            if(message.getMessage_id() == 0){
+                context.status(202);
+            }
+            sendJson(context, message);
         }
         else{
             context.status(400);
@@ -170,6 +732,34 @@ public class SocialMediaController {
     }
 
 
+    /**
+     * Inserts a JSON array of messages in one transaction and returns one result per message, in the same order.
+     * Each message is checked against the same rules as a single POST /messages. Valid messages are created even
+     * if others in the batch are not, and each result holds either the created message or the reason it was not.
+     * 
+     * Sends a HTTP 200 status code with the results, even if some messages were not created
+     * Sends a HTTP 400 status code if the batch is empty or larger than socialmedia.batch.maxSize (1000)
+     * 
+     * @param context The Javalin Context object holding the messages. Also returns the results
+     * @throws IOException Thrown if body is not in expected format
+     */
+    private void postCreateMessages(Context context) throws IOException{
+        Message[] batch = context.bodyStreamAsClass(Message[].class);
+        if(batch == null || batch.length == 0 || batch.length > maxBatchSize){
+            context.status(400);
+            return;
+        }
+        for(Message message : batch){
+            if(message != null){
+                requireSessionFor(context, message.getPosted_by());
+            }
+        }
+
+        List<MessageBatchResult> results = messageService.createMessages(Arrays.asList(batch));
+        sendJson(context, results);
+    }
+
+
     /**
      * Attempts to update a message given the message_id with the body of the request
      * 
@@ -180,19 +770,19 @@ public class SocialMediaController {
      * and the message_text in the body must not be blank and must be under 255 characters.
      * 
      * @param context The Javalin Context object that queries the database and returns the updated message
-     * @throws JsonProcessingException Thrown if body is not in expected format
+     * @throws IOException Thrown if body is not in expected format
      */
-    private void updateMessageText(Context context) throws JsonProcessingException{
+    private void updateMessageText(Context context) throws IOException{
         int message_id = Integer.parseInt(context.pathParam("message_id"));
+        requireSessionForMessage(context, message_id);
 
         // Extract the new message from the body into a temporary message object
-        ObjectMapper objM = new ObjectMapper();
-        Message tempMessage = objM.readValue(context.body(), Message.class);
+        Message tempMessage = context.bodyStreamAsClass(Message.class);
 
         Message updatedMessage = messageService.updateMessageText(message_id, tempMessage.getMessage_text());
 
         if(updatedMessage != null){
-            context.json(updatedMessage);
+            sendJson(context, updatedMessage);
         }
         else{
             context.status(400);
@@ -205,16 +795,120 @@ public class SocialMediaController {
      * Sends a HTTP 200 status code regardless of if a message is deleted for not.
      * 
      * @param context The Javalin Context object to retrieve the message_id and return the result of the query
+     * @throws IOException Thrown if the response cannot be written
      */
-    private void deleteMessageByID(Context context){
-        Message message = messageService.deleteMessageByID(Integer.parseInt(context.pathParam("message_id")));
+    private void deleteMessageByID(Context context) throws IOException{
+        int message_id = Integer.parseInt(context.pathParam("message_id"));
+        requireSessionForMessage(context, message_id);
+
+        Message message = messageService.deleteMessageByID(message_id);
         
         if(message == null){
             // Even though we didn't get a message, everything is a-ok
             context.status(200);
         }
         else{
-            context.json(message);
+            sendJson(context, message);
+        }
+    }
+
+
+    /**
+     * Makes the account in the URL follow the followee in the URL. Following an account already followed is
+     * allowed, and changes nothing.
+     * 
+     * Sends a HTTP 200 status code with the follow if the account now follows the followee
+     * Sends a HTTP 400 status code if either account does not exist, or they are the same account
+     * 
+     * @param context The Javalin Context object holding the account_ids. Also returns the follow
+     * @throws IOException Thrown if the response cannot be written
+     */
+    private void follow(Context context) throws IOException{
+        int account_id = Integer.parseInt(context.pathParam("account_id"));
+        int followee_id = Integer.parseInt(context.pathParam("followee_id"));
+        requireSessionFor(context, account_id);
+
+        if(feedService.follow(account_id, followee_id)){
+            sendJson(context, new Follow(account_id, followee_id));
+        }
+        else{
+            context.status(400);
         }
     }
-}
\ No newline at end of file
+
+
+    /**
+     * Stops the account in the URL following the followee in the URL. Responds with the follow removed.
+     * 
+     * Sends a HTTP 200 status code whether or not the account was following the followee
+     * 
+     * @param context The Javalin Context object holding the account_ids. Also returns the follow removed
+     * @throws IOException Thrown if the response cannot be written
+     */
+    private void unfollow(Context context) throws IOException{
+        int account_id = Integer.parseInt(context.pathParam("account_id"));
+        int followee_id = Integer.parseInt(context.pathParam("followee_id"));
+        requireSessionFor(context, account_id);
+
+        if(feedService.unfollow(account_id, followee_id)){
+            sendJson(context, new Follow(account_id, followee_id));
+        }
+    }
+
+
+    /**
+     * Lists the account_ids of the accounts this account follows, in account_id order. Accepts after (the last
+     * account_id already seen) and limit (1 to 1000, default 100); when a page is full, the X-Next-After response
+     * header holds the cursor for the next page.
+     * 
+     * @param context The Javalin Context object for returning the account_ids
+     * @throws IOException Thrown if the response cannot be written
+     */
+    private void getFollowing(Context context) throws IOException{
+        int account_id = Integer.parseInt(context.pathParam("account_id"));
+        int limit = limitParam(context, DEFAULT_PAGE_SIZE);
+        sendIdPage(context, feedService.getFollowing(account_id, afterParam(context), limit), limit);
+    }
+
+
+    /**
+     * Lists the account_ids of the accounts following this account, paged as getFollowing
+     * 
+     * @param context The Javalin Context object for returning the account_ids
+     * @throws IOException Thrown if the response cannot be written
+     */
+    private void getFollowers(Context context) throws IOException{
+        int account_id = Integer.parseInt(context.pathParam("account_id"));
+        int limit = limitParam(context, DEFAULT_PAGE_SIZE);
+        sendIdPage(context, feedService.getFollowers(account_id, afterParam(context), limit), limit);
+    }
+
+
+    /**
+     * Sends a page of account_ids, with the last one in the X-Next-After header if the page is full
+     */
+    private void sendIdPage(Context context, List<Integer> page, int limit) throws IOException{
+        if(!page.isEmpty() && page.size() == limit){
+            context.header(NEXT_CURSOR_HEADER, Integer.toString(page.get(page.size() - 1)));
+        }
+        sendJson(context, page);
+    }
+
+
+    /**
+     * Lists the messages of the accounts this account follows, newest first (by time_posted_epoch, then
+     * message_id), see FeedService. Always paged: after is the message_id of the last message already seen, and
+     * limit is 1 to 1000, default 100. When a page is full, the X-Next-After response header holds the cursor for
+     * the next page.
+     * 
+     * Sends a HTTP 400 status code if after or limit are invalid
+     * 
+     * @param context The Javalin Context object for returning the messages
+     * @throws IOException Thrown if the response cannot be written
+     */
+    private void getFeed(Context context) throws IOException{
+        int account_id = Integer.parseInt(context.pathParam("account_id"));
+        int limit = limitParam(context, DEFAULT_PAGE_SIZE);
+        sendPage(context, feedService.getFeedPage(account_id, afterParam(context), limit), limit);
+    }
+}
@@ -2,86 +2,591 @@ package DAO;
 
 // Our custom classes imported
 import Model.Account;
+import Model.Follow;
+import Util.BloomFilter;
+import Util.ConfigUtil;
 import Util.ConnectionUtil;
+import Util.IdBitmap;
 
 // External libraries imported
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+public class AccountDAO implements AccountStore {
+    /**
+     * SQLState of a unique constraint violation, ie the username is already taken
+     */
+    private static final String DUPLICATE_KEY = "23505";
+
+    /**
+     * SQLState of a foreign key violation, ie a follow naming an account that does not exist
+     */
+    private static final String UNKNOWN_ACCOUNT = "23506";
+
+    // Timing and error counts for each public method, served by GET /metrics
+    private static final DaoMetrics REGISTER_USER = new DaoMetrics("AccountDAO", "registerUser");
+    private static final DaoMetrics GET_ACCOUNT_BY_USERNAME = new DaoMetrics("AccountDAO", "getAccountByUsername");
+    private static final DaoMetrics REPLACE_STORED_PASSWORD = new DaoMetrics("AccountDAO", "replaceStoredPassword");
+    private static final DaoMetrics FOR_EACH_ACCOUNT = new DaoMetrics("AccountDAO", "forEachAccount");
+    private static final DaoMetrics IMPORT_ACCOUNTS = new DaoMetrics("AccountDAO", "importAccounts");
+    private static final DaoMetrics GET_MAX_ACCOUNT_ID = new DaoMetrics("AccountDAO", "getMaxAccountId");
+    private static final DaoMetrics FOLLOW = new DaoMetrics("AccountDAO", "follow");
+    private static final DaoMetrics UNFOLLOW = new DaoMetrics("AccountDAO", "unfollow");
+    private static final DaoMetrics GET_FOLLOWERS = new DaoMetrics("AccountDAO", "getFollowers");
+    private static final DaoMetrics GET_FOLLOWING = new DaoMetrics("AccountDAO", "getFollowing");
+    private static final DaoMetrics GET_ACCOUNTS_FOLLOWED_BY_MORE_THAN = new DaoMetrics("AccountDAO", "getAccountsFollowedByMoreThan");
+    private static final DaoMetrics FOR_EACH_FOLLOW = new DaoMetrics("AccountDAO", "forEachFollow");
+    private static final DaoMetrics IMPORT_FOLLOWS = new DaoMetrics("AccountDAO", "importFollows");
+
+    /**
+     * Rows requested from the database at a time while streaming a result set
+     */
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    /**
+     * Every username in the Account table (and possibly a few more), so most "is this name taken?" questions are
+     * answered without a query. Null if disabled with socialmedia.accounts.usernameFilter.enabled=false.
+     * 
+     * It is filled from the table when the DAO is created and kept up to date by registerUser. A name registered
+     * by another process is missing from it, so the unique constraint on username stays the final word.
+     */
+    private final BloomFilter usernames;
+
+    /**
+     * The account_id of every account, so a message's posted_by can be checked without a query. Null if disabled
+     * with socialmedia.accounts.idBitmap.enabled=false.
+     * 
+     * Filled from the table when the DAO is created and kept up to date by registerUser. Accounts are never
+     * deleted, so it only misses accounts written by something else, eg another process or a script; MessageDAO
+     * looks those up in the table and adds them.
+     */
+    private final IdBitmap accountIds;
+
+    public AccountDAO(){
+        usernames = ConfigUtil.getBoolean("socialmedia.accounts.usernameFilter.enabled", true) ? loadUsernames() : null;
+        accountIds = ConfigUtil.getBoolean("socialmedia.accounts.idBitmap.enabled", true) ? loadAccountIds() : null;
+    }
+
+    /**
+     * @return the account_id of every account, kept up to date as accounts are registered through this DAO, or null
+     *  if disabled
+     */
+    public IdBitmap getAccountIds(){
+        return accountIds;
+    }
+
+    /**
+     * Builds the account_id bitmap from the Account table.
+     * 
+     * @return the bitmap, or null if the table could not be read
+     */
+    private IdBitmap loadAccountIds(){
+        try(Connection connection = ConnectionUtil.getConnection();
+            Statement query = connection.createStatement()){
+            int maxId = 0;
+            try(ResultSet rows = query.executeQuery("SELECT MAX(account_id) FROM Account")){
+                if(rows.next()){
+                    maxId = rows.getInt(1);
+                }
+            }
+
+            // Leave room for the accounts still to come before the bitmap has to grow
+            IdBitmap ids = new IdBitmap(maxId + maxId / 2);
+            try(ResultSet rows = query.executeQuery("SELECT account_id FROM Account")){
+                while(rows.next()){
+                    ids.add(rows.getInt(1));
+                }
+            }
+            return ids;
+        }
+        catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Builds the username filter from the Account table, sized for at least
+     * socialmedia.accounts.usernameFilter.expectedUsernames (default 100000) names and twice the current count, at
+     * a false positive rate of socialmedia.accounts.usernameFilter.falsePositiveRate (default 0.01).
+     * 
+     * @return the filter, or null if the table could not be read
+     */
+    private BloomFilter loadUsernames(){
+        try(Connection connection = ConnectionUtil.getConnection();
+            Statement query = connection.createStatement()){
+            long count = 0;
+            try(ResultSet rows = query.executeQuery("SELECT COUNT(*) FROM Account")){
+                if(rows.next()){
+                    count = rows.getLong(1);
+                }
+            }
+
+            BloomFilter filter = new BloomFilter("usernames",
+                Math.max(ConfigUtil.getLong("socialmedia.accounts.usernameFilter.expectedUsernames", 100_000), 2 * count),
+                ConfigUtil.getDouble("socialmedia.accounts.usernameFilter.falsePositiveRate", 0.01));
+            try(ResultSet rows = query.executeQuery("SELECT username FROM Account")){
+                while(rows.next()){
+                    filter.put(rows.getString(1));
+                }
+            }
+            return filter;
+        }
+        catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return null;
+    }
 
-public class AccountDAO {
     /**
      * Attempts to register an account.
      * 
      * An account cannot be registered if the username is blank 
      * or the password is less than 4 characters long.
      * 
-     * @param newAccount Details for the newly created account
+     * @param newAccount Details for the newly created account, with the password as the user typed it
+     * @param storedPassword What to store in place of the password, ie its hash
      * @return Newly created account with the account_id assigned by the database, otherwise null if couldn't be registered
      */
-    public Account registerUser(Account newAccount){
+    public Account registerUser(Account newAccount, String storedPassword){
+        long start = System.nanoTime();
+        try{
+            String username = newAccount.getUsername();
+
+            /* These conditions must be met for an account to be valid
+                If they are not, simply return null*/
+            if(!AccountStore.isValidNewAccount(newAccount)){
+                return null;
+            }
+
+            // Ready and execute query
+            String sql = "INSERT INTO Account (username, password) VALUES (?, ?)";
+            try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement query = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)){
+                query.setString(1, username);
+                query.setString(2, storedPassword);
+                query.executeUpdate();
+                if(usernames != null){
+                    usernames.put(username);
+                }
+
+                // If the account was added, get the account_id generated by the database and return
+                try(ResultSet newAccountID = query.getGeneratedKeys()){
+                    if(newAccountID.next()){
+                        newAccount.setAccount_id(newAccountID.getInt("account_id"));
+                        if(accountIds != null){
+                            accountIds.add(newAccount.getAccount_id());
+                        }
+
+                        return newAccount;
+                    }
+                }
+            }
+            catch(SQLException e){
+                if(DUPLICATE_KEY.equals(e.getSQLState())){
+                    // Taken since it was checked, or by another process; remember it for next time
+                    if(usernames != null){
+                        usernames.put(username);
+                    }
+                }
+                else{
+                    REGISTER_USER.failed(e);
+                }
+            }
+
+            // Account could not be registered
+            return null;
+        }
+        finally{
+            REGISTER_USER.record(start);
+        }
+    }
+
+    /**
+     * Checks whether a username is registered. Names the username filter has never seen are answered from
+     * memory; the rest are looked up. Registering still relies on the unique constraint, since the name can be
+     * taken between this check and the insert.
+     * 
+     * @param username The username to check
+     * @return true if an account has this username
+     */
+    public boolean isUsernameTaken(String username){
+        if(usernames != null && !usernames.mightContain(username)){
+            return false;
+        }
+        boolean taken = getAccountByUsername(username) != null;
+        if(!taken && usernames != null){
+            usernames.recordFalsePositive();
+        }
+        return taken;
+    }
 
-        String username = newAccount.getUsername();
-        String password = newAccount.getPassword();
+    /**
+     * Looks up an account by its username, for checking a login against
+     * 
+     * @param username The username to look for
+     * @return The account with its stored password (a hash, or plaintext for rows older than hashing), null if none
+     */
+    public Account getAccountByUsername(String username){
+        long start = System.nanoTime();
+        try{
+            String sql = "SELECT * FROM Account WHERE username = ?";
+            try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement query = connection.prepareStatement(sql)){
+                query.setString(1, username);
 
-        /* These conditions must be met for an account to be valid
-            If they are not, simply return null*/
-        if(username.length() <= 0 || password.length() < 4){
+                try(ResultSet account = query.executeQuery()){
+                    if(account.next()){
+                        return new Account(account.getInt("account_id"), account.getString("username"),
+                            account.getString("password"));
+                    }
+                }
+            } 
+            catch (SQLException e) {
+                GET_ACCOUNT_BY_USERNAME.failed(e);
+            }
+        
+            // No such account
             return null;
         }
+        finally{
+            GET_ACCOUNT_BY_USERNAME.record(start);
+        }
+    }
 
+    /**
+     * Replaces an account's stored password, but only if it has not changed since it was read
+     * 
+     * @param account_id The account to update
+     * @param expectedPassword The stored password as last read
+     * @param newPassword The new value to store
+     * @return true if the stored password was replaced
+     */
+    public boolean replaceStoredPassword(int account_id, String expectedPassword, String newPassword){
+        long start = System.nanoTime();
+        try{
+            String sql = "UPDATE Account SET password = ? WHERE account_id = ? AND password = ?";
+            try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement query = connection.prepareStatement(sql)){
+                query.setString(1, newPassword);
+                query.setInt(2, account_id);
+                query.setString(3, expectedPassword);
+                return query.executeUpdate() > 0;
+            } 
+            catch (SQLException e) {
+                REPLACE_STORED_PASSWORD.failed(e);
+            }
+            return false;
+        }
+        finally{
+            REPLACE_STORED_PASSWORD.record(start);
+        }
+    }
+
+    /**
+     * Hands every account to the consumer as it is read from the database, in account_id order, with H2's lazy
+     * execution turned on so rows are never collected.
+     * 
+     * @param consumer Receives each account, with its stored password
+     * @throws UncheckedIOException if the query fails, part way or not
+     */
+    public void forEachAccount(Consumer<Account> consumer){
+        long start = System.nanoTime();
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement query = connection.prepareStatement("SELECT * FROM Account ORDER BY account_id")){
+            query.setFetchSize(STREAM_FETCH_SIZE);
+
+            SqlStorage.setLazyExecution(connection, true);
+            try(ResultSet account = query.executeQuery()){
+                while(account.next()){
+                    consumer.accept(new Account(account.getInt("account_id"), account.getString("username"),
+                        account.getString("password")));
+                }
+            }
+            finally{
+                SqlStorage.setLazyExecution(connection, false);
+            }
+        }
+        catch(SQLException e){
+            FOR_EACH_ACCOUNT.failed(e);
+            throw new UncheckedIOException(new IOException("Could not read every account", e));
+        }
+        finally{
+            FOR_EACH_ACCOUNT.record(start);
+        }
+    }
+
+    /**
+     * Writes accounts with their own account_ids in a single transaction and JDBC batch, merging on account_id so
+     * an import can be run again. The identity is then moved past the largest account_id in the table, and the
+     * username filter and account_id bitmap learn the new rows.
+     * 
+     * @param accounts The accounts to write, already checked
+     * @return true if the accounts were written, false if the batch failed, eg on the unique username
+     */
+    public boolean importAccounts(List<Account> accounts){
+        long start = System.nanoTime();
+        try{
+            String sql = "MERGE INTO Account (account_id, username, password) KEY (account_id) VALUES (?, ?, ?)";
+            try(Connection connection = ConnectionUtil.getConnection()){
+                connection.setAutoCommit(false);
+                try(PreparedStatement query = connection.prepareStatement(sql)){
+                    for(Account account : accounts){
+                        query.setInt(1, account.getAccount_id());
+                        query.setString(2, account.getUsername());
+                        query.setString(3, account.getPassword());
+                        query.addBatch();
+                    }
+                    query.executeBatch();
+                    connection.commit();
+                }
+                catch(SQLException e){
+                    connection.rollback();
+                    throw e;
+                }
+                finally{
+                    connection.setAutoCommit(true);
+                }
+                SqlStorage.restartIdentity(connection, "Account", "account_id");
+            }
+            catch(SQLException e){
+                IMPORT_ACCOUNTS.failed(e);
+                return false;
+            }
+
+            for(Account account : accounts){
+                if(usernames != null){
+                    usernames.put(account.getUsername());
+                }
+                if(accountIds != null){
+                    accountIds.add(account.getAccount_id());
+                }
+            }
+            return true;
+        }
+        finally{
+            IMPORT_ACCOUNTS.record(start);
+        }
+    }
+
+    /**
+     * @return the largest account_id in the Account table, or 0 if it is empty or could not be read
+     */
+    public int getMaxAccountId(){
+        long start = System.nanoTime();
         try(Connection connection = ConnectionUtil.getConnection()){
-            // Ready and execute query
-            String sql = "INSERT INTO Account (username, password) VALUES (?, ?)";
-            PreparedStatement query = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-            query.setString(1, username);
-            query.setString(2, password);
-            query.executeUpdate();
+            return SqlStorage.maxId(connection, "Account", "account_id");
+        }
+        catch(SQLException e){
+            GET_MAX_ACCOUNT_ID.failed(e);
+            return 0;
+        }
+        finally{
+            GET_MAX_ACCOUNT_ID.record(start);
+        }
+    }
 
-            // If the account was added, get the account_id generated by the database and return
-            ResultSet newAccountID = query.getGeneratedKeys();
-            if(newAccountID.next()){
-                newAccount.setAccount_id(newAccountID.getInt("account_id"));
+    /**
+     * Adds a row to the Follow table, merging on the pair so following twice changes nothing. The foreign keys
+     * decide whether both accounts exist, since the account_id bitmap does not see accounts written by something
+     * else; the ids of a follow they let through are added to it.
+     * 
+     * @return true if follower_id now follows followee_id, false if they are the same account or either does not
+     *  exist
+     */
+    public boolean follow(int follower_id, int followee_id){
+        long start = System.nanoTime();
+        try{
+            if(follower_id == followee_id){
+                return false;
+            }
+            String sql = "MERGE INTO Follow (follower_id, followee_id) KEY (follower_id, followee_id) VALUES (?, ?)";
+            try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement query = connection.prepareStatement(sql)){
+                query.setInt(1, follower_id);
+                query.setInt(2, followee_id);
+                query.executeUpdate();
+                if(accountIds != null){
+                    accountIds.add(follower_id);
+                    accountIds.add(followee_id);
+                }
+                return true;
+            }
+            catch(SQLException e){
+                if(!UNKNOWN_ACCOUNT.equals(e.getSQLState())){
+                    FOLLOW.failed(e);
+                }
+            }
+            return false;
+        }
+        finally{
+            FOLLOW.record(start);
+        }
+    }
 
-                return newAccount;
+    /**
+     * @return true if a row was deleted from the Follow table
+     */
+    public boolean unfollow(int follower_id, int followee_id){
+        long start = System.nanoTime();
+        try{
+            String sql = "DELETE FROM Follow WHERE follower_id = ? AND followee_id = ?";
+            try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement query = connection.prepareStatement(sql)){
+                query.setInt(1, follower_id);
+                query.setInt(2, followee_id);
+                return query.executeUpdate() > 0;
+            }
+            catch(SQLException e){
+                UNFOLLOW.failed(e);
+            }
+            return false;
+        }
+        finally{
+            UNFOLLOW.record(start);
+        }
+    }
+
+    /**
+     * A keyset page of follow_followee_idx
+     */
+    public List<Integer> getFollowers(int account_id, int after_id, int limit){
+        long start = System.nanoTime();
+        try{
+            return queryIds(GET_FOLLOWERS, "SELECT follower_id FROM Follow WHERE followee_id = ? AND follower_id > ? "
+                + "ORDER BY follower_id LIMIT ?", account_id, after_id, limit);
+        }
+        finally{
+            GET_FOLLOWERS.record(start);
+        }
+    }
+
+    /**
+     * A keyset page of the Follow table's primary key
+     */
+    public List<Integer> getFollowing(int account_id, int after_id, int limit){
+        long start = System.nanoTime();
+        try{
+            return queryIds(GET_FOLLOWING, "SELECT followee_id FROM Follow WHERE follower_id = ? AND followee_id > ? "
+                + "ORDER BY followee_id LIMIT ?", account_id, after_id, limit);
+        }
+        finally{
+            GET_FOLLOWING.record(start);
+        }
+    }
+
+    /**
+     * Counts every account's followers in one pass over follow_followee_idx, so it is meant for startup rather
+     * than for every request
+     */
+    public List<Integer> getAccountsFollowedByMoreThan(int followers){
+        long start = System.nanoTime();
+        try{
+            return queryIds(GET_ACCOUNTS_FOLLOWED_BY_MORE_THAN, "SELECT followee_id FROM Follow GROUP BY followee_id "
+                + "HAVING COUNT(*) > ? ORDER BY followee_id", followers);
+        }
+        finally{
+            GET_ACCOUNTS_FOLLOWED_BY_MORE_THAN.record(start);
+        }
+    }
+
+    /**
+     * @return the first column of every row the query returns, or the rows read so far if it fails
+     */
+    private List<Integer> queryIds(DaoMetrics metrics, String sql, int... params){
+        List<Integer> ids = new ArrayList<Integer>();
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement query = connection.prepareStatement(sql)){
+            for(int i = 0; i < params.length; i++){
+                query.setInt(i + 1, params[i]);
+            }
+            try(ResultSet rows = query.executeQuery()){
+                while(rows.next()){
+                    ids.add(rows.getInt(1));
+                }
             }
         }
         catch(SQLException e){
-            System.out.println(e.getMessage());
+            metrics.failed(e);
         }
+        return ids;
+    }
 
-        // Account could not be registered
-        return null;
+    /**
+     * Hands every row of the Follow table to the consumer as it is read, with lazy execution as in forEachAccount
+     *
+     * @throws UncheckedIOException if the query fails, part way or not
+     */
+    public void forEachFollow(Consumer<Follow> consumer){
+        long start = System.nanoTime();
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement query = connection.prepareStatement(
+                "SELECT follower_id, followee_id FROM Follow ORDER BY follower_id, followee_id")){
+            query.setFetchSize(STREAM_FETCH_SIZE);
+
+            SqlStorage.setLazyExecution(connection, true);
+            try(ResultSet follow = query.executeQuery()){
+                while(follow.next()){
+                    consumer.accept(new Follow(follow.getInt(1), follow.getInt(2)));
+                }
+            }
+            finally{
+                SqlStorage.setLazyExecution(connection, false);
+            }
+        }
+        catch(SQLException e){
+            FOR_EACH_FOLLOW.failed(e);
+            throw new UncheckedIOException(new IOException("Could not read every follow", e));
+        }
+        finally{
+            FOR_EACH_FOLLOW.record(start);
+        }
     }
 
     /**
-     * Attempts to login a user with the details provided
+     * Merges the follows into the Follow table in a single transaction and JDBC batch
      * 
-     * @param accountDetails Provided login details
-     * @return The Account if details are valid, null otherwise
+     * @return true if the follows were written, false if the batch failed, eg on a foreign key
      */
-    public Account loginUser(Account accountDetails){
-        try (Connection connection = ConnectionUtil.getConnection()){
-            // Ready and execute query
-            String sql = "SELECT * FROM Account WHERE username = ? AND password = ?";
-            PreparedStatement query = connection.prepareStatement(sql);
-            query.setString(1, accountDetails.getUsername());
-            query.setString(2, accountDetails.getPassword());
-            ResultSet account = query.executeQuery();
-
-            if(account.next()){
-                // Account was successfully registered, get account_id and return
-                accountDetails.setAccount_id(account.getInt("account_id"));
-                return accountDetails;
-            }
-        } 
-        catch (SQLException e) {
-            System.out.println(e.getMessage());
+    public boolean importFollows(List<Follow> follows){
+        long start = System.nanoTime();
+        try{
+            String sql = "MERGE INTO Follow (follower_id, followee_id) KEY (follower_id, followee_id) VALUES (?, ?)";
+            try(Connection connection = ConnectionUtil.getConnection()){
+                connection.setAutoCommit(false);
+                try(PreparedStatement query = connection.prepareStatement(sql)){
+                    for(Follow follow : follows){
+                        query.setInt(1, follow.getFollower_id());
+                        query.setInt(2, follow.getFollowee_id());
+                        query.addBatch();
+                    }
+                    query.executeBatch();
+                    connection.commit();
+                }
+                catch(SQLException e){
+                    connection.rollback();
+                    throw e;
+                }
+                finally{
+                    connection.setAutoCommit(true);
+                }
+            }
+            catch(SQLException e){
+                IMPORT_FOLLOWS.failed(e);
+                return false;
+            }
+            return true;
+        }
+        finally{
+            IMPORT_FOLLOWS.record(start);
         }
-        
-        // Account details were not valid
-        return null;
     }
 }
@@ -0,0 +1,124 @@
+package DAO;
+
+// Our custom classes imported
+import Model.Account;
+import Model.Follow;
+
+// Java libraries imported
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Where accounts are kept. AccountDAO keeps them in the Account table; the in-memory engine (see StorageEngine)
+ * keeps them in memory behind an append-only log.
+ */
+public interface AccountStore {
+
+    /**
+     * @param newAccount Details for the new account, with the password as the user typed it. It is given its
+     *  account_id.
+     * @param storedPassword What to store in place of the password, ie its hash
+     * @return the account, or null if it is invalid, the username is taken, or it could not be saved
+     */
+    Account registerUser(Account newAccount, String storedPassword);
+
+    /**
+     * @return true if an account has this username
+     */
+    boolean isUsernameTaken(String username);
+
+    /**
+     * @return the account with its stored password, or null if there is none with this username
+     */
+    Account getAccountByUsername(String username);
+
+    /**
+     * Replaces an account's stored password, but only if it has not changed since it was read
+     *
+     * @param expectedPassword The stored password as last read
+     * @return true if the stored password was replaced
+     */
+    boolean replaceStoredPassword(int account_id, String expectedPassword, String newPassword);
+
+    /**
+     * Hands every account, with its stored password, to the consumer in account_id order, without collecting
+     * them, so any number of accounts can be visited in constant memory.
+     *
+     * @throws UncheckedIOException if the rows cannot all be read. Some may have been handed over already.
+     */
+    void forEachAccount(Consumer<Account> consumer);
+
+    /**
+     * Writes accounts exactly as given, account_id and stored password included, replacing any account with the
+     * same account_id. The accounts are saved all together or not at all, and accounts registered afterwards are
+     * given an account_id past the largest imported.
+     *
+     * @return true if the accounts were saved; false if one of them has a username taken by another account, or
+     *  they could not be saved
+     */
+    boolean importAccounts(List<Account> accounts);
+
+    /**
+     * @return the largest account_id handed out or imported, or 0 if there are none or they could not be read
+     */
+    int getMaxAccountId();
+
+    /**
+     * Makes one account follow another. Following an account already followed changes nothing.
+     *
+     * @return true if follower_id now follows followee_id; false if either account does not exist, they are the
+     *  same account, or it could not be saved
+     */
+    boolean follow(int follower_id, int followee_id);
+
+    /**
+     * @return true if follower_id followed followee_id and no longer does
+     */
+    boolean unfollow(int follower_id, int followee_id);
+
+    /**
+     * @param after_id Only followers with a greater account_id are returned. Use 0 for the first page.
+     * @return at most limit of the accounts following the account, in account_id order
+     */
+    List<Integer> getFollowers(int account_id, int after_id, int limit);
+
+    /**
+     * @param after_id Only accounts with a greater account_id are returned. Use 0 for the first page.
+     * @return at most limit of the accounts the account follows, in account_id order
+     */
+    List<Integer> getFollowing(int account_id, int after_id, int limit);
+
+    /**
+     * @return every account with more than this many followers, in account_id order
+     */
+    List<Integer> getAccountsFollowedByMoreThan(int followers);
+
+    /**
+     * Hands every follow to the consumer, by follower_id then followee_id, in constant memory
+     *
+     * @throws UncheckedIOException if the rows cannot all be read. Some may have been handed over already.
+     */
+    void forEachFollow(Consumer<Follow> consumer);
+
+    /**
+     * Writes follows as they were exported. Follows already there are kept. The follows are saved all together
+     * or not at all.
+     *
+     * @return true if the follows were saved; false if one of them names an account that does not exist, or
+     *  an account following itself, or they could not be saved
+     */
+    boolean importFollows(List<Follow> follows);
+
+    /**
+     * @param newAccount Details for an account about to be registered
+     * @return true if the username is 1 to 255 characters long, the most the account table holds, and the
+     *  password is at least 4 characters long
+     */
+    static boolean isValidNewAccount(Account newAccount){
+        String username = newAccount.getUsername();
+        String password = newAccount.getPassword();
+        return username != null && username.length() > 0 && username.length() <= 255
+                && password != null && password.length() >= 4;
+    }
+}
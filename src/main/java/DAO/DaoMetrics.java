@@ -0,0 +1,39 @@
+package DAO;
+
+// Our custom classes imported
+import Util.LatencyHistogram;
+import Util.Metrics;
+
+/**
+ * Timing and failure counts for one DAO method, under socialmedia_dao_call_duration_seconds and
+ * socialmedia_dao_errors_total. Each DAO keeps one per method in a static field, so recording costs a
+ * System.nanoTime() and an atomic increment.
+ */
+class DaoMetrics {
+    private final LatencyHistogram latency;
+    private final Metrics.Counter errors;
+
+    DaoMetrics(String dao, String method){
+        latency = Metrics.timer("socialmedia_dao_call_duration_seconds", "Time spent in DAO methods, including the queries they run",
+            "dao", dao, "method", method);
+        errors = Metrics.counter("socialmedia_dao_errors_total", "Failed queries and log writes caught by DAO methods",
+            "dao", dao, "method", method);
+    }
+
+    /**
+     * Records the time since the call started
+     * 
+     * @param startNanos System.nanoTime() when the call started
+     */
+    void record(long startNanos){
+        latency.recordSince(startNanos);
+    }
+
+    /**
+     * Counts a failed query or log write, and prints its message as the DAOs always have
+     */
+    void failed(Exception e){
+        errors.increment();
+        System.out.println(e.getMessage());
+    }
+}
@@ -0,0 +1,634 @@
+package DAO;
+
+// Our custom classes imported
+import Model.Account;
+import Model.Follow;
+
+// Java libraries imported
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * The in-memory engine's accounts: an array indexed by account_id and a map by username, behind one read/write
+ * lock. Accounts are never deleted, so ids are handed out in order from one past the largest ever seen. Follows
+ * are kept under the same lock, as a sorted set of account_ids per account in each direction.
+ *
+ * Every change is appended to the storage log and applied under the write lock, then committed to the log once
+ * the lock is released (see StorageLog); a change the log refuses is never applied. Accounts handed out are
+ * copies; the stored ones are only replaced, never changed in place.
+ */
+class MemoryAccountStore implements AccountStore {
+
+    // Timing and error counts for each public method, served by GET /metrics
+    private static final DaoMetrics REGISTER_USER = new DaoMetrics("MemoryAccountStore", "registerUser");
+    private static final DaoMetrics GET_ACCOUNT_BY_USERNAME = new DaoMetrics("MemoryAccountStore", "getAccountByUsername");
+    private static final DaoMetrics REPLACE_STORED_PASSWORD = new DaoMetrics("MemoryAccountStore", "replaceStoredPassword");
+    private static final DaoMetrics FOR_EACH_ACCOUNT = new DaoMetrics("MemoryAccountStore", "forEachAccount");
+    private static final DaoMetrics IMPORT_ACCOUNTS = new DaoMetrics("MemoryAccountStore", "importAccounts");
+    private static final DaoMetrics FOLLOW = new DaoMetrics("MemoryAccountStore", "follow");
+    private static final DaoMetrics UNFOLLOW = new DaoMetrics("MemoryAccountStore", "unfollow");
+    private static final DaoMetrics IMPORT_FOLLOWS = new DaoMetrics("MemoryAccountStore", "importFollows");
+
+    /**
+     * Accounts gathered under the read lock at a time while streaming, as for messages
+     */
+    private static final int STREAM_CHUNK_SIZE = 500;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Account[] byId = new Account[1024];
+    private final Map<String, Account> byUsername = new HashMap<String, Account>();
+    private int nextId = 1;
+
+    // Follower to the accounts it follows, and followee to its followers. An account with neither has no entry.
+    private final Map<Integer, TreeSet<Integer>> following = new HashMap<Integer, TreeSet<Integer>>();
+    private final Map<Integer, TreeSet<Integer>> followers = new HashMap<Integer, TreeSet<Integer>>();
+    private int followCount;
+
+    /**
+     * Where changes are logged, or null to keep them in memory only
+     */
+    private StorageLog log;
+
+    /**
+     * @param log Where to append changes from now on, or null to keep them in memory only
+     */
+    void setLog(StorageLog log){
+        this.log = log;
+    }
+
+    /**
+     * @return true if an account has this account_id
+     */
+    boolean exists(int account_id){
+        lock.readLock().lock();
+        try{
+            return account_id > 0 && account_id < byId.length && byId[account_id] != null;
+        }
+        finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return every account, in account_id order. The accounts are the stored ones and must not be changed.
+     */
+    List<Account> getAllAccounts(){
+        lock.readLock().lock();
+        try{
+            List<Account> all = new ArrayList<Account>(byUsername.size());
+            for(Account account : byId){
+                if(account != null){
+                    all.add(account);
+                }
+            }
+            return all;
+        }
+        finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return every follow as follower_id, followee_id pairs, by follower_id then followee_id
+     */
+    int[] copyFollows(){
+        lock.readLock().lock();
+        try{
+            int[] pairs = new int[followCount * 2];
+            int at = 0;
+            for(int follower = 1; follower < nextId; follower++){
+                TreeSet<Integer> followees = following.get(follower);
+                if(followees != null){
+                    for(int followee : followees){
+                        pairs[at++] = follower;
+                        pairs[at++] = followee;
+                    }
+                }
+            }
+            return pairs;
+        }
+        finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Held by MemoryStorage while it starts a new log segment and copies the accounts for a snapshot
+     */
+    ReentrantReadWriteLock.ReadLock readLock(){
+        return lock.readLock();
+    }
+
+    /**
+     * Puts an account back as it was, when loading a snapshot, replaying the log or copying from H2. Nothing is
+     * logged, and the account is kept as it is, so it must not be shared.
+     */
+    void restore(Account account){
+        lock.writeLock().lock();
+        try{
+            store(account);
+        }
+        finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Puts back a password change when replaying the log. Nothing is logged.
+     */
+    void restorePassword(int account_id, String password){
+        lock.writeLock().lock();
+        try{
+            Account account = account_id < byId.length ? byId[account_id] : null;
+            if(account != null){
+                store(new Account(account_id, account.getUsername(), password));
+            }
+        }
+        finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Puts back a follow or unfollow when loading a snapshot, replaying the log or copying from H2. Nothing is
+     * logged.
+     */
+    void restoreFollow(int follower_id, int followee_id, boolean follows){
+        lock.writeLock().lock();
+        try{
+            if(follows){
+                addFollow(follower_id, followee_id);
+            }
+            else{
+                removeFollow(follower_id, followee_id);
+            }
+        }
+        finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Must be called holding the lock
+     */
+    private boolean isFollowing(int follower_id, int followee_id){
+        TreeSet<Integer> followees = following.get(follower_id);
+        return followees != null && followees.contains(followee_id);
+    }
+
+    /**
+     * Must be called holding the write lock
+     */
+    private void addFollow(int follower_id, int followee_id){
+        if(following.computeIfAbsent(follower_id, id -> new TreeSet<Integer>()).add(followee_id)){
+            followers.computeIfAbsent(followee_id, id -> new TreeSet<Integer>()).add(follower_id);
+            followCount++;
+        }
+    }
+
+    /**
+     * Must be called holding the write lock
+     */
+    private void removeFollow(int follower_id, int followee_id){
+        TreeSet<Integer> followees = following.get(follower_id);
+        if(followees == null || !followees.remove(followee_id)){
+            return;
+        }
+        if(followees.isEmpty()){
+            following.remove(follower_id);
+        }
+        TreeSet<Integer> followersOf = followers.get(followee_id);
+        followersOf.remove(follower_id);
+        if(followersOf.isEmpty()){
+            followers.remove(followee_id);
+        }
+        followCount--;
+    }
+
+    /**
+     * Must be called holding the lock
+     *
+     * @return true if an account can follow the other: both exist and they are not the same
+     */
+    private boolean canFollow(int follower_id, int followee_id){
+        return follower_id != followee_id && follower_id > 0 && follower_id < byId.length && byId[follower_id] != null
+            && followee_id > 0 && followee_id < byId.length && byId[followee_id] != null;
+    }
+
+    /**
+     * Must be called holding the write lock
+     */
+    private void store(Account account){
+        int id = account.getAccount_id();
+        if(id >= byId.length){
+            byId = Arrays.copyOf(byId, Math.max(id + 1, byId.length + (byId.length >> 1)));
+        }
+        // An imported account may replace one under another username
+        if(byId[id] != null && !byId[id].getUsername().equals(account.getUsername())){
+            byUsername.remove(byId[id].getUsername());
+        }
+        byId[id] = account;
+        byUsername.put(account.getUsername(), account);
+        nextId = Math.max(nextId, id + 1);
+    }
+
+    @Override
+    public Account registerUser(Account newAccount, String storedPassword){
+        long start = System.nanoTime();
+        try{
+            if(!AccountStore.isValidNewAccount(newAccount)){
+                return null;
+            }
+
+            Account stored;
+            long position = 0;
+            lock.writeLock().lock();
+            try{
+                if(byUsername.containsKey(newAccount.getUsername())){
+                    return null;
+                }
+                stored = new Account(nextId, newAccount.getUsername(), storedPassword);
+                if(log != null){
+                    position = log.appendAccount(stored);
+                }
+                store(stored);
+            }
+            finally{
+                lock.writeLock().unlock();
+            }
+            if(log != null){
+                log.commit(position);
+            }
+            newAccount.setAccount_id(stored.getAccount_id());
+            return newAccount;
+        }
+        catch(IOException e){
+            REGISTER_USER.failed(e);
+            return null;
+        }
+        finally{
+            REGISTER_USER.record(start);
+        }
+    }
+
+    @Override
+    public boolean isUsernameTaken(String username){
+        lock.readLock().lock();
+        try{
+            return byUsername.containsKey(username);
+        }
+        finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Account getAccountByUsername(String username){
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        try{
+            Account account = byUsername.get(username);
+            return account == null ? null
+                : new Account(account.getAccount_id(), account.getUsername(), account.getPassword());
+        }
+        finally{
+            lock.readLock().unlock();
+            GET_ACCOUNT_BY_USERNAME.record(start);
+        }
+    }
+
+    @Override
+    public boolean replaceStoredPassword(int account_id, String expectedPassword, String newPassword){
+        long start = System.nanoTime();
+        try{
+            long position = 0;
+            lock.writeLock().lock();
+            try{
+                Account account = account_id > 0 && account_id < byId.length ? byId[account_id] : null;
+                if(account == null || !account.getPassword().equals(expectedPassword)){
+                    return false;
+                }
+                if(log != null){
+                    position = log.appendPassword(account_id, newPassword);
+                }
+                store(new Account(account_id, account.getUsername(), newPassword));
+            }
+            finally{
+                lock.writeLock().unlock();
+            }
+            if(log != null){
+                log.commit(position);
+            }
+            return true;
+        }
+        catch(IOException e){
+            REPLACE_STORED_PASSWORD.failed(e);
+            return false;
+        }
+        finally{
+            REPLACE_STORED_PASSWORD.record(start);
+        }
+    }
+
+    @Override
+    public void forEachAccount(Consumer<Account> consumer){
+        long start = System.nanoTime();
+        try{
+            List<Account> chunk = new ArrayList<Account>();
+            int cursor = 1;
+            while(true){
+                lock.readLock().lock();
+                try{
+                    for(; cursor < nextId && chunk.size() < STREAM_CHUNK_SIZE; cursor++){
+                        Account account = byId[cursor];
+                        if(account != null){
+                            chunk.add(new Account(account.getAccount_id(), account.getUsername(), account.getPassword()));
+                        }
+                    }
+                }
+                finally{
+                    lock.readLock().unlock();
+                }
+
+                if(chunk.isEmpty()){
+                    return;
+                }
+                chunk.forEach(consumer);
+                chunk.clear();
+            }
+        }
+        finally{
+            FOR_EACH_ACCOUNT.record(start);
+        }
+    }
+
+    /**
+     * Every username is checked before anything is logged, so a clash leaves the store and the log untouched
+     */
+    @Override
+    public boolean importAccounts(List<Account> accounts){
+        long start = System.nanoTime();
+        try{
+            long position = 0;
+            lock.writeLock().lock();
+            try{
+                Map<String, Integer> imported = new HashMap<String, Integer>();
+                for(Account account : accounts){
+                    Account holder = byUsername.get(account.getUsername());
+                    Integer importedId = imported.put(account.getUsername(), account.getAccount_id());
+                    if((holder != null && holder.getAccount_id() != account.getAccount_id())
+                        || (importedId != null && importedId != account.getAccount_id())){
+                        return false;
+                    }
+                }
+                List<Account> stored = new ArrayList<Account>(accounts.size());
+                for(Account account : accounts){
+                    Account copy = new Account(account.getAccount_id(), account.getUsername(), account.getPassword());
+                    if(log != null){
+                        position = log.appendAccount(copy);
+                    }
+                    stored.add(copy);
+                }
+                for(Account copy : stored){
+                    store(copy);
+                }
+            }
+            finally{
+                lock.writeLock().unlock();
+            }
+            if(log != null && !accounts.isEmpty()){
+                log.commit(position);
+            }
+            return true;
+        }
+        catch(IOException e){
+            IMPORT_ACCOUNTS.failed(e);
+            return false;
+        }
+        finally{
+            IMPORT_ACCOUNTS.record(start);
+        }
+    }
+
+    @Override
+    public int getMaxAccountId(){
+        lock.readLock().lock();
+        try{
+            return nextId - 1;
+        }
+        finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean follow(int follower_id, int followee_id){
+        long start = System.nanoTime();
+        try{
+            long position = 0;
+            lock.writeLock().lock();
+            try{
+                if(!canFollow(follower_id, followee_id)){
+                    return false;
+                }
+                if(isFollowing(follower_id, followee_id)){
+                    return true;
+                }
+                if(log != null){
+                    position = log.appendFollow(follower_id, followee_id);
+                }
+                addFollow(follower_id, followee_id);
+            }
+            finally{
+                lock.writeLock().unlock();
+            }
+            if(log != null){
+                log.commit(position);
+            }
+            return true;
+        }
+        catch(IOException e){
+            FOLLOW.failed(e);
+            return false;
+        }
+        finally{
+            FOLLOW.record(start);
+        }
+    }
+
+    @Override
+    public boolean unfollow(int follower_id, int followee_id){
+        long start = System.nanoTime();
+        try{
+            long position = 0;
+            lock.writeLock().lock();
+            try{
+                if(!isFollowing(follower_id, followee_id)){
+                    return false;
+                }
+                if(log != null){
+                    position = log.appendUnfollow(follower_id, followee_id);
+                }
+                removeFollow(follower_id, followee_id);
+            }
+            finally{
+                lock.writeLock().unlock();
+            }
+            if(log != null){
+                log.commit(position);
+            }
+            return true;
+        }
+        catch(IOException e){
+            UNFOLLOW.failed(e);
+            return false;
+        }
+        finally{
+            UNFOLLOW.record(start);
+        }
+    }
+
+    @Override
+    public List<Integer> getFollowers(int account_id, int after_id, int limit){
+        return page(followers, account_id, after_id, limit);
+    }
+
+    @Override
+    public List<Integer> getFollowing(int account_id, int after_id, int limit){
+        return page(following, account_id, after_id, limit);
+    }
+
+    private List<Integer> page(Map<Integer, TreeSet<Integer>> follows, int account_id, int after_id, int limit){
+        lock.readLock().lock();
+        try{
+            List<Integer> ids = new ArrayList<Integer>();
+            TreeSet<Integer> all = follows.get(account_id);
+            if(all != null){
+                for(int id : all.tailSet(after_id, false)){
+                    if(ids.size() >= limit){
+                        break;
+                    }
+                    ids.add(id);
+                }
+            }
+            return ids;
+        }
+        finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Integer> getAccountsFollowedByMoreThan(int count){
+        lock.readLock().lock();
+        try{
+            List<Integer> ids = new ArrayList<Integer>();
+            for(Map.Entry<Integer, TreeSet<Integer>> entry : followers.entrySet()){
+                if(entry.getValue().size() > count){
+                    ids.add(entry.getKey());
+                }
+            }
+            ids.sort(null);
+            return ids;
+        }
+        finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Walks the followers in account_id order, a chunk at a time as for accounts. The position between chunks is
+     * the last follow handed out, so a follower with more followees than fit in one chunk carries on in the next.
+     */
+    @Override
+    public void forEachFollow(Consumer<Follow> consumer){
+        List<Follow> chunk = new ArrayList<Follow>();
+        int follower = 1;
+        int afterFollowee = 0;
+        while(true){
+            lock.readLock().lock();
+            try{
+                while(follower < nextId && chunk.size() < STREAM_CHUNK_SIZE){
+                    TreeSet<Integer> followees = following.get(follower);
+                    if(followees != null){
+                        for(int followee : followees.tailSet(afterFollowee, false)){
+                            if(chunk.size() == STREAM_CHUNK_SIZE){
+                                break;
+                            }
+                            chunk.add(new Follow(follower, followee));
+                            afterFollowee = followee;
+                        }
+                    }
+                    if(chunk.size() < STREAM_CHUNK_SIZE){
+                        // Every followee of this follower has been taken
+                        follower++;
+                        afterFollowee = 0;
+                    }
+                }
+            }
+            finally{
+                lock.readLock().unlock();
+            }
+
+            if(chunk.isEmpty()){
+                return;
+            }
+            chunk.forEach(consumer);
+            chunk.clear();
+        }
+    }
+
+    /**
+     * Every follow is checked before anything is logged, as for accounts
+     */
+    @Override
+    public boolean importFollows(List<Follow> follows){
+        long start = System.nanoTime();
+        try{
+            long position = 0;
+            boolean logged = false;
+            lock.writeLock().lock();
+            try{
+                for(Follow follow : follows){
+                    if(!canFollow(follow.getFollower_id(), follow.getFollowee_id())){
+                        return false;
+                    }
+                }
+                List<Follow> added = new ArrayList<Follow>();
+                for(Follow follow : follows){
+                    if(!isFollowing(follow.getFollower_id(), follow.getFollowee_id())){
+                        if(log != null){
+                            position = log.appendFollow(follow.getFollower_id(), follow.getFollowee_id());
+                            logged = true;
+                        }
+                        added.add(follow);
+                    }
+                }
+                for(Follow follow : added){
+                    addFollow(follow.getFollower_id(), follow.getFollowee_id());
+                }
+            }
+            finally{
+                lock.writeLock().unlock();
+            }
+            if(logged){
+                log.commit(position);
+            }
+            return true;
+        }
+        catch(IOException e){
+            IMPORT_FOLLOWS.failed(e);
+            return false;
+        }
+        finally{
+            IMPORT_FOLLOWS.record(start);
+        }
+    }
+}
@@ -0,0 +1,815 @@
+package DAO;
+
+// Our custom classes imported
+import Model.Message;
+import Model.MessageBatchResult;
+
+// Java libraries imported
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * The in-memory engine's messages, behind one read/write lock:
+ * <ul>
+ * <li>the message columns of the snapshot loaded at startup, read in place from the mapped file, with the row
+ * of each message_id still as it was in the snapshot;</li>
+ * <li>an array indexed by message_id of the messages written since, which with the columns serves lookups and
+ * the message_id ordered lists and pages;</li>
+ * <li>a timeline per account, indexed by account_id: the (time_posted_epoch, message_id) of each of its messages
+ * in sorted parallel arrays, so a user's page is a binary search and a walk back from the newest end.</li>
+ * </ul>
+ * Every change is appended to the storage log and applied under the write lock, then committed to the log once
+ * the lock is released (see StorageLog). Stored messages are never changed in place; an update replaces the
+ * object. So the messages handed out are shared, and must not be changed by the caller.
+ *
+ * A message still in the snapshot is made from its row only when it is handed out, so a warm start creates no
+ * object per message, and a bulk read such as an export makes each one just before the consumer sees it. Its row
+ * is dropped once it is updated or deleted, and the replacement, if any, goes in the array.
+ */
+class MemoryMessageStore implements MessageStore {
+
+    /**
+     * Messages gathered under the read lock at a time while streaming, so a long walk never holds it for long
+     * and the consumer is always called without it
+     */
+    private static final int STREAM_CHUNK_SIZE = 500;
+
+    // Timing and error counts for each public method, served by GET /metrics
+    private static final DaoMetrics GET_ALL_MESSAGES = new DaoMetrics("MemoryMessageStore", "getAllMessages");
+    private static final DaoMetrics GET_ALL_MESSAGES_FROM_USER = new DaoMetrics("MemoryMessageStore", "getAllMessagesFromUser");
+    private static final DaoMetrics FOR_EACH_MESSAGE = new DaoMetrics("MemoryMessageStore", "forEachMessage");
+    private static final DaoMetrics FOR_EACH_MESSAGE_FROM_USER = new DaoMetrics("MemoryMessageStore", "forEachMessageFromUser");
+    private static final DaoMetrics GET_MESSAGES_FROM_USER_BEFORE = new DaoMetrics("MemoryMessageStore", "getMessagesFromUserBefore");
+    private static final DaoMetrics INSERT_MESSAGE = new DaoMetrics("MemoryMessageStore", "insertMessage");
+    private static final DaoMetrics INSERT_MESSAGES = new DaoMetrics("MemoryMessageStore", "insertMessages");
+    private static final DaoMetrics IMPORT_MESSAGES = new DaoMetrics("MemoryMessageStore", "importMessages");
+    private static final DaoMetrics GET_MESSAGE_BY_ID = new DaoMetrics("MemoryMessageStore", "getMessageByID");
+    private static final DaoMetrics UPDATE_MESSAGE_TEXT = new DaoMetrics("MemoryMessageStore", "updateMessageText");
+    private static final DaoMetrics DELETE_MESSAGE_BY_ID = new DaoMetrics("MemoryMessageStore", "deleteMessageByID");
+
+    private final MemoryAccountStore accounts;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Message[] byId = new Message[1024];
+
+    /**
+     * The messages of the snapshot loaded at startup, or null if none was
+     */
+    private MessageColumns snapshot;
+
+    /**
+     * The row in snapshot of each message_id, plus one, or 0 if the snapshot does not hold it or it has changed
+     */
+    private int[] snapshotRows = new int[0];
+    private Timeline[] timelines = new Timeline[1024];
+    private int size;
+
+    /**
+     * One past the largest message_id ever stored, deleted or not, so ids are never reused
+     */
+    private int nextId = 1;
+
+    /**
+     * Where changes are logged, or null to keep them in memory only
+     */
+    private StorageLog log;
+
+    /**
+     * @param accounts The accounts posted_by is checked against
+     */
+    MemoryMessageStore(MemoryAccountStore accounts){
+        this.accounts = accounts;
+    }
+
+    /**
+     * @param log Where to append changes from now on, or null to keep them in memory only
+     */
+    void setLog(StorageLog log){
+        this.log = log;
+    }
+
+    /**
+     * Held by MemoryStorage while it starts a new log segment and copies the messages for a snapshot
+     */
+    ReentrantReadWriteLock.ReadLock readLock(){
+        return lock.readLock();
+    }
+
+    /**
+     * Puts a message back as it was, when loading a snapshot, replaying the log or copying from H2. Nothing is
+     * logged, and the message is kept as it is, so it must not be shared.
+     */
+    void restore(Message message){
+        lock.writeLock().lock();
+        try{
+            store(message);
+        }
+        finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Puts back every message of a snapshot under one hold of the lock, keeping the columns rather than copying
+     * them out, so only the timelines are built. Nothing is logged. It is called once, on the empty store, before
+     * the log is replayed.
+     */
+    void restoreAll(MessageColumns columns){
+        lock.writeLock().lock();
+        try{
+            int rows = columns.size();
+            snapshot = columns;
+            snapshotRows = new int[rows > 0 ? columns.getMessageId(rows - 1) + 1 : 0];
+            for(int row = 0; row < rows; row++){
+                int id = columns.getMessageId(row);
+                snapshotRows[id] = row + 1;
+                size++;
+                nextId = Math.max(nextId, id + 1);
+                addToTimeline(columns.getPostedBy(row), columns.getTimePosted(row), id);
+            }
+        }
+        finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Puts back a text update when replaying the log. Nothing is logged.
+     */
+    void restoreText(int message_id, String text){
+        lock.writeLock().lock();
+        try{
+            Message message = find(message_id);
+            if(message != null){
+                replace(new Message(message_id, message.getPosted_by(), text, message.getTime_posted_epoch()));
+            }
+        }
+        finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Puts back a delete when replaying the log. Nothing is logged.
+     */
+    void restoreDelete(int message_id){
+        lock.writeLock().lock();
+        try{
+            remove(message_id);
+        }
+        finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Must be called holding the lock
+     */
+    private Message find(int message_id){
+        if(message_id <= 0){
+            return null;
+        }
+        if(message_id < byId.length && byId[message_id] != null){
+            return byId[message_id];
+        }
+        int row = message_id < snapshotRows.length ? snapshotRows[message_id] - 1 : -1;
+        return row >= 0 ? snapshot.getMessage(row) : null;
+    }
+
+    /**
+     * Must be called holding the write lock
+     */
+    private void store(Message message){
+        int id = message.getMessage_id();
+        remove(id);
+        grow(id);
+        byId[id] = message;
+        size++;
+        nextId = Math.max(nextId, id + 1);
+        addToTimeline(message.getPosted_by(), message.getTime_posted_epoch(), id);
+    }
+
+    /**
+     * Puts a new version of a stored message in place of the old, keeping its message_id, posted_by and
+     * time_posted_epoch, so its timeline entry stands. Must be called holding the write lock.
+     */
+    private void replace(Message message){
+        int id = message.getMessage_id();
+        grow(id);
+        byId[id] = message;
+        if(id < snapshotRows.length){
+            snapshotRows[id] = 0;
+        }
+    }
+
+    /**
+     * Makes room in byId for message_id. Must be called holding the write lock.
+     */
+    private void grow(int message_id){
+        if(message_id >= byId.length){
+            byId = Arrays.copyOf(byId, Math.max(message_id + 1, byId.length + (byId.length >> 1)));
+        }
+    }
+
+    /**
+     * Must be called holding the write lock
+     */
+    private void addToTimeline(int account_id, long time_posted_epoch, int message_id){
+        if(account_id >= timelines.length){
+            timelines = Arrays.copyOf(timelines, Math.max(account_id + 1, timelines.length + (timelines.length >> 1)));
+        }
+        if(timelines[account_id] == null){
+            timelines[account_id] = new Timeline();
+        }
+        timelines[account_id].add(time_posted_epoch, message_id);
+    }
+
+    /**
+     * Must be called holding the write lock
+     *
+     * @return the message removed, or null if there was none
+     */
+    private Message remove(int message_id){
+        Message message = find(message_id);
+        if(message != null){
+            if(message_id < byId.length){
+                byId[message_id] = null;
+            }
+            if(message_id < snapshotRows.length){
+                snapshotRows[message_id] = 0;
+            }
+            size--;
+            timelines[message.getPosted_by()].remove(message.getTime_posted_epoch(), message_id);
+        }
+        return message;
+    }
+
+    /**
+     * Must be called holding the lock
+     */
+    private Timeline timeline(int account_id){
+        return account_id >= 0 && account_id < timelines.length ? timelines[account_id] : null;
+    }
+
+    @Override
+    public List<Message> getAllMessages(){
+        long start = System.nanoTime();
+        try{
+            return copyAll();
+        }
+        finally{
+            GET_ALL_MESSAGES.record(start);
+        }
+    }
+
+    /**
+     * @return every message, in message_id order, without counting towards the metrics
+     */
+    List<Message> copyAll(){
+        lock.readLock().lock();
+        try{
+            List<Message> messages = new ArrayList<Message>(size);
+            for(int id = 1; id < nextId; id++){
+                Message message = find(id);
+                if(message != null){
+                    messages.add(message);
+                }
+            }
+            return messages;
+        }
+        finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copies what a snapshot needs: the numbers of the rows still live in the columns the store was loaded from,
+     * and references to the messages written since. Nothing is decoded, so MemoryStorage holds writes off only
+     * for as long as it takes to walk the two arrays.
+     */
+    SnapshotCopy copyForSnapshot(){
+        lock.readLock().lock();
+        try{
+            int[] rows = new int[Math.min(size, snapshotRows.length)];
+            int liveRows = 0;
+            for(int row : snapshotRows){
+                if(row > 0){
+                    rows[liveRows++] = row - 1;
+                }
+            }
+            List<Message> written = new ArrayList<Message>(size - liveRows);
+            for(int id = 1; id < Math.min(nextId, byId.length); id++){
+                if(byId[id] != null){
+                    written.add(byId[id]);
+                }
+            }
+            return new SnapshotCopy(snapshot, Arrays.copyOf(rows, liveRows), written);
+        }
+        finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return how many messages there are
+     */
+    int size(){
+        lock.readLock().lock();
+        try{
+            return size;
+        }
+        finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> getAllMessagesFromUser(int account_id){
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        try{
+            Timeline timeline = timeline(account_id);
+            if(timeline == null){
+                return new ArrayList<Message>();
+            }
+            List<Message> messages = new ArrayList<Message>(timeline.size);
+            for(int i = timeline.size - 1; i >= 0; i--){
+                messages.add(find(timeline.ids[i]));
+            }
+            return messages;
+        }
+        finally{
+            lock.readLock().unlock();
+            GET_ALL_MESSAGES_FROM_USER.record(start);
+        }
+    }
+
+    @Override
+    public List<Message> getMessagesPage(int after_id, int limit){
+        List<Message> messages = new ArrayList<Message>();
+        forEachMessage(after_id, limit, messages::add);
+        return messages;
+    }
+
+    @Override
+    public List<Message> getMessagesFromUserPage(int account_id, int after_id, int limit){
+        List<Message> messages = new ArrayList<Message>();
+        forEachMessageFromUser(account_id, after_id, limit, messages::add);
+        return messages;
+    }
+
+    /**
+     * A binary search for the position in the account's timeline, then a walk back from it under one read lock
+     */
+    @Override
+    public List<Message> getMessagesFromUserBefore(int account_id, long time_posted_epoch, int message_id, int limit){
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        try{
+            List<Message> messages = new ArrayList<Message>();
+            Timeline timeline = timeline(account_id);
+            if(timeline != null){
+                for(int i = timeline.lowerBound(time_posted_epoch, message_id) - 1; i >= 0 && messages.size() < limit; i--){
+                    messages.add(find(timeline.ids[i]));
+                }
+            }
+            return messages;
+        }
+        finally{
+            lock.readLock().unlock();
+            GET_MESSAGES_FROM_USER_BEFORE.record(start);
+        }
+    }
+
+    /**
+     * Walks the message_id array from after_id, a chunk at a time. A message written while the walk is under way
+     * is seen if it lands past the chunk being handed out, as with H2's lazy result sets.
+     */
+    @Override
+    public void forEachMessage(int after_id, int limit, Consumer<Message> consumer){
+        long start = System.nanoTime();
+        try{
+            List<Message> chunk = new ArrayList<Message>();
+            int cursor = Math.max(after_id, 0) + 1;
+            while(limit > 0){
+                lock.readLock().lock();
+                try{
+                    int end = nextId;
+                    for(; cursor < end && chunk.size() < Math.min(limit, STREAM_CHUNK_SIZE); cursor++){
+                        Message message = find(cursor);
+                        if(message != null){
+                            chunk.add(message);
+                        }
+                    }
+                }
+                finally{
+                    lock.readLock().unlock();
+                }
+
+                if(chunk.isEmpty()){
+                    return;
+                }
+                chunk.forEach(consumer);
+                limit -= chunk.size();
+                chunk.clear();
+            }
+        }
+        finally{
+            FOR_EACH_MESSAGE.record(start);
+        }
+    }
+
+    /**
+     * Walks the account's timeline back from the newest end, or from after_id, a chunk at a time. Between chunks
+     * the position is kept as the (time_posted_epoch, message_id) last handed out and found again by binary
+     * search, so writes to the timeline in between do not throw it off.
+     */
+    @Override
+    public void forEachMessageFromUser(int account_id, int after_id, int limit, Consumer<Message> consumer){
+        long start = System.nanoTime();
+        try{
+            List<Message> chunk = new ArrayList<Message>();
+            long cursorTime = Long.MAX_VALUE;
+            int cursorId = Integer.MAX_VALUE;
+            if(after_id != 0){
+                lock.readLock().lock();
+                try{
+                    Message cursor = find(after_id);
+                    if(cursor == null || cursor.getPosted_by() != account_id){
+                        // The cursor is not one of this user's messages, so there is nothing after it
+                        return;
+                    }
+                    cursorTime = cursor.getTime_posted_epoch();
+                    cursorId = after_id;
+                }
+                finally{
+                    lock.readLock().unlock();
+                }
+            }
+
+            while(limit > 0){
+                lock.readLock().lock();
+                try{
+                    Timeline timeline = timeline(account_id);
+                    if(timeline != null){
+                        for(int i = timeline.lowerBound(cursorTime, cursorId) - 1;
+                            i >= 0 && chunk.size() < Math.min(limit, STREAM_CHUNK_SIZE); i--){
+                            chunk.add(find(timeline.ids[i]));
+                        }
+                    }
+                }
+                finally{
+                    lock.readLock().unlock();
+                }
+
+                if(chunk.isEmpty()){
+                    return;
+                }
+                Message last = chunk.get(chunk.size() - 1);
+                cursorTime = last.getTime_posted_epoch();
+                cursorId = last.getMessage_id();
+                chunk.forEach(consumer);
+                limit -= chunk.size();
+                chunk.clear();
+            }
+        }
+        finally{
+            FOR_EACH_MESSAGE_FROM_USER.record(start);
+        }
+    }
+
+    @Override
+    public Message insertMessage(Message message){
+        long start = System.nanoTime();
+        try{
+            if(MessageStore.checkMessageText(message.getMessage_text()) != null
+                || !isKnownAccount(message.getPosted_by())){
+                return null;
+            }
+
+            Message stored;
+            long position = 0;
+            lock.writeLock().lock();
+            try{
+                stored = new Message(nextId, message.getPosted_by(), message.getMessage_text(),
+                    message.getTime_posted_epoch());
+                if(log != null){
+                    position = log.appendMessage(stored);
+                }
+                store(stored);
+            }
+            finally{
+                lock.writeLock().unlock();
+            }
+            if(log != null){
+                log.commit(position);
+            }
+            message.setMessage_id(stored.getMessage_id());
+            return message;
+        }
+        catch(IOException e){
+            INSERT_MESSAGE.failed(e);
+            return null;
+        }
+        finally{
+            INSERT_MESSAGE.record(start);
+        }
+    }
+
+    /**
+     * Checks each message as insertMessage does, then logs and applies the valid ones under one hold of the write
+     * lock, and commits them with one commit. If the log refuses them, none are applied.
+     */
+    @Override
+    public List<MessageBatchResult> insertMessages(List<Message> messages){
+        long start = System.nanoTime();
+        MessageBatchResult[] results = new MessageBatchResult[messages.size()];
+        try{
+            for(int i = 0; i < results.length; i++){
+                Message message = messages.get(i);
+                String error = message == null ? "message is missing"
+                    : MessageStore.checkMessageText(message.getMessage_text());
+                if(error == null && !isKnownAccount(message.getPosted_by())){
+                    error = "posted_by does not match an existing account";
+                }
+                if(error != null){
+                    results[i] = MessageBatchResult.failed(i, error);
+                }
+            }
+
+            List<Message> stored = new ArrayList<Message>();
+            long position = 0;
+            lock.writeLock().lock();
+            try{
+                int id = nextId;
+                for(int i = 0; i < results.length; i++){
+                    if(results[i] == null){
+                        Message message = messages.get(i);
+                        Message copy = new Message(id++, message.getPosted_by(), message.getMessage_text(),
+                            message.getTime_posted_epoch());
+                        if(log != null){
+                            position = log.appendMessage(copy);
+                        }
+                        stored.add(copy);
+                    }
+                }
+                for(Message copy : stored){
+                    store(copy);
+                }
+            }
+            finally{
+                lock.writeLock().unlock();
+            }
+            if(log != null && !stored.isEmpty()){
+                log.commit(position);
+            }
+
+            int next = 0;
+            for(int i = 0; i < results.length; i++){
+                if(results[i] == null){
+                    messages.get(i).setMessage_id(stored.get(next++).getMessage_id());
+                    results[i] = MessageBatchResult.created(i, messages.get(i));
+                }
+            }
+            return Arrays.asList(results);
+        }
+        catch(IOException e){
+            INSERT_MESSAGES.failed(e);
+            for(int i = 0; i < results.length; i++){
+                if(results[i] == null){
+                    results[i] = MessageBatchResult.failed(i, "message could not be saved");
+                }
+            }
+            return Arrays.asList(results);
+        }
+        finally{
+            INSERT_MESSAGES.record(start);
+        }
+    }
+
+    /**
+     * Every posted_by is checked before anything is logged, as the foreign key does for MessageDAO
+     */
+    @Override
+    public boolean importMessages(List<Message> messages){
+        long start = System.nanoTime();
+        try{
+            for(Message message : messages){
+                if(!isKnownAccount(message.getPosted_by())){
+                    return false;
+                }
+            }
+
+            List<Message> stored = new ArrayList<Message>(messages.size());
+            long position = 0;
+            lock.writeLock().lock();
+            try{
+                for(Message message : messages){
+                    Message copy = new Message(message.getMessage_id(), message.getPosted_by(), message.getMessage_text(),
+                        message.getTime_posted_epoch());
+                    if(log != null){
+                        position = log.appendMessage(copy);
+                    }
+                    stored.add(copy);
+                }
+                for(Message copy : stored){
+                    store(copy);
+                }
+            }
+            finally{
+                lock.writeLock().unlock();
+            }
+            if(log != null && !stored.isEmpty()){
+                log.commit(position);
+            }
+            return true;
+        }
+        catch(IOException e){
+            IMPORT_MESSAGES.failed(e);
+            return false;
+        }
+        finally{
+            IMPORT_MESSAGES.record(start);
+        }
+    }
+
+    @Override
+    public int getMaxMessageId(){
+        lock.readLock().lock();
+        try{
+            return nextId - 1;
+        }
+        finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isKnownAccount(int account_id){
+        return accounts.exists(account_id);
+    }
+
+    @Override
+    public Message getMessageByID(int message_id){
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        try{
+            return find(message_id);
+        }
+        finally{
+            lock.readLock().unlock();
+            GET_MESSAGE_BY_ID.record(start);
+        }
+    }
+
+    @Override
+    public Message updateMessageText(int message_id, String newMessage){
+        long start = System.nanoTime();
+        try{
+            if(MessageStore.checkMessageText(newMessage) != null){
+                return null;
+            }
+
+            Message updated;
+            long position = 0;
+            lock.writeLock().lock();
+            try{
+                Message message = find(message_id);
+                if(message == null){
+                    return null;
+                }
+                if(log != null){
+                    position = log.appendMessageText(message_id, newMessage);
+                }
+                updated = new Message(message_id, message.getPosted_by(), newMessage, message.getTime_posted_epoch());
+                replace(updated);
+            }
+            finally{
+                lock.writeLock().unlock();
+            }
+            if(log != null){
+                log.commit(position);
+            }
+            return updated;
+        }
+        catch(IOException e){
+            UPDATE_MESSAGE_TEXT.failed(e);
+            return null;
+        }
+        finally{
+            UPDATE_MESSAGE_TEXT.record(start);
+        }
+    }
+
+    @Override
+    public Message deleteMessageByID(int message_id){
+        long start = System.nanoTime();
+        try{
+            Message deleted;
+            long position = 0;
+            lock.writeLock().lock();
+            try{
+                if(find(message_id) == null){
+                    return null;
+                }
+                if(log != null){
+                    position = log.appendMessageDelete(message_id);
+                }
+                deleted = remove(message_id);
+            }
+            finally{
+                lock.writeLock().unlock();
+            }
+            if(log != null){
+                log.commit(position);
+            }
+            return deleted;
+        }
+        catch(IOException e){
+            DELETE_MESSAGE_BY_ID.failed(e);
+            return null;
+        }
+        finally{
+            DELETE_MESSAGE_BY_ID.record(start);
+        }
+    }
+
+    /**
+     * The messages as they stood when a snapshot was taken: rows of the columns the store was loaded from, in row
+     * order, and the messages written since, in message_id order. Their ids never overlap, and rows are in
+     * message_id order too, so MessageColumns.write merges the two.
+     */
+    static class SnapshotCopy {
+        /**
+         * The columns the rows are in, or null if there are none
+         */
+        final MessageColumns columns;
+        final int[] rows;
+        final List<Message> written;
+
+        SnapshotCopy(MessageColumns columns, int[] rows, List<Message> written){
+            this.columns = columns;
+            this.rows = rows;
+            this.written = written;
+        }
+
+        int size(){
+            return rows.length + written.size();
+        }
+    }
+
+    /**
+     * One account's messages as (time_posted_epoch, message_id) pairs in parallel arrays, oldest first. New
+     * messages almost always belong at the end, so adding is an append; a message posted with an older time is
+     * shifted into place.
+     */
+    private static class Timeline {
+        long[] times = new long[8];
+        int[] ids = new int[8];
+        int size;
+
+        /**
+         * @return the index of the first pair not less than (time, id), or size if there is none
+         */
+        int lowerBound(long time, int id){
+            int low = 0;
+            int high = size;
+            while(low < high){
+                int mid = (low + high) >>> 1;
+                if(times[mid] < time || (times[mid] == time && ids[mid] < id)){
+                    low = mid + 1;
+                }
+                else{
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        void add(long time, int id){
+            if(size == ids.length){
+                times = Arrays.copyOf(times, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            int at = size == 0 || times[size - 1] < time || (times[size - 1] == time && ids[size - 1] < id)
+                ? size : lowerBound(time, id);
+            System.arraycopy(times, at, times, at + 1, size - at);
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            times[at] = time;
+            ids[at] = id;
+            size++;
+        }
+
+        void remove(long time, int id){
+            int at = lowerBound(time, id);
+            if(at < size && ids[at] == id){
+                System.arraycopy(times, at + 1, times, at, size - at - 1);
+                System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+                size--;
+            }
+        }
+    }
+}
@@ -0,0 +1,424 @@
+package DAO;
+
+// Our custom classes imported
+import Model.Account;
+import Model.Message;
+import Util.ConfigUtil;
+import Util.ConnectionUtil;
+
+// Java libraries imported
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * The in-memory engine: MemoryAccountStore and MemoryMessageStore, sharing one StorageLog.
+ *
+ * On disk it is the current log segment at the log path, the snapshot at path.snapshot.generation, and any
+ * older segments at path.generation that the snapshot does not yet cover. Starting up loads the newest snapshot
+ * and replays the segments after it, oldest first, and prints how long that took for how much log. With
+ * neither, the H2 tables are copied in and written out as the first snapshot.
+ *
+ * A snapshot is taken every snapshot.intervalMillis once the current segment has grown past
+ * snapshot.minLogBytes, and when the server stops. Taking one holds both stores' read locks, so writes pause,
+ * only while the log moves on to a new segment and the live accounts are copied into a list of references (the
+ * stored objects are never changed in place). The messages are copied the same way, except those still in the
+ * loaded snapshot, of which only the row numbers are taken. The new snapshot is then written from those copies
+ * without any lock, the old rows' bytes copied straight across, and once it is safely on the disk the segments
+ * it covers are deleted.
+ *
+ * The message store keeps the snapshot it was loaded from mapped until the server stops, so every snapshot is
+ * written under its own name rather than over the one before, which Windows refuses while it is mapped. Older
+ * snapshots are deleted once a newer one is on the disk. Where the mapped one cannot be deleted yet, the next
+ * start deletes it.
+ */
+class MemoryStorage implements StorageEngine {
+
+    /**
+     * Settings for the engine. Defaults are read from ConfigUtil under socialmedia.storage.memory.*
+     */
+    static class Settings {
+        /**
+         * If false nothing is written to disk: every start copies the H2 tables afresh.
+         */
+        boolean logEnabled = true;
+        /**
+         * The current log segment. The snapshot and older segments are kept beside it.
+         */
+        String logPath = "./h2/memory.log";
+        /**
+         * How hard each change is pushed to the disk before it is acknowledged, see StorageLog
+         */
+        StorageLog.Fsync fsync = StorageLog.Fsync.INTERVAL;
+        /**
+         * How often the log is forced to the disk under the INTERVAL policy
+         */
+        long fsyncIntervalMillis = 1_000;
+        /**
+         * How often to check whether a snapshot is due. 0 disables periodic snapshots.
+         */
+        long snapshotIntervalMillis = 60_000;
+        /**
+         * How long the current log segment must be before a periodic snapshot replaces it
+         */
+        long snapshotMinLogBytes = 16L << 20;
+        /**
+         * If true, a snapshot is taken when the server stops, so the next start has no log to replay
+         */
+        boolean snapshotOnClose = true;
+
+        static Settings fromConfig(){
+            Settings settings = new Settings();
+            settings.logEnabled = ConfigUtil.getBoolean("socialmedia.storage.memory.log.enabled", settings.logEnabled);
+            settings.logPath = ConfigUtil.getString("socialmedia.storage.memory.log.path", settings.logPath);
+            settings.fsync = StorageLog.Fsync.valueOf(ConfigUtil.getString("socialmedia.storage.memory.log.fsync",
+                settings.fsync.name()).toUpperCase());
+            settings.fsyncIntervalMillis = ConfigUtil.getLong("socialmedia.storage.memory.log.fsyncIntervalMillis",
+                settings.fsyncIntervalMillis);
+            settings.snapshotIntervalMillis = ConfigUtil.getLong("socialmedia.storage.memory.snapshot.intervalMillis",
+                settings.snapshotIntervalMillis);
+            settings.snapshotMinLogBytes = ConfigUtil.getLong("socialmedia.storage.memory.snapshot.minLogBytes",
+                settings.snapshotMinLogBytes);
+            settings.snapshotOnClose = ConfigUtil.getBoolean("socialmedia.storage.memory.snapshot.onClose",
+                settings.snapshotOnClose);
+            return settings;
+        }
+    }
+
+    private final MemoryAccountStore accounts = new MemoryAccountStore();
+    private final MemoryMessageStore messages = new MemoryMessageStore(accounts);
+    private final Settings settings;
+    private Path logPath;
+    private StorageLog log;
+
+    /**
+     * Runs the INTERVAL fsync and the periodic snapshot, or null if the log is disabled
+     */
+    private ScheduledExecutorService background;
+
+    private MemoryStorage(Settings settings){
+        this.settings = settings;
+    }
+
+    /**
+     * @throws UncheckedIOException if the snapshot or log cannot be read, since starting without them would lose
+     *  data
+     */
+    static MemoryStorage fromConfig(){
+        MemoryStorage storage = new MemoryStorage(Settings.fromConfig());
+        try{
+            if(!storage.settings.logEnabled){
+                storage.loadFromDatabase();
+                return storage;
+            }
+            storage.recover();
+        }
+        catch(IOException e){
+            throw new UncheckedIOException("Could not start the memory engine from "
+                + (storage.logPath == null ? "the database" : "the storage log " + storage.logPath), e);
+        }
+        storage.startBackgroundJobs();
+        return storage;
+    }
+
+    /**
+     * Loads the snapshot, if any, replays the log segments after it and opens the current one for appending
+     */
+    private void recover() throws IOException{
+        long start = System.nanoTime();
+        logPath = Paths.get(settings.logPath);
+
+        long snapshotGeneration = 0;
+        long snapshotBytes = 0;
+        TreeMap<Long, Path> snapshots = snapshots();
+        if(!snapshots.isEmpty()){
+            Path snapshot = snapshots.lastEntry().getValue();
+            snapshotGeneration = StorageSnapshot.read(snapshot, accounts, messages);
+            snapshotBytes = Files.size(snapshot);
+            // Left by a crash, or still mapped when the last snapshot was written
+            deleteSnapshotsBefore(snapshots.lastKey());
+        }
+        deletePartialSnapshots();
+
+        long logBytes = 0;
+        long records = 0;
+        TreeMap<Long, Path> segments = olderSegments();
+        for(Path segment : segments.values()){
+            StorageLog.Replay replay = StorageLog.replay(segment, snapshotGeneration, accounts, messages);
+            records += replay.records;
+            logBytes += replay.generation >= snapshotGeneration ? replay.validBytes : 0;
+        }
+        long newGeneration = Math.max(Math.max(snapshotGeneration, 1), segments.isEmpty() ? 0 : segments.lastKey() + 1);
+        StorageLog.Replay current = new StorageLog.Replay();
+        log = StorageLog.open(logPath, settings.fsync, snapshotGeneration, newGeneration, accounts, messages, current);
+        records += current.records;
+        logBytes += current.validBytes;
+        accounts.setLog(log);
+        messages.setLog(log);
+
+        if(snapshotGeneration == 0 && records == 0){
+            try{
+                loadFromDatabase();
+            }
+            catch(IOException e){
+                // Nothing was logged, so the next start copies the tables again rather than keeping a partial copy
+                log.close();
+                throw e;
+            }
+            // Later changes are logged against this copy, so it has to be on disk before any are made
+            if(!snapshot()){
+                throw new IOException("Could not write the first snapshot beside " + logPath);
+            }
+        }
+        else{
+            System.out.println("Recovered " + accounts.getAllAccounts().size() + " accounts and "
+                + messages.size() + " messages from a " + snapshotBytes + " byte snapshot and "
+                + records + " log records (" + logBytes + " bytes) in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        }
+    }
+
+    /**
+     * @return the log segments kept beside the current one, by generation
+     */
+    private TreeMap<Long, Path> olderSegments() throws IOException{
+        TreeMap<Long, Path> segments = new TreeMap<Long, Path>();
+        Path directory = logPath.toAbsolutePath().getParent();
+        if(!Files.isDirectory(directory)){
+            return segments;
+        }
+        String prefix = logPath.getFileName() + ".";
+        try(Stream<Path> files = Files.list(directory)){
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if(name.startsWith(prefix) && name.length() > prefix.length()
+                    && name.substring(prefix.length()).chars().allMatch(Character::isDigit)){
+                    segments.put(Long.parseLong(name.substring(prefix.length())), file);
+                }
+            });
+        }
+        return segments;
+    }
+
+    /**
+     * @return the snapshots kept beside the log, by generation. One written before snapshots were named by
+     *  generation, at path.snapshot, comes first.
+     */
+    private TreeMap<Long, Path> snapshots() throws IOException{
+        TreeMap<Long, Path> snapshots = new TreeMap<Long, Path>();
+        Path directory = logPath.toAbsolutePath().getParent();
+        if(!Files.isDirectory(directory)){
+            return snapshots;
+        }
+        String name = logPath.getFileName() + ".snapshot";
+        try(Stream<Path> files = Files.list(directory)){
+            files.forEach(file -> {
+                String fileName = file.getFileName().toString();
+                if(fileName.equals(name)){
+                    snapshots.put(-1L, file);
+                }
+                else if(fileName.startsWith(name + ".") && fileName.length() > name.length() + 1
+                    && fileName.substring(name.length() + 1).chars().allMatch(Character::isDigit)){
+                    snapshots.put(Long.parseLong(fileName.substring(name.length() + 1)), file);
+                }
+            });
+        }
+        return snapshots;
+    }
+
+    /**
+     * Deletes what a crash left of snapshots being written. Each is written under its own name, so none would
+     * ever be written over.
+     */
+    private void deletePartialSnapshots() throws IOException{
+        Path directory = logPath.toAbsolutePath().getParent();
+        if(!Files.isDirectory(directory)){
+            return;
+        }
+        String prefix = logPath.getFileName() + ".snapshot.";
+        try(Stream<Path> files = Files.list(directory)){
+            for(Path file : (Iterable<Path>) files::iterator){
+                String name = file.getFileName().toString();
+                if(name.startsWith(prefix) && name.endsWith(".tmp")){
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return where the snapshot covering the log segments before generation is written
+     */
+    private Path snapshotPath(long generation){
+        return logPath.resolveSibling(logPath.getFileName() + ".snapshot." + generation);
+    }
+
+    /**
+     * Deletes the snapshots older than generation. One that cannot be deleted, because the message store still
+     * has it mapped on a system that does not allow that, is left for the next start.
+     */
+    private void deleteSnapshotsBefore(long generation) throws IOException{
+        for(Path snapshot : snapshots().headMap(generation).values()){
+            try{
+                Files.delete(snapshot);
+            }
+            catch(IOException e){
+                System.out.println("Could not delete the old snapshot " + snapshot + " yet: " + e.getMessage());
+            }
+        }
+    }
+
+    private void startBackgroundJobs(){
+        AtomicInteger threadNumber = new AtomicInteger();
+        background = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "memory-storage-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        if(settings.fsync == StorageLog.Fsync.INTERVAL){
+            background.scheduleWithFixedDelay(() -> {
+                try{
+                    log.sync();
+                }
+                catch(IOException e){
+                    System.out.println(e.getMessage());
+                }
+            }, settings.fsyncIntervalMillis, settings.fsyncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        if(settings.snapshotIntervalMillis > 0){
+            background.scheduleWithFixedDelay(() -> {
+                if(log.getSegmentBytes() >= settings.snapshotMinLogBytes){
+                    snapshot();
+                }
+            }, settings.snapshotIntervalMillis, settings.snapshotIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the stores and deletes the log segments it covers. If it cannot be written, the
+     * segments are kept and the next snapshot covers them too.
+     *
+     * @return true if the snapshot was written
+     */
+    synchronized boolean snapshot(){
+        long start = System.nanoTime();
+        long generation;
+        List<Account> accountCopy;
+        int[] followCopy;
+        MemoryMessageStore.SnapshotCopy messageCopy;
+        // Messages first: a message write holds the messages lock while it checks the account
+        messages.readLock().lock();
+        accounts.readLock().lock();
+        try{
+            generation = log.rotate();
+            accountCopy = accounts.getAllAccounts();
+            followCopy = accounts.copyFollows();
+            messageCopy = messages.copyForSnapshot();
+        }
+        catch(IOException e){
+            System.out.println(e.getMessage());
+            return false;
+        }
+        finally{
+            accounts.readLock().unlock();
+            messages.readLock().unlock();
+        }
+
+        Path snapshotPath = snapshotPath(generation);
+        try{
+            long bytes = StorageSnapshot.write(snapshotPath, generation, accountCopy, followCopy, messageCopy);
+            deleteSnapshotsBefore(generation);
+            for(Path segment : olderSegments().headMap(generation).values()){
+                Files.delete(segment);
+            }
+            System.out.println("Wrote a " + bytes + " byte snapshot of " + accountCopy.size() + " accounts, "
+                + followCopy.length / 2 + " follows and " + messageCopy.size() + " messages in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            return true;
+        }
+        catch(IOException e){
+            System.out.println("Could not write the snapshot " + snapshotPath + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Copies every account, follow and message from the H2 tables, so switching engines starts from the same data
+     *
+     * @throws IOException if the tables could not be read in full, so no partial copy is kept
+     */
+    private void loadFromDatabase() throws IOException{
+        try(Connection connection = ConnectionUtil.getConnection();
+            Statement query = connection.createStatement()){
+            try(ResultSet rows = query.executeQuery("SELECT account_id, username, password FROM Account ORDER BY account_id")){
+                while(rows.next()){
+                    accounts.restore(new Account(rows.getInt(1), rows.getString(2), rows.getString(3)));
+                }
+            }
+            try(ResultSet rows = query.executeQuery("SELECT follower_id, followee_id FROM Follow")){
+                while(rows.next()){
+                    accounts.restoreFollow(rows.getInt(1), rows.getInt(2), true);
+                }
+            }
+            try(ResultSet rows = query.executeQuery(
+                "SELECT message_id, posted_by, message_text, time_posted_epoch FROM Message ORDER BY message_id")){
+                while(rows.next()){
+                    messages.restore(new Message(rows.getInt(1), rows.getInt(2), rows.getString(3), rows.getLong(4)));
+                }
+            }
+        }
+        catch(SQLException e){
+            throw new IOException("Could not copy the tables from the database", e);
+        }
+    }
+
+    @Override
+    public AccountStore getAccountStore(){
+        return accounts;
+    }
+
+    @Override
+    public MessageStore getMessageStore(){
+        return messages;
+    }
+
+    /**
+     * Stops the background jobs, takes a last snapshot if enabled and anything has been logged since the previous
+     * one, and closes the log
+     */
+    @Override
+    public void close(){
+        if(log == null){
+            return;
+        }
+        background.shutdown();
+        try{
+            background.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        if(settings.snapshotOnClose && log.getSegmentBytes() > StorageLog.HEADER_BYTES){
+            snapshot();
+        }
+        try{
+            log.close();
+        }
+        catch(IOException e){
+            System.out.println(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package DAO;
+
+// Our custom classes imported
+import Model.Message;
+
+// Java libraries imported
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * The messages of a snapshot, stored by column rather than by row, and read in place from a mapped file.
+ *
+ * The section is the time_posted_epoch column (a long per row), then the message_id, posted_by and text offset
+ * columns (an int per row, with one more offset to mark the end of the last text), then the heap of UTF-8
+ * message_texts the offsets point into. Rows are in message_id order. The longs come first so every column stays
+ * aligned to its width, as long as the section starts on an 8 byte boundary.
+ *
+ * Reading a field is an absolute get at row * width into its column: nothing is decoded or allocated until a
+ * message_text or a whole Message is asked for, and a scan of one column touches only that column's pages.
+ * Instances never change the position of the buffer, so they may be shared between threads.
+ */
+class MessageColumns {
+    /**
+     * The bytes before the first column: the row count (an int, padded to a long) and the size of the text heap
+     */
+    static final int HEADER_BYTES = 16;
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int times;
+    private final int ids;
+    private final int postedBy;
+    private final int offsets;
+    private final int heap;
+    private final int end;
+
+    /**
+     * @param buffer The mapped file, big-endian
+     * @param at Where the section starts in it
+     * @throws IOException if the section does not fit in the buffer, or its ids or text offsets are out of order
+     */
+    MessageColumns(ByteBuffer buffer, int at) throws IOException{
+        this.buffer = buffer;
+        if(at + HEADER_BYTES > buffer.limit()){
+            throw new IOException("Message columns at " + at + " run past the end of the snapshot");
+        }
+        size = buffer.getInt(at);
+        long heapBytes = buffer.getLong(at + 8);
+        times = at + HEADER_BYTES;
+        ids = times + 8 * size;
+        postedBy = ids + 4 * size;
+        offsets = postedBy + 4 * size;
+        heap = offsets + 4 * (size + 1);
+        long sectionEnd = (long) heap + heapBytes;
+        if(size < 0 || heapBytes < 0 || sectionEnd > buffer.limit()){
+            throw new IOException("Message columns at " + at + " run past the end of the snapshot");
+        }
+        end = (int) sectionEnd;
+
+        // Rows are read long after loading, so a damaged section is found here rather than while serving it
+        int lastId = 0;
+        for(int row = 0; row < size; row++){
+            int id = getMessageId(row);
+            int start = buffer.getInt(offsets + 4 * row);
+            if(id <= lastId || getPostedBy(row) < 0 || start < 0 || start > buffer.getInt(offsets + 4 * row + 4)){
+                throw new IOException("Message columns at " + at + " are damaged at row " + row);
+            }
+            lastId = id;
+        }
+        if(buffer.getInt(offsets + 4 * size) != heapBytes){
+            throw new IOException("Message columns at " + at + " do not end where their heap does");
+        }
+    }
+
+    /**
+     * Writes the messages as a column section. Rows carried over from the previous columns are copied across as
+     * they are, their text bytes included, so they are never decoded into Messages.
+     *
+     * @return the number of bytes written
+     */
+    static long write(DataOutputStream out, MemoryMessageStore.SnapshotCopy messages) throws IOException{
+        MessageColumns previous = messages.columns;
+        int[] rows = messages.rows;
+        List<Message> written = messages.written;
+
+        // Merges the two by message_id: a row of previous as itself, a written message as -1 - its index
+        int[] order = new int[messages.size()];
+        byte[][] texts = new byte[written.size()][];
+        long heapBytes = 0;
+        for(int at = 0, row = 0, index = 0; at < order.length; at++){
+            if(index == written.size()
+                || (row < rows.length && previous.getMessageId(rows[row]) < written.get(index).getMessage_id())){
+                order[at] = rows[row];
+                heapBytes += previous.getTextLength(rows[row]);
+                row++;
+            }
+            else{
+                texts[index] = written.get(index).getMessage_text().getBytes(StandardCharsets.UTF_8);
+                heapBytes += texts[index].length;
+                order[at] = -1 - index;
+                index++;
+            }
+        }
+
+        out.writeInt(order.length);
+        out.writeInt(0);
+        out.writeLong(heapBytes);
+        for(int at : order){
+            out.writeLong(at >= 0 ? previous.getTimePosted(at) : written.get(-1 - at).getTime_posted_epoch());
+        }
+        for(int at : order){
+            out.writeInt(at >= 0 ? previous.getMessageId(at) : written.get(-1 - at).getMessage_id());
+        }
+        for(int at : order){
+            out.writeInt(at >= 0 ? previous.getPostedBy(at) : written.get(-1 - at).getPosted_by());
+        }
+        int offset = 0;
+        for(int at : order){
+            out.writeInt(offset);
+            offset += at >= 0 ? previous.getTextLength(at) : texts[-1 - at].length;
+        }
+        out.writeInt(offset);
+        byte[] scratch = new byte[8192];
+        for(int at : order){
+            if(at >= 0){
+                previous.copyText(at, out, scratch);
+            }
+            else{
+                out.write(texts[-1 - at]);
+            }
+        }
+        return HEADER_BYTES + 20L * order.length + 4 + heapBytes;
+    }
+
+    /**
+     * @return the number of rows
+     */
+    int size(){
+        return size;
+    }
+
+    /**
+     * @return where the section ends in the buffer
+     */
+    int end(){
+        return end;
+    }
+
+    int getMessageId(int row){
+        return buffer.getInt(ids + 4 * row);
+    }
+
+    int getPostedBy(int row){
+        return buffer.getInt(postedBy + 4 * row);
+    }
+
+    long getTimePosted(int row){
+        return buffer.getLong(times + 8 * row);
+    }
+
+    int getTextLength(int row){
+        return buffer.getInt(offsets + 4 * row + 4) - buffer.getInt(offsets + 4 * row);
+    }
+
+    /**
+     * Writes one message_text's bytes from the heap as they are, through scratch
+     */
+    void copyText(int row, DataOutputStream out, byte[] scratch) throws IOException{
+        ByteBuffer text = buffer.duplicate();
+        text.position(heap + buffer.getInt(offsets + 4 * row));
+        for(int remaining = getTextLength(row); remaining > 0; ){
+            int length = Math.min(remaining, scratch.length);
+            text.get(scratch, 0, length);
+            out.write(scratch, 0, length);
+            remaining -= length;
+        }
+    }
+
+    /**
+     * Decodes one message_text from the heap
+     */
+    String getMessageText(int row){
+        int start = buffer.getInt(offsets + 4 * row);
+        int length = buffer.getInt(offsets + 4 * row + 4) - start;
+        ByteBuffer text = buffer.duplicate();
+        text.position(heap + start);
+        byte[] bytes = new byte[length];
+        text.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the row as a new Message
+     */
+    Message getMessage(int row){
+        return new Message(getMessageId(row), getPostedBy(row), getMessageText(row), getTimePosted(row));
+    }
+}
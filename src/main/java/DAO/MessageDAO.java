@@ -2,18 +2,89 @@ package DAO;
 
 // Our custom classes imported
 import Util.ConnectionUtil;
+import Util.IdBitmap;
 import Model.Message;
+import Model.MessageBatchResult;
 
 // Java libraries imported
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
-public class MessageDAO {
+public class MessageDAO implements MessageStore {
+
+    /**
+     * Rows requested from the database at a time while streaming a result set
+     */
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    /**
+     * Index hint for per-user timeline queries. Left to itself H2 prefers the single column index behind the
+     * posted_by foreign key, which then has to sort every message the user has ever sent.
+     */
+    private static final String TIMELINE_INDEX = "USE INDEX (message_posted_by_time_idx)";
+
+    /**
+     * Newest first ordering for per-user timelines. posted_by is constant within a timeline, but H2 only reads
+     * message_posted_by_time_idx in index order (no sort) when the ORDER BY starts from the first indexed column.
+     */
+    private static final String TIMELINE_ORDER = "ORDER BY posted_by, time_posted_epoch DESC, message_id DESC";
+
+    /**
+     * A user's messages from a (time_posted_epoch, message_id) position in their timeline on, newest first. The
+     * parameters are posted_by, the time twice, the message_id and the limit.
+     */
+    private static final String TIMELINE_BEFORE_SQL = "SELECT * FROM Message " + TIMELINE_INDEX
+        + " WHERE posted_by = ? AND time_posted_epoch <= ? AND (time_posted_epoch < ? OR message_id < ?) "
+        + TIMELINE_ORDER + " LIMIT ?";
+
+    // Timing and error counts for each public method, served by GET /metrics
+    private static final DaoMetrics GET_ALL_MESSAGES = new DaoMetrics("MessageDAO", "getAllMessages");
+    private static final DaoMetrics GET_ALL_MESSAGES_FROM_USER = new DaoMetrics("MessageDAO", "getAllMessagesFromUser");
+    private static final DaoMetrics FOR_EACH_MESSAGE = new DaoMetrics("MessageDAO", "forEachMessage");
+    private static final DaoMetrics FOR_EACH_MESSAGE_FROM_USER = new DaoMetrics("MessageDAO", "forEachMessageFromUser");
+    private static final DaoMetrics GET_MESSAGES_FROM_USER_BEFORE = new DaoMetrics("MessageDAO", "getMessagesFromUserBefore");
+    private static final DaoMetrics INSERT_MESSAGE = new DaoMetrics("MessageDAO", "insertMessage");
+    private static final DaoMetrics INSERT_MESSAGES = new DaoMetrics("MessageDAO", "insertMessages");
+    private static final DaoMetrics IMPORT_MESSAGES = new DaoMetrics("MessageDAO", "importMessages");
+    private static final DaoMetrics GET_MAX_MESSAGE_ID = new DaoMetrics("MessageDAO", "getMaxMessageId");
+    private static final DaoMetrics GET_MESSAGE_BY_ID = new DaoMetrics("MessageDAO", "getMessageByID");
+    private static final DaoMetrics UPDATE_MESSAGE_TEXT = new DaoMetrics("MessageDAO", "updateMessageText");
+    private static final DaoMetrics DELETE_MESSAGE_BY_ID = new DaoMetrics("MessageDAO", "deleteMessageByID");
+    private static final DaoMetrics IS_KNOWN_ACCOUNT = new DaoMetrics("MessageDAO", "isKnownAccount");
+
+    private static final String INSERT_SQL =
+        "INSERT INTO Message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
+
+    /**
+     * The account_id of every account, for checking posted_by without a query, or null to leave it to the
+     * foreign key on Message.posted_by. An id it does not have is looked up in the Account table.
+     */
+    private final IdBitmap accountIds;
+
+    public MessageDAO(){
+        this(null);
+    }
+
+    /**
+     * @param accountIds The account_id of every account, kept up to date by AccountDAO, or null to check
+     *  posted_by in the database
+     */
+    public MessageDAO(IdBitmap accountIds){
+        this.accountIds = accountIds;
+    }
     
     /**
      * Attempts to get all messages present in the database
@@ -21,65 +92,214 @@ public class MessageDAO {
      * @return A List<Message> of every message present in the database. This list is empty if request fails
      */
     public List<Message> getAllMessages(){
-        List<Message> returnList = new ArrayList<Message>();
+        long start = System.nanoTime();
+        try{
+            List<Message> returnList = new ArrayList<Message>();
 
-        try(Connection connection = ConnectionUtil.getConnection())
-        {
             // Execute query
-            String sql = "SELECT * FROM Message;";
-            Statement query = connection.createStatement();
-            ResultSet messageRS = query.executeQuery(sql);
-
-            // Retrieve all messages from query and insert them into the list
-            while(messageRS.next()){
-                Message currMessage = new Message(messageRS.getInt("message_id"),
-                    messageRS.getInt("posted_by"), messageRS.getString("message_text"),
-                    messageRS.getLong("time_posted_epoch"));
-                
-                returnList.add(currMessage);
+            String sql = "SELECT * FROM Message";
+            try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement query = connection.prepareStatement(sql);
+                ResultSet messageRS = query.executeQuery())
+            {
+                // Retrieve all messages from query and insert them into the list
+                while(messageRS.next()){
+                    returnList.add(readMessage(messageRS));
+                }
             }
+            catch(SQLException e){
+                GET_ALL_MESSAGES.failed(e);
+            }
+
+            // Return the messages retrieved from the query
+            return returnList;
         }
-        catch(SQLException e){
-            System.out.println(e.getMessage());
+        finally{
+            GET_ALL_MESSAGES.record(start);
         }
-
-        // Return the messages retrieved from the query
-        return returnList;
     }
 
     /**
-     * Attempts to retrieve all messages send by a given user
+     * Attempts to retrieve all messages send by a given user, newest first. Ties on time_posted_epoch are broken
+     * by message_id, also descending, so the order is stable. Served by message_posted_by_time_idx without a sort.
      * 
      * @param account_id The user to retrieve messages from
      * @return A List<Message> of all messages the user with the given account_id has sent. 
      *  Will be empty if user with account_id does not exist or request fails.
      */
     public List<Message> getAllMessagesFromUser(int account_id){
-        List<Message> messages = new ArrayList<Message>();
+        long start = System.nanoTime();
+        try{
+            List<Message> messages = new ArrayList<Message>();
         
-        try(Connection connection = ConnectionUtil.getConnection()){
             // Ready query and execute
-            String sql = "SELECT * FROM Message WHERE posted_by = ?";
-            PreparedStatement query = connection.prepareStatement(sql);
-            query.setInt(1, account_id);
-            ResultSet messageRS = query.executeQuery();
+            String sql = "SELECT * FROM Message " + TIMELINE_INDEX + " WHERE posted_by = ? " + TIMELINE_ORDER;
+            try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement query = connection.prepareStatement(sql)){
+                query.setInt(1, account_id);
 
-            // Get every returned message and insert them into the list
-            while(messageRS.next()){
-                Message currMessage = new Message(messageRS.getInt("message_id"),
-                messageRS.getInt("posted_by"), messageRS.getString("message_text"),
-                messageRS.getLong("time_posted_epoch"));
-                messages.add(currMessage);
+                // Get every returned message and insert them into the list
+                try(ResultSet messageRS = query.executeQuery()){
+                    while(messageRS.next()){
+                        messages.add(readMessage(messageRS));
+                    }
+                }
             }
+            catch(SQLException e){
+                GET_ALL_MESSAGES_FROM_USER.failed(e);
+            }
+
+            // Return the messages retrieved from the query
+            return messages;
         }
-        catch(SQLException e){
-            System.out.println(e.getMessage());
+        finally{
+            GET_ALL_MESSAGES_FROM_USER.record(start);
         }
+    }
 
-        // Return the messages retrieved from the query
+    /**
+     * Attempts to get one page of messages, ordered by message_id, using keyset pagination. Because the page starts
+     * from a message_id rather than an offset, the cost of fetching a page does not grow with how deep it is.
+     * 
+     * @param after_id Only messages with a message_id greater than this are returned. Use 0 for the first page.
+     * @param limit The most messages to return
+     * @return A List<Message> of at most limit messages. This list is empty if there are none or the request fails
+     */
+    public List<Message> getMessagesPage(int after_id, int limit){
+        List<Message> messages = new ArrayList<Message>();
+        try{
+            forEachMessage(after_id, limit, messages::add);
+        }
+        catch(UncheckedIOException e){
+            messages.clear();
+        }
         return messages;
     }
 
+    /**
+     * Attempts to get one page of the messages sent by a given user, newest first, using keyset pagination.
+     * 
+     * @param account_id The user to retrieve messages from
+     * @param after_id Only messages that come after this one in the user's timeline are returned. Use 0 for the
+     *  first page. If after_id is not one of the user's messages, the page is empty.
+     * @param limit The most messages to return
+     * @return A List<Message> of at most limit messages. This list is empty if there are none or the request fails
+     */
+    public List<Message> getMessagesFromUserPage(int account_id, int after_id, int limit){
+        List<Message> messages = new ArrayList<Message>();
+        try{
+            forEachMessageFromUser(account_id, after_id, limit, messages::add);
+        }
+        catch(UncheckedIOException e){
+            messages.clear();
+        }
+        return messages;
+    }
+
+    /**
+     * Reads a page of the user's timeline with the same range scan as a keyset page, but from a position given as
+     * a time and message_id, which need not belong to one of the user's messages
+     * 
+     * @return at most limit of the user's messages after that position, newest first
+     */
+    public List<Message> getMessagesFromUserBefore(int account_id, long time_posted_epoch, int message_id, int limit){
+        long start = System.nanoTime();
+        try{
+            List<Message> messages = new ArrayList<Message>();
+            try{
+                streamQuery(GET_MESSAGES_FROM_USER_BEFORE, TIMELINE_BEFORE_SQL, messages::add, account_id,
+                    time_posted_epoch, time_posted_epoch, message_id, limit);
+            }
+            catch(UncheckedIOException e){
+                messages.clear();
+            }
+            return messages;
+        }
+        finally{
+            GET_MESSAGES_FROM_USER_BEFORE.record(start);
+        }
+    }
+
+    /**
+     * Hands every message after after_id, in message_id order, to the consumer as it is read from the database.
+     * Rows are never collected, so memory use stays constant no matter how many messages there are.
+     * 
+     * @param after_id Only messages with a message_id greater than this are visited. Use 0 to visit all.
+     * @param limit The most messages to visit
+     * @param consumer Receives each message in turn. Each Message object is only referenced for the duration of the call.
+     * @throws UncheckedIOException if the query fails, part way or not
+     */
+    public void forEachMessage(int after_id, int limit, Consumer<Message> consumer){
+        long start = System.nanoTime();
+        try{
+            String sql = "SELECT * FROM Message WHERE message_id > ? ORDER BY message_id LIMIT ?";
+            streamQuery(FOR_EACH_MESSAGE, sql, consumer, after_id, limit);
+        }
+        finally{
+            FOR_EACH_MESSAGE.record(start);
+        }
+    }
+
+    /**
+     * Hands the messages sent by the given user to the consumer as they are read from the database, newest first
+     * (by time_posted_epoch, then message_id). Paging starts from the position of after_id in the timeline: its
+     * time_posted_epoch is looked up first, so the page query is a range scan on message_posted_by_time_idx and
+     * costs the same however deep into the timeline it starts.
+     * 
+     * @param account_id The user to retrieve messages from
+     * @param after_id Only messages that come after this one in the user's timeline are visited. Use 0 to visit all.
+     * @param limit The most messages to visit
+     * @param consumer Receives each message in turn
+     * @throws UncheckedIOException if the query fails, part way or not
+     */
+    public void forEachMessageFromUser(int account_id, int after_id, int limit, Consumer<Message> consumer){
+        long start = System.nanoTime();
+        try{
+            if(after_id == 0){
+                String sql = "SELECT * FROM Message " + TIMELINE_INDEX + " WHERE posted_by = ? "
+                    + TIMELINE_ORDER + " LIMIT ?";
+                streamQuery(FOR_EACH_MESSAGE_FROM_USER, sql, consumer, account_id, limit);
+                return;
+            }
+
+            Long cursorTime = getTimePosted(account_id, after_id);
+            if(cursorTime == null){
+                // The cursor is not one of this user's messages, so there is nothing after it
+                return;
+            }
+            streamQuery(FOR_EACH_MESSAGE_FROM_USER, TIMELINE_BEFORE_SQL, consumer, account_id, cursorTime, cursorTime,
+                after_id, limit);
+        }
+        finally{
+            FOR_EACH_MESSAGE_FROM_USER.record(start);
+        }
+    }
+
+    /**
+     * Looks up when one of a user's messages was posted, to position a timeline cursor
+     * 
+     * @return the time_posted_epoch of the message, or null if the user has no message with that message_id
+     */
+    private Long getTimePosted(int account_id, int message_id){
+        String sql = "SELECT time_posted_epoch FROM Message WHERE message_id = ? AND posted_by = ?";
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement query = connection.prepareStatement(sql)){
+            query.setInt(1, message_id);
+            query.setInt(2, account_id);
+
+            try(ResultSet result = query.executeQuery()){
+                if(result.next()){
+                    return result.getLong("time_posted_epoch");
+                }
+            }
+        }
+        catch(SQLException e){
+            FOR_EACH_MESSAGE_FROM_USER.failed(e);
+        }
+
+        return null;
+    }
+
     /**
      * Attempts to post message to platform
      * 
@@ -87,39 +307,261 @@ public class MessageDAO {
      * @return The message that was posted if successful. Returns null if post was not successfully posted.
      */
     public Message insertMessage(Message message){
-        String messageText = message.getMessage_text();
+        long start = System.nanoTime();
+        try{
+            String messageText = message.getMessage_text();
         
-        // If this is an invalid message, return null
-        if(messageText.length() <= 0 || messageText.length() >= 255){
+            // If this is an invalid message, return null
+            if(MessageStore.checkMessageText(messageText) != null || !isKnownAccount(message.getPosted_by())){
+                return null;
+            }
+
+            // Message is, at least, valid, so attempt to insert
+            try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement query = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)){
+
+                // Insert query parameters and execute
+                query.setInt(1, message.getPosted_by());
+                query.setString(2, messageText);
+                query.setLong(3, message.getTime_posted_epoch());
+                query.executeUpdate();
+
+                // Get the generated message_id
+                try(ResultSet result = query.getGeneratedKeys()){
+                    if(result.next()){
+                        // Insert the message_id into the object and return it
+                        message.setMessage_id(result.getInt("message_id"));
+                        return message;
+                    }
+                }
+            }
+            catch(SQLException e){
+                INSERT_MESSAGE.failed(e);
+            }
+
             return null;
         }
+        finally{
+            INSERT_MESSAGE.record(start);
+        }
+    }
 
-        // Message is, at least, valid, so attempt to insert
-        try(Connection connection = ConnectionUtil.getConnection()){
-            
+    /**
+     * Attempts to post many messages at once, in a single transaction and a single JDBC batch.
+     * 
+     * Each message is checked against the same rules as insertMessage. A message that breaks them is reported
+     * and skipped, and the rest are still inserted. If the batch itself fails, nothing is inserted and every
+     * message that passed the checks is reported as not saved.
+     * 
+     * @param messages The messages to be posted. Those created are given their message_id.
+     * @return One result per message, in the same order as the messages
+     */
+    public List<MessageBatchResult> insertMessages(List<Message> messages){
+        long start = System.nanoTime();
+        try{
+            MessageBatchResult[] results = new MessageBatchResult[messages.size()];
 
-            String sql = "INSERT INTO Message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?);";
-            PreparedStatement query = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            // Reject messages with invalid text up front, and collect the accounts the rest are posted by
+            Set<Integer> authors = new HashSet<Integer>();
+            for(int i = 0; i < results.length; i++){
+                Message message = messages.get(i);
+                String error = message == null ? "message is missing"
+                    : MessageStore.checkMessageText(message.getMessage_text());
+                if(error != null){
+                    results[i] = MessageBatchResult.failed(i, error);
+                }
+                else{
+                    authors.add(message.getPosted_by());
+                }
+            }
+
+            // Indexes of the messages added to the batch, in the order their keys will be generated
+            List<Integer> batched = new ArrayList<Integer>();
+            try(Connection connection = ConnectionUtil.getConnection()){
+                connection.setAutoCommit(false);
+                try{
+                    // Only authors missing from the bitmap are looked up
+                    if(accountIds != null){
+                        authors.removeIf(accountIds::contains);
+                    }
+                    Set<Integer> found = findAccounts(connection, authors);
+                    IntPredicate existingAuthors = accountIds != null ? accountIds::contains : found::contains;
+
+                    try(PreparedStatement query = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)){
+                        for(int i = 0; i < results.length; i++){
+                            if(results[i] != null){
+                                continue;
+                            }
+                            Message message = messages.get(i);
+                            if(!existingAuthors.test(message.getPosted_by())){
+                                results[i] = MessageBatchResult.failed(i, "posted_by does not match an existing account");
+                                continue;
+                            }
+                            query.setInt(1, message.getPosted_by());
+                            query.setString(2, message.getMessage_text());
+                            query.setLong(3, message.getTime_posted_epoch());
+                            query.addBatch();
+                            batched.add(i);
+                        }
 
-            // Insert query parameters and execute
-            query.setInt(1, message.getPosted_by());
-            query.setString(2, messageText);
-            query.setLong(3, message.getTime_posted_epoch());
-            query.executeUpdate();
+                        if(!batched.isEmpty()){
+                            query.executeBatch();
+
+                            // Keys come back in the order the rows were added to the batch
+                            try(ResultSet keys = query.getGeneratedKeys()){
+                                for(int i : batched){
+                                    if(!keys.next()){
+                                        throw new SQLException("Fewer keys generated than messages inserted");
+                                    }
+                                    messages.get(i).setMessage_id(keys.getInt(1));
+                                }
+                            }
+                        }
+                    }
+                    connection.commit();
+                }
+                catch(SQLException e){
+                    connection.rollback();
+                    throw e;
+                }
+                finally{
+                    connection.setAutoCommit(true);
+                }
+
+                for(int i : batched){
+                    results[i] = MessageBatchResult.created(i, messages.get(i));
+                }
+            }
+            catch(SQLException e){
+                INSERT_MESSAGES.failed(e);
+                // Every message without a result, batched or not yet checked when the failure came, was not saved
+                for(int i = 0; i < results.length; i++){
+                    if(results[i] == null){
+                        messages.get(i).setMessage_id(0);
+                        results[i] = MessageBatchResult.failed(i, "message could not be saved");
+                    }
+                }
+            }
+
+            return Arrays.asList(results);
+        }
+        finally{
+            INSERT_MESSAGES.record(start);
+        }
+    }
 
-            // Get the generated message_id
-            ResultSet result = query.getGeneratedKeys();
-            if(result.next()){
-                // Insert the message_id into the object and return it
-                message.setMessage_id(result.getInt("message_id"));
-                return message;
+    /**
+     * Writes messages with their own message_ids in a single transaction and JDBC batch, merging on message_id so
+     * an import can be run again. The identity is then moved past the largest message_id in the table.
+     * 
+     * @param messages The messages to write, already checked
+     * @return true if the messages were written, false if the batch failed, eg on the foreign key to Account
+     */
+    public boolean importMessages(List<Message> messages){
+        long start = System.nanoTime();
+        try{
+            String sql = "MERGE INTO Message (message_id, posted_by, message_text, time_posted_epoch) "
+                + "KEY (message_id) VALUES (?, ?, ?, ?)";
+            try(Connection connection = ConnectionUtil.getConnection()){
+                connection.setAutoCommit(false);
+                try(PreparedStatement query = connection.prepareStatement(sql)){
+                    for(Message message : messages){
+                        query.setInt(1, message.getMessage_id());
+                        query.setInt(2, message.getPosted_by());
+                        query.setString(3, message.getMessage_text());
+                        query.setLong(4, message.getTime_posted_epoch());
+                        query.addBatch();
+                    }
+                    query.executeBatch();
+                    connection.commit();
+                }
+                catch(SQLException e){
+                    connection.rollback();
+                    throw e;
+                }
+                finally{
+                    connection.setAutoCommit(true);
+                }
+                SqlStorage.restartIdentity(connection, "Message", "message_id");
+                return true;
             }
+            catch(SQLException e){
+                IMPORT_MESSAGES.failed(e);
+                return false;
+            }
+        }
+        finally{
+            IMPORT_MESSAGES.record(start);
+        }
+    }
+
+    /**
+     * @return the largest message_id in the Message table, or 0 if it is empty or could not be read. Deleted
+     *  messages are not counted.
+     */
+    public int getMaxMessageId(){
+        long start = System.nanoTime();
+        try(Connection connection = ConnectionUtil.getConnection()){
+            return SqlStorage.maxId(connection, "Message", "message_id");
         }
         catch(SQLException e){
-            System.out.println(e.getMessage());
+            GET_MAX_MESSAGE_ID.failed(e);
+            return 0;
+        }
+        finally{
+            GET_MAX_MESSAGE_ID.record(start);
         }
+    }
 
-        return null;
+    /**
+     * Checks an account against the bitmap, and against the Account table when the bitmap does not have it, eg for
+     * an account written by another process. An account found in the table is added to the bitmap.
+     * 
+     * @param account_id The account a message is posted by
+     * @return false if the account does not exist, true if it does or there is nothing to check against without a
+     *  query, or the query failed, in which case the foreign key decides
+     */
+    public boolean isKnownAccount(int account_id){
+        if(accountIds == null || accountIds.contains(account_id)){
+            return true;
+        }
+        long start = System.nanoTime();
+        try(Connection connection = ConnectionUtil.getConnection()){
+            return !findAccounts(connection, Collections.singleton(account_id)).isEmpty();
+        }
+        catch(SQLException e){
+            IS_KNOWN_ACCOUNT.failed(e);
+            return true;
+        }
+        finally{
+            IS_KNOWN_ACCOUNT.record(start);
+        }
+    }
+
+    /**
+     * Looks accounts up in the Account table, adding those found to the account_id bitmap if there is one
+     * 
+     * @param connection The connection to query on, so the lookup is part of the caller's transaction
+     * @param account_ids The accounts to look for
+     * @return Those of the given account_ids that belong to an existing account
+     */
+    private Set<Integer> findAccounts(Connection connection, Set<Integer> account_ids) throws SQLException{
+        Set<Integer> found = new HashSet<Integer>();
+        if(account_ids.isEmpty()){
+            return found;
+        }
+        try(PreparedStatement query = connection.prepareStatement("SELECT account_id FROM Account WHERE account_id = ANY(?)")){
+            query.setArray(1, connection.createArrayOf("INTEGER", account_ids.toArray()));
+            try(ResultSet result = query.executeQuery()){
+                while(result.next()){
+                    found.add(result.getInt(1));
+                    if(accountIds != null){
+                        accountIds.add(result.getInt(1));
+                    }
+                }
+            }
+        }
+        return found;
     }
 
     /**
@@ -129,85 +571,156 @@ public class MessageDAO {
      * @return The message that has the associated message_id, null if no such message exists.
      */
     public Message getMessageByID(int message_id){
+        long start = System.nanoTime();
+        try{
 
-        try(Connection connection = ConnectionUtil.getConnection()){
             // Ready query and execute
             String sql = "SELECT * FROM Message WHERE message_id = ?";
-            PreparedStatement query = connection.prepareStatement(sql);
-            query.setInt(1, message_id);
-            ResultSet result = query.executeQuery();
+            try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement query = connection.prepareStatement(sql)){
+                query.setInt(1, message_id);
 
-            // Get and return the message that was retrieved, if exists
-            if(result.next()){
-                return new Message(result.getInt("message_id"), result.getInt("posted_by"),
-                result.getString("message_text"), result.getLong("time_posted_epoch"));
+                // Get and return the message that was retrieved, if exists
+                try(ResultSet result = query.executeQuery()){
+                    if(result.next()){
+                        return readMessage(result);
+                    }
+                }
+            }
+            catch(SQLException e){
+                GET_MESSAGE_BY_ID.failed(e);
             }
+
+            return null;
         }
-        catch(SQLException e){
-            System.out.println(e.getMessage());
+        finally{
+            GET_MESSAGE_BY_ID.record(start);
         }
-
-        return null;
     }
 
     /**
      * Attempts to update an existing messages text, with the provided message_id, with a new message
      * 
+     * The update and the read of the updated row are one statement: H2 returns the rows an UPDATE leaves behind
+     * through FINAL TABLE, so there is a single round trip and no window for another write in between.
+     * 
      * @param message_id The message to be updated
      * @param newMessage The message to replace the old one
      * @return The updated message, if successful, null otherwise.
      */
     public Message updateMessageText(int message_id, String newMessage){
-        try (Connection connection = ConnectionUtil.getConnection()){
-            
+        long start = System.nanoTime();
+        try{
             // If the message is invalid, don't update
             if(newMessage.length() <= 0 || newMessage.length() >= 255){
                 return null;
             }
-            
+
             // Ready our query
-            String sql = "UPDATE Message SET message_text = ? WHERE message_id = ?";
-            PreparedStatement query = connection.prepareStatement(sql);
-            query.setString(1, newMessage);
-            query.setInt(2, message_id);
+            String sql = "SELECT * FROM FINAL TABLE (UPDATE Message SET message_text = ? WHERE message_id = ?)";
+            try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement query = connection.prepareStatement(sql)){
+                query.setString(1, newMessage);
+                query.setInt(2, message_id);
 
-            // If a row was updated, then the message was successfully updated
-            if(query.executeUpdate() > 0){
-                return getMessageByID(message_id);
+                // If a row was updated, then the message was successfully updated
+                try(ResultSet result = query.executeQuery()){
+                    if(result.next()){
+                        return readMessage(result);
+                    }
+                }
+            } 
+            catch (SQLException e) {
+                UPDATE_MESSAGE_TEXT.failed(e);
             }
-        } 
-        catch (SQLException e) {
-            System.out.println(e.getMessage());
-        }
 
-        // Message was not updated
-        return null;
+            // Message was not updated
+            return null;
+        }
+        finally{
+            UPDATE_MESSAGE_TEXT.record(start);
+        }
     }
 
     /**
      * Attempts to delete a message that has the given message_id
      * 
+     * The delete returns the row it removed through H2's OLD TABLE, in the same statement, so the message
+     * handed back is exactly the one that was deleted.
+     * 
      * @param message_id The message to be deleted
      * @return The deleted message, if successful, null otherwise
      */
     public Message deleteMessageByID(int message_id){
-        try(Connection connection = ConnectionUtil.getConnection()){
-            Message messageToDelete = getMessageByID(message_id);
-            
-            // If message_id were a string, this would be scary, but here it should be fine
-            String sql = "DELETE FROM Message WHERE message_id = " + message_id;
-            Statement query = connection.createStatement();
+        long start = System.nanoTime();
+        try{
+            String sql = "SELECT * FROM OLD TABLE (DELETE FROM Message WHERE message_id = ?)";
+            try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement query = connection.prepareStatement(sql)){
+                query.setInt(1, message_id);
 
-            // If a row was updated, then the message was deleted successfully
-            if(query.executeUpdate(sql) > 0){
-                return messageToDelete;
+                // If a row was returned, then the message was deleted successfully
+                try(ResultSet result = query.executeQuery()){
+                    if(result.next()){
+                        return readMessage(result);
+                    }
+                }
+            }
+            catch(SQLException e){
+                DELETE_MESSAGE_BY_ID.failed(e);
             }
+
+            // No messages were deleted
+            return null;
         }
-        catch(SQLException e){
-            System.out.println(e.getMessage());
+        finally{
+            DELETE_MESSAGE_BY_ID.record(start);
         }
+    }
 
-        // No messages were deleted
-        return null;
+    /**
+     * Builds a Message from the current row of a result set
+     * 
+     * @param messageRS A result set positioned on a row of the Message table
+     * @return The message stored in that row
+     */
+    private Message readMessage(ResultSet messageRS) throws SQLException{
+        return new Message(messageRS.getInt("message_id"), messageRS.getInt("posted_by"),
+            messageRS.getString("message_text"), messageRS.getLong("time_posted_epoch"));
+    }
+
+    /**
+     * Runs a message query with H2's lazy execution turned on, so rows are produced as the result set is advanced
+     * rather than being buffered by the database up front, and passes each row to the consumer.
+     * 
+     * @param metrics Where to count a failure
+     * @param sql A SELECT over the Message table
+     * @param consumer Receives each message in turn
+     * @param params The values for the query parameters, in order
+     * @throws UncheckedIOException if the query fails. The consumer may have had some of the rows by then, so a
+     *  caller writing them out has to abort rather than finish what it wrote as if it were whole.
+     */
+    private void streamQuery(DaoMetrics metrics, String sql, Consumer<Message> consumer, Object... params){
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement query = connection.prepareStatement(sql)){
+            for(int i = 0; i < params.length; i++){
+                query.setObject(i + 1, params[i]);
+            }
+            query.setFetchSize(STREAM_FETCH_SIZE);
+
+            SqlStorage.setLazyExecution(connection, true);
+            try(ResultSet messageRS = query.executeQuery()){
+                while(messageRS.next()){
+                    consumer.accept(readMessage(messageRS));
+                }
+            }
+            finally{
+                SqlStorage.setLazyExecution(connection, false);
+            }
+        }
+        catch(SQLException e){
+            metrics.failed(e);
+            throw new UncheckedIOException(new IOException("Could not read every message", e));
+        }
     }
-}
+}
\ No newline at end of file
@@ -0,0 +1,133 @@
+package DAO;
+
+// Our custom classes imported
+import Model.Message;
+import Model.MessageBatchResult;
+
+// Java libraries imported
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Where messages are kept. MessageDAO keeps them in the Message table; the in-memory engine (see StorageEngine)
+ * keeps them in memory behind an append-only log. Both follow the same rules and orderings, so the services and
+ * the test suite work against either.
+ */
+public interface MessageStore {
+
+    /**
+     * @return every message, in message_id order
+     */
+    List<Message> getAllMessages();
+
+    /**
+     * @return every message sent by the account, newest first: by time_posted_epoch, then message_id, descending
+     */
+    List<Message> getAllMessagesFromUser(int account_id);
+
+    /**
+     * @param after_id Only messages with a greater message_id are returned. Use 0 for the first page.
+     * @return at most limit messages, in message_id order
+     */
+    List<Message> getMessagesPage(int after_id, int limit);
+
+    /**
+     * @param after_id Only messages that come after this one in the account's timeline are returned. Use 0 for the
+     *  first page. If after_id is not one of the account's messages, the page is empty.
+     * @return at most limit of the account's messages, newest first
+     */
+    List<Message> getMessagesFromUserPage(int account_id, int after_id, int limit);
+
+    /**
+     * Pages through an account's timeline from a position that need not be one of its own messages, as a feed
+     * does when it merges several timelines and carries on from the last message it showed.
+     *
+     * @return at most limit of the account's messages posted before time_posted_epoch, or at that time with a
+     *  smaller message_id, newest first
+     */
+    List<Message> getMessagesFromUserBefore(int account_id, long time_posted_epoch, int message_id, int limit);
+
+    /**
+     * Like getMessagesPage, but hands each message to the consumer instead of collecting them, so any number of
+     * messages can be visited in constant memory.
+     *
+     * @throws UncheckedIOException if the rows cannot all be read. Some may have been handed over already.
+     */
+    void forEachMessage(int after_id, int limit, Consumer<Message> consumer);
+
+    /**
+     * Like getMessagesFromUserPage, but hands each message to the consumer instead of collecting them.
+     *
+     * @throws UncheckedIOException if the rows cannot all be read. Some may have been handed over already.
+     */
+    void forEachMessageFromUser(int account_id, int after_id, int limit, Consumer<Message> consumer);
+
+    /**
+     * @param message The message to post. It is given its message_id.
+     * @return the message, or null if its text is invalid, posted_by is not an account, or it could not be saved
+     */
+    Message insertMessage(Message message);
+
+    /**
+     * Posts many messages at once. Invalid messages are reported and skipped; the rest are saved all together
+     * or, if saving fails, not at all.
+     *
+     * @param messages The messages to post. Those created are given their message_id.
+     * @return one result per message, in the same order
+     */
+    List<MessageBatchResult> insertMessages(List<Message> messages);
+
+    /**
+     * Writes messages exactly as given, message_id included, replacing any message with the same message_id. The
+     * messages are saved all together or not at all, and messages posted afterwards are given a message_id past
+     * the largest imported. The text and posted_by are expected to have been checked already.
+     *
+     * @return true if the messages were saved; false if posted_by does not match an existing account, or they
+     *  could not be saved
+     */
+    boolean importMessages(List<Message> messages);
+
+    /**
+     * @return the largest message_id handed out or imported, deleted or not where the store remembers it, or 0 if
+     *  there are none or they could not be read
+     */
+    int getMaxMessageId();
+
+    /**
+     * @return false if the account does not exist. True if it does, or if the store could not tell, in which case
+     *  insertMessage decides.
+     */
+    boolean isKnownAccount(int account_id);
+
+    /**
+     * @return the message, or null if there is none with this message_id
+     */
+    Message getMessageByID(int message_id);
+
+    /**
+     * @return the updated message, or null if the text is invalid or there is no such message
+     */
+    Message updateMessageText(int message_id, String newMessage);
+
+    /**
+     * @return the message as it was before being deleted, or null if there was no such message
+     */
+    Message deleteMessageByID(int message_id);
+
+    /**
+     * Checks message text against the rules every message must follow
+     *
+     * @param messageText The text to check
+     * @return Why the text is not allowed, or null if it is
+     */
+    static String checkMessageText(String messageText){
+        if(messageText == null || messageText.length() <= 0){
+            return "message_text must not be blank";
+        }
+        if(messageText.length() >= 255){
+            return "message_text must be under 255 characters";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,90 @@
+package DAO;
+
+// Java libraries imported
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The H2 engine: the DAOs, with MessageDAO checking posted_by against AccountDAO's account_id bitmap.
+ */
+class SqlStorage implements StorageEngine {
+    private final AccountDAO accountDao;
+    private final MessageDAO messageDao;
+
+    SqlStorage(){
+        accountDao = new AccountDAO();
+        messageDao = new MessageDAO(accountDao.getAccountIds());
+    }
+
+    @Override
+    public AccountStore getAccountStore(){
+        return accountDao;
+    }
+
+    @Override
+    public MessageStore getMessageStore(){
+        return messageDao;
+    }
+
+    /**
+     * Nothing to do: connections belong to ConnectionUtil's pool
+     */
+    @Override
+    public void close(){
+    }
+
+    /**
+     * Toggles H2's LAZY_QUERY_EXECUTION for the session behind this connection, so rows are produced as a result
+     * set is advanced rather than being buffered by the database up front
+     */
+    static void setLazyExecution(Connection connection, boolean lazy) throws SQLException{
+        try(PreparedStatement query = connection.prepareStatement(
+            lazy ? "SET LAZY_QUERY_EXECUTION TRUE" : "SET LAZY_QUERY_EXECUTION FALSE")){
+            query.execute();
+        }
+    }
+
+    /**
+     * @param table The table, as named in SocialMedia.sql
+     * @param column Its id column
+     * @return the largest id in the table, or 0 if it is empty
+     */
+    static int maxId(Connection connection, String table, String column) throws SQLException{
+        try(Statement query = connection.createStatement();
+            ResultSet result = query.executeQuery("SELECT COALESCE(MAX(" + column + "), 0) FROM " + table)){
+            return result.next() ? result.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Moves a table's identity column on past its largest value, after rows have been written with ids of their
+     * own, so the next generated id does not collide with them. The identity is never moved back, so ids of
+     * deleted rows are not handed out again.
+     *
+     * This is DDL, which H2 commits at once, so it must be run after the rows are committed.
+     *
+     * @param table The table, as named in SocialMedia.sql
+     * @param column Its identity column
+     */
+    static void restartIdentity(Connection connection, String table, String column) throws SQLException{
+        String sql = "SELECT (SELECT COALESCE(MAX(" + column + "), 0) + 1 FROM " + table + "), IDENTITY_BASE "
+            + "FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME = ? AND COLUMN_NAME = ?";
+        long next;
+        try(PreparedStatement query = connection.prepareStatement(sql)){
+            query.setString(1, table.toUpperCase());
+            query.setString(2, column.toUpperCase());
+            try(ResultSet result = query.executeQuery()){
+                if(!result.next() || result.getLong(1) <= result.getLong(2)){
+                    return;
+                }
+                next = result.getLong(1);
+            }
+        }
+        try(Statement alter = connection.createStatement()){
+            alter.execute("ALTER TABLE " + table + " ALTER COLUMN " + column + " RESTART WITH " + next);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package DAO;
+
+// Our custom classes imported
+import Util.ConfigUtil;
+
+/**
+ * The accounts and messages stores the services run on, chosen at startup by socialmedia.storage.engine:
+ * <ul>
+ * <li>sql (default) - AccountDAO and MessageDAO, over H2 through ConnectionUtil.</li>
+ * <li>memory - everything is held in memory and served without SQL. Each change is written to a log
+ * (socialmedia.storage.memory.log.path, default ./h2/memory.log), which is compacted into a snapshot beside it
+ * from time to time; startup loads the snapshot and replays the log after it. The first start, with neither yet,
+ * copies the H2 tables. socialmedia.storage.memory.log.fsync (always, interval or never; default interval) sets
+ * how hard each change is pushed to the disk. With socialmedia.storage.memory.log.enabled=false nothing is kept:
+ * every start copies H2 afresh. See MemoryStorage for the rest of the settings.</li>
+ * </ul>
+ * The engines do not share data once running: messages written to the memory engine never reach H2.
+ */
+public interface StorageEngine {
+
+    AccountStore getAccountStore();
+
+    MessageStore getMessageStore();
+
+    /**
+     * Flushes and releases whatever the engine holds open. Called when the server stops.
+     */
+    void close();
+
+    /**
+     * @return the engine selected by socialmedia.storage.engine
+     * @throws IllegalArgumentException if the setting names no engine
+     */
+    static StorageEngine fromConfig(){
+        String engine = ConfigUtil.getString("socialmedia.storage.engine", "sql");
+        if("sql".equalsIgnoreCase(engine)){
+            return new SqlStorage();
+        }
+        if("memory".equalsIgnoreCase(engine)){
+            return MemoryStorage.fromConfig();
+        }
+        throw new IllegalArgumentException("Unknown socialmedia.storage.engine: " + engine);
+    }
+}
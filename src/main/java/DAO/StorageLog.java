@@ -0,0 +1,597 @@
+package DAO;
+
+// Our custom classes imported
+import Model.Account;
+import Model.Message;
+
+// Java libraries imported
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The write-ahead log behind the in-memory engine. Every change to an account, follow or message is appended as one
+ * record, in the order the stores apply them, and replaying the records from the last snapshot rebuilds the same
+ * state.
+ *
+ * The log is a run of segments. The current one is at the configured path; each snapshot starts a new one and the
+ * old one is renamed to path.generation until the snapshot is safely written (see MemoryStorage). A segment starts
+ * with MAGIC and its generation, then holds records: a type byte followed by the fields of the change, written
+ * with DataOutputStream. A record cut short by a crash is dropped when the log is next opened.
+ *
+ * Appending returns the position after the record, and commit(position) waits until it is as durable as the fsync
+ * policy makes it:
+ * <ul>
+ * <li>ALWAYS - forced to the disk before commit returns. Writers committing at the same time share one force: the
+ * first to arrive forces everything appended so far while the rest wait for it (a group commit).</li>
+ * <li>INTERVAL - handed to the operating system before commit returns, and forced by MemoryStorage every so often,
+ * so a power cut loses at most that interval while a crash of the process loses nothing.</li>
+ * <li>NEVER - handed to the operating system before commit returns, which forces it when it sees fit.</li>
+ * </ul>
+ * The stores append and apply a change under their lock, then commit after releasing it, so concurrent writers can
+ * share a commit. A change is therefore visible to readers shortly before it is durable.
+ *
+ * Once a write fails the log refuses all further writes, since what reached the file is no longer known, and the
+ * stores turn down every change until the server is restarted.
+ */
+class StorageLog {
+    /**
+     * How hard commit pushes a change towards the disk
+     */
+    enum Fsync { ALWAYS, INTERVAL, NEVER }
+
+    /**
+     * The first four bytes of every segment, "SMLG"
+     */
+    private static final int MAGIC = 0x534D4C47;
+
+    /**
+     * The length of a segment with no records: MAGIC and the generation
+     */
+    static final int HEADER_BYTES = 12;
+
+    private static final byte ACCOUNT = 1;
+    private static final byte PASSWORD = 2;
+    private static final byte MESSAGE = 3;
+    private static final byte MESSAGE_TEXT = 4;
+    private static final byte MESSAGE_DELETE = 5;
+    private static final byte FOLLOW = 6;
+    private static final byte UNFOLLOW = 7;
+
+    private final Path path;
+    private final Fsync fsync;
+    private FileChannel channel;
+    private CountingOutputStream counter;
+    private DataOutputStream out;
+    private long generation;
+    private boolean failed;
+    // Each record is written here first, so a field that cannot be encoded leaves nothing half written in the log
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(512);
+    private final DataOutputStream record = new DataOutputStream(recordBytes);
+
+    /**
+     * Bytes appended across every segment since the log was opened, ie the position of the next record, and where
+     * the current segment would have started on that count
+     */
+    private long written;
+    private long segmentStart;
+
+    /**
+     * Everything up to flushed has been handed to the operating system
+     */
+    private long flushed;
+
+    // Group commit: one thread at a time forces the file. syncLock is only held to hand over that role.
+    private final Object syncLock = new Object();
+    private boolean syncing;
+    private long synced;
+
+    private StorageLog(Path path, Fsync fsync){
+        this.path = path;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Summary of a replayed segment
+     */
+    static class Replay {
+        /**
+         * The segment's generation
+         */
+        long generation;
+        /**
+         * Records applied
+         */
+        long records;
+        /**
+         * The length of the segment up to the end of its last complete record
+         */
+        long validBytes;
+    }
+
+    /**
+     * Opens the current segment for appending, first replaying what it holds into the stores. A new segment is
+     * started if there is none.
+     *
+     * @param minGeneration The generation of the snapshot already loaded, or 0 if none. An older segment is not
+     *  replayed, as the snapshot already holds it.
+     * @param newGeneration The generation to give the segment if one has to be started, greater than that of any
+     *  segment kept from before
+     * @param replayed Filled in with what was replayed
+     * @throws IOException if the file cannot be read, or is not a log
+     */
+    static StorageLog open(Path path, Fsync fsync, long minGeneration, long newGeneration, MemoryAccountStore accounts,
+        MemoryMessageStore messages, Replay replayed) throws IOException{
+        if(path.getParent() != null){
+            Files.createDirectories(path.getParent());
+        }
+        StorageLog log = new StorageLog(path, fsync);
+        Replay replay = Files.exists(path) ? replay(path, minGeneration, accounts, messages) : null;
+        if(replay != null && replay.validBytes == 0){
+            // Not even the header was written before the process died
+            Files.delete(path);
+            replay = null;
+        }
+        if(replay != null){
+            if(replay.generation < minGeneration){
+                // Whatever is appended to it now would be skipped on the next start
+                throw new IOException(path + " is older than the snapshot beside it");
+            }
+            if(replay.validBytes < Files.size(path)){
+                System.out.println("Dropping " + (Files.size(path) - replay.validBytes)
+                    + " bytes of an incomplete record from " + path);
+                try(FileChannel file = FileChannel.open(path, StandardOpenOption.WRITE)){
+                    file.truncate(replay.validBytes);
+                }
+            }
+            replayed.generation = replay.generation;
+            replayed.records = replay.records;
+            replayed.validBytes = replay.validBytes;
+            log.generation = replay.generation;
+            log.openSegment(replay.validBytes);
+        }
+        else{
+            log.generation = newGeneration;
+            log.openSegment(-1);
+        }
+        return log;
+    }
+
+    /**
+     * Applies every complete record in a segment to the stores, in order, unless the segment is older than
+     * minGeneration
+     *
+     * @throws IOException if the file cannot be read, is not a log, or holds a record of unknown type
+     */
+    static Replay replay(Path path, long minGeneration, MemoryAccountStore accounts, MemoryMessageStore messages)
+        throws IOException{
+        Replay replay = new Replay();
+        try(CountingInputStream counter = new CountingInputStream(new BufferedInputStream(Files.newInputStream(path), 65536));
+            DataInputStream in = new DataInputStream(counter)){
+            if(in.readInt() != MAGIC){
+                throw new IOException(path + " is not a storage log");
+            }
+            replay.generation = in.readLong();
+            replay.validBytes = counter.count;
+            if(replay.generation < minGeneration){
+                return replay;
+            }
+
+            while(true){
+                int type = in.read();
+                if(type < 0){
+                    break;
+                }
+                switch(type){
+                    case ACCOUNT:
+                        accounts.restore(new Account(in.readInt(), in.readUTF(), in.readUTF()));
+                        break;
+                    case PASSWORD:
+                        accounts.restorePassword(in.readInt(), in.readUTF());
+                        break;
+                    case MESSAGE:
+                        messages.restore(new Message(in.readInt(), in.readInt(), in.readUTF(), in.readLong()));
+                        break;
+                    case MESSAGE_TEXT:
+                        messages.restoreText(in.readInt(), in.readUTF());
+                        break;
+                    case MESSAGE_DELETE:
+                        messages.restoreDelete(in.readInt());
+                        break;
+                    case FOLLOW:
+                        accounts.restoreFollow(in.readInt(), in.readInt(), true);
+                        break;
+                    case UNFOLLOW:
+                        accounts.restoreFollow(in.readInt(), in.readInt(), false);
+                        break;
+                    default:
+                        throw new IOException("Unknown record type " + type + " at byte " + replay.validBytes + " of " + path);
+                }
+                replay.records++;
+                replay.validBytes = counter.count;
+            }
+        }
+        catch(EOFException e){
+            // The last record, or the header, was cut short; everything before it stands
+        }
+        return replay;
+    }
+
+    /**
+     * Opens the file at path for appending. Must be called holding the lock on this log, or before it is shared.
+     *
+     * @param existingBytes The length of the segment already in the file, or -1 to start a new segment by
+     *  writing its header
+     */
+    private void openSegment(long existingBytes) throws IOException{
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        counter = new CountingOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 8192));
+        out = new DataOutputStream(counter);
+        segmentStart = written - Math.max(existingBytes, 0);
+        if(existingBytes < 0){
+            out.writeInt(MAGIC);
+            out.writeLong(generation);
+            out.flush();
+            channel.force(true);
+            written += counter.count;
+            flushed = written;
+        }
+    }
+
+    /**
+     * @return the generation of the current segment
+     */
+    synchronized long getGeneration(){
+        return generation;
+    }
+
+    /**
+     * @return the length of the current segment
+     */
+    synchronized long getSegmentBytes(){
+        return written - segmentStart;
+    }
+
+    synchronized long appendAccount(Account account) throws IOException{
+        return append(out -> {
+            out.writeByte(ACCOUNT);
+            out.writeInt(account.getAccount_id());
+            out.writeUTF(account.getUsername());
+            out.writeUTF(account.getPassword());
+        });
+    }
+
+    synchronized long appendPassword(int account_id, String password) throws IOException{
+        return append(out -> {
+            out.writeByte(PASSWORD);
+            out.writeInt(account_id);
+            out.writeUTF(password);
+        });
+    }
+
+    synchronized long appendMessage(Message message) throws IOException{
+        return append(out -> {
+            out.writeByte(MESSAGE);
+            out.writeInt(message.getMessage_id());
+            out.writeInt(message.getPosted_by());
+            out.writeUTF(message.getMessage_text());
+            out.writeLong(message.getTime_posted_epoch());
+        });
+    }
+
+    synchronized long appendMessageText(int message_id, String text) throws IOException{
+        return append(out -> {
+            out.writeByte(MESSAGE_TEXT);
+            out.writeInt(message_id);
+            out.writeUTF(text);
+        });
+    }
+
+    synchronized long appendMessageDelete(int message_id) throws IOException{
+        return append(out -> {
+            out.writeByte(MESSAGE_DELETE);
+            out.writeInt(message_id);
+        });
+    }
+
+    synchronized long appendFollow(int follower_id, int followee_id) throws IOException{
+        return append(out -> {
+            out.writeByte(FOLLOW);
+            out.writeInt(follower_id);
+            out.writeInt(followee_id);
+        });
+    }
+
+    synchronized long appendUnfollow(int follower_id, int followee_id) throws IOException{
+        return append(out -> {
+            out.writeByte(UNFOLLOW);
+            out.writeInt(follower_id);
+            out.writeInt(followee_id);
+        });
+    }
+
+    /**
+     * Must be called holding the lock on this log
+     *
+     * @return the position after the record
+     */
+    private long append(Record fields) throws IOException{
+        checkWritable();
+        recordBytes.reset();
+        // A record that cannot be encoded, such as a string over 65535 bytes, fails on its own
+        fields.writeTo(record);
+        long before = counter.count;
+        try{
+            recordBytes.writeTo(out);
+        }
+        catch(IOException e){
+            failed = true;
+            throw e;
+        }
+        written += counter.count - before;
+        return written;
+    }
+
+    private interface Record {
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Must be called holding the lock on this log
+     */
+    private void checkWritable() throws IOException{
+        if(out == null){
+            throw new IOException("The storage log " + path + " is closed");
+        }
+        if(failed){
+            throw new IOException("An earlier write to the storage log " + path + " failed; restart to recover");
+        }
+    }
+
+    /**
+     * Waits until everything up to position is as durable as the fsync policy makes it
+     *
+     * @param position What an append returned
+     */
+    void commit(long position) throws IOException{
+        if(fsync != Fsync.ALWAYS){
+            flush(position);
+            return;
+        }
+        while(true){
+            synchronized(syncLock){
+                if(synced >= position){
+                    return;
+                }
+                if(syncing){
+                    awaitSync();
+                    continue;
+                }
+                syncing = true;
+            }
+            // This thread forces whatever has been appended by now, covering every writer waiting behind it
+            long target = 0;
+            try{
+                target = force();
+            }
+            finally{
+                syncDone(target);
+            }
+        }
+    }
+
+    /**
+     * Forces everything appended so far to the disk. Called every so often under the INTERVAL policy.
+     */
+    void sync() throws IOException{
+        awaitSyncRole();
+        long target = 0;
+        try{
+            target = force();
+        }
+        finally{
+            syncDone(target);
+        }
+    }
+
+    private void awaitSyncRole() throws IOException{
+        synchronized(syncLock){
+            while(syncing){
+                awaitSync();
+            }
+            syncing = true;
+        }
+    }
+
+    /**
+     * Must be called holding syncLock
+     */
+    private void awaitSync() throws IOException{
+        try{
+            syncLock.wait();
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the storage log to sync");
+        }
+    }
+
+    private void syncDone(long target){
+        synchronized(syncLock){
+            syncing = false;
+            synced = Math.max(synced, target);
+            syncLock.notifyAll();
+        }
+    }
+
+    private synchronized void flush(long position) throws IOException{
+        if(flushed >= position){
+            return;
+        }
+        checkWritable();
+        try{
+            out.flush();
+        }
+        catch(IOException e){
+            failed = true;
+            throw e;
+        }
+        flushed = written;
+    }
+
+    /**
+     * Hands everything appended so far to the operating system, then forces it to the disk. Appends carry on
+     * during the force. Must be called by the thread holding the sync role.
+     *
+     * @return the position up to which the log is now on the disk
+     */
+    private long force() throws IOException{
+        FileChannel forcing;
+        long target;
+        synchronized(this){
+            flush(written);
+            forcing = channel;
+            target = written;
+        }
+        try{
+            forcing.force(false);
+        }
+        catch(IOException e){
+            synchronized(this){
+                failed = true;
+            }
+            throw e;
+        }
+        return target;
+    }
+
+    /**
+     * Forces and closes the current segment, renames it to segmentPath(path, generation) and starts the next
+     * generation at path. The stores must not append meanwhile, so that the state they hold is exactly what the
+     * closed segments describe.
+     *
+     * @return the generation of the new segment
+     */
+    long rotate() throws IOException{
+        awaitSyncRole();
+        long target = 0;
+        try{
+            synchronized(this){
+                force();
+                out.close();
+                Files.move(path, segmentPath(path, generation), StandardCopyOption.ATOMIC_MOVE);
+                generation++;
+                openSegment(-1);
+                target = written;
+                return generation;
+            }
+        }
+        catch(IOException e){
+            synchronized(this){
+                failed = true;
+            }
+            throw e;
+        }
+        finally{
+            syncDone(target);
+        }
+    }
+
+    /**
+     * @return where the segment of the given generation is kept once it is no longer current
+     */
+    static Path segmentPath(Path path, long generation){
+        return path.resolveSibling(path.getFileName() + "." + generation);
+    }
+
+    /**
+     * Forces what has been appended to the disk and closes the file. Further appends fail.
+     */
+    void close() throws IOException{
+        boolean healthy;
+        synchronized(this){
+            if(out == null){
+                return;
+            }
+            healthy = !failed;
+        }
+        try{
+            if(healthy){
+                sync();
+            }
+        }
+        finally{
+            synchronized(this){
+                out.close();
+                out = null;
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes read through it, so replay knows where the last complete record ended
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in){
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException{
+            int b = super.read();
+            if(b >= 0){
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException{
+            int n = super.read(buffer, offset, length);
+            if(n > 0){
+                count += n;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Counts the bytes written through it. DataOutputStream keeps a count of its own, but in an int.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out){
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException{
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException{
+            out.write(buffer, offset, length);
+            count += length;
+        }
+    }
+}
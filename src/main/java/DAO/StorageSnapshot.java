@@ -0,0 +1,143 @@
+package DAO;
+
+// Our custom classes imported
+import Model.Account;
+
+// Java libraries imported
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * A compact image of the in-memory engine: every live account and message, once each, with none of the updates
+ * and deletes that led to them. Loading one and replaying the log segments from its generation on rebuilds the
+ * stores without reading the history before it.
+ *
+ * The file is MAGIC (padded to 8 bytes), the generation of the first log segment it does not cover, the messages
+ * as MessageColumns, the accounts as a count and rows of account_id and length-prefixed UTF-8 username and
+ * password, the follows as a count and follower_id, followee_id pairs, and MAGIC again to show it is whole. A
+ * snapshot written before follows existed ends after the accounts, and loads with none.
+ *
+ * It is read by mapping it rather than through a stream, and it must be smaller than 2 GB. The accounts and
+ * follows are copied out, but the message columns are handed to the message store, which serves its messages
+ * from the mapping for as long as the server runs. So a snapshot is never written over another; MemoryStorage
+ * names each by its generation.
+ *
+ * It is written beside its final path and moved into place once forced to the disk, so a crash part way leaves
+ * the previous snapshot untouched.
+ */
+class StorageSnapshot {
+    /**
+     * The first and last four bytes of a snapshot, "SMSC"
+     */
+    private static final int MAGIC = 0x534D5343;
+
+    /**
+     * Where the message columns start, after the magic number and generation
+     */
+    private static final int COLUMNS_AT = 16;
+
+    /**
+     * Writes a snapshot and moves it into place at path, where there must not be a snapshot already
+     *
+     * @param generation The generation of the first log segment the snapshot does not cover
+     * @param follows Every follow, as follower_id, followee_id pairs
+     * @param messages The messages, as copied from the message store
+     * @return the size of the snapshot
+     */
+    static long write(Path path, long generation, List<Account> accounts, int[] follows,
+        MemoryMessageStore.SnapshotCopy messages) throws IOException{
+        Path partial = path.resolveSibling(path.getFileName() + ".tmp");
+        try(FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 65536))){
+            out.writeInt(MAGIC);
+            out.writeInt(0);
+            out.writeLong(generation);
+            MessageColumns.write(out, messages);
+            out.writeInt(accounts.size());
+            for(Account account : accounts){
+                out.writeInt(account.getAccount_id());
+                writeString(out, account.getUsername());
+                writeString(out, account.getPassword());
+            }
+            out.writeInt(follows.length / 2);
+            for(int follow : follows){
+                out.writeInt(follow);
+            }
+            out.writeInt(MAGIC);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(partial, path, StandardCopyOption.ATOMIC_MOVE);
+        return Files.size(path);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException{
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Loads a snapshot into the stores
+     *
+     * @return the generation of the first log segment the snapshot does not cover
+     * @throws IOException if the file cannot be read, or is not a whole snapshot
+     */
+    static long read(Path path, MemoryAccountStore accounts, MemoryMessageStore messages) throws IOException{
+        ByteBuffer buffer;
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            if(channel.size() > Integer.MAX_VALUE){
+                throw new IOException(path + " is too large to map");
+            }
+            // The mapping outlives the channel, and is released once the message store lets go of its columns
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try{
+            if(buffer.limit() < COLUMNS_AT || buffer.getInt(0) != MAGIC){
+                throw new IOException(path + " is not a storage snapshot");
+            }
+            long generation = buffer.getLong(8);
+            MessageColumns columns = new MessageColumns(buffer, COLUMNS_AT);
+            messages.restoreAll(columns);
+
+            ByteBuffer rows = buffer.duplicate();
+            rows.position(columns.end());
+            for(int i = rows.getInt(); i > 0; i--){
+                accounts.restore(new Account(rows.getInt(), readString(rows), readString(rows)));
+            }
+            int follows = rows.getInt();
+            if(follows == MAGIC && !rows.hasRemaining()){
+                // Written before follows were kept
+                return generation;
+            }
+            for(int i = follows; i > 0; i--){
+                accounts.restoreFollow(rows.getInt(), rows.getInt(), true);
+            }
+            if(rows.getInt() != MAGIC || rows.hasRemaining()){
+                throw new IOException(path + " does not end where its counts say");
+            }
+            return generation;
+        }
+        catch(BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException e){
+            throw new IOException(path + " does not end where its counts say", e);
+        }
+    }
+
+    private static String readString(ByteBuffer rows){
+        byte[] bytes = new byte[rows.getInt()];
+        rows.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,139 @@
+package Model;
+
+import java.util.Objects;
+
+/**
+ * This is a class that models the outcome of POST /admin/import.
+ *
+ * An import that stops at a bad line still saves the lines before it, and the counts say how many rows that was.
+ * Running the same file again is safe: rows replace those with the same id.
+ */
+public class ImportResult {
+    /**
+     * The number of accounts saved.
+     */
+    public int accounts;
+    /**
+     * The number of messages saved.
+     */
+    public int messages;
+    /**
+     * The number of follows saved.
+     */
+    public int follows;
+    /**
+     * Why the import stopped, or null if every line was saved.
+     */
+    public String error;
+    /**
+     * The line the import stopped at, counting from 1, or 0 if it did not stop.
+     */
+    public int line;
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public ImportResult(){
+    }
+    /**
+     * @param accounts
+     * @param messages
+     * @param error
+     * @param line
+     */
+    public ImportResult(int accounts, int messages, String error, int line){
+        this.accounts = accounts;
+        this.messages = messages;
+        this.error = error;
+        this.line = line;
+    }
+    /**
+     * @return accounts
+     */
+    public int getAccounts() {
+        return accounts;
+    }
+    /**
+     * @param accounts
+     */
+    public void setAccounts(int accounts) {
+        this.accounts = accounts;
+    }
+    /**
+     * @return messages
+     */
+    public int getMessages() {
+        return messages;
+    }
+    /**
+     * @param messages
+     */
+    public void setMessages(int messages) {
+        this.messages = messages;
+    }
+    /**
+     * @return follows
+     */
+    public int getFollows() {
+        return follows;
+    }
+    /**
+     * @param follows
+     */
+    public void setFollows(int follows) {
+        this.follows = follows;
+    }
+    /**
+     * @return error
+     */
+    public String getError() {
+        return error;
+    }
+    /**
+     * @param error
+     */
+    public void setError(String error) {
+        this.error = error;
+    }
+    /**
+     * @return line
+     */
+    public int getLine() {
+        return line;
+    }
+    /**
+     * @param line
+     */
+    public void setLine(int line) {
+        this.line = line;
+    }
+    /**
+     * Overriding the default equals() method adds functionality to tell when two objects are identical, allowing
+     * Assert.assertEquals and List.contains to function.
+     * @param o the other object.
+     * @return true if o is equal to this object.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ImportResult result = (ImportResult) o;
+        return accounts == result.accounts && messages == result.messages && follows == result.follows
+                && line == result.line
+                && Objects.equals(error, result.error);
+    }
+    /**
+     * Overriding the default toString() method allows for easy debugging.
+     * @return a String representation of this class.
+     */
+    @Override
+    public String toString() {
+        return "ImportResult{" +
+                "accounts=" + accounts +
+                ", messages=" + messages +
+                ", follows=" + follows +
+                ", error='" + error + '\'' +
+                ", line=" + line +
+                '}';
+    }
+}
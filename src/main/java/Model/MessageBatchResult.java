@@ -0,0 +1,102 @@
+package Model;
+
+/**
+ * This is a class that models the outcome of one message in a batch sent to POST /messages/batch.
+ *
+ * Results are returned in the same order as the messages in the batch. Each result holds either the created
+ * message, including the message_id assigned by the database, or an error explaining why it was not created.
+ */
+public class MessageBatchResult {
+    /**
+     * The position of the message in the batch, counting from 0.
+     */
+    public int index;
+    /**
+     * The created message, or null if it was not created.
+     */
+    public Message message;
+    /**
+     * Why the message was not created, or null if it was.
+     */
+    public String error;
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessageBatchResult(){
+    }
+    /**
+     * @param index
+     * @param message
+     * @param error
+     */
+    public MessageBatchResult(int index, Message message, String error){
+        this.index = index;
+        this.message = message;
+        this.error = error;
+    }
+    /**
+     * @param index the position of the message in the batch
+     * @param message the message as created
+     * @return a result for a message that was created
+     */
+    public static MessageBatchResult created(int index, Message message){
+        return new MessageBatchResult(index, message, null);
+    }
+    /**
+     * @param index the position of the message in the batch
+     * @param error why the message was not created
+     * @return a result for a message that was not created
+     */
+    public static MessageBatchResult failed(int index, String error){
+        return new MessageBatchResult(index, null, error);
+    }
+    /**
+     * @return index
+     */
+    public int getIndex() {
+        return index;
+    }
+    /**
+     * @param index
+     */
+    public void setIndex(int index) {
+        this.index = index;
+    }
+    /**
+     * @return message
+     */
+    public Message getMessage() {
+        return message;
+    }
+    /**
+     * @param message
+     */
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+    /**
+     * @return error
+     */
+    public String getError() {
+        return error;
+    }
+    /**
+     * @param error
+     */
+    public void setError(String error) {
+        this.error = error;
+    }
+    /**
+     * Overriding the default toString() method allows for easy debugging.
+     * @return a String representation of this class.
+     */
+    @Override
+    public String toString() {
+        return "MessageBatchResult{" +
+                "index=" + index +
+                ", message=" + message +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
@@ -2,20 +2,221 @@ package Service;
 
 // Imports
 import DAO.AccountDAO;
+import DAO.AccountStore;
 import Model.Account;
+import Util.ConfigUtil;
+import Util.LruCache;
+import Util.PasswordHasher;
 
+// External Libraries
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Registers and logs in accounts. Passwords are stored as PBKDF2 hashes (see PasswordHasher).
+ *
+ * Hashing is slow on purpose, so it never runs on the request thread. It runs on a small executor of its own,
+ * socialmedia.password.threads wide (default half the cpus) with room for socialmedia.password.queueCapacity (64)
+ * waiting jobs. A login storm therefore uses at most those threads' worth of CPU, leaving the rest for message
+ * endpoints. Beyond that it is refused with RejectedExecutionException, which the controller answers with 429.
+ *
+ * A successful login is remembered for a while (socialmedia.cache.logins.*) as a keyed fingerprint of the password
+ * next to the stored hash it was checked against, so a user logging in again skips the hash. Any change to the
+ * stored hash makes the entry stale. Failed logins are never remembered, so guessing always pays the full cost.
+ */
 public class AccountService {
-    AccountDAO accountDao;
+    AccountStore accountStore;
+    PasswordHasher passwordHasher;
+    ThreadPoolExecutor hashExecutor;
+
+    // Username to the result of its last successful login, or null if disabled
+    LruCache<String, VerifiedLogin> loginCache;
+
+    // Stands in for the stored password of an unknown username, so the answer takes as long as for a known one.
+    // Made on first use, since each one costs a full hash.
+    private volatile String unknownUserHash;
+
+    /**
+     * A password that recently verified against a stored hash
+     */
+    static class VerifiedLogin {
+        final String storedPassword;
+        final byte[] fingerprint;
+
+        VerifiedLogin(String storedPassword, byte[] fingerprint){
+            this.storedPassword = storedPassword;
+            this.fingerprint = fingerprint;
+        }
+    }
 
     public AccountService(){
-        accountDao = new AccountDAO();
+        this(new AccountDAO());
     }
 
+    /**
+     * @param accountStore Where accounts are kept, from the StorageEngine chosen at startup
+     */
+    public AccountService(AccountStore accountStore){
+        this.accountStore = accountStore;
+        passwordHasher = PasswordHasher.fromConfig();
+
+        int threads = ConfigUtil.getInt("socialmedia.password.threads",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        AtomicInteger threadNumber = new AtomicInteger();
+        hashExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(ConfigUtil.getInt("socialmedia.password.queueCapacity", 64)),
+            runnable -> {
+                Thread thread = new Thread(runnable, "password-hasher-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        hashExecutor.allowCoreThreadTimeOut(true);
+
+        int cacheSize = ConfigUtil.getInt("socialmedia.cache.logins.maxSize", 10_000);
+        if(cacheSize > 0){
+            loginCache = new LruCache<>("logins", cacheSize,
+                ConfigUtil.getLong("socialmedia.cache.logins.ttlMillis", 600_000));
+        }
+    }
+
+    /**
+     * @return the account as registered, with the password as given rather than as stored, or null if invalid
+     *  or the username is taken
+     * @throws RejectedExecutionException if the hashing executor is saturated
+     */
     public Account registerUser(Account newAccount){
-        return accountDao.registerUser(newAccount);
+        // Turn away what the database would refuse anyway before spending a hash on it
+        if(!AccountStore.isValidNewAccount(newAccount) || accountStore.isUsernameTaken(newAccount.getUsername())){
+            return null;
+        }
+        String hash = onHashExecutor(() -> passwordHasher.hash(newAccount.getPassword()));
+        return hash == null ? null : accountStore.registerUser(newAccount, hash);
     }
 
+    /**
+     * Checks the login details, and replaces a legacy plaintext or outdated hash with a current one on success.
+     *
+     * @return the account, with the password as given, or null if the details are wrong
+     * @throws RejectedExecutionException if the hashing executor is saturated
+     */
     public Account loginUser(Account loginDetails){
-        return accountDao.loginUser(loginDetails);
+        String username = loginDetails.getUsername();
+        String password = loginDetails.getPassword();
+        if(username == null || password == null){
+            return null;
+        }
+
+        Account account = accountStore.getAccountByUsername(username);
+        if(account == null){
+            onHashExecutor(() -> passwordHasher.verify(password, unknownUserHash()));
+            return null;
+        }
+
+        String stored = account.getPassword();
+        byte[] fingerprint = loginCache == null ? null : passwordHasher.fingerprint(password);
+        if(loginCache != null){
+            VerifiedLogin verified = loginCache.getIfPresent(username);
+            if(verified != null && verified.storedPassword.equals(stored)
+                && MessageDigest.isEqual(verified.fingerprint, fingerprint)){
+                loginDetails.setAccount_id(account.getAccount_id());
+                return loginDetails;
+            }
+        }
+
+        String current = onHashExecutor(() -> {
+            if(!passwordHasher.verify(password, stored)){
+                return null;
+            }
+            if(!passwordHasher.needsRehash(stored)){
+                return stored;
+            }
+            // Legacy plaintext, or hashed at an old cost: upgrade it while the password is at hand
+            String rehashed = passwordHasher.hash(password);
+            return accountStore.replaceStoredPassword(account.getAccount_id(), stored, rehashed) ? rehashed : stored;
+        });
+        if(current == null){
+            return null;
+        }
+
+        if(loginCache != null){
+            loginCache.put(username, new VerifiedLogin(current, fingerprint));
+        }
+        loginDetails.setAccount_id(account.getAccount_id());
+        return loginDetails;
+    }
+
+    /**
+     * Hands every account, with its stored password rather than one a user typed, to the consumer
+     */
+    public void forEachAccount(Consumer<Account> consumer){
+        accountStore.forEachAccount(consumer);
+    }
+
+    /**
+     * Writes accounts as they were exported, account_ids and stored passwords included. Their passwords are not
+     * hashed again. See AccountStore.importAccounts.
+     *
+     * @return true if the accounts were saved
+     */
+    public boolean importAccounts(List<Account> accounts){
+        if(!accountStore.importAccounts(accounts)){
+            return false;
+        }
+        if(loginCache != null){
+            for(Account account : accounts){
+                loginCache.invalidate(account.getUsername());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the largest account_id in use, see AccountStore.getMaxAccountId
+     */
+    public int getMaxAccountId(){
+        return accountStore.getMaxAccountId();
+    }
+
+    /**
+     * @return the executor password hashes are computed on, for inspecting its queue
+     */
+    public ThreadPoolExecutor getHashExecutor(){
+        return hashExecutor;
+    }
+
+    private String unknownUserHash(){
+        String hash = unknownUserHash;
+        if(hash == null){
+            hash = passwordHasher.hash("unknown user");
+            unknownUserHash = hash;
+        }
+        return hash;
+    }
+
+    /**
+     * Runs a hashing job on the hashing executor and waits for it.
+     *
+     * @return the job's result, or null if it failed or the wait was interrupted
+     * @throws RejectedExecutionException if the executor's queue is full
+     */
+    private <T> T onHashExecutor(Callable<T> job){
+        try{
+            return hashExecutor.submit(job).get();
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        catch(ExecutionException e){
+            System.out.println(e.getCause());
+        }
+        return null;
     }
 }
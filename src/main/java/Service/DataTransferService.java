@@ -0,0 +1,362 @@
+package Service;
+
+// Our custom classes imported
+import DAO.MessageStore;
+import Model.Account;
+import Model.Follow;
+import Model.ImportResult;
+import Model.Message;
+import Util.ConfigUtil;
+import Util.JsonUtil;
+
+// External Libraries
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Backs up and restores every account, message and follow as newline-delimited JSON (NDJSON). Each line is one
+ * record, {"account": {...}}, {"message": {...}} or {"follow": {...}}, with the same fields the rest of the API
+ * uses. Accounts carry their stored password hash, and an import keeps it as it is.
+ *
+ * Both directions stream. An export writes each row as the store reads it, and an import parses a line at a time
+ * into batches of socialmedia.admin.import.batchSize rows (default 1000), each saved in one transaction. Memory
+ * use depends on the batch size, never on the number of rows.
+ *
+ * An import keeps every id. A row replaces any row with the same id, so a file can be imported again after a
+ * failure, and the stores hand out new ids past the largest imported. It is meant for a quiet server: a message
+ * posted while its id is being imported may be refused.
+ *
+ * The stores keep rows in arrays indexed by id, so ids are bounded: an account_id or message_id may run at most
+ * socialmedia.admin.import.maxIdGap (default 100000) past the largest id already stored plus the rows of its kind
+ * read so far. An export always fits, unless more rows than that were deleted; raise the setting to import such a
+ * file.
+ */
+public class DataTransferService {
+
+    /**
+     * The media type of an export, and of what an import expects
+     */
+    public static final String CONTENT_TYPE = "application/x-ndjson";
+
+    AccountService accountService;
+    MessageService messageService;
+    FeedService feedService;
+
+    /**
+     * The most rows saved in one transaction by an import
+     */
+    int batchSize;
+
+    /**
+     * How far an imported id may run past the ids already stored and imported, see the class comment
+     */
+    int maxIdGap;
+
+    /**
+     * @param accountService The accounts to export and import through, so its caches stay current
+     * @param messageService The messages to export and import through, so its caches stay current
+     * @param feedService The follows to export and import through, so its feeds stay current
+     */
+    public DataTransferService(AccountService accountService, MessageService messageService, FeedService feedService){
+        this.accountService = accountService;
+        this.messageService = messageService;
+        this.feedService = feedService;
+        batchSize = Math.max(1, ConfigUtil.getInt("socialmedia.admin.import.batchSize", 1000));
+        maxIdGap = Math.max(0, ConfigUtil.getInt("socialmedia.admin.import.maxIdGap", 100_000));
+    }
+
+    /**
+     * Writes every account, in account_id order, then every message, in message_id order, then every follow.
+     *
+     * Rows are read as they are written, so changes made during an export may or may not be in it. Accounts are
+     * never deleted, so every message's author and both accounts of every follow are in the file, except for
+     * accounts registered after the accounts were written: their messages and follows are left out, so the file
+     * can always be imported.
+     *
+     * @param out Where to write the records. It is flushed but not closed.
+     * @throws IOException Thrown if a record cannot be written, or the rows cannot all be read. Part of the export
+     *  may have been written by then.
+     */
+    public void export(OutputStream out) throws IOException{
+        try(JsonGenerator generator = JsonUtil.getMapper().getFactory().createGenerator(out)){
+            // Records are separated by the newline written after each, rather than Jackson's space
+            generator.setRootValueSeparator(null);
+            int[] lastAccount = new int[1];
+            try{
+                accountService.forEachAccount(account -> {
+                    writeRecord(generator, "account", account);
+                    lastAccount[0] = account.getAccount_id();
+                });
+                messageService.forEachMessage(0, Integer.MAX_VALUE, message -> {
+                    if(message.getPosted_by() <= lastAccount[0]){
+                        writeRecord(generator, "message", message);
+                    }
+                });
+                feedService.forEachFollow(follow -> {
+                    if(follow.getFollower_id() <= lastAccount[0] && follow.getFollowee_id() <= lastAccount[0]){
+                        writeRecord(generator, "follow", follow);
+                    }
+                });
+            }
+            catch(UncheckedIOException e){
+                throw e.getCause();
+            }
+        }
+    }
+
+    private static void writeRecord(JsonGenerator generator, String type, Object row){
+        try{
+            generator.writeStartObject();
+            generator.writeFieldName(type);
+            generator.writeObject(row);
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+        catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads records written by export and saves them. Records may come in any order, but a message's author and
+     * the accounts of a follow must come before it or already exist, as they do in an export.
+     *
+     * The import stops at the first line that cannot be read or saved. The lines before a bad one are still
+     * saved, and the result says how many rows were saved and which line stopped it.
+     *
+     * @param in The records. It is read to the end of the last record, and not closed.
+     * @return the rows saved, and why the import stopped if it did
+     * @throws IOException Thrown if the records cannot be read, other than for being malformed
+     */
+    public ImportResult importFrom(InputStream in) throws IOException{
+        Batches batches = new Batches();
+        try(JsonParser parser = JsonUtil.getMapper().getFactory().createParser(in)){
+            while(parser.nextToken() != null){
+                int line = parser.getTokenLocation().getLineNr();
+                if(parser.currentToken() != JsonToken.START_OBJECT || parser.nextToken() != JsonToken.FIELD_NAME){
+                    return batches.stop("expected an object holding an account, a message or a follow", line);
+                }
+                String type = parser.getCurrentName();
+                parser.nextToken();
+                Object row;
+                if("account".equals(type)){
+                    row = parser.readValueAs(Account.class);
+                }
+                else if("message".equals(type)){
+                    row = parser.readValueAs(Message.class);
+                }
+                else if("follow".equals(type)){
+                    row = parser.readValueAs(Follow.class);
+                }
+                else{
+                    return batches.stop("expected \"account\", \"message\" or \"follow\", not \"" + type + "\"",
+                        line);
+                }
+                if(row == null || parser.nextToken() != JsonToken.END_OBJECT){
+                    return batches.stop("expected one account, message or follow per line", line);
+                }
+
+                String error;
+                if(row instanceof Account){
+                    error = checkAccount((Account) row);
+                    if(error == null){
+                        error = batches.addAccount((Account) row, line);
+                    }
+                }
+                else if(row instanceof Message){
+                    error = checkMessage((Message) row);
+                    if(error == null){
+                        error = batches.addMessage((Message) row, line);
+                    }
+                }
+                else{
+                    error = checkFollow((Follow) row);
+                    if(error == null){
+                        error = batches.addFollow((Follow) row, line);
+                    }
+                }
+                if(error != null){
+                    return batches.stop(error, line);
+                }
+            }
+        }
+        catch(JsonProcessingException e){
+            return batches.stop(e.getOriginalMessage(), e.getLocation() == null ? 0 : e.getLocation().getLineNr());
+        }
+        return batches.stop(null, 0);
+    }
+
+    /**
+     * @return why the account cannot be imported, or null if it can
+     */
+    private static String checkAccount(Account account){
+        if(account.getAccount_id() <= 0){
+            return "account_id must be positive";
+        }
+        if(account.getUsername() == null || account.getUsername().isEmpty() || account.getUsername().length() > 255){
+            return "username must be 1 to 255 characters";
+        }
+        if(account.getPassword() == null || account.getPassword().isEmpty() || account.getPassword().length() > 255){
+            return "password must be 1 to 255 characters";
+        }
+        return null;
+    }
+
+    /**
+     * @return why the message cannot be imported, or null if it can
+     */
+    private static String checkMessage(Message message){
+        if(message.getMessage_id() <= 0){
+            return "message_id must be positive";
+        }
+        if(message.getPosted_by() <= 0){
+            return "posted_by must be positive";
+        }
+        return MessageStore.checkMessageText(message.getMessage_text());
+    }
+
+    /**
+     * @return why the follow cannot be imported, or null if it can
+     */
+    private static String checkFollow(Follow follow){
+        if(follow.getFollower_id() <= 0 || follow.getFollowee_id() <= 0){
+            return "follower_id and followee_id must be positive";
+        }
+        if(follow.getFollower_id() == follow.getFollowee_id()){
+            return "an account cannot follow itself";
+        }
+        return null;
+    }
+
+    /**
+     * The rows of one import waiting to be saved, and the counts of those already saved. Accounts are always
+     * saved before messages and follows, so a message or follow in the same batch as its accounts finds them.
+     */
+    private class Batches {
+        final List<Account> accounts = new ArrayList<Account>(batchSize);
+        final List<Message> messages = new ArrayList<Message>(batchSize);
+        final List<Follow> follows = new ArrayList<Follow>(batchSize);
+        int firstAccountLine;
+        int firstMessageLine;
+        int firstFollowLine;
+        int savedAccounts;
+        int savedMessages;
+        int savedFollows;
+        int failedLine;
+        // The largest account_id and message_id accepted next, see the class comment
+        long accountIdLimit = Math.min(Integer.MAX_VALUE - 1L, (long) accountService.getMaxAccountId() + maxIdGap);
+        long messageIdLimit = Math.min(Integer.MAX_VALUE - 1L, (long) messageService.getMaxMessageId() + maxIdGap);
+
+        /**
+         * @return why the batch this filled could not be saved, or null
+         */
+        String addAccount(Account account, int line){
+            if(account.getAccount_id() > accountIdLimit){
+                return "account_id must be at most " + accountIdLimit
+                    + "; ids may run at most socialmedia.admin.import.maxIdGap past those already there";
+            }
+            accountIdLimit = Math.min(Integer.MAX_VALUE - 1L, accountIdLimit + 1);
+            if(accounts.isEmpty()){
+                firstAccountLine = line;
+            }
+            accounts.add(account);
+            return accounts.size() < batchSize ? null : flushAccounts();
+        }
+
+        String addMessage(Message message, int line){
+            if(message.getMessage_id() > messageIdLimit){
+                return "message_id must be at most " + messageIdLimit
+                    + "; ids may run at most socialmedia.admin.import.maxIdGap past those already there";
+            }
+            messageIdLimit = Math.min(Integer.MAX_VALUE - 1L, messageIdLimit + 1);
+            if(messages.isEmpty()){
+                firstMessageLine = line;
+            }
+            messages.add(message);
+            return messages.size() < batchSize ? null : flushMessages();
+        }
+
+        String addFollow(Follow follow, int line){
+            if(follows.isEmpty()){
+                firstFollowLine = line;
+            }
+            follows.add(follow);
+            return follows.size() < batchSize ? null : flushFollows();
+        }
+
+        String flushAccounts(){
+            if(accounts.isEmpty()){
+                return null;
+            }
+            if(!accountService.importAccounts(accounts)){
+                failedLine = firstAccountLine;
+                return "the accounts from this line on could not be saved; a username may belong to another account";
+            }
+            savedAccounts += accounts.size();
+            accounts.clear();
+            return null;
+        }
+
+        String flushMessages(){
+            String error = flushAccounts();
+            if(error != null || messages.isEmpty()){
+                return error;
+            }
+            if(!messageService.importMessages(messages)){
+                failedLine = firstMessageLine;
+                return "the messages from this line on could not be saved; posted_by may not match an account";
+            }
+            savedMessages += messages.size();
+            messages.clear();
+            return null;
+        }
+
+        String flushFollows(){
+            String error = flushAccounts();
+            if(error != null || follows.isEmpty()){
+                return error;
+            }
+            if(!feedService.importFollows(follows)){
+                failedLine = firstFollowLine;
+                return "the follows from this line on could not be saved; an account may not exist";
+            }
+            savedFollows += follows.size();
+            follows.clear();
+            return null;
+        }
+
+        /**
+         * Saves what is waiting, then reports the result
+         *
+         * @param error Why the import stopped, or null if it ran to the end
+         * @param line The line at fault, or 0
+         */
+        ImportResult stop(String error, int line){
+            // Only a failure to save the rows waiting here can stop the import after a failed batch was reported
+            if(failedLine == 0){
+                String flushError = flushMessages();
+                if(flushError == null){
+                    flushError = flushFollows();
+                }
+                if(flushError != null){
+                    error = flushError;
+                }
+            }
+            if(failedLine != 0){
+                line = failedLine;
+            }
+            ImportResult result = new ImportResult(savedAccounts, savedMessages, error, error == null ? 0 : line);
+            result.setFollows(savedFollows);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,463 @@
+package Service;
+
+// Our custom classes imported
+import DAO.AccountStore;
+import Model.Follow;
+import Model.Message;
+import Util.CacheMXBean;
+import Util.ConfigUtil;
+import Util.LruCache;
+
+// External Libraries
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Follows, and the home feed they make up: the messages of every account an account follows, newest first by
+ * time_posted_epoch, then message_id, as in a timeline.
+ *
+ * Feeds are materialized by fan-out on write. Each recently read feed is a ring buffer of the newest
+ * socialmedia.feed.maxMessages (default 200) positions, for at most socialmedia.feed.maxAccounts (10,000) accounts,
+ * least recently read dropped first, and rebuilt after socialmedia.feed.ttlMillis (5 minutes) in case an update was
+ * missed. When MessageService creates a message its position is pushed into the buffer of each of the author's
+ * followers that has one, so a page is copied out of the buffer and looked up through the message cache, at a cost
+ * that depends on the page size rather than on the number of accounts followed.
+ *
+ * Accounts with more than socialmedia.feed.fanoutMaxFollowers (1,000) followers are not fanned out to, since each of
+ * their messages would touch that many buffers. Their messages are merged in as the feed is read instead (fan-out
+ * on read), a page from each of their timelines, which the timeline cache holds for popular accounts.
+ *
+ * A buffer is built from the newest messages of each account followed the first time its feed is read, and dropped
+ * when its owner follows or unfollows. A page deeper than the buffer reaches is merged from the timeline of every
+ * account followed.
+ */
+public class FeedService {
+
+    /**
+     * Newest first, as in a timeline: by time_posted_epoch, then message_id, descending
+     */
+    private static final Comparator<Message> NEWEST_FIRST = Comparator.comparingLong(Message::getTime_posted_epoch)
+        .thenComparingInt(Message::getMessage_id).reversed();
+
+    /**
+     * The positions of the newest messages in one account's feed, from the accounts it follows that are fanned
+     * out to, in a ring buffer. All access goes through its own lock.
+     */
+    static class Feed {
+        /**
+         * The accounts the owner follows, in account_id order
+         */
+        final int[] following;
+
+        // Newest first from head, wrapping around the end of the arrays
+        private final long[] times;
+        private final int[] ids;
+        private int head;
+        private int size;
+
+        // True if the buffer holds every message of the accounts fanned out to, so any page can be answered
+        private boolean complete;
+
+        // The accounts of following read on each page rather than fanned out to, as of pulledVersion
+        private int[] pulled;
+        private long pulledVersion = -1;
+
+        /**
+         * @param newestFirst At most capacity messages
+         */
+        Feed(int[] following, List<Message> newestFirst, int capacity, boolean complete){
+            this.following = following;
+            this.times = new long[capacity];
+            this.ids = new int[capacity];
+            for(Message message : newestFirst){
+                times[size] = message.getTime_posted_epoch();
+                ids[size] = message.getMessage_id();
+                size++;
+            }
+            this.complete = complete;
+        }
+
+        private int slot(int index){
+            return (head + index) % ids.length;
+        }
+
+        /**
+         * Binary search over the buffer in newest first order
+         *
+         * @return the index of the first position not newer than (time, id), or size if every one is newer
+         */
+        private int firstNotNewer(long time, int id){
+            int low = 0;
+            int high = size;
+            while(low < high){
+                int mid = (low + high) >>> 1;
+                int at = slot(mid);
+                if(times[at] > time || (times[at] == time && ids[at] > id)){
+                    low = mid + 1;
+                }
+                else{
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Adds a position, dropping the oldest if the buffer is full. New messages almost always go at the newest
+         * end, which only moves head; one posted with an older time shifts the newer positions along.
+         */
+        synchronized void insert(long time, int id){
+            int index = firstNotNewer(time, id);
+            if(index < size && ids[slot(index)] == id){
+                // Already loaded before this message's fan-out arrived
+                return;
+            }
+            if(index == size && (!complete || size == ids.length)){
+                // Older than everything held, so it falls outside the window this buffer covers
+                complete = false;
+                return;
+            }
+            if(size == ids.length){
+                // The oldest slot is about to be reused as the new head
+                size--;
+                complete = false;
+            }
+            head = (head + ids.length - 1) % ids.length;
+            for(int i = 0; i < index; i++){
+                times[slot(i)] = times[slot(i + 1)];
+                ids[slot(i)] = ids[slot(i + 1)];
+            }
+            times[slot(index)] = time;
+            ids[slot(index)] = id;
+            size++;
+        }
+
+        /**
+         * @param time The position the window starts after, or Long.MAX_VALUE for the newest
+         * @param id The message_id at that position, or Integer.MAX_VALUE for the newest
+         * @param limit The most positions to return
+         * @return up to limit positions after (time, id), as time_posted_epoch and message_id in turn, or null if
+         *  the buffer may be missing some of them
+         */
+        synchronized long[] window(long time, int id, int limit){
+            int start = firstNotNewer(time, id);
+            if(start < size && times[slot(start)] == time && ids[slot(start)] == id){
+                start++;
+            }
+            if(!complete && (long) start + limit > size){
+                return null;
+            }
+            long[] window = new long[Math.min(limit, size - start) * 2];
+            for(int i = 0; i < window.length / 2; i++){
+                window[2 * i] = times[slot(start + i)];
+                window[2 * i + 1] = ids[slot(start + i)];
+            }
+            return window;
+        }
+
+        /**
+         * @return the accounts followed that are read rather than fanned out to
+         */
+        synchronized int[] pulled(Set<Integer> pulledAccounts, long version){
+            if(pulledVersion != version){
+                pulled = Arrays.stream(following).filter(pulledAccounts::contains).toArray();
+                pulledVersion = version;
+            }
+            return pulled;
+        }
+    }
+
+    AccountStore accountStore;
+    MessageService messageService;
+
+    /**
+     * The most positions a feed's buffer holds
+     */
+    int maxMessages;
+
+    /**
+     * Accounts with more followers than this are merged into feeds as they are read rather than fanned out to
+     */
+    int fanoutMaxFollowers;
+
+    // Buffers of recently read feeds by account_id, or null if disabled, in which case every page is merged
+    LruCache<Integer, Feed> feeds;
+
+    // The accounts with more than fanoutMaxFollowers followers, and a version moved on whenever it changes
+    private final Set<Integer> pulledAccounts = ConcurrentHashMap.newKeySet();
+    private final AtomicLong pulledVersion = new AtomicLong();
+
+    /**
+     * @param accountStore Where follows are kept
+     * @param messageService The messages to fill feeds from, through its caches. Its new messages are passed to
+     *  messageCreated once it is given this service.
+     */
+    public FeedService(AccountStore accountStore, MessageService messageService){
+        this.accountStore = accountStore;
+        this.messageService = messageService;
+        maxMessages = Math.max(1, ConfigUtil.getInt("socialmedia.feed.maxMessages", 200));
+        fanoutMaxFollowers = Math.max(0, ConfigUtil.getInt("socialmedia.feed.fanoutMaxFollowers", 1_000));
+
+        int maxAccounts = ConfigUtil.getInt("socialmedia.feed.maxAccounts", 10_000);
+        if(maxAccounts > 0){
+            feeds = new LruCache<>("feeds", maxAccounts, ConfigUtil.getLong("socialmedia.feed.ttlMillis", 300_000));
+        }
+        pulledAccounts.addAll(accountStore.getAccountsFollowedByMoreThan(fanoutMaxFollowers));
+    }
+
+    /**
+     * @return true if follower_id now follows followee_id, false if either account does not exist or they are the
+     *  same account
+     */
+    public boolean follow(int follower_id, int followee_id){
+        if(!accountStore.follow(follower_id, followee_id)){
+            return false;
+        }
+        followsChanged(follower_id, followee_id);
+        return true;
+    }
+
+    /**
+     * @return true if follower_id followed followee_id and no longer does
+     */
+    public boolean unfollow(int follower_id, int followee_id){
+        if(!accountStore.unfollow(follower_id, followee_id)){
+            return false;
+        }
+        followsChanged(follower_id, followee_id);
+        return true;
+    }
+
+    /**
+     * @return a keyset page of the accounts following the account, in account_id order
+     */
+    public List<Integer> getFollowers(int account_id, int after_id, int limit){
+        return accountStore.getFollowers(account_id, after_id, limit);
+    }
+
+    /**
+     * @return a keyset page of the accounts the account follows, in account_id order
+     */
+    public List<Integer> getFollowing(int account_id, int after_id, int limit){
+        return accountStore.getFollowing(account_id, after_id, limit);
+    }
+
+    public void forEachFollow(Consumer<Follow> consumer){
+        accountStore.forEachFollow(consumer);
+    }
+
+    /**
+     * Writes follows as they were exported. See AccountStore.importFollows.
+     *
+     * @return true if the follows were saved
+     */
+    public boolean importFollows(List<Follow> follows){
+        if(!accountStore.importFollows(follows)){
+            return false;
+        }
+        Set<Integer> pulled = new HashSet<Integer>(accountStore.getAccountsFollowedByMoreThan(fanoutMaxFollowers));
+        pulledAccounts.retainAll(pulled);
+        pulledAccounts.addAll(pulled);
+        pulledVersion.incrementAndGet();
+        invalidateAll();
+        return true;
+    }
+
+    /**
+     * @param after_id The message_id of the last message already seen, or 0 for the first page. If it is not a
+     *  message, the page is empty.
+     * @return at most limit messages from the accounts the account follows, newest first
+     */
+    public List<Message> getFeedPage(int account_id, int after_id, int limit){
+        long time = Long.MAX_VALUE;
+        int id = Integer.MAX_VALUE;
+        if(after_id != 0){
+            Message cursor = messageService.getMessageByID(after_id);
+            if(cursor == null){
+                return Collections.emptyList();
+            }
+            time = cursor.getTime_posted_epoch();
+            id = after_id;
+        }
+
+        Feed feed = feeds == null ? null : feeds.get(account_id, this::buildFeed);
+        if(feed == null){
+            return merge(readTimelines(following(account_id), time, id, limit), limit);
+        }
+        List<Message> pushed = readWindow(feed, time, id, limit);
+        if(pushed == null){
+            // Deeper than the buffer reaches
+            return merge(readTimelines(feed.following, time, id, limit), limit);
+        }
+        List<List<Message>> pages = readTimelines(feed.pulled(pulledAccounts, pulledVersion.get()), time, id, limit);
+        if(pages.isEmpty()){
+            return pushed;
+        }
+        pages.add(pushed);
+        return merge(pages, limit);
+    }
+
+    /**
+     * Looks up the messages at the positions after (time, id) in a buffer. A message deleted since it was pushed
+     * is skipped, and the window is read further to make up for it.
+     *
+     * @return up to limit messages, newest first, or null if the buffer does not reach far enough
+     */
+    private List<Message> readWindow(Feed feed, long time, int id, int limit){
+        List<Message> messages = new ArrayList<Message>(limit);
+        while(messages.size() < limit){
+            int wanted = limit - messages.size();
+            long[] window = feed.window(time, id, wanted);
+            if(window == null){
+                return null;
+            }
+            for(int i = 0; i < window.length; i += 2){
+                Message message = messageService.getMessageByID((int) window[i + 1]);
+                if(message != null){
+                    messages.add(message);
+                }
+            }
+            if(window.length / 2 < wanted){
+                // The end of a buffer that holds everything
+                break;
+            }
+            time = window[window.length - 2];
+            id = (int) window[window.length - 1];
+        }
+        return messages;
+    }
+
+    /**
+     * @return a page after (time, id) from each account's timeline. The first page goes through the timeline
+     *  cache.
+     */
+    private List<List<Message>> readTimelines(int[] accounts, long time, int id, int limit){
+        List<List<Message>> pages = new ArrayList<List<Message>>(accounts.length + 1);
+        for(int account : accounts){
+            pages.add(time == Long.MAX_VALUE && id == Integer.MAX_VALUE
+                ? messageService.getMessagesFromUserPage(account, 0, limit)
+                : messageService.getMessagesFromUserBefore(account, time, id, limit));
+        }
+        return pages;
+    }
+
+    /**
+     * @param pages Pages of messages, each newest first
+     * @return the newest limit messages among them, newest first, each once
+     */
+    private static List<Message> merge(List<List<Message>> pages, int limit){
+        List<Message> all = new ArrayList<Message>();
+        for(List<Message> page : pages){
+            all.addAll(page);
+        }
+        all.sort(NEWEST_FIRST);
+        List<Message> merged = new ArrayList<Message>(Math.min(limit, all.size()));
+        for(Message message : all){
+            if(merged.size() == limit){
+                break;
+            }
+            // A message fanned out before its author passed fanoutMaxFollowers may also come from its timeline
+            if(merged.isEmpty() || merged.get(merged.size() - 1).getMessage_id() != message.getMessage_id()){
+                merged.add(message);
+            }
+        }
+        return merged;
+    }
+
+    private int[] following(int account_id){
+        return accountStore.getFollowing(account_id, 0, Integer.MAX_VALUE).stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Builds the buffer of an account's feed from the newest messages of each account it follows that is fanned
+     * out to
+     */
+    private Feed buildFeed(int account_id){
+        int[] following = following(account_id);
+        List<List<Message>> pages = new ArrayList<List<Message>>(following.length);
+        int total = 0;
+        for(int followee : following){
+            if(!pulledAccounts.contains(followee)){
+                List<Message> page = messageService.getMessagesFromUserPage(followee, 0, maxMessages);
+                pages.add(page);
+                total += page.size();
+            }
+        }
+        return new Feed(following, merge(pages, maxMessages), maxMessages, total < maxMessages);
+    }
+
+    /**
+     * Pushes a new message into the buffer of each of its author's followers that has one, unless the author has
+     * too many followers to fan out to. Called by MessageService once the message is saved.
+     */
+    public void messageCreated(Message message){
+        int author = message.getPosted_by();
+        if(feeds == null || pulledAccounts.contains(author)){
+            return;
+        }
+        List<Integer> followers = accountStore.getFollowers(author, 0, fanoutMaxFollowers + 1);
+        if(followers.size() > fanoutMaxFollowers){
+            // Followed by more accounts than when it was last counted, eg through an import
+            if(pulledAccounts.add(author)){
+                pulledVersion.incrementAndGet();
+            }
+            return;
+        }
+        for(int follower : followers){
+            Feed feed = feeds.getIfPresent(follower);
+            if(feed != null){
+                feed.insert(message.getTime_posted_epoch(), message.getMessage_id());
+            }
+            else{
+                // Make sure a build that started before the insert cannot cache a buffer without it
+                feeds.invalidate(follower);
+            }
+        }
+    }
+
+    /**
+     * Drops every buffer, for writes that may move messages between accounts, such as an import
+     */
+    public void invalidateAll(){
+        if(feeds != null){
+            feeds.invalidateAll();
+        }
+    }
+
+    /**
+     * The follower's buffer no longer matches whom it follows, and the followee may have crossed
+     * fanoutMaxFollowers either way
+     */
+    private void followsChanged(int follower_id, int followee_id){
+        if(feeds != null){
+            feeds.invalidate(follower_id);
+        }
+        List<Integer> followers = accountStore.getFollowers(followee_id, 0, fanoutMaxFollowers + 1);
+        boolean pulled = followers.size() > fanoutMaxFollowers;
+        if(pulled ? pulledAccounts.add(followee_id) : pulledAccounts.remove(followee_id)){
+            pulledVersion.incrementAndGet();
+            if(!pulled && feeds != null){
+                // Its messages were never pushed into its followers' buffers, which must now hold them
+                for(int follower : followers){
+                    feeds.invalidate(follower);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the buffers of recently read feeds, for inspecting their hit, miss and eviction counters, or null if
+     *  disabled
+     */
+    public CacheMXBean getFeeds(){
+        return feeds;
+    }
+}
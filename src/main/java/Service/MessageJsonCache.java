@@ -0,0 +1,237 @@
+package Service;
+
+// Our custom classes imported
+import Model.Message;
+import Util.CacheMXBean;
+import Util.JsonUtil;
+
+// External Libraries
+import com.fasterxml.jackson.core.util.BufferRecycler;
+import com.fasterxml.jackson.core.util.BufferRecyclers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Keeps the UTF-8 JSON of recently sent messages, so a list of messages can be written by copying bytes rather
+ * than running Jackson over the same fields again.
+ *
+ * The cache is a table indexed by message_id modulo its size. message_ids are handed out in order, so the newest
+ * maxSize messages never share a slot, and a lookup is an array read with no locking or boxing. Each entry keeps
+ * the fields it was encoded from and is only used for a Message whose fields are still the same, so an entry
+ * that raced with an update is re-encoded rather than sent. Updates and deletes still drop their entry, so the
+ * table does not hold text that can no longer be sent.
+ *
+ * Registers itself with the platform MBean server under "Util:type=Cache,name=messageJson".
+ */
+public class MessageJsonCache implements CacheMXBean {
+
+    /**
+     * One encoded message. Its fields are final, so an entry read from the table without locking is always
+     * seen whole.
+     */
+    private static class Entry {
+        final int message_id;
+        final int posted_by;
+        final String message_text;
+        final long time_posted_epoch;
+        final byte[] json;
+
+        Entry(Message message, byte[] json){
+            this.message_id = message.getMessage_id();
+            this.posted_by = message.getPosted_by();
+            this.message_text = message.getMessage_text();
+            this.time_posted_epoch = message.getTime_posted_epoch();
+            this.json = json;
+        }
+
+        boolean encodes(Message message){
+            return message_id == message.getMessage_id()
+                && posted_by == message.getPosted_by()
+                && time_posted_epoch == message.getTime_posted_epoch()
+                && (message_text == message.getMessage_text()
+                    || message_text != null && message_text.equals(message.getMessage_text()));
+        }
+    }
+
+    private final Entry[] entries;
+    private final int mask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maxSize how many messages to keep, rounded up to a power of two
+     */
+    public MessageJsonCache(int maxSize){
+        if(maxSize < 1){
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        int size = Integer.highestOneBit(Math.min(maxSize, 1 << 30));
+        if(size < maxSize){
+            size <<= 1;
+        }
+        entries = new Entry[size];
+        mask = size - 1;
+        registerMBean();
+    }
+
+    /**
+     * @return the JSON of the message, from the cache if it holds this message as it is now, otherwise encoded
+     *  and cached. The array is shared and must not be modified.
+     */
+    public byte[] encode(Message message){
+        int slot = message.getMessage_id() & mask;
+        Entry entry = entries[slot];
+        if(entry != null && entry.encodes(message)){
+            hits.increment();
+            return entry.json;
+        }
+        misses.increment();
+        byte[] json;
+        try{
+            json = JsonUtil.getMapper().writeValueAsBytes(message);
+        }
+        catch(IOException e){
+            // Only thrown for an unserializable type, which Message is not
+            throw new IllegalStateException(e);
+        }
+        if(entry != null && entry.message_id != message.getMessage_id()){
+            evictions.increment();
+        }
+        entries[slot] = new Entry(message, json);
+        return json;
+    }
+
+    /**
+     * Writes the messages as a JSON array, the same bytes Jackson would write for the list.
+     *
+     * The array is gathered into Jackson's recycled write buffer and written out 8 KB at a time, as Jackson itself
+     * does, so the response stream is not written a fragment at a time and no buffer is allocated per call. The
+     * first write is the whole array or a full buffer, which is what response compression judges the size by.
+     *
+     * @param out The stream to write to
+     */
+    public void writeArray(List<Message> messages, OutputStream out) throws IOException{
+        BufferRecycler recycler = BufferRecyclers.getBufferRecycler();
+        byte[] buffer = recycler.allocByteBuffer(BufferRecycler.BYTE_WRITE_ENCODING_BUFFER);
+        try{
+            int length = 0;
+            buffer[length++] = '[';
+            for(int i = 0; i < messages.size(); i++){
+                byte[] json = encode(messages.get(i));
+                // Room for the comma before it and the closing bracket after
+                if(length + json.length + 2 > buffer.length){
+                    out.write(buffer, 0, length);
+                    length = 0;
+                }
+                if(i > 0){
+                    buffer[length++] = ',';
+                }
+                if(json.length + 2 > buffer.length){
+                    // Larger than the whole buffer, which a message of at most 255 characters never is
+                    out.write(buffer, 0, length);
+                    out.write(json);
+                    length = 0;
+                }
+                else{
+                    System.arraycopy(json, 0, buffer, length, json.length);
+                    length += json.length;
+                }
+            }
+            buffer[length++] = ']';
+            out.write(buffer, 0, length);
+        }
+        finally{
+            recycler.releaseByteBuffer(BufferRecycler.BYTE_WRITE_ENCODING_BUFFER, buffer);
+        }
+    }
+
+    /**
+     * Drops the entry for a message that was updated or deleted.
+     */
+    public void invalidate(int message_id){
+        int slot = message_id & mask;
+        Entry entry = entries[slot];
+        if(entry != null && entry.message_id == message_id){
+            entries[slot] = null;
+            invalidations.increment();
+        }
+    }
+
+    /**
+     * Registers this cache as an MBean, replacing any earlier one, as LruCache does.
+     */
+    private void registerMBean(){
+        try{
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("Util:type=Cache,name=" + ObjectName.quote("messageJson"));
+            if(server.isRegistered(objectName)){
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        }
+        catch(Exception e){
+            System.out.println("Unable to register cache MBean: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public int getSize(){
+        int size = 0;
+        for(Entry entry : entries){
+            if(entry != null){
+                size++;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public int getMaxSize(){
+        return entries.length;
+    }
+
+    @Override
+    public long getHits(){
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses(){
+        return misses.sum();
+    }
+
+    @Override
+    public long getEvictions(){
+        return evictions.sum();
+    }
+
+    /**
+     * @return 0, entries do not expire: they are checked against the message on every use instead
+     */
+    @Override
+    public long getExpirations(){
+        return 0;
+    }
+
+    @Override
+    public long getInvalidations(){
+        return invalidations.sum();
+    }
+
+    @Override
+    public double getHitRate(){
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+}
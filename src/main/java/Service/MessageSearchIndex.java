@@ -0,0 +1,543 @@
+package Service;
+
+// Our custom classes imported
+import Model.Message;
+
+// External Libraries
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory inverted index over message_text, for GET /messages/search.
+ *
+ * Text is split into terms at anything that is not a letter or digit and lower cased. Each term maps to the
+ * message_ids containing it, kept sorted, with how often it occurs in each. The index is built from the database
+ * once and then kept up to date with every insert, update and delete, like TimelineCache.
+ *
+ * A query is one or more terms, all of which must match. A term ending in * matches every term starting with
+ * what comes before it, up to MAX_PREFIX_EXPANSION of them. Matches are ranked by BM25, the usual relevance score
+ * that favours rare terms and short messages, with newer messages first on equal scores.
+ *
+ * Searches share a read lock and changes take the write lock, which is held only for the few term lists a
+ * message touches.
+ */
+public class MessageSearchIndex {
+
+    /**
+     * The most query terms looked at; any beyond are ignored
+     */
+    static final int MAX_QUERY_TERMS = 8;
+
+    /**
+     * The most index terms a prefix term is expanded to, in alphabetical order
+     */
+    static final int MAX_PREFIX_EXPANSION = 64;
+
+    /**
+     * Terms longer than this are cut short, so one long run of letters cannot bloat the dictionary
+     */
+    static final int MAX_TERM_LENGTH = 64;
+
+    // BM25 parameters: term frequency saturation and length normalisation, at their customary values
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    /**
+     * The message_ids containing one term, ascending, and the number of times the term occurs in each
+     */
+    private static class Postings {
+        int[] ids = new int[4];
+        int[] frequencies = new int[4];
+        int size;
+
+        void add(int message_id, int frequency){
+            // Nearly always the newest message, so nearly always an append
+            int index = size == 0 || ids[size - 1] < message_id ? size : Arrays.binarySearch(ids, 0, size, message_id);
+            if(index >= 0 && index < size){
+                frequencies[index] = frequency;
+                return;
+            }
+            if(index < 0){
+                index = -index - 1;
+            }
+            if(size == ids.length){
+                ids = Arrays.copyOf(ids, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            System.arraycopy(frequencies, index, frequencies, index + 1, size - index);
+            ids[index] = message_id;
+            frequencies[index] = frequency;
+            size++;
+        }
+
+        void remove(int message_id){
+            int index = Arrays.binarySearch(ids, 0, size, message_id);
+            if(index < 0){
+                return;
+            }
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            System.arraycopy(frequencies, index + 1, frequencies, index, size - index - 1);
+            size--;
+        }
+    }
+
+    /**
+     * What the index holds about one message, so its entries can be found again when it changes
+     */
+    private static class Document {
+        final String[] terms;
+        final int length;
+
+        Document(String[] terms, int length){
+            this.terms = terms;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Matching message_ids, ascending. Either each has a score already, or the score is worked out from the term's
+     * frequency when needed, so a long postings list is only scored where it survives an intersection.
+     */
+    private static class Matches {
+        final int[] ids;
+        final int size;
+        final double[] scores;
+        final int[] frequencies;
+        final double idf;
+
+        Matches(int[] ids, int size, double[] scores){
+            this.ids = ids;
+            this.size = size;
+            this.scores = scores;
+            this.frequencies = null;
+            this.idf = 0;
+        }
+
+        Matches(Postings postings, double idf){
+            this.ids = postings.ids;
+            this.size = postings.size;
+            this.scores = null;
+            this.frequencies = postings.frequencies;
+            this.idf = idf;
+        }
+    }
+
+    /**
+     * One page of search results
+     */
+    public static class Result {
+        private final List<Integer> message_ids;
+        private final int total;
+
+        Result(List<Integer> message_ids, int total){
+            this.message_ids = message_ids;
+            this.total = total;
+        }
+
+        /**
+         * @return the message_ids on this page, best match first
+         */
+        public List<Integer> getMessage_ids(){
+            return message_ids;
+        }
+
+        /**
+         * @return the number of messages matching the query in all
+         */
+        public int getTotal(){
+            return total;
+        }
+    }
+
+    // Sorted, so the terms sharing a prefix are next to each other
+    private final TreeMap<String, Postings> terms = new TreeMap<String, Postings>();
+    private final Map<Integer, Document> documents = new HashMap<Integer, Document>();
+    // Number of terms in each message, by message_id, for scoring without a map lookup per match
+    private int[] lengths = new int[1024];
+    private long totalLength;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Splits text into lower case terms, in order, duplicates included
+     *
+     * @param text The text to split, may be null
+     * @return the terms, possibly none
+     */
+    static List<String> tokenize(String text){
+        List<String> tokens = new ArrayList<String>();
+        if(text == null){
+            return tokens;
+        }
+        int start = -1;
+        for(int i = 0; i <= text.length(); i++){
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if(wordChar && start < 0){
+                start = i;
+            }
+            else if(!wordChar && start >= 0){
+                tokens.add(text.substring(start, Math.min(i, start + MAX_TERM_LENGTH)).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Adds a message, or replaces what is indexed for it if it is already there
+     *
+     * @param message The message as stored
+     */
+    public void messageCreated(Message message){
+        List<String> tokens = tokenize(message.getMessage_text());
+        Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+        for(String token : tokens){
+            counts.merge(token, 1, Integer::sum);
+        }
+
+        lock.writeLock().lock();
+        try{
+            String[] documentTerms = counts.keySet().toArray(new String[0]);
+            Document existing = documents.get(message.getMessage_id());
+            if(existing != null && Arrays.equals(existing.terms, documentTerms)){
+                // Same words, so only the frequencies can have changed: overwrite them where they are, rather than
+                // shifting every posting list the message is in out and back again
+                for(Map.Entry<String, Integer> count : counts.entrySet()){
+                    terms.get(count.getKey()).add(message.getMessage_id(), count.getValue());
+                }
+                documents.put(message.getMessage_id(), new Document(documentTerms, tokens.size()));
+                lengths[message.getMessage_id()] = tokens.size();
+                totalLength += tokens.size() - existing.length;
+                return;
+            }
+
+            removeLocked(message.getMessage_id());
+            for(Map.Entry<String, Integer> count : counts.entrySet()){
+                Postings postings = terms.get(count.getKey());
+                if(postings == null){
+                    postings = new Postings();
+                    terms.put(count.getKey(), postings);
+                }
+                postings.add(message.getMessage_id(), count.getValue());
+            }
+            documents.put(message.getMessage_id(), new Document(documentTerms, tokens.size()));
+            if(message.getMessage_id() >= lengths.length){
+                lengths = Arrays.copyOf(lengths, Math.max(message.getMessage_id() + 1, lengths.length * 2));
+            }
+            lengths[message.getMessage_id()] = tokens.size();
+            totalLength += tokens.size();
+        }
+        finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Re-indexes a message whose text has changed
+     *
+     * @param message The message with its new text
+     */
+    public void messageUpdated(Message message){
+        messageCreated(message);
+    }
+
+    /**
+     * Removes a message from the index
+     *
+     * @param message The message that was deleted
+     */
+    public void messageDeleted(Message message){
+        lock.writeLock().lock();
+        try{
+            removeLocked(message.getMessage_id());
+        }
+        finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeLocked(int message_id){
+        Document document = documents.remove(message_id);
+        if(document == null){
+            return;
+        }
+        for(String term : document.terms){
+            Postings postings = terms.get(term);
+            if(postings != null){
+                postings.remove(message_id);
+                if(postings.size == 0){
+                    terms.remove(term);
+                }
+            }
+        }
+        totalLength -= document.length;
+    }
+
+    /**
+     * Finds the messages matching every term of a query, best first
+     *
+     * @param query Terms separated by spaces or punctuation; a term ending in * is a prefix
+     * @param offset How many of the best matches to skip
+     * @param limit The most message_ids to return
+     * @return the page of matches and the total number of matches
+     */
+    public Result search(String query, int offset, int limit){
+        List<String> queryTerms = new ArrayList<String>();
+        List<Boolean> prefixes = new ArrayList<Boolean>();
+        for(String word : query.trim().split("\\s+")){
+            boolean prefix = word.endsWith("*");
+            List<String> tokens = tokenize(word);
+            for(int i = 0; i < tokens.size() && queryTerms.size() < MAX_QUERY_TERMS; i++){
+                queryTerms.add(tokens.get(i));
+                // Only the last piece of eg "don't*" is a prefix
+                prefixes.add(prefix && i == tokens.size() - 1);
+            }
+        }
+        if(queryTerms.isEmpty()){
+            return new Result(Collections.emptyList(), 0);
+        }
+
+        lock.readLock().lock();
+        try{
+            double averageLength = documents.isEmpty() ? 1 : Math.max(1, (double) totalLength / documents.size());
+            List<Matches> termMatches = new ArrayList<Matches>(queryTerms.size());
+            for(int i = 0; i < queryTerms.size(); i++){
+                Matches matches = prefixes.get(i) ? matchPrefix(queryTerms.get(i), averageLength)
+                    : matchTerm(queryTerms.get(i));
+                if(matches.size == 0){
+                    return new Result(Collections.emptyList(), 0);
+                }
+                termMatches.add(matches);
+            }
+            Matches matches = intersect(termMatches, averageLength);
+            return new Result(top(matches, offset, limit), matches.size);
+        }
+        finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    private Matches matchTerm(String term){
+        Postings postings = terms.get(term);
+        if(postings == null){
+            return new Matches(new int[0], 0, new double[0]);
+        }
+        return new Matches(postings, idf(postings.size));
+    }
+
+    private Matches matchPrefix(String prefix, double averageLength){
+        // Score each expansion, then merge them pairwise so each match is copied once per level
+        List<Matches> expansions = new ArrayList<Matches>();
+        for(Postings postings : terms.subMap(prefix, prefix + Character.MAX_VALUE).values()){
+            if(expansions.size() == MAX_PREFIX_EXPANSION){
+                break;
+            }
+            Matches term = new Matches(postings, idf(postings.size));
+            double[] scores = new double[term.size];
+            for(int i = 0; i < term.size; i++){
+                scores[i] = score(term, i, averageLength);
+            }
+            expansions.add(new Matches(term.ids, term.size, scores));
+        }
+        if(expansions.isEmpty()){
+            return new Matches(new int[0], 0, new double[0]);
+        }
+        while(expansions.size() > 1){
+            List<Matches> merged = new ArrayList<Matches>((expansions.size() + 1) / 2);
+            for(int i = 0; i < expansions.size(); i += 2){
+                merged.add(i + 1 < expansions.size() ? union(expansions.get(i), expansions.get(i + 1)) : expansions.get(i));
+            }
+            expansions = merged;
+        }
+        return expansions.get(0);
+    }
+
+    private double idf(int matching){
+        int count = documents.size();
+        return Math.log(1 + (count - matching + 0.5) / (matching + 0.5));
+    }
+
+    // BM25 weight of the term in the message at the given position of its matches
+    private double score(Matches matches, int position, double averageLength){
+        if(matches.scores != null){
+            return matches.scores[position];
+        }
+        int message_id = matches.ids[position];
+        double length = message_id < lengths.length ? lengths[message_id] : averageLength;
+        double frequency = matches.frequencies[position];
+        return matches.idf * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / averageLength));
+    }
+
+    /**
+     * The messages matching every term, with their scores summed. Starts from the term with the fewest matches
+     * and looks each survivor up in the next list by galloping search, so a rare term makes a common one cheap.
+     */
+    private Matches intersect(List<Matches> termMatches, double averageLength){
+        termMatches.sort((a, b) -> Integer.compare(a.size, b.size));
+        Matches first = termMatches.get(0);
+        int size = first.size;
+        int[] ids = Arrays.copyOf(first.ids, size);
+        double[] scores = new double[size];
+        for(int i = 0; i < size; i++){
+            scores[i] = score(first, i, averageLength);
+        }
+
+        for(int t = 1; t < termMatches.size() && size > 0; t++){
+            Matches next = termMatches.get(t);
+            int kept = 0;
+            int position = 0;
+            for(int i = 0; i < size && position < next.size; i++){
+                position = gallop(next.ids, position, next.size, ids[i]);
+                if(position < next.size && next.ids[position] == ids[i]){
+                    ids[kept] = ids[i];
+                    scores[kept++] = scores[i] + score(next, position, averageLength);
+                }
+            }
+            size = kept;
+        }
+        return new Matches(ids, size, scores);
+    }
+
+    // The first position at or after from whose id is at least target
+    private static int gallop(int[] ids, int from, int size, int target){
+        int step = 1;
+        int high = from;
+        while(high < size && ids[high] < target){
+            from = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        int index = Arrays.binarySearch(ids, from, Math.min(high + 1, size), target);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    // A message matching several expansions of one prefix keeps its best score, rather than the sum
+    private static Matches union(Matches a, Matches b){
+        int[] ids = new int[a.size + b.size];
+        double[] scores = new double[a.size + b.size];
+        int i = 0, j = 0, n = 0;
+        while(i < a.size || j < b.size){
+            if(j == b.size || (i < a.size && a.ids[i] < b.ids[j])){
+                ids[n] = a.ids[i];
+                scores[n++] = a.scores[i++];
+            }
+            else if(i == a.size || b.ids[j] < a.ids[i]){
+                ids[n] = b.ids[j];
+                scores[n++] = b.scores[j++];
+            }
+            else{
+                ids[n] = a.ids[i];
+                scores[n++] = Math.max(a.scores[i++], b.scores[j++]);
+            }
+        }
+        return new Matches(ids, n, scores);
+    }
+
+    /**
+     * The page of matches after the best offset of them. The best offset + limit are kept in a bounded min-heap
+     * of positions, whose head is the worst kept match, so most matches cost one comparison.
+     */
+    private static List<Integer> top(Matches matches, int offset, int limit){
+        int wanted = (int) Math.min((long) offset + limit, matches.size);
+        if(offset >= wanted){
+            return Collections.emptyList();
+        }
+        int[] heap = new int[wanted];
+        int size = 0;
+        for(int i = 0; i < matches.size; i++){
+            if(size < wanted){
+                heap[size] = i;
+                siftUp(matches, heap, size++);
+            }
+            else if(better(matches, i, heap[0])){
+                heap[0] = i;
+                siftDown(matches, heap, size);
+            }
+        }
+
+        // Empty the heap worst first, filling the page from the back
+        Integer[] best = new Integer[size];
+        while(size > 0){
+            best[--size] = matches.ids[heap[0]];
+            heap[0] = heap[size];
+            siftDown(matches, heap, size);
+        }
+        return Arrays.asList(best).subList(offset, best.length);
+    }
+
+    // Higher score first, then the newer message
+    private static boolean better(Matches matches, int x, int y){
+        int byScore = Double.compare(matches.scores[x], matches.scores[y]);
+        return byScore != 0 ? byScore > 0 : matches.ids[x] > matches.ids[y];
+    }
+
+    private static void siftUp(Matches matches, int[] heap, int index){
+        while(index > 0){
+            int parent = (index - 1) / 2;
+            if(!better(matches, heap[parent], heap[index])){
+                break;
+            }
+            int swap = heap[parent];
+            heap[parent] = heap[index];
+            heap[index] = swap;
+            index = parent;
+        }
+    }
+
+    private static void siftDown(Matches matches, int[] heap, int size){
+        int index = 0;
+        while(true){
+            int worst = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if(left < size && better(matches, heap[worst], heap[left])){
+                worst = left;
+            }
+            if(right < size && better(matches, heap[worst], heap[right])){
+                worst = right;
+            }
+            if(worst == index){
+                return;
+            }
+            int swap = heap[worst];
+            heap[worst] = heap[index];
+            heap[index] = swap;
+            index = worst;
+        }
+    }
+
+    /**
+     * @return the number of messages indexed
+     */
+    public int getMessageCount(){
+        lock.readLock().lock();
+        try{
+            return documents.size();
+        }
+        finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of distinct terms indexed
+     */
+    public int getTermCount(){
+        lock.readLock().lock();
+        try{
+            return terms.size();
+        }
+        finally{
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -2,41 +2,464 @@ package Service;
 
 // Our custom classes imported
 import DAO.MessageDAO;
+import DAO.MessageStore;
 import Model.Message;
+import Model.MessageBatchResult;
+import Util.ConfigUtil;
+import Util.LruCache;
 
 // External Libraries
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 public class MessageService {
 
-    MessageDAO messageDao;
+    MessageStore messageStore;
+
+    // Read-through cache of individual messages by message_id, or null if disabled
+    LruCache<Integer, Message> messageCache;
+
+    // Encoded JSON of recently sent messages, or null if disabled
+    MessageJsonCache jsonCache;
+
+    // Newest messages of recently viewed accounts, or null if disabled
+    TimelineCache timelineCache;
+
+    // Inverted index over message_text for search, or null if disabled
+    MessageSearchIndex searchIndex;
+
+    // Queue that new messages are written through when write-behind is enabled, or null to insert synchronously
+    MessageWriteQueue writeQueue;
+
+    // Home feeds that new messages are fanned out to, or null if none have been attached
+    FeedService feedService;
+
+    // Updates and deletes of the same message hold the same lock, so the caches apply them in database order.
+    // These are held across database calls, so they are ReentrantLocks: a virtual thread blocked in a synchronized
+    // block would pin its carrier thread for the whole query.
+    private final ReentrantLock[] writeLocks = new ReentrantLock[64];
+
+    // Versions of the message collections, moved on by every write so clients can tell whether their copy is still
+    // current. accountVersions has a slot per account_id modulo its length; accounts sharing a slot only cost each
+    // other an unneeded refetch. Versions start at a random value so that one from before a restart is not reused.
+    private final AtomicLong messagesVersion;
+    private final AtomicLongArray accountVersions = new AtomicLongArray(1024);
 
     // When initialized, create a new interface with the database.
     public MessageService(){
-        messageDao = new MessageDAO();
+        this(new MessageDAO());
+    }
+
+    /**
+     * @param messageStore Where messages are kept, from the StorageEngine chosen at startup
+     */
+    public MessageService(MessageStore messageStore){
+        this.messageStore = messageStore;
+
+        int cacheSize = ConfigUtil.getInt("socialmedia.cache.messages.maxSize", 10_000);
+        if(cacheSize > 0){
+            messageCache = new LruCache<>("messages", cacheSize,
+                ConfigUtil.getLong("socialmedia.cache.messages.ttlMillis", 60_000));
+        }
+
+        int jsonCacheSize = ConfigUtil.getInt("socialmedia.cache.json.maxSize", 16_384);
+        if(jsonCacheSize > 0){
+            jsonCache = new MessageJsonCache(jsonCacheSize);
+        }
+
+        int timelineAccounts = ConfigUtil.getInt("socialmedia.cache.timelines.maxAccounts", 1_000);
+        if(timelineAccounts > 0){
+            timelineCache = new TimelineCache(timelineAccounts,
+                ConfigUtil.getInt("socialmedia.cache.timelines.maxMessages", 200),
+                ConfigUtil.getLong("socialmedia.cache.timelines.ttlMillis", 300_000),
+                (account_id, limit) -> messageStore.getMessagesFromUserPage(account_id, 0, limit));
+        }
+
+        if(ConfigUtil.getBoolean("socialmedia.search.enabled", true)){
+            searchIndex = new MessageSearchIndex();
+            messageStore.forEachMessage(0, Integer.MAX_VALUE, searchIndex::messageCreated);
+        }
+
+        MessageWriteQueue.Settings writeBehind = MessageWriteQueue.Settings.fromConfig();
+        if(writeBehind.enabled){
+            writeQueue = new MessageWriteQueue(messageStore, writeBehind, created -> messageCreated(copyOf(created)));
+        }
+
+        for(int i = 0; i < writeLocks.length; i++){
+            writeLocks[i] = new ReentrantLock();
+        }
+
+        long initialVersion = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE / 2);
+        messagesVersion = new AtomicLong(initialVersion);
+        for(int i = 0; i < accountVersions.length(); i++){
+            accountVersions.set(i, initialVersion);
+        }
     }
 
     public List<Message> getAllMessages(){
-        return messageDao.getAllMessages();
+        return messageStore.getAllMessages();
     }
 
+    /**
+     * Served from the account's cached timeline when it holds all of the account's messages.
+     */
     public List<Message> getAllMessagesFromUser(int account_id){
-        return messageDao.getAllMessagesFromUser(account_id);
+        if(timelineCache != null){
+            List<Message> cached = timelineCache.getAll(account_id);
+            if(cached != null){
+                return cached;
+            }
+        }
+        return messageStore.getAllMessagesFromUser(account_id);
+    }
+
+    public List<Message> getMessagesPage(int after_id, int limit){
+        return messageStore.getMessagesPage(after_id, limit);
     }
 
+    /**
+     * Served from the account's cached timeline when the page lies within the messages it holds.
+     */
+    public List<Message> getMessagesFromUserPage(int account_id, int after_id, int limit){
+        if(timelineCache != null){
+            List<Message> cached = timelineCache.getPage(account_id, after_id, limit);
+            if(cached != null){
+                return cached;
+            }
+        }
+        return messageStore.getMessagesFromUserPage(account_id, after_id, limit);
+    }
+
+    /**
+     * See MessageStore.getMessagesFromUserBefore
+     */
+    public List<Message> getMessagesFromUserBefore(int account_id, long time_posted_epoch, int message_id, int limit){
+        return messageStore.getMessagesFromUserBefore(account_id, time_posted_epoch, message_id, limit);
+    }
+
+    public void forEachMessage(int after_id, int limit, Consumer<Message> consumer){
+        messageStore.forEachMessage(after_id, limit, consumer);
+    }
+
+    public void forEachMessageFromUser(int account_id, int after_id, int limit, Consumer<Message> consumer){
+        messageStore.forEachMessageFromUser(account_id, after_id, limit, consumer);
+    }
+
+    /**
+     * Served from the message cache when possible, so repeated reads of hot messages skip the database.
+     * The returned message may be shared with other callers and must not be modified.
+     */
     public Message getMessageByID(int message_id){
-        return messageDao.getMessageByID(message_id);
+        if(messageCache == null){
+            return messageStore.getMessageByID(message_id);
+        }
+        return messageCache.get(message_id, messageStore::getMessageByID);
     }
 
+    /**
+     * Inserts a message. With write-behind enabled the message is queued for the writer thread instead, and,
+     * unless the queue acknowledges on commit, is returned without waiting for it to be written. A message
+     * returned with a message_id of 0 has been accepted but not yet written.
+     *
+     * @return the message, or null if it is invalid or could not be written
+     * @throws RejectedExecutionException if write-behind is enabled and its queue is full
+     */
     public Message createMessage(Message message){
-        return messageDao.insertMessage(message);
+        if(writeQueue != null){
+            return enqueueMessage(message);
+        }
+        Message created = messageStore.insertMessage(message);
+        if(created != null){
+            messageCreated(copyOf(created));
+        }
+        return created;
+    }
+
+    private Message enqueueMessage(Message message){
+        // Check what can be checked up front, since an unacknowledged failure is only logged
+        if(MessageStore.checkMessageText(message.getMessage_text()) != null
+            || !messageStore.isKnownAccount(message.getPosted_by())){
+            return null;
+        }
+        if(!writeQueue.isAckOnCommit()){
+            // The writer fills in the message_id of the queued copy, never of the one handed back to the caller
+            writeQueue.enqueue(copyOf(message));
+            return message;
+        }
+        try{
+            return writeQueue.enqueue(message).get();
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        catch(ExecutionException e){
+            System.out.println(e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Creates a batch of messages in one transaction. See MessageStore.insertMessages.
+     */
+    public List<MessageBatchResult> createMessages(List<Message> messages){
+        List<MessageBatchResult> results = messageStore.insertMessages(messages);
+        for(MessageBatchResult result : results){
+            if(result.getMessage() != null){
+                messageCreated(copyOf(result.getMessage()));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Writes messages as they were exported, message_ids included. See MessageStore.importMessages.
+     *
+     * @return true if the messages were saved
+     */
+    public boolean importMessages(List<Message> messages){
+        if(!messageStore.importMessages(messages)){
+            return false;
+        }
+        for(Message message : messages){
+            messageImported(copyOf(message));
+        }
+        // An imported message may have replaced one posted by another account, so no timeline or version is safe
+        if(timelineCache != null){
+            timelineCache.invalidateAll();
+        }
+        if(feedService != null){
+            feedService.invalidateAll();
+        }
+        for(int i = 0; i < accountVersions.length(); i++){
+            accountVersions.incrementAndGet(i);
+        }
+        messagesVersion.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @return the largest message_id in use, see MessageStore.getMaxMessageId
+     */
+    public int getMaxMessageId(){
+        return messageStore.getMaxMessageId();
     }
 
     public Message updateMessageText(int message_id, String newMessage){
-        return messageDao.updateMessageText(message_id, newMessage);
+        ReentrantLock lock = lockFor(message_id);
+        lock.lock();
+        try{
+            Message updated = messageStore.updateMessageText(message_id, newMessage);
+            if(updated != null){
+                messageUpdated(copyOf(updated));
+            }
+            return updated;
+        }
+        finally{
+            lock.unlock();
+        }
     }
 
     public Message deleteMessageByID(int message_id){
-        return messageDao.deleteMessageByID(message_id);
+        ReentrantLock lock = lockFor(message_id);
+        lock.lock();
+        try{
+            Message deleted = messageStore.deleteMessageByID(message_id);
+            if(deleted != null){
+                messageDeleted(deleted);
+            }
+            return deleted;
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Finds messages by the words in their text. See MessageSearchIndex for the query syntax and ranking.
+     * 
+     * @return one page of message_ids, best match first, and the total number of matches
+     */
+    public MessageSearchIndex.Result searchMessages(String query, int offset, int limit){
+        return searchIndex.search(query, offset, limit);
+    }
+
+    /**
+     * Looks up several messages, through the message cache
+     * 
+     * @param message_ids The messages to get
+     * @return the messages in the same order, leaving out any that no longer exist
+     */
+    public List<Message> getMessagesByID(List<Integer> message_ids){
+        List<Message> messages = new ArrayList<Message>(message_ids.size());
+        for(int message_id : message_ids){
+            Message message = getMessageByID(message_id);
+            if(message != null){
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * The version changes whenever a message is created, updated or deleted, after the caches have been brought up
+     * to date. Read it before reading the messages: if it is unchanged later, so are they.
+     * 
+     * @return the current version of the list of all messages
+     */
+    public long getMessagesVersion(){
+        return messagesVersion.get();
+    }
+
+    /**
+     * Like getMessagesVersion, but changes only when a message posted by this account, or one of the few accounts
+     * sharing its slot, is written.
+     * 
+     * @return the current version of the account's messages
+     */
+    public long getMessagesFromUserVersion(int account_id){
+        return accountVersions.get(versionSlot(account_id));
+    }
+
+    /**
+     * @return the message cache, for inspecting its hit, miss and eviction counters, or null if it is disabled
+     */
+    public LruCache<Integer, Message> getMessageCache(){
+        return messageCache;
+    }
+
+    /**
+     * @return the cache of encoded messages, for writing responses, or null if it is disabled
+     */
+    public MessageJsonCache getJsonCache(){
+        return jsonCache;
+    }
+
+    /**
+     * @return the timeline cache, or null if it is disabled
+     */
+    public TimelineCache getTimelineCache(){
+        return timelineCache;
+    }
+
+    /**
+     * @return the search index, or null if search is disabled
+     */
+    public MessageSearchIndex getSearchIndex(){
+        return searchIndex;
+    }
+
+    /**
+     * @return the write-behind queue, or null if messages are inserted synchronously
+     */
+    public MessageWriteQueue getWriteQueue(){
+        return writeQueue;
+    }
+
+    /**
+     * Fans every message created from now on out to the feeds of its author's followers
+     */
+    public void setFeedService(FeedService feedService){
+        this.feedService = feedService;
+    }
+
+    /**
+     * Writes out any messages still queued for write-behind. Called when the server stops.
+     */
+    public void close(){
+        if(writeQueue != null){
+            writeQueue.close();
+        }
+    }
+
+    /*
+     * Everything derived from the message table is brought up to date here, once the write has committed. The
+     * message passed in is a private copy that may be kept, since the caller still holds the original.
+     */
+
+    private void messageCreated(Message message){
+        if(messageCache != null){
+            messageCache.put(message.getMessage_id(), message);
+        }
+        if(timelineCache != null){
+            timelineCache.messageCreated(message);
+        }
+        if(searchIndex != null){
+            searchIndex.messageCreated(message);
+        }
+        if(feedService != null){
+            feedService.messageCreated(message);
+        }
+        versionChanged(message);
+    }
+
+    private void messageUpdated(Message message){
+        if(messageCache != null){
+            messageCache.put(message.getMessage_id(), message);
+        }
+        if(jsonCache != null){
+            jsonCache.invalidate(message.getMessage_id());
+        }
+        if(timelineCache != null){
+            timelineCache.messageUpdated(message);
+        }
+        if(searchIndex != null){
+            searchIndex.messageUpdated(message);
+        }
+        versionChanged(message);
+    }
+
+    private void messageDeleted(Message message){
+        if(messageCache != null){
+            messageCache.invalidate(message.getMessage_id());
+        }
+        if(jsonCache != null){
+            jsonCache.invalidate(message.getMessage_id());
+        }
+        if(timelineCache != null){
+            timelineCache.messageDeleted(message);
+        }
+        if(searchIndex != null){
+            searchIndex.messageDeleted(message);
+        }
+        versionChanged(message);
+    }
+
+    private void messageImported(Message message){
+        if(messageCache != null){
+            messageCache.invalidate(message.getMessage_id());
+        }
+        if(jsonCache != null){
+            jsonCache.invalidate(message.getMessage_id());
+        }
+        if(searchIndex != null){
+            // Replaces what was indexed under the message_id, if anything
+            searchIndex.messageCreated(message);
+        }
+    }
+
+    // Last, so a client that sees the new version also reads the new message from the caches
+    private void versionChanged(Message message){
+        accountVersions.incrementAndGet(versionSlot(message.getPosted_by()));
+        messagesVersion.incrementAndGet();
+    }
+
+    private int versionSlot(int account_id){
+        return Math.floorMod(account_id, accountVersions.length());
+    }
+
+    private ReentrantLock lockFor(int message_id){
+        return writeLocks[Math.floorMod(message_id, writeLocks.length)];
+    }
+
+    private static Message copyOf(Message message){
+        return new Message(message.getMessage_id(), message.getPosted_by(), message.getMessage_text(),
+            message.getTime_posted_epoch());
     }
 }
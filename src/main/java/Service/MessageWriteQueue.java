@@ -0,0 +1,277 @@
+package Service;
+
+// Our custom classes imported
+import DAO.MessageStore;
+import Model.Message;
+import Model.MessageBatchResult;
+import Util.ConfigUtil;
+
+// External Libraries
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind queue for new messages. Request threads hand their messages to a bounded queue and a single
+ * writer thread inserts whatever has queued up as one batch in one transaction (a group commit), so many
+ * concurrent posts share one commit instead of each paying for their own.
+ *
+ * The writer takes everything already queued, optionally waits up to lingerMillis for more, and writes at most
+ * maxBatchSize messages at a time. When the queue is full, enqueue throws RejectedExecutionException, which the
+ * controller turns into a 429 so clients back off rather than pile up.
+ *
+ * With ackOnCommit the caller waits for its batch to commit and gets the message with its message_id, as with a
+ * synchronous insert. Without it the caller is released as soon as the message is queued, and a message still in
+ * the queue when the process dies is lost.
+ */
+public class MessageWriteQueue {
+
+    /**
+     * Tuning for the queue. Defaults are read from ConfigUtil under socialmedia.writeBehind.*
+     */
+    public static class Settings {
+        /**
+         * If false, messages are inserted synchronously on the request thread and no queue is created.
+         */
+        public boolean enabled = false;
+        /**
+         * Messages that may wait to be written before new ones are turned away.
+         */
+        public int queueCapacity = 10_000;
+        /**
+         * The most messages written in one transaction.
+         */
+        public int maxBatchSize = 500;
+        /**
+         * How long the writer waits for more messages once a batch has been started. At 0 a batch is whatever
+         * queued up while the previous one was being written, which suits the embedded database, where a commit
+         * costs less than the wait. Raise it when each commit is expensive, eg with a durable remote database.
+         */
+        public long lingerMillis = 0;
+        /**
+         * If true, createMessage returns only once the message is committed. If false, it returns once queued.
+         */
+        public boolean ackOnCommit = true;
+
+        /**
+         * @return settings populated from ConfigUtil, falling back to the defaults above
+         */
+        public static Settings fromConfig(){
+            Settings settings = new Settings();
+            settings.enabled = ConfigUtil.getBoolean("socialmedia.writeBehind.enabled", settings.enabled);
+            settings.queueCapacity = ConfigUtil.getInt("socialmedia.writeBehind.queueCapacity", settings.queueCapacity);
+            settings.maxBatchSize = ConfigUtil.getInt("socialmedia.writeBehind.maxBatchSize", settings.maxBatchSize);
+            settings.lingerMillis = ConfigUtil.getLong("socialmedia.writeBehind.lingerMillis", settings.lingerMillis);
+            settings.ackOnCommit = ConfigUtil.getBoolean("socialmedia.writeBehind.ackOnCommit", settings.ackOnCommit);
+            return settings;
+        }
+    }
+
+    /**
+     * A message waiting to be written, and the future its poster waits on
+     */
+    private static class PendingInsert {
+        final Message message;
+        final CompletableFuture<Message> written = new CompletableFuture<Message>();
+
+        PendingInsert(Message message){
+            this.message = message;
+        }
+    }
+
+    private final MessageStore messageStore;
+    private final Settings settings;
+    private final Consumer<Message> onCreated;
+    private final BlockingQueue<PendingInsert> queue;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    /**
+     * Held shared by enqueue from its check of running to its offer, and exclusively by close() while it clears
+     * running, so once close() has it no message can be queued that the writer might not see
+     */
+    private final ReadWriteLock closing = new ReentrantReadWriteLock();
+
+    private final LongAdder batchesWritten = new LongAdder();
+    private final LongAdder messagesWritten = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Starts the writer thread.
+     *
+     * @param messageStore Used to insert each batch
+     * @param settings How the queue behaves
+     * @param onCreated Called on the writer thread with each message once its batch has committed, before its
+     *  poster is released. If it throws, the failure is logged and the poster still gets the message.
+     */
+    public MessageWriteQueue(MessageStore messageStore, Settings settings, Consumer<Message> onCreated){
+        this.messageStore = messageStore;
+        this.settings = settings;
+        this.onCreated = onCreated;
+        this.queue = new ArrayBlockingQueue<PendingInsert>(settings.queueCapacity);
+        this.writer = new Thread(this::writeLoop, "message-write-behind");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues a message to be inserted.
+     *
+     * @param message A message that has already passed validation
+     * @return completes with the message, including its message_id, once committed, or with null if the
+     *  database refused it
+     * @throws RejectedExecutionException if the queue is full or closed
+     */
+    public CompletableFuture<Message> enqueue(Message message){
+        PendingInsert pending = new PendingInsert(message);
+        boolean open;
+        boolean queued;
+        closing.readLock().lock();
+        try{
+            open = running;
+            queued = open && queue.offer(pending);
+        }
+        finally{
+            closing.readLock().unlock();
+        }
+        if(!queued){
+            rejected.increment();
+            throw new RejectedExecutionException("Message write queue is " + (open ? "full" : "closed"));
+        }
+        return pending.written;
+    }
+
+    /**
+     * @return true if posters wait for their message to commit
+     */
+    public boolean isAckOnCommit(){
+        return settings.ackOnCommit;
+    }
+
+    /**
+     * Stops accepting messages, then waits for everything already queued to be written.
+     */
+    public void close(){
+        // Waits out any enqueue between its check and its offer, so the writer sees every message queued
+        closing.writeLock().lock();
+        try{
+            running = false;
+        }
+        finally{
+            closing.writeLock().unlock();
+        }
+        try{
+            writer.join();
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop(){
+        List<PendingInsert> batch = new ArrayList<PendingInsert>(settings.maxBatchSize);
+        while(running || !queue.isEmpty()){
+            try{
+                PendingInsert first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if(first == null){
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, settings.maxBatchSize - batch.size());
+
+                // Give concurrent posters a moment to join this commit
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.lingerMillis);
+                while(batch.size() < settings.maxBatchSize){
+                    PendingInsert next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if(next == null){
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, settings.maxBatchSize - batch.size());
+                }
+            }
+            catch(InterruptedException e){
+                // Only close() stops the writer, so carry on with whatever has been collected
+            }
+            if(!batch.isEmpty()){
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<PendingInsert> batch){
+        List<Message> messages = new ArrayList<Message>(batch.size());
+        for(PendingInsert pending : batch){
+            messages.add(pending.message);
+        }
+
+        List<MessageBatchResult> results;
+        try{
+            results = messageStore.insertMessages(messages);
+        }
+        catch(RuntimeException e){
+            System.out.println(e.getMessage());
+            for(PendingInsert pending : batch){
+                pending.written.complete(null);
+            }
+            return;
+        }
+
+        batchesWritten.increment();
+        for(int i = 0; i < batch.size(); i++){
+            Message created = results.get(i).getMessage();
+            if(created != null){
+                messagesWritten.increment();
+                try{
+                    onCreated.accept(created);
+                }
+                catch(RuntimeException e){
+                    // The message is committed whatever happens to the caches, so its poster still hears so
+                    System.out.println("Could not pass on created message " + created.getMessage_id() + ": " + e);
+                }
+            }
+            else if(!settings.ackOnCommit){
+                // Nobody is waiting to hear about it, so this is the only trace
+                System.out.println("Queued message was not written: " + results.get(i).getError());
+            }
+            batch.get(i).written.complete(created);
+        }
+    }
+
+    /**
+     * @return messages waiting to be written
+     */
+    public int getQueueDepth(){
+        return queue.size();
+    }
+
+    /**
+     * @return transactions committed by the writer
+     */
+    public long getBatchesWritten(){
+        return batchesWritten.sum();
+    }
+
+    /**
+     * @return messages committed by the writer
+     */
+    public long getMessagesWritten(){
+        return messagesWritten.sum();
+    }
+
+    /**
+     * @return messages turned away because the queue was full
+     */
+    public long getRejected(){
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,235 @@
+package Service;
+
+// Our custom classes imported
+import Model.Message;
+import Util.CacheMXBean;
+import Util.LruCache;
+
+// External Libraries
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps the newest messages of recently viewed accounts in memory, newest first, in the same order as
+ * MessageDAO.getAllMessagesFromUser.
+ *
+ * At most maxAccounts timelines are held, least recently viewed are dropped first, and each holds at most
+ * maxMessages messages. A timeline is loaded from the database the first time it is needed and from then on is
+ * kept up to date by applying each insert, update and delete to it, rather than being thrown away and reloaded.
+ *
+ * A timeline knows whether it is complete, meaning it holds every message the account has. A complete timeline
+ * can answer any request. An incomplete one (the account has more than maxMessages messages) can only answer
+ * requests for messages within the window it holds; anything else returns null so the caller can go to the database.
+ */
+public class TimelineCache {
+
+    /**
+     * The cached newest messages of one account. All access goes through its own lock.
+     */
+    static class Timeline {
+        // Newest first. Messages are never modified once added; an update replaces the object.
+        private final List<Message> messages;
+        private final int maxMessages;
+        private boolean complete;
+
+        Timeline(List<Message> newestFirst, int maxMessages, boolean complete){
+            this.messages = new ArrayList<Message>(newestFirst);
+            this.maxMessages = maxMessages;
+            this.complete = complete;
+        }
+
+        synchronized void insert(Message message){
+            if(indexOf(message.getMessage_id()) >= 0){
+                // Already loaded from the database before this insert's notification arrived
+                return;
+            }
+            int position = insertionPoint(message);
+            if(position == messages.size() && !complete){
+                // Older than everything held, so it falls outside the window this timeline covers
+                return;
+            }
+            messages.add(position, message);
+            if(messages.size() > maxMessages){
+                messages.remove(messages.size() - 1);
+                complete = false;
+            }
+        }
+
+        synchronized void update(Message message){
+            int index = indexOf(message.getMessage_id());
+            if(index >= 0){
+                messages.set(index, message);
+            }
+        }
+
+        synchronized void delete(int message_id){
+            int index = indexOf(message_id);
+            if(index >= 0){
+                messages.remove(index);
+            }
+        }
+
+        /**
+         * @return every message of the account, or null if this timeline does not hold them all
+         */
+        synchronized List<Message> all(){
+            return complete ? new ArrayList<Message>(messages) : null;
+        }
+
+        /**
+         * @param after_id the message the page starts after, or 0 for the first page
+         * @param limit the most messages to return
+         * @return the page, or null if it reaches past the messages this timeline holds
+         */
+        synchronized List<Message> page(int after_id, int limit){
+            int start = 0;
+            if(after_id != 0){
+                int cursor = indexOf(after_id);
+                if(cursor < 0){
+                    // Either not this account's message (the page is empty) or older than the window held
+                    return complete ? Collections.emptyList() : null;
+                }
+                start = cursor + 1;
+            }
+            int end = (int) Math.min((long) start + limit, messages.size());
+            if(!complete && start + (long) limit > messages.size()){
+                return null;
+            }
+            return new ArrayList<Message>(messages.subList(start, end));
+        }
+
+        private int indexOf(int message_id){
+            for(int i = 0; i < messages.size(); i++){
+                if(messages.get(i).getMessage_id() == message_id){
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Binary search for where a message belongs in newest first order (time_posted_epoch, then message_id)
+         */
+        private int insertionPoint(Message message){
+            int low = 0;
+            int high = messages.size();
+            while(low < high){
+                int mid = (low + high) >>> 1;
+                Message other = messages.get(mid);
+                boolean otherIsNewer = other.getTime_posted_epoch() > message.getTime_posted_epoch()
+                    || (other.getTime_posted_epoch() == message.getTime_posted_epoch()
+                        && other.getMessage_id() > message.getMessage_id());
+                if(otherIsNewer){
+                    low = mid + 1;
+                }
+                else{
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Loads the newest messages of an account, newest first.
+     */
+    @FunctionalInterface
+    public interface TimelineLoader {
+        List<Message> load(int account_id, int limit);
+    }
+
+    private final LruCache<Integer, Timeline> timelines;
+    private final int maxMessages;
+    private final TimelineLoader loader;
+
+    /**
+     * @param maxAccounts the most timelines to hold
+     * @param maxMessages the most messages to hold per timeline
+     * @param ttlMillis how long a timeline is kept before it is reloaded from scratch, or 0 to keep it until it is
+     *  evicted. Timelines are kept current on every write, so this only bounds the damage of a missed update.
+     * @param loader given an account_id and a limit, returns up to that many of the account's newest messages
+     */
+    public TimelineCache(int maxAccounts, int maxMessages, long ttlMillis, TimelineLoader loader){
+        this.timelines = new LruCache<>("timelines", maxAccounts, ttlMillis);
+        this.maxMessages = maxMessages;
+        this.loader = loader;
+    }
+
+    /**
+     * @return every message sent by the account, newest first, or null if they are not all held in memory
+     */
+    public List<Message> getAll(int account_id){
+        return timeline(account_id).all();
+    }
+
+    /**
+     * @return a keyset page of the account's timeline, or null if the page is not held in memory
+     */
+    public List<Message> getPage(int account_id, int after_id, int limit){
+        return timeline(account_id).page(after_id, limit);
+    }
+
+    private Timeline timeline(int account_id){
+        return timelines.get(account_id, id -> {
+            // Ask for one more than is kept, to learn whether the timeline is complete
+            List<Message> newest = loader.load(id, maxMessages + 1);
+            boolean complete = newest.size() <= maxMessages;
+            return new Timeline(complete ? newest : newest.subList(0, maxMessages), maxMessages, complete);
+        });
+    }
+
+    /**
+     * Applies a newly created message to its author's timeline, if held
+     */
+    public void messageCreated(Message message){
+        Timeline timeline = timelines.getIfPresent(message.getPosted_by());
+        if(timeline != null){
+            timeline.insert(message);
+        }
+        else{
+            // Make sure a load that started before the insert cannot cache a timeline without it
+            timelines.invalidate(message.getPosted_by());
+        }
+    }
+
+    /**
+     * Applies an edited message to its author's timeline, if held
+     */
+    public void messageUpdated(Message message){
+        Timeline timeline = timelines.getIfPresent(message.getPosted_by());
+        if(timeline != null){
+            timeline.update(message);
+        }
+        else{
+            timelines.invalidate(message.getPosted_by());
+        }
+    }
+
+    /**
+     * Removes a deleted message from its author's timeline, if held
+     */
+    public void messageDeleted(Message message){
+        Timeline timeline = timelines.getIfPresent(message.getPosted_by());
+        if(timeline != null){
+            timeline.delete(message.getMessage_id());
+        }
+        else{
+            timelines.invalidate(message.getPosted_by());
+        }
+    }
+
+    /**
+     * Drops every timeline, for writes that may move messages between accounts, such as an import
+     */
+    public void invalidateAll(){
+        timelines.invalidateAll();
+    }
+
+    /**
+     * @return the underlying cache, for inspecting its hit, miss and eviction counters
+     */
+    public CacheMXBean getTimelines(){
+        return timelines;
+    }
+}
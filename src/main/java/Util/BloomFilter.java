@@ -0,0 +1,195 @@
+package Util;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A thread safe Bloom filter over strings: a set that can answer "definitely absent" from memory, at the price of
+ * sometimes answering "maybe present" for a key it has never seen. Keys cannot be removed.
+ *
+ * The filter is sized up front from the expected number of keys and the wanted false positive rate. Adding more
+ * keys than it was sized for still works, but the false positive rate climbs; getExpectedFalsePositiveRate shows
+ * by how much. Each key sets hashCount bits chosen by double hashing of one 64-bit hash of the key.
+ *
+ * The filter cannot tell a false positive from a true one, so callers that check a "maybe present" answer against
+ * the real data report the wrong ones with recordFalsePositive, for the observed rate.
+ */
+public class BloomFilter implements BloomFilterMXBean {
+
+	private final String name;
+	private final long expectedInsertions;
+	private final long bitCount;
+	private final int hashCount;
+	private final AtomicLongArray bits;
+
+	private final LongAdder insertions = new LongAdder();
+	private final LongAdder negatives = new LongAdder();
+	private final LongAdder positives = new LongAdder();
+	private final LongAdder falsePositives = new LongAdder();
+
+	/**
+	 * @param name identifies the filter in its MBean name
+	 * @param expectedInsertions the number of keys to size for, at least 1
+	 * @param falsePositiveRate the wanted false positive rate at that many keys, between 0 and 1
+	 */
+	public BloomFilter(String name, long expectedInsertions, double falsePositiveRate) {
+		if (expectedInsertions < 1) {
+			throw new IllegalArgumentException("expectedInsertions must be at least 1");
+		}
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+		}
+		this.name = name;
+		this.expectedInsertions = expectedInsertions;
+
+		// The optimal sizes for n keys at rate p: m = -n ln p / (ln 2)^2 bits and k = m / n ln 2 hashes
+		double optimalBits = -expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+		int words = (int) Math.min(Integer.MAX_VALUE, Math.max(1, (long) Math.ceil(optimalBits / Long.SIZE)));
+		this.bitCount = (long) words * Long.SIZE;
+		this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+		this.bits = new AtomicLongArray(words);
+		registerMBean();
+	}
+
+	/**
+	 * Adds a key.
+	 *
+	 * @param key the key to add
+	 */
+	public void put(String key) {
+		long hash = hash(key);
+		long step = mix(hash) | 1;
+		boolean changed = false;
+		for (int i = 0; i < hashCount; i++) {
+			long bit = Math.floorMod(hash + i * step, bitCount);
+			int word = (int) (bit >>> 6);
+			long mask = 1L << bit;
+			if ((bits.get(word) & mask) == 0) {
+				bits.getAndAccumulate(word, mask, (current, set) -> current | set);
+				changed = true;
+			}
+		}
+		if (changed) {
+			insertions.increment();
+		}
+	}
+
+	/**
+	 * @param key the key to look for
+	 * @return false if the key was definitely never added, true if it may have been
+	 */
+	public boolean mightContain(String key) {
+		long hash = hash(key);
+		long step = mix(hash) | 1;
+		for (int i = 0; i < hashCount; i++) {
+			long bit = Math.floorMod(hash + i * step, bitCount);
+			if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+				negatives.increment();
+				return false;
+			}
+		}
+		positives.increment();
+		return true;
+	}
+
+	/**
+	 * Records that a "maybe present" answer from mightContain turned out to be wrong.
+	 */
+	public void recordFalsePositive() {
+		falsePositives.increment();
+	}
+
+	// FNV-1a over the characters, then mixed so that similar keys land far apart
+	private static long hash(String key) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+		}
+		return mix(hash);
+	}
+
+	// The 64-bit finalizer from MurmurHash3
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	/**
+	 * Registers this filter as an MBean, replacing any earlier filter registered under the same name.
+	 */
+	private void registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName("Util:type=BloomFilter,name=" + ObjectName.quote(name));
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(this, objectName);
+		} catch (Exception e) {
+			System.out.println("Unable to register Bloom filter MBean: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return the name this filter was created with
+	 */
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public long getBitCount() {
+		return bitCount;
+	}
+
+	@Override
+	public int getHashCount() {
+		return hashCount;
+	}
+
+	@Override
+	public long getInsertions() {
+		return insertions.sum();
+	}
+
+	@Override
+	public long getExpectedInsertions() {
+		return expectedInsertions;
+	}
+
+	@Override
+	public double getExpectedFalsePositiveRate() {
+		// (1 - e^(-kn/m))^k
+		return Math.pow(1 - Math.exp(-hashCount * (double) getInsertions() / bitCount), hashCount);
+	}
+
+	@Override
+	public long getNegatives() {
+		return negatives.sum();
+	}
+
+	@Override
+	public long getPositives() {
+		return positives.sum();
+	}
+
+	@Override
+	public long getFalsePositives() {
+		return falsePositives.sum();
+	}
+
+	@Override
+	public double getFalsePositiveRate() {
+		long falsePositives = getFalsePositives();
+		long absent = getNegatives() + falsePositives;
+		return absent == 0 ? 0 : (double) falsePositives / absent;
+	}
+}
@@ -0,0 +1,53 @@
+package Util;
+
+/**
+ * Management view of a BloomFilter. Each filter registers itself with the platform MBean server under
+ * "Util:type=BloomFilter,name=&lt;name&gt;".
+ */
+public interface BloomFilterMXBean {
+
+	/**
+	 * @return the size of the filter in bits
+	 */
+	long getBitCount();
+
+	/**
+	 * @return the number of bits set per key
+	 */
+	int getHashCount();
+
+	/**
+	 * @return the number of keys added, not counting keys that were already present
+	 */
+	long getInsertions();
+
+	/**
+	 * @return the number of keys the filter was sized for
+	 */
+	long getExpectedInsertions();
+
+	/**
+	 * @return the false positive rate to expect at the current number of insertions
+	 */
+	double getExpectedFalsePositiveRate();
+
+	/**
+	 * @return the number of lookups answered "definitely absent", which needed no further check
+	 */
+	long getNegatives();
+
+	/**
+	 * @return the number of lookups answered "maybe present"
+	 */
+	long getPositives();
+
+	/**
+	 * @return the number of "maybe present" answers the caller found to be wrong
+	 */
+	long getFalsePositives();
+
+	/**
+	 * @return false positives divided by lookups of absent keys, or 0 before the first such lookup
+	 */
+	double getFalsePositiveRate();
+}
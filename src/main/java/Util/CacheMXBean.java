@@ -0,0 +1,48 @@
+package Util;
+
+/**
+ * Management view of an LruCache. Each cache registers itself with the platform MBean server under
+ * "Util:type=Cache,name=&lt;name&gt;".
+ */
+public interface CacheMXBean {
+
+	/**
+	 * @return the number of entries currently held
+	 */
+	int getSize();
+
+	/**
+	 * @return the most entries the cache will hold
+	 */
+	int getMaxSize();
+
+	/**
+	 * @return the number of lookups answered from the cache
+	 */
+	long getHits();
+
+	/**
+	 * @return the number of lookups that had to go to the loader
+	 */
+	long getMisses();
+
+	/**
+	 * @return the number of entries pushed out to make room for newer ones
+	 */
+	long getEvictions();
+
+	/**
+	 * @return the number of entries dropped because they outlived the time to live
+	 */
+	long getExpirations();
+
+	/**
+	 * @return the number of entries dropped because the underlying data changed
+	 */
+	long getInvalidations();
+
+	/**
+	 * @return hits divided by total lookups, or 0 before the first lookup
+	 */
+	double getHitRate();
+}
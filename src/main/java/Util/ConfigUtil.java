@@ -0,0 +1,75 @@
+package Util;
+
+/**
+ * The ConfigUtil class resolves tunable settings for the application. A setting is looked up first as a JVM
+ * system property (eg -Dsocialmedia.pool.maxSize=20) and then as an environment variable, where the key is
+ * upper-cased and dots are replaced with underscores (eg SOCIALMEDIA_POOL_MAXSIZE=20). If neither is present,
+ * or the value cannot be parsed, the provided default is used.
+ */
+public class ConfigUtil {
+
+	private ConfigUtil() {
+	}
+
+	/**
+	 * @param key the name of the setting
+	 * @param defaultValue the value to use when the setting is absent
+	 * @return the raw value of the setting, or defaultValue if not set
+	 */
+	public static String getString(String key, String defaultValue) {
+		String value = System.getProperty(key);
+		if (value == null) {
+			value = System.getenv(key.toUpperCase().replace('.', '_'));
+		}
+		return value == null ? defaultValue : value.trim();
+	}
+
+	/**
+	 * @param key the name of the setting
+	 * @param defaultValue the value to use when the setting is absent or not an integer
+	 * @return the setting as an int
+	 */
+	public static int getInt(String key, int defaultValue) {
+		try {
+			return Integer.parseInt(getString(key, Integer.toString(defaultValue)));
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * @param key the name of the setting
+	 * @param defaultValue the value to use when the setting is absent or not a long
+	 * @return the setting as a long
+	 */
+	public static long getLong(String key, long defaultValue) {
+		try {
+			return Long.parseLong(getString(key, Long.toString(defaultValue)));
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * @param key the name of the setting
+	 * @param defaultValue the value to use when the setting is absent or not a number
+	 * @return the setting as a double
+	 */
+	public static double getDouble(String key, double defaultValue) {
+		try {
+			return Double.parseDouble(getString(key, Double.toString(defaultValue)));
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * @param key the name of the setting
+	 * @param defaultValue the value to use when the setting is absent
+	 * @return true if the setting is "true" (ignoring case), false for any other value
+	 */
+	public static boolean getBoolean(String key, boolean defaultValue) {
+		String value = getString(key, null);
+		return value == null ? defaultValue : Boolean.parseBoolean(value);
+	}
+}
@@ -0,0 +1,518 @@
+package Util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.ObjectName;
+import javax.sql.DataSource;
+
+/**
+ * A bounded pool of physical JDBC connections. Callers borrow a connection with getConnection() and give it back by
+ * closing it, exactly as they would with a plain DataSource, so DAO code does not need to know the pool exists.
+ *
+ * At most maxSize physical connections are ever open. Borrowers wait up to acquireTimeoutMillis for one to become
+ * free before a SQLTransientConnectionException is thrown. A background housekeeper closes connections that have sat
+ * idle longer than idleTimeoutMillis (never dropping below minSize), tops the pool back up to minSize, and reports any
+ * connection that has been borrowed for longer than leakDetectionThresholdMillis.
+ */
+public class ConnectionPool implements ConnectionPoolMXBean, AutoCloseable {
+
+	/**
+	 * Tunables for a ConnectionPool. Every field has a sensible default and can be overridden through ConfigUtil
+	 * using the "socialmedia.pool." prefix, eg -Dsocialmedia.pool.maxSize=20.
+	 */
+	public static class Settings {
+		/**
+		 * Connections kept open even when the application is idle, so the first requests find warm connections.
+		 */
+		public int minSize = 2;
+		/**
+		 * Hard upper bound on open physical connections.
+		 */
+		public int maxSize = 10;
+		/**
+		 * How long a borrower waits for a free connection before giving up.
+		 */
+		public long acquireTimeoutMillis = 5_000;
+		/**
+		 * Idle connections above minSize are closed once they have been unused this long.
+		 */
+		public long idleTimeoutMillis = 300_000;
+		/**
+		 * If true, an idle connection is checked with Connection.isValid() before it is handed out.
+		 */
+		public boolean validateOnBorrow = true;
+		/**
+		 * Seconds allowed for the validation check.
+		 */
+		public int validationTimeoutSeconds = 1;
+		/**
+		 * A borrowed connection held longer than this is reported as a possible leak. 0 disables leak detection,
+		 * which also avoids capturing a stack trace on every borrow.
+		 */
+		public long leakDetectionThresholdMillis = 0;
+		/**
+		 * Prepared statements kept open per physical connection, keyed by SQL text. 0 disables statement caching.
+		 */
+		public int statementCacheSize = 32;
+
+		/**
+		 * @return settings populated from ConfigUtil, falling back to the defaults above
+		 */
+		public static Settings fromConfig() {
+			Settings settings = new Settings();
+			settings.minSize = ConfigUtil.getInt("socialmedia.pool.minSize", settings.minSize);
+			settings.maxSize = ConfigUtil.getInt("socialmedia.pool.maxSize", settings.maxSize);
+			settings.acquireTimeoutMillis = ConfigUtil.getLong("socialmedia.pool.acquireTimeoutMillis",
+					settings.acquireTimeoutMillis);
+			settings.idleTimeoutMillis = ConfigUtil.getLong("socialmedia.pool.idleTimeoutMillis",
+					settings.idleTimeoutMillis);
+			settings.validateOnBorrow = ConfigUtil.getBoolean("socialmedia.pool.validateOnBorrow",
+					settings.validateOnBorrow);
+			settings.validationTimeoutSeconds = ConfigUtil.getInt("socialmedia.pool.validationTimeoutSeconds",
+					settings.validationTimeoutSeconds);
+			settings.leakDetectionThresholdMillis = ConfigUtil.getLong("socialmedia.pool.leakDetectionThresholdMillis",
+					settings.leakDetectionThresholdMillis);
+			settings.statementCacheSize = ConfigUtil.getInt("socialmedia.pool.statementCacheSize",
+					settings.statementCacheSize);
+			return settings;
+		}
+	}
+
+	/**
+	 * A physical connection along with the bookkeeping the pool needs for it.
+	 */
+	private static class PooledConnection {
+		final Connection physical;
+		final StatementCache statements;
+		long lastReturnedNanos = System.nanoTime();
+		long borrowedNanos;
+		Throwable borrowSite;
+		boolean leakReported;
+
+		PooledConnection(Connection physical, StatementCache statements) {
+			this.physical = physical;
+			this.statements = statements;
+		}
+	}
+
+	private final DataSource source;
+	private final Settings settings;
+
+	/**
+	 * One permit per connection that may still be borrowed. Fair, so waiting threads are served in order.
+	 */
+	private final Semaphore permits;
+	/**
+	 * Idle connections, most recently returned first, so the warmest connection is reused. Guarded by itself.
+	 */
+	private final Deque<PooledConnection> idle = new ArrayDeque<>();
+	private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+	private final ScheduledExecutorService housekeeper;
+	private volatile boolean closed;
+
+	private final AtomicInteger totalConnections = new AtomicInteger();
+	private final AtomicLong connectionsCreated = new AtomicLong();
+	private final AtomicLong connectionsDestroyed = new AtomicLong();
+	private final LongAdder connectionsAcquired = new LongAdder();
+	private final LongAdder acquireNanos = new LongAdder();
+	private final AtomicLong acquireTimeouts = new AtomicLong();
+	private final AtomicLong validationFailures = new AtomicLong();
+	private final AtomicLong leaksDetected = new AtomicLong();
+	private final LongAdder statementCacheHits = new LongAdder();
+	private final LongAdder statementCacheMisses = new LongAdder();
+
+	/**
+	 * Creates the pool, opens minSize connections up front and starts the housekeeper.
+	 *
+	 * @param source where physical connections come from
+	 * @param settings the pool tunables
+	 */
+	public ConnectionPool(DataSource source, Settings settings) {
+		if (settings.maxSize < 1 || settings.minSize < 0 || settings.minSize > settings.maxSize) {
+			throw new IllegalArgumentException("Pool sizes must satisfy 0 <= minSize <= maxSize and maxSize >= 1");
+		}
+		this.source = source;
+		this.settings = settings;
+		this.permits = new Semaphore(settings.maxSize, true);
+
+		this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long period = Math.max(1_000, Math.min(30_000, settings.idleTimeoutMillis / 2));
+		if (settings.leakDetectionThresholdMillis > 0) {
+			period = Math.max(500, Math.min(period, settings.leakDetectionThresholdMillis / 2));
+		}
+		housekeeper.scheduleWithFixedDelay(this::houseKeep, period, period, TimeUnit.MILLISECONDS);
+
+		fillToMinimum();
+		registerMBean();
+	}
+
+	/**
+	 * Borrows a connection, waiting up to the acquire timeout if all of them are in use. Closing the returned
+	 * connection gives it back to the pool rather than closing the physical connection.
+	 *
+	 * @return a connection that is exclusively owned by the caller until it is closed
+	 * @throws SQLException if the pool is closed, no connection became free in time, or a new one could not be opened
+	 */
+	public Connection getConnection() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool has been closed");
+		}
+		long start = System.nanoTime();
+		try {
+			if (!permits.tryAcquire(settings.acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				acquireTimeouts.incrementAndGet();
+				throw new SQLTransientConnectionException("Timed out after " + settings.acquireTimeoutMillis
+						+ "ms waiting for a connection (" + getActiveConnections() + " of " + settings.maxSize
+						+ " in use)");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLTransientConnectionException("Interrupted while waiting for a connection", e);
+		}
+
+		try {
+			PooledConnection connection = takeIdle();
+			if (connection == null) {
+				connection = open();
+			}
+			connection.borrowedNanos = System.nanoTime();
+			connection.leakReported = false;
+			if (settings.leakDetectionThresholdMillis > 0) {
+				connection.borrowSite = new Exception("Connection borrowed by " + Thread.currentThread().getName());
+			}
+			borrowed.add(connection);
+			connectionsAcquired.increment();
+			acquireNanos.add(connection.borrowedNanos - start);
+			return wrap(connection);
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Pops the most recently used idle connection, discarding any that fail validation.
+	 */
+	private PooledConnection takeIdle() {
+		while (true) {
+			PooledConnection connection;
+			synchronized (idle) {
+				connection = idle.pollFirst();
+			}
+			if (connection == null) {
+				return null;
+			}
+			if (!settings.validateOnBorrow || isUsable(connection)) {
+				return connection;
+			}
+			validationFailures.incrementAndGet();
+			destroy(connection);
+		}
+	}
+
+	private boolean isUsable(PooledConnection connection) {
+		try {
+			return connection.physical.isValid(settings.validationTimeoutSeconds);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private PooledConnection open() throws SQLException {
+		StatementCache statements = settings.statementCacheSize > 0
+				? new StatementCache(settings.statementCacheSize, statementCacheHits, statementCacheMisses)
+				: null;
+		PooledConnection connection = new PooledConnection(source.getConnection(), statements);
+		totalConnections.incrementAndGet();
+		connectionsCreated.incrementAndGet();
+		return connection;
+	}
+
+	private void destroy(PooledConnection connection) {
+		if (connection.statements != null) {
+			connection.statements.closeAll();
+		}
+		try {
+			connection.physical.close();
+		} catch (SQLException e) {
+			System.out.println(e.getMessage());
+		}
+		totalConnections.decrementAndGet();
+		connectionsDestroyed.incrementAndGet();
+	}
+
+	/**
+	 * Called when a borrower closes its handle. Resets any transaction state the borrower left behind and puts the
+	 * connection back at the head of the idle list.
+	 */
+	private void release(PooledConnection connection) {
+		borrowed.remove(connection);
+		connection.borrowSite = null;
+		if (connection.statements != null) {
+			connection.statements.reclaim();
+		}
+		boolean reusable = !closed;
+		try {
+			if (reusable && !connection.physical.getAutoCommit()) {
+				connection.physical.rollback();
+				connection.physical.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			reusable = false;
+		}
+
+		if (reusable) {
+			connection.lastReturnedNanos = System.nanoTime();
+			synchronized (idle) {
+				idle.addFirst(connection);
+			}
+		} else {
+			destroy(connection);
+		}
+		permits.release();
+	}
+
+	/**
+	 * Periodic maintenance: evict connections idle past the timeout, keep minSize warm connections, and report
+	 * borrows that look like leaks.
+	 */
+	private void houseKeep() {
+		long now = System.nanoTime();
+		long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(settings.idleTimeoutMillis);
+		synchronized (idle) {
+			// The oldest connections are at the tail
+			Iterator<PooledConnection> oldestFirst = idle.descendingIterator();
+			while (oldestFirst.hasNext() && totalConnections.get() > settings.minSize) {
+				PooledConnection connection = oldestFirst.next();
+				if (now - connection.lastReturnedNanos < idleTimeoutNanos) {
+					break;
+				}
+				oldestFirst.remove();
+				destroy(connection);
+			}
+		}
+
+		fillToMinimum();
+
+		if (settings.leakDetectionThresholdMillis > 0) {
+			long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(settings.leakDetectionThresholdMillis);
+			for (PooledConnection connection : borrowed) {
+				Throwable site = connection.borrowSite;
+				if (!connection.leakReported && site != null && now - connection.borrowedNanos > thresholdNanos) {
+					connection.leakReported = true;
+					leaksDetected.incrementAndGet();
+					System.out.println("Possible connection leak: connection held for more than "
+							+ settings.leakDetectionThresholdMillis + "ms");
+					site.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Opens connections until at least minSize exist. Each one is opened under a permit so the pool never exceeds
+	 * maxSize, and no borrower is made to wait for a warm-up.
+	 */
+	private void fillToMinimum() {
+		while (!closed && totalConnections.get() < settings.minSize && permits.tryAcquire()) {
+			try {
+				PooledConnection connection = open();
+				synchronized (idle) {
+					idle.addLast(connection);
+				}
+			} catch (SQLException e) {
+				System.out.println(e.getMessage());
+				return;
+			} finally {
+				permits.release();
+			}
+		}
+	}
+
+	/**
+	 * Wraps a physical connection in a handle whose close() returns it to the pool. Once closed, the handle rejects
+	 * any further use, so a stale reference can never touch a connection that now belongs to someone else.
+	 * prepareStatement(sql) and prepareStatement(sql, autoGeneratedKeys) are served from the connection's
+	 * StatementCache when one is configured.
+	 */
+	private Connection wrap(PooledConnection connection) {
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new Handle(connection));
+	}
+
+	private class Handle implements InvocationHandler {
+		private final PooledConnection connection;
+		private boolean handleClosed;
+
+		Handle(PooledConnection connection) {
+			this.connection = connection;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "close":
+					if (!handleClosed) {
+						handleClosed = true;
+						release(connection);
+					}
+					return null;
+				case "isClosed":
+					return handleClosed || connection.physical.isClosed();
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return "Pooled" + connection.physical;
+				default:
+					break;
+			}
+			if (handleClosed) {
+				throw new SQLException("Connection has already been returned to the pool");
+			}
+			if (connection.statements != null && method.getName().equals("prepareStatement")) {
+				if (args.length == 1) {
+					return connection.statements.prepare(connection.physical, (Connection) proxy, (String) args[0],
+							Statement.NO_GENERATED_KEYS);
+				}
+				if (args.length == 2 && args[1] instanceof Integer) {
+					return connection.statements.prepare(connection.physical, (Connection) proxy, (String) args[0],
+							(Integer) args[1]);
+				}
+			}
+			try {
+				return method.invoke(connection.physical, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+	private void registerMBean() {
+		try {
+			ObjectName name = new ObjectName("Util:type=ConnectionPool");
+			if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+			}
+		} catch (Exception e) {
+			System.out.println("Unable to register connection pool MBean: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Closes every idle connection and stops the housekeeper. Borrowed connections are closed as they are returned.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		housekeeper.shutdownNow();
+		synchronized (idle) {
+			PooledConnection connection;
+			while ((connection = idle.pollFirst()) != null) {
+				destroy(connection);
+			}
+		}
+	}
+
+	@Override
+	public int getTotalConnections() {
+		return totalConnections.get();
+	}
+
+	@Override
+	public int getActiveConnections() {
+		return borrowed.size();
+	}
+
+	@Override
+	public int getIdleConnections() {
+		synchronized (idle) {
+			return idle.size();
+		}
+	}
+
+	@Override
+	public int getThreadsAwaitingConnection() {
+		return permits.getQueueLength();
+	}
+
+	@Override
+	public long getConnectionsCreated() {
+		return connectionsCreated.get();
+	}
+
+	@Override
+	public long getConnectionsDestroyed() {
+		return connectionsDestroyed.get();
+	}
+
+	@Override
+	public long getConnectionsAcquired() {
+		return connectionsAcquired.sum();
+	}
+
+	@Override
+	public long getAcquireTimeouts() {
+		return acquireTimeouts.get();
+	}
+
+	@Override
+	public long getValidationFailures() {
+		return validationFailures.get();
+	}
+
+	@Override
+	public long getLeaksDetected() {
+		return leaksDetected.get();
+	}
+
+	@Override
+	public double getAverageAcquireMicros() {
+		long acquired = connectionsAcquired.sum();
+		return acquired == 0 ? 0 : acquireNanos.sum() / 1_000.0 / acquired;
+	}
+
+	@Override
+	public long getStatementCacheHits() {
+		return statementCacheHits.sum();
+	}
+
+	@Override
+	public long getStatementCacheMisses() {
+		return statementCacheMisses.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "ConnectionPool{total=" + getTotalConnections() + ", active=" + getActiveConnections() + ", idle="
+				+ getIdleConnections() + ", waiting=" + getThreadsAwaitingConnection() + ", created="
+				+ getConnectionsCreated() + ", timeouts=" + getAcquireTimeouts() + ", leaks=" + getLeaksDetected()
+				+ ", statementCacheHits=" + getStatementCacheHits() + ", statementCacheMisses="
+				+ getStatementCacheMisses() + '}';
+	}
+}
@@ -0,0 +1,73 @@
+package Util;
+
+/**
+ * Management view of a ConnectionPool. The pool registers itself with the platform MBean server under
+ * "Util:type=ConnectionPool" so that these numbers can be watched with jconsole, VisualVM or any JMX exporter.
+ */
+public interface ConnectionPoolMXBean {
+
+	/**
+	 * @return the number of physical connections currently open, whether idle or borrowed
+	 */
+	int getTotalConnections();
+
+	/**
+	 * @return the number of physical connections currently borrowed by callers
+	 */
+	int getActiveConnections();
+
+	/**
+	 * @return the number of physical connections sitting idle in the pool
+	 */
+	int getIdleConnections();
+
+	/**
+	 * @return the number of threads currently blocked waiting for a connection
+	 */
+	int getThreadsAwaitingConnection();
+
+	/**
+	 * @return the total number of physical connections opened since the pool started
+	 */
+	long getConnectionsCreated();
+
+	/**
+	 * @return the total number of physical connections closed since the pool started
+	 */
+	long getConnectionsDestroyed();
+
+	/**
+	 * @return the total number of successful borrows since the pool started
+	 */
+	long getConnectionsAcquired();
+
+	/**
+	 * @return the number of borrows that gave up after the acquire timeout
+	 */
+	long getAcquireTimeouts();
+
+	/**
+	 * @return the number of idle connections that failed validation when borrowed
+	 */
+	long getValidationFailures();
+
+	/**
+	 * @return the number of borrows that were held longer than the leak detection threshold
+	 */
+	long getLeaksDetected();
+
+	/**
+	 * @return the mean time, in microseconds, callers spent waiting to borrow a connection
+	 */
+	double getAverageAcquireMicros();
+
+	/**
+	 * @return the number of prepareStatement calls answered from a connection's statement cache
+	 */
+	long getStatementCacheHits();
+
+	/**
+	 * @return the number of prepareStatement calls that had to be prepared by the driver
+	 */
+	long getStatementCacheMisses();
+}
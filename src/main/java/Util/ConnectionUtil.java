@@ -1,7 +1,11 @@
 package Util;
 
 import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.SQLException;
 
@@ -13,15 +17,18 @@ import org.h2.tools.RunScript;
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * By default connections are borrowed from a bounded ConnectionPool, so closing a connection hands it back for
+ * reuse instead of tearing down the physical H2 connection. Setting socialmedia.pool.enabled=false falls back to
+ * opening a new physical connection on every call.
  */
 public class ConnectionUtil {
 
 	/**
 	 * url will represent our connection string. Since this is an in-memory db, we
-	 * will represent a file location to store the data
+	 * will represent a file location to store the data. Can be overridden with
+	 * socialmedia.db.url, eg to point a benchmark at its own database.
 	 */
-	private static String url = "jdbc:h2:./h2/db;";
+	private static String url = ConfigUtil.getString("socialmedia.db.url", "jdbc:h2:./h2/db;");
 	/**
 	 * Default username for connecting to h2
 	 */
@@ -31,11 +38,24 @@ public class ConnectionUtil {
 	 */
 	private static String password = "sa";
 
+	/**
+	 * Schema changes made after SocialMedia.sql, as classpath resources, in the order they must be applied.
+	 */
+	private static final String[] MIGRATIONS = {
+			"migrations/001_message_timeline_index.sql",
+			"migrations/002_follow.sql"
+	};
+
 	/**
 	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
 	 */
 	private static JdbcDataSource pool = new JdbcDataSource();
 
+	/**
+	 * Bounded pool of warm connections opened from the DataSource above, or null when pooling is disabled.
+	 */
+	private static ConnectionPool connectionPool;
+
 	/**
 	 * static initialization block to establish credentials for DataSoure Pool
 	 */
@@ -43,32 +63,69 @@ public class ConnectionUtil {
 		pool.setURL(url);
 		pool.setUser(username);
 		pool.setPassword(password);
+
+		if (ConfigUtil.getBoolean("socialmedia.pool.enabled", true)) {
+			connectionPool = new ConnectionPool(pool, ConnectionPool.Settings.fromConfig());
+		}
 	}
 
 	/**
-	 * @return an active connection to the database
+	 * @return an active connection to the database. Closing it returns it to the pool.
+	 * @throws SQLException if none could be had, eg a SQLTransientConnectionException when every pooled connection
+	 *                      stayed in use for the whole acquire timeout. Callers handle it as any other failed query.
 	 */
-	public static Connection getConnection() {
-		try {
-			return pool.getConnection();
-		} catch (SQLException e) {
-			e.printStackTrace();
+	public static Connection getConnection() throws SQLException {
+		if (connectionPool != null) {
+			return connectionPool.getConnection();
 		}
+		return pool.getConnection();
+	}
+
+	/**
+	 * @return the connection pool behind getConnection(), for inspecting its metrics, or null if pooling is disabled
+	 */
+	public static ConnectionPool getConnectionPool() {
+		return connectionPool;
+	}
 
-		return null;
+	/**
+	 * Applies every schema migration, in order, on top of the tables created by SocialMedia.sql. Each script
+	 * is written to be idempotent, so this is safe to run at every startup against an existing database.
+	 */
+	public static void runMigrations() {
+		try (Connection connection = getConnection()) {
+			for (String migration : MIGRATIONS) {
+				runScript(connection, migration);
+			}
+		} catch (SQLException | IOException e) {
+			e.printStackTrace();
+		}
 	}
 
 	/**
 	 * For the purpose of testing, we will need to drop and recreate our database
 	 * tables to keep it consistent across all tests. The method will read the sql
-	 * file in resources. This will be performed before every test.
+	 * file in resources, then apply the migrations. This will be performed before every test.
 	 */
 	public static void resetTestDatabase() {
-		try {
-			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
-		} catch (SQLException | FileNotFoundException e) {
+		try (Connection connection = getConnection()) {
+			runScript(connection, "SocialMedia.sql");
+		} catch (SQLException | IOException e) {
 			e.printStackTrace();
 		}
+		runMigrations();
+	}
+
+	/**
+	 * Runs a sql script loaded from the classpath, so it is found whatever the working directory is.
+	 */
+	private static void runScript(Connection connection, String resource) throws SQLException, IOException {
+		InputStream script = ConnectionUtil.class.getClassLoader().getResourceAsStream(resource);
+		if (script == null) {
+			throw new FileNotFoundException(resource);
+		}
+		try (Reader sqlReader = new InputStreamReader(script, StandardCharsets.UTF_8)) {
+			RunScript.execute(connection, sqlReader);
+		}
 	}
 }
@@ -0,0 +1,64 @@
+package Util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Per-route request metrics: a count of requests by status code and a latency histogram, under
+ * socialmedia_http_requests_total and socialmedia_http_request_duration_seconds.
+ *
+ * Routes are labelled by their path pattern (eg messages/{message_id}) rather than the path requested, so there
+ * is a fixed number of them. After the first request to a route, recording looks up the route once and
+ * increments two counters.
+ */
+public class HttpMetrics {
+
+	private static final String REQUESTS = "socialmedia_http_requests_total";
+	private static final String REQUESTS_HELP = "HTTP requests answered, by route and status code";
+	private static final String DURATION = "socialmedia_http_request_duration_seconds";
+	private static final String DURATION_HELP = "Time to answer HTTP requests, by route";
+
+	private static class Route {
+		final String method;
+		final String path;
+		final LatencyHistogram latency;
+		final AtomicReferenceArray<Metrics.Counter> byStatus = new AtomicReferenceArray<Metrics.Counter>(600);
+
+		Route(String method, String path) {
+			this.method = method;
+			this.path = path;
+			this.latency = Metrics.timer(DURATION, DURATION_HELP, "method", method, "route", path);
+		}
+
+		Metrics.Counter statusCounter(int status) {
+			if (status < 0 || status >= byStatus.length()) {
+				return Metrics.counter(REQUESTS, REQUESTS_HELP, "method", method, "route", path, "status",
+						Integer.toString(status));
+			}
+			Metrics.Counter counter = byStatus.get(status);
+			if (counter == null) {
+				counter = Metrics.counter(REQUESTS, REQUESTS_HELP, "method", method, "route", path, "status",
+						Integer.toString(status));
+				byStatus.set(status, counter);
+			}
+			return counter;
+		}
+	}
+
+	// Method to path pattern to its metrics
+	private static final Map<String, Map<String, Route>> routes = new ConcurrentHashMap<String, Map<String, Route>>();
+
+	/**
+	 * @param method the HTTP method, eg GET
+	 * @param route the path pattern the request matched
+	 * @param status the status code sent
+	 * @param nanos how long the request took
+	 */
+	public static void record(String method, String route, int status, long nanos) {
+		Route metrics = routes.computeIfAbsent(method, key -> new ConcurrentHashMap<String, Route>())
+				.computeIfAbsent(route, path -> new Route(method, path));
+		metrics.statusCounter(status).increment();
+		metrics.latency.record(nanos);
+	}
+}
@@ -0,0 +1,71 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread safe set of non-negative ints kept as a bitmap: one bit per possible id up to the largest added, so
+ * database ids, which are handed out in order from 1, take one bit each. contains never locks; add locks, since
+ * the bitmap may have to grow, and is expected to be rare next to contains.
+ */
+public class IdBitmap {
+
+	private volatile AtomicLongArray words;
+	private int size;
+
+	/**
+	 * @param expectedMaxId the largest id expected, to size the bitmap up front
+	 */
+	public IdBitmap(int expectedMaxId) {
+		words = new AtomicLongArray(wordsFor(Math.max(expectedMaxId, 63)));
+	}
+
+	private static int wordsFor(int id) {
+		return (id >>> 6) + 1;
+	}
+
+	/**
+	 * @param id the id to add; negative ids are ignored
+	 */
+	public synchronized void add(int id) {
+		if (id < 0) {
+			return;
+		}
+		AtomicLongArray current = words;
+		int word = id >>> 6;
+		if (word >= current.length()) {
+			// Grow by at least half again, so a run of new ids does not copy the bitmap each time
+			int length = Math.max(wordsFor(id), current.length() + (current.length() >> 1));
+			AtomicLongArray grown = new AtomicLongArray(length);
+			for (int i = 0; i < current.length(); i++) {
+				grown.set(i, current.get(i));
+			}
+			current = grown;
+			words = grown;
+		}
+		long mask = 1L << id;
+		if ((current.get(word) & mask) == 0) {
+			current.set(word, current.get(word) | mask);
+			size++;
+		}
+	}
+
+	/**
+	 * @param id the id to look for
+	 * @return true if the id has been added
+	 */
+	public boolean contains(int id) {
+		if (id < 0) {
+			return false;
+		}
+		AtomicLongArray current = words;
+		int word = id >>> 6;
+		return word < current.length() && (current.get(word) & (1L << id)) != 0;
+	}
+
+	/**
+	 * @return the number of ids added
+	 */
+	public synchronized int size() {
+		return size;
+	}
+}
@@ -0,0 +1,32 @@
+package Util;
+
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+/**
+ * The JsonUtil class holds the one Jackson ObjectMapper used by the whole application. An ObjectMapper is
+ * expensive to build and caches the serializers it creates, but is thread safe once configured, so sharing a
+ * single instance avoids paying that cost on every request.
+ */
+public class JsonUtil {
+
+	/**
+	 * Shared mapper. Streams handed to it are left open, since they belong to the servlet container.
+	 */
+	private static final ObjectMapper mapper = JsonMapper.builder()
+			.disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+			.disable(StreamReadFeature.AUTO_CLOSE_SOURCE)
+			.build();
+
+	private JsonUtil() {
+	}
+
+	/**
+	 * @return the shared, pre-configured ObjectMapper. Do not reconfigure it.
+	 */
+	public static ObjectMapper getMapper() {
+		return mapper;
+	}
+}
@@ -0,0 +1,117 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread safe histogram of durations in nanoseconds, in the style of HdrHistogram: buckets are linear within
+ * each power of two and there are 64 of them per power of two, so any recorded value is reported to within about
+ * 1.5%, from 1ns up to about 68 seconds (longer durations count as 68 seconds). It is a fixed 2048 counters
+ * however many values are recorded, and recording is one atomic increment with no allocation.
+ *
+ * Quantiles cover everything recorded since the histogram was created.
+ */
+public class LatencyHistogram {
+
+	// 2^SUB_BUCKET_BITS buckets per power of two below it, half that per power of two above
+	private static final int SUB_BUCKET_BITS = 7;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+	private static final long MAX_VALUE = (1L << 36) - 1;
+	private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+
+	/**
+	 * @param nanos a duration in nanoseconds; negative durations count as 0
+	 */
+	public void record(long nanos) {
+		long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+		counts.incrementAndGet(index(value));
+		count.increment();
+		sum.add(value);
+	}
+
+	/**
+	 * Records the time from startNanos until now.
+	 *
+	 * @param startNanos a value of System.nanoTime() taken at the start
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	private static int index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		// Keep the top SUB_BUCKET_BITS bits of the value; the shift says which power of two it is in
+		int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return shift * HALF_SUB_BUCKETS + (int) (value >>> shift);
+	}
+
+	// The middle of the range of values counted in a bucket
+	private static long valueAt(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / HALF_SUB_BUCKETS - 1;
+		long lowest = (long) (index - shift * HALF_SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) / 2;
+	}
+
+	/**
+	 * @return the number of durations recorded
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @return the total of all durations recorded, in nanoseconds
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+
+	/**
+	 * @param quantile between 0 and 1, eg 0.99
+	 * @return the duration in nanoseconds that the given fraction of recorded durations were at or below, or 0 if
+	 *  nothing has been recorded
+	 */
+	public long getValueAtQuantile(double quantile) {
+		return getValuesAtQuantiles(quantile)[0];
+	}
+
+	/**
+	 * Reads several quantiles from one pass over the buckets, so they are consistent with each other.
+	 *
+	 * @param quantiles each between 0 and 1, in ascending order
+	 * @return the duration in nanoseconds at each quantile
+	 */
+	public long[] getValuesAtQuantiles(double... quantiles) {
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+
+		long[] values = new long[quantiles.length];
+		if (total == 0) {
+			return values;
+		}
+		int bucket = 0;
+		long seen = snapshot[0];
+		for (int q = 0; q < quantiles.length; q++) {
+			long rank = Math.max(1, (long) Math.ceil(quantiles[q] * total));
+			while (seen < rank && bucket < BUCKETS - 1) {
+				seen += snapshot[++bucket];
+			}
+			values[q] = valueAt(bucket);
+		}
+		return values;
+	}
+}
@@ -0,0 +1,280 @@
+package Util;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A bounded, thread safe, least-recently-used cache with an optional time to live.
+ *
+ * Keys are spread over a number of independently locked segments so that concurrent readers of different keys
+ * rarely contend. Each segment keeps its entries in access order and evicts the least recently used one once it
+ * is full, so the cache as a whole never holds more than maxSize entries.
+ *
+ * get(key, loader) is read-through: on a miss the loader is called outside of any lock and its result is cached.
+ * Every put or invalidate bumps the segment's stamp; a loaded value is only cached if the stamp has not moved since
+ * the lookup started, so a slow load can never overwrite a newer write or resurrect an invalidated entry.
+ *
+ * @param <K> the key type
+ * @param <V> the value type. Cached values are shared between callers and must not be modified.
+ */
+public class LruCache<K, V> implements CacheMXBean {
+
+	private static final int MAX_SEGMENTS = 16;
+
+	private static class Entry<V> {
+		final V value;
+		final long expiresAtNanos;
+
+		Entry(V value, long expiresAtNanos) {
+			this.value = value;
+			this.expiresAtNanos = expiresAtNanos;
+		}
+	}
+
+	private static class Segment<K, V> extends LinkedHashMap<K, Entry<V>> {
+		private static final long serialVersionUID = 1L;
+		final int capacity;
+		final LongAdder evictions;
+		long stamp;
+
+		Segment(int capacity, LongAdder evictions) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+			this.evictions = evictions;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+			if (size() > capacity) {
+				evictions.increment();
+				return true;
+			}
+			return false;
+		}
+	}
+
+	private final String name;
+	private final int maxSize;
+	private final long ttlNanos;
+	private final Segment<K, V>[] segments;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder expirations = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+
+	/**
+	 * @param name identifies the cache in its MBean name
+	 * @param maxSize the most entries the cache will hold, at least 1
+	 * @param ttlMillis how long an entry may be served after it was cached, or 0 for no limit
+	 */
+	@SuppressWarnings("unchecked")
+	public LruCache(String name, int maxSize, long ttlMillis) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be at least 1");
+		}
+		this.name = name;
+		this.maxSize = maxSize;
+		this.ttlNanos = ttlMillis > 0 ? ttlMillis * 1_000_000 : Long.MAX_VALUE;
+
+		int segmentCount = Math.min(MAX_SEGMENTS, maxSize);
+		this.segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			// Spread the capacity so the segment sizes add up to exactly maxSize
+			int capacity = maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0);
+			segments[i] = new Segment<>(capacity, evictions);
+		}
+		registerMBean();
+	}
+
+	private Segment<K, V> segmentFor(Object key) {
+		int hash = key.hashCode();
+		hash ^= hash >>> 16;
+		return segments[Math.floorMod(hash, segments.length)];
+	}
+
+	/**
+	 * Returns the cached value for key, or loads, caches and returns it on a miss. A null from the loader is
+	 * passed back but not cached.
+	 *
+	 * @param key the key to look up
+	 * @param loader produces the value when it is not cached, eg by querying the database
+	 * @return the value, or null if it is neither cached nor loadable
+	 */
+	public V get(K key, Function<? super K, ? extends V> loader) {
+		Segment<K, V> segment = segmentFor(key);
+		long stamp;
+		synchronized (segment) {
+			V value = lookup(segment, key);
+			if (value != null) {
+				hits.increment();
+				return value;
+			}
+			stamp = segment.stamp;
+		}
+
+		misses.increment();
+		V value = loader.apply(key);
+		if (value != null) {
+			synchronized (segment) {
+				if (segment.stamp == stamp) {
+					// Bump the stamp too, so any other load of the same key that started earlier is discarded
+					segment.stamp++;
+					segment.put(key, new Entry<>(value, expiry()));
+				}
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * @return the cached value for key, or null if it is not cached. Does not count as a hit or miss.
+	 */
+	public V getIfPresent(K key) {
+		Segment<K, V> segment = segmentFor(key);
+		synchronized (segment) {
+			return lookup(segment, key);
+		}
+	}
+
+	/**
+	 * Caches value under key, replacing any existing entry.
+	 */
+	public void put(K key, V value) {
+		Segment<K, V> segment = segmentFor(key);
+		synchronized (segment) {
+			segment.stamp++;
+			segment.put(key, new Entry<>(value, expiry()));
+		}
+	}
+
+	/**
+	 * Drops any entry for key, and stops any load of key that is already in flight from being cached.
+	 */
+	public void invalidate(K key) {
+		Segment<K, V> segment = segmentFor(key);
+		synchronized (segment) {
+			segment.stamp++;
+			if (segment.remove(key) != null) {
+				invalidations.increment();
+			}
+		}
+	}
+
+	/**
+	 * Drops every entry.
+	 */
+	public void invalidateAll() {
+		for (Segment<K, V> segment : segments) {
+			synchronized (segment) {
+				segment.stamp++;
+				invalidations.add(segment.size());
+				segment.clear();
+			}
+		}
+	}
+
+	/**
+	 * Must be called while holding the segment's lock. Expired entries are removed as they are found.
+	 */
+	private V lookup(Segment<K, V> segment, K key) {
+		Entry<V> entry = segment.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.expiresAtNanos - System.nanoTime() <= 0) {
+			segment.remove(key);
+			expirations.increment();
+			return null;
+		}
+		return entry.value;
+	}
+
+	private long expiry() {
+		return ttlNanos == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + ttlNanos;
+	}
+
+	/**
+	 * Registers this cache as an MBean, replacing any earlier cache registered under the same name.
+	 */
+	private void registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName("Util:type=Cache,name=" + ObjectName.quote(name));
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(this, objectName);
+		} catch (Exception e) {
+			System.out.println("Unable to register cache MBean: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return the name this cache was created with
+	 */
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getSize() {
+		int size = 0;
+		for (Segment<K, V> segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	@Override
+	public long getHits() {
+		return hits.sum();
+	}
+
+	@Override
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	@Override
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	@Override
+	public long getExpirations() {
+		return expirations.sum();
+	}
+
+	@Override
+	public long getInvalidations() {
+		return invalidations.sum();
+	}
+
+	@Override
+	public double getHitRate() {
+		long hitCount = hits.sum();
+		long total = hitCount + misses.sum();
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+
+	@Override
+	public String toString() {
+		return "LruCache{name=" + name + ", size=" + getSize() + ", hits=" + getHits() + ", misses=" + getMisses()
+				+ ", evictions=" + getEvictions() + ", expirations=" + getExpirations() + '}';
+	}
+}
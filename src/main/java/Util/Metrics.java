@@ -0,0 +1,160 @@
+package Util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A process wide registry of counters and latency histograms, written out in the Prometheus text exposition
+ * format by GET /metrics.
+ *
+ * A metric is identified by its name and label values, eg counter("socialmedia_http_requests_total", help,
+ * "route", "/messages", "status", "200"). Looking one up builds its label string, so callers on a hot path look
+ * their metrics up once and keep them. Latency histograms are written as summaries: p50, p99 and p99.9 in
+ * seconds, plus _sum and _count.
+ */
+public class Metrics {
+
+	private static final double[] QUANTILES = { 0.5, 0.99, 0.999 };
+	private static final String[] QUANTILE_LABELS = { "0.5", "0.99", "0.999" };
+
+	/**
+	 * A monotonically increasing count
+	 */
+	public static class Counter {
+		private final LongAdder value = new LongAdder();
+
+		public void increment() {
+			value.increment();
+		}
+
+		public void add(long amount) {
+			value.add(amount);
+		}
+
+		public long get() {
+			return value.sum();
+		}
+	}
+
+	/**
+	 * All the metrics sharing a name, one per distinct set of label values
+	 */
+	private static class Family {
+		final String help;
+		final String type;
+		final Map<String, Object> children = new ConcurrentHashMap<String, Object>();
+
+		Family(String help, String type) {
+			this.help = help;
+			this.type = type;
+		}
+	}
+
+	private static final Map<String, Family> families = new ConcurrentSkipListMap<String, Family>();
+
+	/**
+	 * @param name the metric name, ending in _total by convention
+	 * @param help a description of the metric
+	 * @param labels alternating label names and values
+	 * @return the counter, created on first use
+	 */
+	public static Counter counter(String name, String help, String... labels) {
+		return (Counter) family(name, help, "counter").children.computeIfAbsent(labels(labels), key -> new Counter());
+	}
+
+	/**
+	 * @param name the metric name, ending in _seconds by convention; values are recorded in nanoseconds
+	 * @param help a description of the metric
+	 * @param labels alternating label names and values
+	 * @return the histogram, created on first use
+	 */
+	public static LatencyHistogram timer(String name, String help, String... labels) {
+		return (LatencyHistogram) family(name, help, "summary").children.computeIfAbsent(labels(labels),
+				key -> new LatencyHistogram());
+	}
+
+	private static Family family(String name, String help, String type) {
+		Family family = families.computeIfAbsent(name, key -> new Family(help, type));
+		if (!family.type.equals(type)) {
+			throw new IllegalArgumentException(name + " is already registered as a " + family.type);
+		}
+		return family;
+	}
+
+	/**
+	 * @return label="value" pairs, comma separated, with the values escaped as the text format requires
+	 */
+	private static String labels(String... labels) {
+		if (labels.length % 2 != 0) {
+			throw new IllegalArgumentException("labels must be name, value pairs");
+		}
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < labels.length; i += 2) {
+			if (i > 0) {
+				builder.append(',');
+			}
+			builder.append(labels[i]).append("=\"");
+			String value = labels[i + 1];
+			for (int c = 0; c < value.length(); c++) {
+				char ch = value.charAt(c);
+				if (ch == '\\' || ch == '"') {
+					builder.append('\\').append(ch);
+				} else if (ch == '\n') {
+					builder.append("\\n");
+				} else {
+					builder.append(ch);
+				}
+			}
+			builder.append('"');
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Writes every metric in the Prometheus text exposition format (version 0.0.4), sorted by name and labels.
+	 *
+	 * @param out where to write
+	 */
+	public static void write(StringBuilder out) {
+		for (Map.Entry<String, Family> entry : families.entrySet()) {
+			String name = entry.getKey();
+			Family family = entry.getValue();
+			out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+			out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+
+			for (Map.Entry<String, Object> child : new TreeMap<String, Object>(family.children).entrySet()) {
+				String labels = child.getKey();
+				if (child.getValue() instanceof Counter) {
+					sample(out, name, labels, null, Long.toString(((Counter) child.getValue()).get()));
+					continue;
+				}
+				LatencyHistogram histogram = (LatencyHistogram) child.getValue();
+				long[] values = histogram.getValuesAtQuantiles(QUANTILES);
+				for (int q = 0; q < QUANTILES.length; q++) {
+					sample(out, name, labels, "quantile=\"" + QUANTILE_LABELS[q] + '"', seconds(values[q]));
+				}
+				sample(out, name + "_sum", labels, null, seconds(histogram.getSum()));
+				sample(out, name + "_count", labels, null, Long.toString(histogram.getCount()));
+			}
+		}
+	}
+
+	private static void sample(StringBuilder out, String name, String labels, String extraLabel, String value) {
+		out.append(name);
+		if (!labels.isEmpty() || extraLabel != null) {
+			out.append('{').append(labels);
+			if (extraLabel != null) {
+				out.append(labels.isEmpty() ? "" : ",").append(extraLabel);
+			}
+			out.append('}');
+		}
+		out.append(' ').append(value).append('\n');
+	}
+
+	private static String seconds(long nanos) {
+		return Double.toString(nanos / 1e9);
+	}
+}
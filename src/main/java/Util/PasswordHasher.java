@@ -0,0 +1,157 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Salted, deliberately slow password hashing with PBKDF2-HMAC-SHA256.
+ *
+ * Hashes are stored as "pbkdf2-sha256$&lt;iterations&gt;$&lt;salt&gt;$&lt;hash&gt;" (salt and hash in Base64), so
+ * each row records the cost it was hashed at and the cost can be raised without invalidating existing rows. A stored
+ * password without that prefix is a legacy plaintext row from before hashing; it still verifies, and needsRehash
+ * reports it so the caller can replace it with a hash on the next successful login.
+ *
+ * The work factor is socialmedia.password.iterations (default 600000, the OWASP recommendation for this
+ * algorithm). Each verification costs that many HMAC rounds of CPU, which is why callers run it on a dedicated,
+ * bounded executor. A stored hash claiming more than MAX_COST_FACTOR times the work factor never verifies, since
+ * rows can arrive from outside, eg through an import, and one with a huge count would hold a hashing thread for
+ * as long as each login of that account took.
+ */
+public class PasswordHasher {
+
+	private static final String PREFIX = "pbkdf2-sha256$";
+	private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+	private static final int SALT_BYTES = 16;
+	private static final int HASH_BITS = 256;
+
+	/**
+	 * How many times the current work factor a stored hash may have been made at and still be verified
+	 */
+	private static final int MAX_COST_FACTOR = 10;
+
+	private static final SecureRandom random = new SecureRandom();
+
+	private final int iterations;
+	private final int maxStoredIterations;
+
+	// Per-process key for fingerprint(), so fingerprints are worthless outside this process
+	private final SecretKeySpec fingerprintKey;
+
+	/**
+	 * @param iterations the PBKDF2 work factor for new hashes
+	 */
+	public PasswordHasher(int iterations) {
+		if (iterations < 1) {
+			throw new IllegalArgumentException("iterations must be at least 1");
+		}
+		this.iterations = iterations;
+		this.maxStoredIterations = (int) Math.min(Integer.MAX_VALUE, (long) iterations * MAX_COST_FACTOR);
+		byte[] key = new byte[32];
+		random.nextBytes(key);
+		this.fingerprintKey = new SecretKeySpec(key, "HmacSHA256");
+	}
+
+	/**
+	 * @return a hasher using socialmedia.password.iterations
+	 */
+	public static PasswordHasher fromConfig() {
+		return new PasswordHasher(ConfigUtil.getInt("socialmedia.password.iterations", 600_000));
+	}
+
+	/**
+	 * @return the work factor used for new hashes
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * @param password the plaintext password
+	 * @return the encoded hash to store, with a fresh random salt
+	 */
+	public String hash(String password) {
+		byte[] salt = new byte[SALT_BYTES];
+		random.nextBytes(salt);
+		Base64.Encoder base64 = Base64.getEncoder();
+		return PREFIX + iterations + '$' + base64.encodeToString(salt) + '$'
+				+ base64.encodeToString(pbkdf2(password, salt, iterations));
+	}
+
+	/**
+	 * Checks a password against a stored value, in time that does not depend on where they differ.
+	 *
+	 * @param password the plaintext password offered
+	 * @param stored the value from the database: an encoded hash, or a legacy plaintext password
+	 * @return true if the password matches. False if the hash claims fewer than 1 or more than MAX_COST_FACTOR times
+	 *         the work factor, without hashing the password.
+	 */
+	public boolean verify(String password, String stored) {
+		if (password == null || stored == null) {
+			return false;
+		}
+		if (!stored.startsWith(PREFIX)) {
+			return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+					stored.getBytes(StandardCharsets.UTF_8));
+		}
+		String[] parts = stored.substring(PREFIX.length()).split("\\$");
+		if (parts.length != 3) {
+			return false;
+		}
+		try {
+			int storedIterations = Integer.parseInt(parts[0]);
+			if (storedIterations < 1 || storedIterations > maxStoredIterations) {
+				return false;
+			}
+			Base64.Decoder base64 = Base64.getDecoder();
+			byte[] expected = base64.decode(parts[2]);
+			return MessageDigest.isEqual(expected, pbkdf2(password, base64.decode(parts[1]), storedIterations));
+		} catch (IllegalArgumentException e) {
+			// Malformed Base64 or iteration count
+			return false;
+		}
+	}
+
+	/**
+	 * @param stored the value from the database
+	 * @return true if it is legacy plaintext or was hashed at a different work factor than the current one
+	 */
+	public boolean needsRehash(String stored) {
+		return stored == null || !stored.startsWith(PREFIX + iterations + '$');
+	}
+
+	/**
+	 * A fast keyed digest of a password, for remembering that a password was recently verified without keeping
+	 * the password itself. Only meaningful within this process and this hasher.
+	 *
+	 * @param password the plaintext password
+	 * @return HMAC-SHA256 of the password under a random per-process key
+	 */
+	public byte[] fingerprint(String password) {
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(fingerprintKey);
+			return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("HmacSHA256 is not available", e);
+		}
+	}
+
+	private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+		PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+		try {
+			return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(ALGORITHM + " is not available", e);
+		} finally {
+			spec.clearPassword();
+		}
+	}
+}
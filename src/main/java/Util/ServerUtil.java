@@ -0,0 +1,75 @@
+package Util;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import org.eclipse.jetty.server.LowResourceMonitor;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.StatisticsHandler;
+import org.eclipse.jetty.util.VirtualThreads;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * The ServerUtil class builds the Jetty server Javalin runs on, so that how requests are executed is chosen by
+ * configuration rather than by whichever JDK the application happens to be started with.
+ *
+ * socialmedia.server.threads selects the execution mode:
+ * <ul>
+ * <li>platform (default) - handlers run on a bounded pool of platform threads, between
+ * socialmedia.server.minThreads (8) and socialmedia.server.maxThreads (250). A request that blocks on the
+ * database holds its thread, so at most maxThreads requests are in progress at once and the rest queue.</li>
+ * <li>virtual - each request runs on its own virtual thread, so a request blocked on the database costs almost
+ * nothing and concurrency is bounded by the connection pool (socialmedia.pool.maxSize) instead. Needs Java 21 or
+ * later at runtime; on an older JDK the server falls back to platform threads and says so.</li>
+ * </ul>
+ */
+public class ServerUtil {
+
+	private ServerUtil() {
+	}
+
+	/**
+	 * @return true if socialmedia.server.threads asks for virtual threads and the running JDK provides them
+	 */
+	public static boolean useVirtualThreads() {
+		if (!"virtual".equalsIgnoreCase(ConfigUtil.getString("socialmedia.server.threads", "platform"))) {
+			return false;
+		}
+		if (!VirtualThreads.areSupported()) {
+			System.out.println("Virtual threads need Java 21 or later, running on " + System.getProperty("java.version")
+					+ "; using platform threads");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Builds a server the same way Javalin builds its default one, but with the thread pool chosen by
+	 * configuration. Pass it to Javalin with config.jetty.server(ServerUtil::createServer).
+	 *
+	 * @return an unstarted server
+	 */
+	public static Server createServer() {
+		QueuedThreadPool threadPool = new QueuedThreadPool(ConfigUtil.getInt("socialmedia.server.maxThreads", 250),
+				ConfigUtil.getInt("socialmedia.server.minThreads", 8), 60_000);
+		threadPool.setName("JettyServerThreadPool");
+		// Selectors and acceptors stay on the platform threads; only the blocking work is handed to virtual threads
+		threadPool.setUseVirtualThreads(useVirtualThreads());
+
+		Server server = new Server(threadPool);
+		server.addBean(new LowResourceMonitor(server));
+		server.insertHandler(new StatisticsHandler());
+		return server;
+	}
+
+	/**
+	 * Drops the connection of a request whose response has gone wrong part way. Ending the response instead would
+	 * let the client take what was sent, under the status already sent, for all there was.
+	 *
+	 * @param request The request being answered
+	 * @param cause Why the response could not be finished
+	 */
+	public static void abort(HttpServletRequest request, Throwable cause) {
+		Request.getBaseRequest(request).getHttpChannel().abort(cause);
+	}
+}
@@ -0,0 +1,195 @@
+package Util;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Issues and checks signed, self-contained session tokens, so a request can be authenticated with a little CPU
+ * and no database access.
+ *
+ * A token is "&lt;payload&gt;.&lt;signature&gt;", both Base64url. The payload holds the account_id, the expiry
+ * (epoch seconds) and a random token id. The signature is HMAC-SHA256 of the payload under a server secret. Anyone
+ * can read a token but only the server can make one, and checking it costs one HMAC.
+ *
+ * Settings:
+ * <ul>
+ * <li>socialmedia.session.secret - Base64 signing key. If unset a random key is generated at startup, so tokens do
+ * not survive a restart and are not accepted by other instances.</li>
+ * <li>socialmedia.session.ttlSeconds - how long a token is valid (default 3600).</li>
+ * <li>socialmedia.session.revocation - if true (default), revoked token ids are held in memory until the tokens
+ * would have expired anyway, and checked on every request. Revocation is per instance.</li>
+ * </ul>
+ */
+public class SessionTokens {
+
+	private static final int PAYLOAD_BYTES = Integer.BYTES + Long.BYTES + Long.BYTES;
+	private static final long PURGE_INTERVAL_MILLIS = 60_000;
+
+	private static final SecureRandom random = new SecureRandom();
+
+	private final SecretKeySpec key;
+	private final long ttlSeconds;
+	private final boolean revocationEnabled;
+
+	// One Mac per thread, since a Mac is not thread safe and getting a new one per check costs more than the check
+	private final ThreadLocal<Mac> macs;
+
+	// Revoked token id to its expiry in epoch seconds; entries are dropped once the token would have expired anyway
+	private final Map<Long, Long> revoked = new ConcurrentHashMap<Long, Long>();
+	private volatile long nextPurgeMillis;
+
+	/**
+	 * @param secret the signing key, at least 32 bytes
+	 * @param ttlSeconds how long issued tokens are valid
+	 * @param revocationEnabled whether revoke() has any effect
+	 */
+	public SessionTokens(byte[] secret, long ttlSeconds, boolean revocationEnabled) {
+		if (secret.length < 32) {
+			throw new IllegalArgumentException("secret must be at least 32 bytes");
+		}
+		this.key = new SecretKeySpec(secret.clone(), "HmacSHA256");
+		this.ttlSeconds = ttlSeconds;
+		this.revocationEnabled = revocationEnabled;
+		this.macs = ThreadLocal.withInitial(this::newMac);
+		// Fail at startup rather than on the first request if the key is unusable
+		newMac();
+	}
+
+	/**
+	 * @return tokens configured from socialmedia.session.*
+	 */
+	public static SessionTokens fromConfig() {
+		String configured = ConfigUtil.getString("socialmedia.session.secret", null);
+		byte[] secret;
+		if (configured != null) {
+			secret = Base64.getDecoder().decode(configured);
+		} else {
+			secret = new byte[32];
+			random.nextBytes(secret);
+		}
+		return new SessionTokens(secret, ConfigUtil.getLong("socialmedia.session.ttlSeconds", 3600),
+				ConfigUtil.getBoolean("socialmedia.session.revocation", true));
+	}
+
+	/**
+	 * @param account_id the account the token authenticates
+	 * @return a new token, valid for the configured time to live
+	 */
+	public String issue(int account_id) {
+		ByteBuffer payload = ByteBuffer.allocate(PAYLOAD_BYTES);
+		payload.putInt(account_id);
+		payload.putLong(System.currentTimeMillis() / 1000 + ttlSeconds);
+		payload.putLong(random.nextLong());
+		byte[] bytes = payload.array();
+
+		Base64.Encoder base64 = Base64.getUrlEncoder().withoutPadding();
+		return base64.encodeToString(bytes) + '.' + base64.encodeToString(sign(bytes));
+	}
+
+	/**
+	 * @param token a token as sent by a client, or null
+	 * @return the account_id it authenticates, or -1 if it is missing, malformed, forged, expired or revoked
+	 */
+	public int verify(String token) {
+		byte[] payload = checkedPayload(token);
+		if (payload == null) {
+			return -1;
+		}
+		ByteBuffer fields = ByteBuffer.wrap(payload);
+		int account_id = fields.getInt();
+		long expires = fields.getLong();
+		long tokenId = fields.getLong();
+		if (expires <= System.currentTimeMillis() / 1000) {
+			return -1;
+		}
+		if (revocationEnabled && revoked.containsKey(tokenId)) {
+			return -1;
+		}
+		return account_id;
+	}
+
+	/**
+	 * Makes a token unusable from now on, eg on logout. Does nothing if revocation is disabled or the token is not
+	 * valid.
+	 *
+	 * @param token the token to revoke
+	 */
+	public void revoke(String token) {
+		if (!revocationEnabled) {
+			return;
+		}
+		byte[] payload = checkedPayload(token);
+		if (payload == null) {
+			return;
+		}
+		ByteBuffer fields = ByteBuffer.wrap(payload);
+		fields.getInt();
+		long expires = fields.getLong();
+		revoked.put(fields.getLong(), expires);
+		purgeExpired();
+	}
+
+	/**
+	 * @return the number of revoked tokens still being remembered
+	 */
+	public int getRevokedCount() {
+		return revoked.size();
+	}
+
+	/**
+	 * @return the payload of a well formed token with a valid signature, or null
+	 */
+	private byte[] checkedPayload(String token) {
+		if (token == null) {
+			return null;
+		}
+		int dot = token.indexOf('.');
+		if (dot < 0) {
+			return null;
+		}
+		try {
+			Base64.Decoder base64 = Base64.getUrlDecoder();
+			byte[] payload = base64.decode(token.substring(0, dot));
+			byte[] signature = base64.decode(token.substring(dot + 1));
+			if (payload.length != PAYLOAD_BYTES || !MessageDigest.isEqual(signature, sign(payload))) {
+				return null;
+			}
+			return payload;
+		} catch (IllegalArgumentException e) {
+			// Not Base64url
+			return null;
+		}
+	}
+
+	private void purgeExpired() {
+		long now = System.currentTimeMillis();
+		if (now < nextPurgeMillis) {
+			return;
+		}
+		nextPurgeMillis = now + PURGE_INTERVAL_MILLIS;
+		long nowSeconds = now / 1000;
+		revoked.values().removeIf(expires -> expires <= nowSeconds);
+	}
+
+	private byte[] sign(byte[] payload) {
+		return macs.get().doFinal(payload);
+	}
+
+	private Mac newMac() {
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(key);
+			return mac;
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("HmacSHA256 is not available", e);
+		}
+	}
+}
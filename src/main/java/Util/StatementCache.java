@@ -0,0 +1,198 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A least-recently-used cache of PreparedStatements belonging to one physical connection, keyed by SQL text.
+ *
+ * Callers get back a lease: a PreparedStatement whose close() clears its parameters and hands the statement back to
+ * the cache instead of closing it, so the next prepare of the same SQL on this connection skips parsing and planning.
+ * A statement that is already leased out (the same SQL prepared twice before the first is closed) is not shared; the
+ * second caller gets an ordinary, uncached statement. Statements pushed out of the cache are closed for real.
+ *
+ * A cache is only ever touched by the thread that currently owns its connection, so it is not synchronized.
+ */
+class StatementCache {
+
+	/**
+	 * A cached statement and the lease currently using it, if any.
+	 */
+	private static class Entry {
+		final PreparedStatement statement;
+		Lease lease;
+
+		Entry(PreparedStatement statement) {
+			this.statement = statement;
+		}
+	}
+
+	private final int maxSize;
+	private final Map<String, Entry> entries;
+	private final LongAdder hits;
+	private final LongAdder misses;
+
+	/**
+	 * @param maxSize the most statements kept open for this connection
+	 * @param hits counter bumped when a prepare is served from the cache, shared across the pool
+	 * @param misses counter bumped when a prepare has to go to the driver, shared across the pool
+	 */
+	StatementCache(int maxSize, LongAdder hits, LongAdder misses) {
+		this.maxSize = maxSize;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+		this.hits = hits;
+		this.misses = misses;
+	}
+
+	/**
+	 * Returns a leased statement for the given SQL, preparing it on the connection if it is not already cached.
+	 *
+	 * @param physical the connection this cache belongs to
+	 * @param handle the pooled handle the caller sees, returned from the statement's getConnection()
+	 * @param sql the statement text
+	 * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS
+	 */
+	PreparedStatement prepare(Connection physical, Connection handle, String sql, int autoGeneratedKeys)
+			throws SQLException {
+		String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "K:" + sql : "N:" + sql;
+		Entry entry = entries.get(key);
+		if (entry != null && entry.lease != null) {
+			// Already in use on this connection, so hand out a private statement that closes normally
+			misses.increment();
+			return physical.prepareStatement(sql, autoGeneratedKeys);
+		}
+
+		if (entry == null) {
+			misses.increment();
+			entry = new Entry(physical.prepareStatement(sql, autoGeneratedKeys));
+			entries.put(key, entry);
+			evictOverflow();
+		} else {
+			hits.increment();
+		}
+
+		entry.lease = new Lease(entry, handle);
+		return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+				new Class<?>[] { PreparedStatement.class }, entry.lease);
+	}
+
+	/**
+	 * Closes the least recently used statements that are not leased until the cache fits within maxSize.
+	 */
+	private void evictOverflow() {
+		Iterator<Entry> leastRecentFirst = entries.values().iterator();
+		while (entries.size() > maxSize && leastRecentFirst.hasNext()) {
+			Entry entry = leastRecentFirst.next();
+			if (entry.lease == null) {
+				leastRecentFirst.remove();
+				closeQuietly(entry.statement);
+			}
+		}
+	}
+
+	/**
+	 * Revokes every outstanding lease. Called when the connection goes back to the pool, so that a statement the
+	 * previous owner forgot to close can neither be used by them again nor block the next owner from the cache.
+	 */
+	void reclaim() {
+		for (Entry entry : entries.values()) {
+			if (entry.lease != null) {
+				entry.lease.revoke();
+			}
+		}
+	}
+
+	/**
+	 * Closes every cached statement. Called when the physical connection itself is closed.
+	 */
+	void closeAll() {
+		List<Entry> all = new ArrayList<>(entries.values());
+		entries.clear();
+		for (Entry entry : all) {
+			closeQuietly(entry.statement);
+		}
+	}
+
+	private static void closeQuietly(Statement statement) {
+		try {
+			statement.close();
+		} catch (SQLException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * One caller's use of a cached statement. close() resets the statement and returns it to the cache.
+	 */
+	private static class Lease implements InvocationHandler {
+		private final Entry entry;
+		private final Connection handle;
+		private boolean closed;
+
+		Lease(Entry entry, Connection handle) {
+			this.entry = entry;
+			this.handle = handle;
+		}
+
+		void revoke() {
+			if (!closed) {
+				closed = true;
+				reset();
+			}
+		}
+
+		private void reset() {
+			entry.lease = null;
+			try {
+				entry.statement.clearParameters();
+				entry.statement.clearBatch();
+			} catch (SQLException e) {
+				System.out.println(e.getMessage());
+			}
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "close":
+					if (!closed) {
+						closed = true;
+						reset();
+					}
+					return null;
+				case "isClosed":
+					return closed;
+				case "getConnection":
+					return handle;
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return "Cached" + entry.statement;
+				default:
+					break;
+			}
+			if (closed) {
+				throw new SQLException("Statement has already been closed");
+			}
+			try {
+				return method.invoke(entry.statement, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
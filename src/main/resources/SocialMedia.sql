@@ -1,3 +1,4 @@
+drop table if exists follow;
 drop table if exists message;
 drop table if exists account;
 create table account (
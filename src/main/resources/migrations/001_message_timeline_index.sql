@@ -0,0 +1,3 @@
+-- Serves GET /accounts/{account_id}/messages: finds a user's messages and returns them newest first
+-- without a sort, and lets keyset pages start part way through the user's timeline.
+create index if not exists message_posted_by_time_idx on message (posted_by, time_posted_epoch desc, message_id desc);
@@ -0,0 +1,11 @@
+-- Who follows whom, for GET /accounts/{account_id}/feed. The primary key lists the accounts a user follows, and
+-- follow_followee_idx lists an account's followers, which every new message is fanned out to.
+create table if not exists follow (
+    follower_id int not null,
+    followee_id int not null,
+    primary key (follower_id, followee_id),
+    foreign key (follower_id) references account(account_id),
+    foreign key (followee_id) references account(account_id),
+    check (follower_id <> followee_id)
+);
+create index if not exists follow_followee_idx on follow (followee_id, follower_id);
@@ -0,0 +1,166 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalGetTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/" + path));
+        if(ifNoneMatch != null){
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void postMessage(int posted_by, String text) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":" + posted_by + ", " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages again with the ETag of the first response, before and
+     * after a new message is posted
+     *
+     * Expected Response:
+     *  Status Code: 304 with no body while nothing has changed, then 200 with the new message and a new ETag
+     */
+    @Test
+    public void getAllMessagesNotModifiedUntilWritten() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("messages", null);
+        Assert.assertEquals(200, first.statusCode());
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<String> unchanged = get("messages", etag);
+        Assert.assertEquals(304, unchanged.statusCode());
+        Assert.assertEquals("", unchanged.body());
+        Assert.assertEquals(etag, unchanged.headers().firstValue("ETag").orElseThrow());
+        // Paged and streamed forms of the same list share the version, and a list of tags matches any of them
+        Assert.assertEquals(304, get("messages?limit=10", "\"other\", " + etag).statusCode());
+
+        postMessage(1, "new message");
+        HttpResponse<String> changed = get("messages", etag);
+        Assert.assertEquals(200, changed.statusCode());
+        Assert.assertNotEquals(etag, changed.headers().firstValue("ETag").orElseThrow());
+        List<Message> messages = objectMapper.readValue(changed.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(2, messages.size());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages with its ETag, after another account posts
+     * and after account 1 updates its message
+     *
+     * Expected Response:
+     *  Status Code: 304 after the other account's post, 200 after the update
+     */
+    @Test
+    public void getAllMessagesFromUserNotModifiedByOtherAccounts() throws IOException, InterruptedException {
+        HttpRequest registerRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"testuser2\", \"password\": \"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> registered = webClient.send(registerRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, registered.statusCode());
+        int otherAccount = objectMapper.readValue(registered.body(), Account.class).getAccount_id();
+
+        String etag = get("accounts/1/messages", null).headers().firstValue("ETag").orElseThrow();
+        postMessage(otherAccount, "another account");
+        Assert.assertEquals(304, get("accounts/1/messages", etag).statusCode());
+
+        HttpRequest updateRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(updateRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        HttpResponse<String> changed = get("accounts/1/messages", etag);
+        Assert.assertEquals(200, changed.statusCode());
+        List<Message> messages = objectMapper.readValue(changed.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals("updated message", messages.get(0).getMessage_text());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with Accept-Encoding: gzip, for a list large enough
+     * to compress and for one that is not
+     *
+     * Expected Response:
+     *  Status Code: 200, gzipped only when the body is large, and the same JSON either way
+     */
+    @Test
+    public void getAllMessagesCompressedAboveThreshold() throws IOException, InterruptedException {
+        HttpRequest gzipRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .header("Accept-Encoding", "gzip")
+                .build();
+        HttpResponse<byte[]> small = webClient.send(gzipRequest, HttpResponse.BodyHandlers.ofByteArray());
+        Assert.assertEquals(200, small.statusCode());
+        Assert.assertTrue(small.headers().firstValue("Content-Encoding").isEmpty());
+        Assert.assertEquals("Accept-Encoding", small.headers().firstValue("Vary").orElseThrow());
+
+        for(int i = 0; i < 40; i++){
+            postMessage(1, "message number " + i + " with enough text to make the list worth compressing");
+        }
+        HttpResponse<byte[]> large = webClient.send(gzipRequest, HttpResponse.BodyHandlers.ofByteArray());
+        Assert.assertEquals(200, large.statusCode());
+        Assert.assertEquals("gzip", large.headers().firstValue("Content-Encoding").orElseThrow());
+
+        String uncompressed = get("messages", null).body();
+        Assert.assertTrue(large.body().length < uncompressed.length());
+        try(InputStream in = new GZIPInputStream(new ByteArrayInputStream(large.body()))){
+            Assert.assertEquals(uncompressed, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,170 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+
+public class ConnectionPoolTest {
+    JdbcDataSource source;
+    ConnectionPool pool;
+
+    /**
+     * Before every test, point a data source at a private in-memory database, so the pools made here never touch
+     * the application's own connections. Each test makes its pool with the settings it needs.
+     */
+    @Before
+    public void setUp() {
+        source = new JdbcDataSource();
+        source.setURL("jdbc:h2:mem:connection-pool-test;DB_CLOSE_DELAY=-1");
+        source.setUser("sa");
+        source.setPassword("sa");
+    }
+
+    @After
+    public void tearDown() {
+        if(pool != null){
+            pool.close();
+        }
+    }
+
+    private ConnectionPool newPool(int minSize, int maxSize) {
+        ConnectionPool.Settings settings = new ConnectionPool.Settings();
+        settings.minSize = minSize;
+        settings.maxSize = maxSize;
+        return newPool(settings);
+    }
+
+    private ConnectionPool newPool(ConnectionPool.Settings settings) {
+        pool = new ConnectionPool(source, settings);
+        return pool;
+    }
+
+    private static void selectOne(Connection connection) throws SQLException {
+        try(Statement statement = connection.createStatement()){
+            Assert.assertTrue(statement.executeQuery("SELECT 1").next());
+        }
+    }
+
+    /**
+     * Borrowing while every connection is in use waits for the acquire timeout, then fails with a transient error
+     * the DAOs report as any other failed query. Once one is given back, borrowing works again.
+     */
+    @Test
+    public void acquireTimesOutWhenAllConnectionsAreInUse() throws SQLException {
+        ConnectionPool.Settings settings = new ConnectionPool.Settings();
+        settings.minSize = 0;
+        settings.maxSize = 1;
+        settings.acquireTimeoutMillis = 200;
+        newPool(settings);
+
+        Connection held = pool.getConnection();
+        long start = System.nanoTime();
+        try{
+            pool.getConnection();
+            Assert.fail("A second connection was handed out past maxSize");
+        }
+        catch(SQLTransientConnectionException e){
+            // Every connection stayed in use for the whole timeout
+        }
+        Assert.assertTrue((System.nanoTime() - start) / 1_000_000 >= 200);
+        Assert.assertEquals(1, pool.getAcquireTimeouts());
+        Assert.assertEquals(1, pool.getTotalConnections());
+
+        held.close();
+        try(Connection connection = pool.getConnection()){
+            selectOne(connection);
+        }
+        Assert.assertEquals(1, pool.getAcquireTimeouts());
+    }
+
+    /**
+     * An idle connection that has broken is found out when it is next borrowed, closed, and replaced with a new one
+     */
+    @Test
+    public void validationOnBorrowReplacesBrokenConnection() throws SQLException {
+        newPool(0, 1);
+        Connection physical;
+        try(Connection connection = pool.getConnection()){
+            physical = connection.unwrap(Connection.class);
+        }
+        // Breaks the connection while it sits idle, as a dropped socket would
+        physical.close();
+
+        try(Connection connection = pool.getConnection()){
+            selectOne(connection);
+            Assert.assertNotSame(physical, connection.unwrap(Connection.class));
+        }
+        Assert.assertEquals(1, pool.getValidationFailures());
+        Assert.assertEquals(2, pool.getConnectionsCreated());
+        Assert.assertEquals(1, pool.getConnectionsDestroyed());
+        Assert.assertEquals(1, pool.getTotalConnections());
+    }
+
+    /**
+     * Connections left idle past the idle timeout are closed by the housekeeper, down to minSize and no further
+     */
+    @Test
+    public void idleConnectionsAreEvictedDownToMinSize() throws SQLException, InterruptedException {
+        ConnectionPool.Settings settings = new ConnectionPool.Settings();
+        settings.minSize = 1;
+        settings.maxSize = 4;
+        settings.idleTimeoutMillis = 100;
+        newPool(settings);
+
+        Connection[] connections = new Connection[4];
+        for(int i = 0; i < connections.length; i++){
+            connections[i] = pool.getConnection();
+        }
+        for(Connection connection : connections){
+            connection.close();
+        }
+        Assert.assertEquals(4, pool.getTotalConnections());
+        Assert.assertEquals(4, pool.getIdleConnections());
+
+        // The housekeeper runs at least a second apart
+        long deadline = System.currentTimeMillis() + 5_000;
+        while(pool.getTotalConnections() > 1 && System.currentTimeMillis() < deadline){
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(1, pool.getTotalConnections());
+        Assert.assertEquals(1, pool.getIdleConnections());
+        Assert.assertEquals(3, pool.getConnectionsDestroyed());
+    }
+
+    /**
+     * A connection held past the leak detection threshold is counted once as a possible leak, and giving it back
+     * later does not count it again
+     */
+    @Test
+    public void connectionHeldPastThresholdIsCountedAsLeak() throws SQLException, InterruptedException {
+        ConnectionPool.Settings settings = new ConnectionPool.Settings();
+        settings.minSize = 0;
+        settings.maxSize = 2;
+        settings.leakDetectionThresholdMillis = 200;
+        newPool(settings);
+
+        try(Connection quick = pool.getConnection()){
+            selectOne(quick);
+        }
+        Connection leaked = pool.getConnection();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while(pool.getLeaksDetected() == 0 && System.currentTimeMillis() < deadline){
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(1, pool.getLeaksDetected());
+
+        // Reported once, however long it is held
+        Thread.sleep(1_200);
+        Assert.assertEquals(1, pool.getLeaksDetected());
+        leaked.close();
+        Assert.assertEquals(0, pool.getActiveConnections());
+        Assert.assertEquals(1, pool.getLeaksDetected());
+    }
+}
@@ -3,6 +3,9 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -148,5 +151,66 @@ public class CreateMessageTest {
         Assert.assertEquals("", response.body().toString());
     }
 
+    /**
+     * Sending an http request to POST localhost:8080/messages from an account registered after the app started
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of message object
+     */
+    @Test
+    public void createMessageByNewlyRegisteredUser() throws IOException, InterruptedException {
+        HttpRequest registerRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"newuser\", " +
+                        "\"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(registerRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":2, " +
+                        "\"message_text\": \"first message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Message(2, 2, "first message", 1669947792),
+                objectMapper.readValue(response.body(), Message.class));
+    }
+
 
+    /**
+     * Sending an http request to POST localhost:8080/messages posted by an account written straight to the
+     * database after the app started, so the app's account_id bitmap has never seen it
+     *
+     * Expected Response:
+     *  Status Code: 200, for the first message and the next
+     *  Response Body: JSON representation of message object
+     */
+    @Test
+    public void createMessageByAccountAddedOutsideApp() throws IOException, InterruptedException, SQLException {
+        try(Connection connection = ConnectionUtil.getConnection();
+            Statement statement = connection.createStatement()){
+            statement.executeUpdate("INSERT INTO Account (username, password) VALUES ('outside', 'password')");
+        }
+        for(int i = 0; i < 2; i++){
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{"+
+                            "\"posted_by\":2, " +
+                            "\"message_text\": \"from outside\", " +
+                            "\"time_posted_epoch\": 1669947792}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            HttpResponse response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, response.statusCode());
+            Assert.assertEquals(new Message(2 + i, 2, "from outside", 1669947792),
+                    objectMapper.readValue(response.body().toString(), Message.class));
+        }
+    }
 }
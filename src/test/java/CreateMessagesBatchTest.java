@@ -0,0 +1,124 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessageBatchResult;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class CreateMessagesBatchTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> postBatch(String body) throws IOException, InterruptedException {
+        HttpRequest postBatchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(postBatchRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with valid messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one result per message, in order, holding the created messages with consecutive ids
+     */
+    @Test
+    public void createMessagesBatchSuccessful() throws IOException, InterruptedException {
+        HttpResponse<String> response = postBatch("[" +
+                "{\"posted_by\":1, \"message_text\": \"first\", \"time_posted_epoch\": 1669947792}," +
+                "{\"posted_by\":1, \"message_text\": \"second\", \"time_posted_epoch\": 1669947793}]");
+        Assert.assertEquals(200, response.statusCode());
+
+        List<MessageBatchResult> results = objectMapper.readValue(response.body(),
+                new TypeReference<List<MessageBatchResult>>(){});
+        Assert.assertEquals(2, results.size());
+        Assert.assertEquals(new Message(2, 1, "first", 1669947792), results.get(0).getMessage());
+        Assert.assertEquals(new Message(3, 1, "second", 1669947793), results.get(1).getMessage());
+        Assert.assertNull(results.get(0).getError());
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/3"))
+                .build();
+        HttpResponse<String> getResponse = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(new Message(3, 1, "second", 1669947793),
+                objectMapper.readValue(getResponse.body(), Message.class));
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch where some messages are invalid
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: errors for the blank message and unknown account, the valid message created
+     */
+    @Test
+    public void createMessagesBatchReportsInvalidMessages() throws IOException, InterruptedException {
+        HttpResponse<String> response = postBatch("[" +
+                "{\"posted_by\":1, \"message_text\": \"\", \"time_posted_epoch\": 1669947792}," +
+                "{\"posted_by\":1, \"message_text\": \"valid\", \"time_posted_epoch\": 1669947793}," +
+                "{\"posted_by\":99, \"message_text\": \"no such user\", \"time_posted_epoch\": 1669947794}]");
+        Assert.assertEquals(200, response.statusCode());
+
+        List<MessageBatchResult> results = objectMapper.readValue(response.body(),
+                new TypeReference<List<MessageBatchResult>>(){});
+        Assert.assertEquals(3, results.size());
+        Assert.assertNull(results.get(0).getMessage());
+        Assert.assertNotNull(results.get(0).getError());
+        Assert.assertEquals(new Message(2, 1, "valid", 1669947793), results.get(1).getMessage());
+        Assert.assertNull(results.get(2).getMessage());
+        Assert.assertNotNull(results.get(2).getError());
+        Assert.assertEquals(2, results.get(2).getIndex());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with an empty array
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void createMessagesBatchEmpty() throws IOException, InterruptedException {
+        HttpResponse<String> response = postBatch("[]");
+        Assert.assertEquals(400, response.statusCode());
+    }
+}
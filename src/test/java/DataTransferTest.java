@@ -0,0 +1,288 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Account;
+import Model.ImportResult;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class DataTransferTest {
+    private static final String ADMIN_TOKEN = "test-admin-token";
+
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with an admin token configured, and create a
+     * new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("socialmedia.admin.token", ADMIN_TOKEN);
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        startApp();
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("socialmedia.admin.token");
+    }
+
+    private void startApp() throws InterruptedException {
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    private HttpResponse<String> send(String method, String path, String body, String token)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body));
+        if(token != null){
+            request.header("Authorization", "Bearer " + token);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Message> getAllMessages() throws IOException, InterruptedException {
+        HttpResponse<String> response = send("GET", "messages", null, null);
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/admin/export without the admin token, or with another token
+     *
+     * Expected Response:
+     *  Status Code: 401
+     */
+    @Test
+    public void exportRequiresAdminToken() throws IOException, InterruptedException {
+        Assert.assertEquals(401, send("GET", "admin/export", null, null).statusCode());
+        Assert.assertEquals(401, send("GET", "admin/export", null, "not-the-token").statusCode());
+        Assert.assertEquals(401, send("POST", "admin/import", "", "not-the-token").statusCode());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/admin/export with the admin token
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one line per account, then one line per message
+     */
+    @Test
+    public void exportWritesAccountsThenMessages() throws IOException, InterruptedException {
+        HttpResponse<String> response = send("GET", "admin/export", null, ADMIN_TOKEN);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("application/x-ndjson", response.headers().firstValue("Content-Type").orElse(""));
+
+        String[] lines = response.body().split("\n");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertTrue(response.body().endsWith("\n"));
+        Assert.assertEquals(new Account(1, "testuser1", "password"),
+                objectMapper.treeToValue(objectMapper.readTree(lines[0]).get("account"), Account.class));
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792),
+                objectMapper.treeToValue(objectMapper.readTree(lines[1]).get("message"), Message.class));
+    }
+
+    /**
+     * An export imported into an emptied database brings back the same accounts, messages and follows with the same
+     * ids, and the ids handed out afterwards carry on past the largest imported
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the number of accounts, messages and follows imported
+     */
+    @Test
+    public void importRestoresExport() throws IOException, InterruptedException {
+        Assert.assertEquals(200, send("POST", "register", "{\"username\": \"user2\", \"password\": \"secret\"}", null).statusCode());
+        for(int i = 0; i < 3; i++){
+            Assert.assertEquals(200, send("POST", "messages",
+                    "{\"posted_by\": 2, \"message_text\": \"message " + i + "\", \"time_posted_epoch\": 1669947793}", null).statusCode());
+        }
+        Assert.assertEquals(200, send("DELETE", "messages/2", null, null).statusCode());
+        Assert.assertEquals(200, send("PUT", "accounts/2/following/1", null, null).statusCode());
+        List<Message> before = getAllMessages();
+        String export = send("GET", "admin/export", null, ADMIN_TOKEN).body();
+
+        app.stop();
+        ConnectionUtil.resetTestDatabase();
+        startApp();
+
+        HttpResponse<String> response = send("POST", "admin/import", export, ADMIN_TOKEN);
+        Assert.assertEquals(200, response.statusCode());
+        ImportResult expected = new ImportResult(2, 3, null, 0);
+        expected.setFollows(1);
+        Assert.assertEquals(expected, objectMapper.readValue(response.body(), ImportResult.class));
+        Assert.assertEquals(before, getAllMessages());
+        Assert.assertEquals("[1]", send("GET", "accounts/2/following", null, null).body());
+
+        // The stored password hash came across as it was
+        Assert.assertEquals(200, send("POST", "login", "{\"username\": \"user2\", \"password\": \"secret\"}", null).statusCode());
+        HttpResponse<String> created = send("POST", "messages",
+                "{\"posted_by\": 2, \"message_text\": \"after import\", \"time_posted_epoch\": 1669947794}", null);
+        Assert.assertEquals(new Message(5, 2, "after import", 1669947794), objectMapper.readValue(created.body(), Message.class));
+        HttpResponse<String> registered = send("POST", "register", "{\"username\": \"user3\", \"password\": \"secret\"}", null);
+        Assert.assertEquals(3, objectMapper.readValue(registered.body(), Account.class).getAccount_id());
+    }
+
+    /**
+     * Importing the same lines twice replaces the rows rather than adding to them
+     *
+     * Expected Response:
+     *  Status Code: 200 both times
+     *  Response Body: the messages once each, as imported
+     */
+    @Test
+    public void importReplacesRowsWithSameId() throws IOException, InterruptedException {
+        String body = "{\"message\": {\"message_id\": 1, \"posted_by\": 1, \"message_text\": \"replaced\", \"time_posted_epoch\": 5}}\n"
+                + "{\"message\": {\"message_id\": 7, \"posted_by\": 1, \"message_text\": \"seventh\", \"time_posted_epoch\": 6}}\n";
+        Assert.assertEquals(200, send("POST", "admin/import", body, ADMIN_TOKEN).statusCode());
+        Assert.assertEquals(200, send("POST", "admin/import", body, ADMIN_TOKEN).statusCode());
+
+        Assert.assertEquals(Arrays.asList(new Message(1, 1, "replaced", 5), new Message(7, 1, "seventh", 6)),
+                getAllMessages());
+        Assert.assertEquals(new Message(1, 1, "replaced", 5), objectMapper.readValue(
+                send("GET", "messages/1", null, null).body(), Message.class));
+    }
+
+    /**
+     * An import stops at a line that cannot be saved. The lines before it are saved.
+     *
+     * Expected Response:
+     *  Status Code: 400
+     *  Response Body: the rows saved, the line at fault and why
+     */
+    @Test
+    public void importStopsAtInvalidLine() throws IOException, InterruptedException {
+        String body = "{\"account\": {\"account_id\": 4, \"username\": \"imported\", \"password\": \"hash\"}}\n"
+                + "{\"message\": {\"message_id\": 9, \"posted_by\": 4, \"message_text\": \"\", \"time_posted_epoch\": 6}}\n"
+                + "{\"message\": {\"message_id\": 10, \"posted_by\": 4, \"message_text\": \"never read\", \"time_posted_epoch\": 6}}\n";
+        HttpResponse<String> response = send("POST", "admin/import", body, ADMIN_TOKEN);
+        Assert.assertEquals(400, response.statusCode());
+        Assert.assertEquals(new ImportResult(1, 0, "message_text must not be blank", 2),
+                objectMapper.readValue(response.body(), ImportResult.class));
+        Assert.assertEquals(1, getAllMessages().size());
+
+        response = send("POST", "admin/import", "{\"account\": {\"account_id\": 1,", ADMIN_TOKEN);
+        Assert.assertEquals(400, response.statusCode());
+        Assert.assertEquals(1, objectMapper.readValue(response.body(), ImportResult.class).getLine());
+    }
+
+    /**
+     * An id far past those already stored is refused before anything is sized for it, while an id with a gap
+     * before it, as left by deleted rows, is saved
+     *
+     * Expected Response:
+     *  Status Code: 400
+     *  Response Body: the rows before it saved, and the line with the id
+     */
+    @Test
+    public void importRejectsIdFarPastExisting() throws IOException, InterruptedException {
+        String body = "{\"message\": {\"message_id\": 500, \"posted_by\": 1, \"message_text\": \"gap\", \"time_posted_epoch\": 6}}\n"
+                + "{\"message\": {\"message_id\": 1000000000, \"posted_by\": 1, \"message_text\": \"far\", \"time_posted_epoch\": 6}}\n";
+        HttpResponse<String> response = send("POST", "admin/import", body, ADMIN_TOKEN);
+        Assert.assertEquals(400, response.statusCode());
+        ImportResult result = objectMapper.readValue(response.body(), ImportResult.class);
+        Assert.assertEquals(1, result.getMessages());
+        Assert.assertEquals(2, result.getLine());
+        Assert.assertTrue(result.getError(), result.getError().startsWith("message_id must be at most 100002"));
+
+        response = send("POST", "admin/import",
+                "{\"account\": {\"account_id\": 2147483647, \"username\": \"last\", \"password\": \"hash\"}}\n", ADMIN_TOKEN);
+        Assert.assertEquals(400, response.statusCode());
+        Assert.assertEquals(Arrays.asList(new Message(1, 1, "test message 1", 1669947792), new Message(500, 1, "gap", 6)),
+                getAllMessages());
+    }
+
+    /**
+     * A message whose author is neither in the import nor already registered is not saved
+     *
+     * Expected Response:
+     *  Status Code: 400
+     *  Response Body: no rows saved, and the line of the batch that failed
+     */
+    @Test
+    public void importRejectsMessageWithUnknownAuthor() throws IOException, InterruptedException {
+        String body = "{\"message\": {\"message_id\": 9, \"posted_by\": 1, \"message_text\": \"fine\", \"time_posted_epoch\": 6}}\n"
+                + "{\"message\": {\"message_id\": 10, \"posted_by\": 42, \"message_text\": \"orphan\", \"time_posted_epoch\": 6}}\n";
+        HttpResponse<String> response = send("POST", "admin/import", body, ADMIN_TOKEN);
+        Assert.assertEquals(400, response.statusCode());
+        ImportResult result = objectMapper.readValue(response.body(), ImportResult.class);
+        Assert.assertEquals(0, result.getMessages());
+        Assert.assertEquals(1, result.getLine());
+        Assert.assertEquals(Arrays.asList(new Message(1, 1, "test message 1", 1669947792)), getAllMessages());
+    }
+
+    /**
+     * An imported password hash claiming a work factor far above the configured one is refused at login without
+     * being computed, so it cannot hold a hashing thread. One at the configured cost still logs in.
+     *
+     * Expected Response:
+     *  Status Code: 200 for the import, 401 at once for the login, then 200 for a login at the configured cost
+     */
+    @Test(timeout = 20_000)
+    public void importedHashWithHugeCostIsRefusedAtLogin() throws IOException, InterruptedException {
+        Assert.assertEquals(200, send("POST", "register", "{\"username\": \"user2\", \"password\": \"secret\"}", null).statusCode());
+        String export = send("GET", "admin/export", null, ADMIN_TOKEN).body();
+        String stored = objectMapper.readTree(export.split("\n")[1]).get("account").get("password").asText();
+        String huge = stored.replaceFirst("\\$\\d+\\$", "\\$2147483647\\$");
+
+        String body = "{\"account\": {\"account_id\": 3, \"username\": \"huge\", \"password\": \"" + huge + "\"}}\n"
+                + "{\"account\": {\"account_id\": 4, \"username\": \"same\", \"password\": \"" + stored + "\"}}\n";
+        Assert.assertEquals(200, send("POST", "admin/import", body, ADMIN_TOKEN).statusCode());
+        Assert.assertEquals(401, send("POST", "login", "{\"username\": \"huge\", \"password\": \"secret\"}", null).statusCode());
+        Assert.assertEquals(200, send("POST", "login", "{\"username\": \"same\", \"password\": \"secret\"}", null).statusCode());
+    }
+
+    /**
+     * An export whose reads fail after rows have gone out is cut off rather than ended as if it were whole, so it
+     * cannot be mistaken for a complete backup
+     *
+     * Expected Response:
+     *  The response fails part way, or has a status other than 200
+     */
+    @Test
+    public void exportAbortsWhenRowsCannotBeRead() throws InterruptedException, SQLException {
+        try(Connection connection = ConnectionUtil.getConnection();
+            Statement statement = connection.createStatement()){
+            // Enough messages that some have been sent before the follows are read
+            statement.executeUpdate("INSERT INTO Message (posted_by, message_text, time_posted_epoch) "
+                + "SELECT 1, 'message ' || X, X FROM SYSTEM_RANGE(1, 5000)");
+            statement.executeUpdate("DROP TABLE Follow");
+        }
+        try{
+            HttpResponse<String> response = send("GET", "admin/export", null, ADMIN_TOKEN);
+            Assert.assertNotEquals(200, response.statusCode());
+        }
+        catch(IOException e){
+            // The response was cut off part way
+        }
+    }
+}
@@ -0,0 +1,254 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Follow;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class FeedTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and create a new webClient and ObjectMapper for interacting locally on
+     * the web. Each test starts the Javalin app itself, so it can set the feed properties first; starting it
+     * registers user2 and user3 beside testuser1.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+    }
+
+    @After
+    public void tearDown() {
+        if(app != null){
+            app.stop();
+        }
+        System.clearProperty("socialmedia.feed.fanoutMaxFollowers");
+        System.clearProperty("socialmedia.feed.maxMessages");
+    }
+
+    private void startApp() throws IOException, InterruptedException {
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+        Assert.assertEquals(200, send("POST", "register", "{\"username\": \"user2\", \"password\": \"secret\"}").statusCode());
+        Assert.assertEquals(200, send("POST", "register", "{\"username\": \"user3\", \"password\": \"secret\"}").statusCode());
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private Message post(int posted_by, String text, long time) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("POST", "messages",
+                "{\"posted_by\": " + posted_by + ", \"message_text\": \"" + text + "\", \"time_posted_epoch\": " + time + "}");
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+
+    private List<Message> getFeed(String path) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("GET", path, null);
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    private List<Integer> getIds(String path) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("GET", path, null);
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Integer>>(){});
+    }
+
+    /**
+     * Sending http requests to PUT and DELETE localhost:8080/accounts/{account_id}/following/{followee_id}
+     *
+     * Expected Response:
+     *  Status Code: 200 for a follow between two accounts, again or not, and for every unfollow
+     *  Status Code: 400 for following oneself or an account that does not exist
+     *  Response Body: the follow added or removed
+     */
+    @Test
+    public void followAndUnfollow() throws IOException, InterruptedException {
+        startApp();
+        HttpResponse<String> response = send("PUT", "accounts/2/following/1", null);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Follow(2, 1), objectMapper.readValue(response.body(), Follow.class));
+        Assert.assertEquals(200, send("PUT", "accounts/2/following/1", null).statusCode());
+        Assert.assertEquals(200, send("PUT", "accounts/3/following/1", null).statusCode());
+        Assert.assertEquals(200, send("PUT", "accounts/2/following/3", null).statusCode());
+        Assert.assertEquals(400, send("PUT", "accounts/2/following/2", null).statusCode());
+        Assert.assertEquals(400, send("PUT", "accounts/2/following/42", null).statusCode());
+        Assert.assertEquals(400, send("PUT", "accounts/42/following/1", null).statusCode());
+
+        Assert.assertEquals(Arrays.asList(1, 3), getIds("accounts/2/following"));
+        Assert.assertEquals(Arrays.asList(2, 3), getIds("accounts/1/followers"));
+
+        response = send("GET", "accounts/1/followers?limit=1", null);
+        Assert.assertEquals(Arrays.asList(2), objectMapper.readValue(response.body(), new TypeReference<List<Integer>>(){}));
+        Assert.assertEquals("2", response.headers().firstValue("X-Next-After").orElse(""));
+        Assert.assertEquals(Arrays.asList(3), getIds("accounts/1/followers?after=2&limit=1"));
+
+        response = send("DELETE", "accounts/2/following/1", null);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Follow(2, 1), objectMapper.readValue(response.body(), Follow.class));
+        response = send("DELETE", "accounts/2/following/1", null);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("", response.body());
+        Assert.assertEquals(Arrays.asList(3), getIds("accounts/2/following"));
+        Assert.assertEquals(Arrays.asList(3), getIds("accounts/1/followers"));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/{account_id}/feed
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages of the accounts followed, newest first, and none of the account's own. Messages
+     *  posted after the feed was first read are there too, in their place, and deleted ones are gone.
+     */
+    @Test
+    public void feedListsFollowedMessagesNewestFirst() throws IOException, InterruptedException {
+        startApp();
+        Message first = post(3, "from three", 1669947800);
+        post(2, "own message", 1669947801);
+        Assert.assertEquals(200, send("PUT", "accounts/2/following/1", null).statusCode());
+        Assert.assertEquals(200, send("PUT", "accounts/2/following/3", null).statusCode());
+        Message original = new Message(1, 1, "test message 1", 1669947792);
+        Assert.assertEquals(Arrays.asList(first, original), getFeed("accounts/2/feed"));
+
+        Message newest = post(1, "newest", 1669947900);
+        Message between = post(3, "between", 1669947795);
+        post(2, "own again", 1669947950);
+        Assert.assertEquals(Arrays.asList(newest, first, between, original), getFeed("accounts/2/feed"));
+
+        Assert.assertEquals(200, send("DELETE", "messages/" + first.getMessage_id(), null).statusCode());
+        Assert.assertEquals(Arrays.asList(newest, between, original), getFeed("accounts/2/feed"));
+
+        Assert.assertEquals(200, send("DELETE", "accounts/2/following/3", null).statusCode());
+        Assert.assertEquals(Arrays.asList(newest, original), getFeed("accounts/2/feed"));
+        Assert.assertEquals(Collections.emptyList(), getFeed("accounts/3/feed"));
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/accounts/{account_id}/feed a page at a time, including past the
+     * messages the feed keeps in memory
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: every message once, newest first, with X-Next-After on each full page
+     */
+    @Test
+    public void feedPagesPastBuffer() throws IOException, InterruptedException {
+        System.setProperty("socialmedia.feed.maxMessages", "3");
+        startApp();
+        Assert.assertEquals(200, send("PUT", "accounts/2/following/1", null).statusCode());
+        Assert.assertEquals(200, send("PUT", "accounts/2/following/3", null).statusCode());
+        Assert.assertEquals(1, getFeed("accounts/2/feed").size());
+
+        List<Message> expected = new ArrayList<>();
+        expected.add(new Message(1, 1, "test message 1", 1669947792));
+        for(int i = 0; i < 6; i++){
+            // Messages sharing a time are ordered by message_id
+            expected.add(post(i % 2 == 0 ? 1 : 3, "message " + i, 1669947800 + i / 2));
+        }
+        Collections.reverse(expected);
+
+        List<Message> pages = new ArrayList<>();
+        String path = "accounts/2/feed?limit=2";
+        while(true){
+            HttpResponse<String> response = send("GET", path, null);
+            Assert.assertEquals(200, response.statusCode());
+            List<Message> page = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+            pages.addAll(page);
+            String next = response.headers().firstValue("X-Next-After").orElse(null);
+            if(next == null){
+                break;
+            }
+            Assert.assertEquals(2, page.size());
+            path = "accounts/2/feed?limit=2&after=" + next;
+        }
+        Assert.assertEquals(expected, pages);
+        Assert.assertEquals(expected, getFeed("accounts/2/feed"));
+    }
+
+    /**
+     * Messages from accounts with more followers than socialmedia.feed.fanoutMaxFollowers are read from their
+     * timelines when the feed is read rather than pushed to each follower's feed, and the feed is the same either way
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages of the accounts followed, newest first, each once
+     */
+    @Test
+    public void feedMergesAccountsWithManyFollowers() throws IOException, InterruptedException {
+        System.setProperty("socialmedia.feed.fanoutMaxFollowers", "1");
+        startApp();
+        Assert.assertEquals(200, send("PUT", "accounts/2/following/1", null).statusCode());
+        Assert.assertEquals(200, send("PUT", "accounts/2/following/3", null).statusCode());
+        Message original = new Message(1, 1, "test message 1", 1669947792);
+        Assert.assertEquals(Arrays.asList(original), getFeed("accounts/2/feed"));
+
+        // Account 1 now has two followers, over the limit
+        Assert.assertEquals(200, send("PUT", "accounts/3/following/1", null).statusCode());
+        Message popular = post(1, "popular", 1669947800);
+        Message quiet = post(3, "quiet", 1669947801);
+        Assert.assertEquals(Arrays.asList(quiet, popular, original), getFeed("accounts/2/feed"));
+        Assert.assertEquals(Arrays.asList(popular, original), getFeed("accounts/3/feed"));
+
+        // And back under it
+        Assert.assertEquals(200, send("DELETE", "accounts/3/following/1", null).statusCode());
+        Message later = post(1, "later", 1669947802);
+        Assert.assertEquals(Arrays.asList(later, quiet, popular, original), getFeed("accounts/2/feed"));
+        Assert.assertEquals(Collections.emptyList(), getFeed("accounts/3/feed"));
+    }
+
+    /**
+     * Sending an http request to PUT localhost:8080/accounts/{account_id}/following/{followee_id} for an account
+     * written straight to the database after the app started, so the app's account_id bitmap has never seen it
+     *
+     * Expected Response:
+     *  Status Code: 200 for following it either way round
+     */
+    @Test
+    public void followAccountAddedOutsideApp() throws IOException, InterruptedException, SQLException {
+        startApp();
+        try(Connection connection = ConnectionUtil.getConnection();
+            Statement statement = connection.createStatement()){
+            statement.executeUpdate("INSERT INTO Account (username, password) VALUES ('outside', 'password')");
+        }
+        Assert.assertEquals(200, send("PUT", "accounts/2/following/4", null).statusCode());
+        Assert.assertEquals(200, send("PUT", "accounts/4/following/1", null).statusCode());
+        Assert.assertEquals(Arrays.asList(4), getIds("accounts/2/following"));
+        Assert.assertEquals(Arrays.asList(1), getIds("accounts/4/following"));
+    }
+}
@@ -0,0 +1,440 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MemoryStorageTest {
+    private static final String[] PROPERTIES = {
+        "socialmedia.storage.engine", "socialmedia.storage.memory.log.enabled", "socialmedia.storage.memory.log.path",
+        "socialmedia.storage.memory.log.fsync", "socialmedia.storage.memory.snapshot.onClose"
+    };
+
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    Path directory;
+    Path log;
+
+    /**
+     * The settings in force before the test, so a suite run against either engine gets them back
+     */
+    Map<String, String> savedProperties = new HashMap<>();
+
+    /**
+     * Before every test, reset the database and point the memory engine at an empty directory, so the first start
+     * copies the freshly reset tables. Each test starts the Javalin app itself.
+     */
+    @Before
+    public void setUp() throws IOException {
+        ConnectionUtil.resetTestDatabase();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+
+        for(String property : PROPERTIES){
+            savedProperties.put(property, System.getProperty(property));
+        }
+        directory = Files.createTempDirectory("memory-storage-test");
+        log = directory.resolve("memory.log");
+        System.setProperty("socialmedia.storage.engine", "memory");
+        System.setProperty("socialmedia.storage.memory.log.enabled", "true");
+        System.setProperty("socialmedia.storage.memory.log.path", log.toString());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if(app != null){
+            app.stop();
+        }
+        for(String property : PROPERTIES){
+            if(savedProperties.get(property) == null){
+                System.clearProperty(property);
+            }
+            else{
+                System.setProperty(property, savedProperties.get(property));
+            }
+        }
+        try(Stream<Path> files = Files.walk(directory)){
+            for(Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator){
+                Files.delete(file);
+            }
+        }
+    }
+
+    private void startApp() throws InterruptedException {
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    private void restartApp() throws InterruptedException {
+        app.stop();
+        startApp();
+    }
+
+    /**
+     * @return the snapshots beside the log. Each is named by its generation, and the older ones are deleted.
+     */
+    private List<Path> snapshots() throws IOException {
+        try(Stream<Path> files = Files.list(directory)){
+            return files.filter(file -> file.getFileName().toString().matches("memory\\.log\\.snapshot\\.\\d+"))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Message> getAllMessages() throws IOException, InterruptedException {
+        HttpResponse<String> response = send("GET", "messages", null);
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    /**
+     * Accounts and messages created, updated and deleted through the memory engine are all there after a restart,
+     * rebuilt from its log. No snapshot is taken on the way down, so the whole log is replayed.
+     *
+     * Expected Response:
+     *  Status Code: 200 for every request
+     *  Response Body: the messages as they were before the restart
+     */
+    @Test
+    public void memoryEngineReplaysLogAfterRestart() throws IOException, InterruptedException {
+        System.setProperty("socialmedia.storage.memory.snapshot.onClose", "false");
+        startApp();
+        Assert.assertEquals(200, send("POST", "register", "{\"username\": \"user\", \"password\": \"secret\"}").statusCode());
+        Assert.assertEquals(200, send("POST", "messages",
+                "{\"posted_by\": 2, \"message_text\": \"second\", \"time_posted_epoch\": 1669947793}").statusCode());
+        Assert.assertEquals(200, send("POST", "messages",
+                "{\"posted_by\": 1, \"message_text\": \"third\", \"time_posted_epoch\": 1669947794}").statusCode());
+        Assert.assertEquals(200, send("PATCH", "messages/2", "{\"message_text\": \"second, edited\"}").statusCode());
+        Assert.assertEquals(200, send("DELETE", "messages/1", null).statusCode());
+        List<Message> before = getAllMessages();
+
+        restartApp();
+
+        Assert.assertEquals(before, getAllMessages());
+        Assert.assertEquals(Arrays.asList(new Message(2, 2, "second, edited", 1669947793), new Message(3, 1, "third", 1669947794)),
+                before);
+        Assert.assertEquals(200, send("POST", "login", "{\"username\": \"user\", \"password\": \"secret\"}").statusCode());
+
+        // message_ids carry on from the largest ever handed out, deleted or not
+        HttpResponse<String> created = send("POST", "messages",
+                "{\"posted_by\": 2, \"message_text\": \"fourth\", \"time_posted_epoch\": 1669947795}");
+        Assert.assertEquals(new Message(4, 2, "fourth", 1669947795), objectMapper.readValue(created.body(), Message.class));
+    }
+
+    /**
+     * A copy from the database that fails part way stops the start rather than being kept as the engine's data,
+     * and the next start copies the tables again.
+     *
+     * Expected Response:
+     *  The first start fails and writes no snapshot; after it, the messages from the database
+     */
+    @Test
+    public void memoryEngineKeepsNoPartialCopy() throws IOException, InterruptedException, SQLException {
+        try(Connection connection = ConnectionUtil.getConnection();
+            Statement statement = connection.createStatement()){
+            statement.execute("DROP TABLE Message");
+        }
+        try{
+            startApp();
+            Assert.fail("The memory engine started from a partial copy");
+        }
+        catch(UncheckedIOException e){
+            // The copy failed on the missing table
+        }
+        Assert.assertEquals(0, snapshots().size());
+
+        ConnectionUtil.resetTestDatabase();
+        startApp();
+        Assert.assertEquals(Arrays.asList(new Message(1, 1, "test message 1", 1669947792)), getAllMessages());
+    }
+
+    /**
+     * A record cut short by a crash is dropped when the log is reopened, and everything before it stands.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages written before the torn record
+     */
+    @Test
+    public void memoryEngineDropsIncompleteRecord() throws IOException, InterruptedException {
+        startApp();
+        Assert.assertEquals(200, send("POST", "messages",
+                "{\"posted_by\": 1, \"message_text\": \"second\", \"time_posted_epoch\": 1669947793}").statusCode());
+        app.stop();
+
+        // The start of a message record, as if the process died part way through writing it
+        long length = Files.size(log);
+        Files.write(log, new byte[]{3, 0, 0}, StandardOpenOption.APPEND);
+
+        startApp();
+        Assert.assertEquals(length, Files.size(log));
+        Assert.assertEquals(Arrays.asList(new Message(1, 1, "test message 1", 1669947792), new Message(2, 1, "second", 1669947793)),
+                getAllMessages());
+    }
+
+    /**
+     * Stopping takes a snapshot and starts an empty log segment; what is written after that is replayed on top of
+     * the snapshot at the next start.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages from the snapshot, with the later changes from the log applied
+     */
+    @Test
+    public void memoryEngineRecoversFromSnapshotAndLog() throws IOException, InterruptedException {
+        startApp();
+        Assert.assertEquals(200, send("POST", "messages",
+                "{\"posted_by\": 1, \"message_text\": \"second\", \"time_posted_epoch\": 1669947793}").statusCode());
+        app.stop();
+        Assert.assertEquals(1, snapshots().size());
+        long emptySegment = Files.size(log);
+
+        System.setProperty("socialmedia.storage.memory.snapshot.onClose", "false");
+        startApp();
+        Assert.assertEquals(200, send("POST", "messages",
+                "{\"posted_by\": 1, \"message_text\": \"third\", \"time_posted_epoch\": 1669947794}").statusCode());
+        Assert.assertEquals(200, send("DELETE", "messages/1", null).statusCode());
+        app.stop();
+        Assert.assertTrue(Files.size(log) > emptySegment);
+
+        startApp();
+        Assert.assertEquals(Arrays.asList(new Message(2, 1, "second", 1669947793), new Message(3, 1, "third", 1669947794)),
+                getAllMessages());
+    }
+
+    /**
+     * Message texts outside ASCII come back unchanged from the snapshot's text heap, beside the numeric columns
+     * of the rows around them, and again from a snapshot that carried them over from the one before.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages as they were before the restart
+     */
+    @Test
+    public void memoryEngineSnapshotKeepsNonAsciiText() throws IOException, InterruptedException {
+        startApp();
+        Assert.assertEquals(200, send("POST", "messages",
+                "{\"posted_by\": 1, \"message_text\": \"caf\u00e9 \u65e5\u672c \ud83d\ude00\", \"time_posted_epoch\": 1669947793}").statusCode());
+        Assert.assertEquals(200, send("POST", "messages",
+                "{\"posted_by\": 1, \"message_text\": \"plain\", \"time_posted_epoch\": -5}").statusCode());
+        app.stop();
+        Assert.assertEquals(1, snapshots().size());
+
+        List<Message> expected = Arrays.asList(new Message(1, 1, "test message 1", 1669947792),
+                new Message(2, 1, "caf\u00e9 \u65e5\u672c \ud83d\ude00", 1669947793), new Message(3, 1, "plain", -5));
+        startApp();
+        Assert.assertEquals(expected, getAllMessages());
+
+        // The next snapshot copies the rows' bytes across from the mapped one
+        Assert.assertEquals(200, send("POST", "messages",
+                "{\"posted_by\": 1, \"message_text\": \"\u00fcber\", \"time_posted_epoch\": 1669947794}").statusCode());
+        restartApp();
+        List<Message> withLater = new ArrayList<Message>(expected);
+        withLater.add(new Message(4, 1, "\u00fcber", 1669947794));
+        Assert.assertEquals(withLater, getAllMessages());
+    }
+
+    /**
+     * Messages served from the snapshot's columns can be read, updated and deleted beside messages written after
+     * it, the changes come back from the log at the next start, and a snapshot taken over the mapped one keeps
+     * them all.
+     *
+     * Expected Response:
+     *  Status Code: 200 for every request
+     *  Response Body: the messages with the changes applied, after each restart
+     */
+    @Test
+    public void memoryEngineChangesMessagesFromSnapshot() throws IOException, InterruptedException {
+        startApp();
+        for(int i = 2; i <= 3; i++){
+            Assert.assertEquals(200, send("POST", "messages",
+                    "{\"posted_by\": 1, \"message_text\": \"message " + i + "\", \"time_posted_epoch\": 166994779" + i + "}").statusCode());
+        }
+        app.stop();
+
+        System.setProperty("socialmedia.storage.memory.snapshot.onClose", "false");
+        startApp();
+        Assert.assertEquals(200, send("PATCH", "messages/2", "{\"message_text\": \"edited\"}").statusCode());
+        Assert.assertEquals(200, send("DELETE", "messages/3", null).statusCode());
+        Assert.assertEquals(200, send("POST", "messages",
+                "{\"posted_by\": 1, \"message_text\": \"after\", \"time_posted_epoch\": 1669947795}").statusCode());
+        List<Message> expected = Arrays.asList(new Message(1, 1, "test message 1", 1669947792),
+                new Message(2, 1, "edited", 1669947792), new Message(4, 1, "after", 1669947795));
+        Assert.assertEquals(expected, getAllMessages());
+        Assert.assertEquals(new Message(2, 1, "edited", 1669947792),
+                objectMapper.readValue(send("GET", "messages/2", null).body(), Message.class));
+        Assert.assertEquals("", send("GET", "messages/3", null).body());
+
+        restartApp();
+        Assert.assertEquals(expected, getAllMessages());
+
+        System.setProperty("socialmedia.storage.memory.snapshot.onClose", "true");
+        restartApp();
+        restartApp();
+        Assert.assertEquals(expected, getAllMessages());
+        Assert.assertEquals(1, snapshots().size());
+        HttpResponse<String> response = send("GET", "accounts/1/messages", null);
+        Assert.assertEquals(Arrays.asList(expected.get(2), expected.get(1), expected.get(0)),
+                objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){}));
+    }
+
+    /**
+     * Each snapshot is written under its own name, so the mapped one is never written over, and only the newest
+     * is kept. A snapshot from before they were named by generation is loaded, then deleted once a newer one is
+     * written, and what a crash left of a snapshot being written is deleted at the next start.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages as they were before each restart
+     */
+    @Test
+    public void memoryEngineNamesSnapshotsByGeneration() throws IOException, InterruptedException {
+        startApp();
+        app.stop();
+        Path unnamed = directory.resolve("memory.log.snapshot");
+        Files.move(snapshots().get(0), unnamed);
+        Path partial = Files.write(directory.resolve("memory.log.snapshot.99.tmp"), new byte[]{1, 2, 3});
+
+        startApp();
+        Assert.assertFalse(Files.exists(partial));
+        List<Message> expected = new ArrayList<Message>(getAllMessages());
+        for(int i = 0; i < 3; i++){
+            HttpResponse<String> response = send("POST", "messages",
+                    "{\"posted_by\": 1, \"message_text\": \"message " + i + "\", \"time_posted_epoch\": 1669947793}");
+            expected.add(objectMapper.readValue(response.body(), Message.class));
+            restartApp();
+            Assert.assertFalse(Files.exists(unnamed));
+            Assert.assertEquals(1, snapshots().size());
+            Assert.assertEquals(expected, getAllMessages());
+        }
+    }
+
+    /**
+     * A username too long for the log's string encoding is turned away, and the log takes later writes as before.
+     *
+     * Expected Response:
+     *  Status Code: 400 for the long username, then 200
+     *  Response Body: the later message, there again after a restart
+     */
+    @Test
+    public void memoryEngineRejectsOversizedUsername() throws IOException, InterruptedException {
+        System.setProperty("socialmedia.storage.memory.snapshot.onClose", "false");
+        startApp();
+        Assert.assertEquals(400, send("POST", "register",
+                "{\"username\": \"" + "u".repeat(70_000) + "\", \"password\": \"secret\"}").statusCode());
+        Assert.assertEquals(200, send("POST", "messages",
+                "{\"posted_by\": 1, \"message_text\": \"second\", \"time_posted_epoch\": 1669947793}").statusCode());
+
+        restartApp();
+        Assert.assertEquals(Arrays.asList(new Message(1, 1, "test message 1", 1669947792), new Message(2, 1, "second", 1669947793)),
+                getAllMessages());
+    }
+
+    /**
+     * Follows come back after a restart, from the snapshot taken on the way down and from the log written after it.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the accounts followed and the feed as they were before each restart
+     */
+    @Test
+    public void memoryEngineKeepsFollows() throws IOException, InterruptedException {
+        startApp();
+        Assert.assertEquals(200, send("POST", "register", "{\"username\": \"user2\", \"password\": \"secret\"}").statusCode());
+        Assert.assertEquals(200, send("POST", "register", "{\"username\": \"user3\", \"password\": \"secret\"}").statusCode());
+        Assert.assertEquals(200, send("PUT", "accounts/2/following/1", null).statusCode());
+        Assert.assertEquals(200, send("PUT", "accounts/2/following/3", null).statusCode());
+        Assert.assertEquals(200, send("PUT", "accounts/3/following/1", null).statusCode());
+        app.stop();
+        Assert.assertEquals(1, snapshots().size());
+
+        System.setProperty("socialmedia.storage.memory.snapshot.onClose", "false");
+        startApp();
+        Assert.assertEquals("[1,3]", send("GET", "accounts/2/following", null).body());
+        Assert.assertEquals(200, send("DELETE", "accounts/2/following/3", null).statusCode());
+        Assert.assertEquals(200, send("PUT", "accounts/1/following/3", null).statusCode());
+
+        restartApp();
+        Assert.assertEquals("[1]", send("GET", "accounts/2/following", null).body());
+        Assert.assertEquals("[1]", send("GET", "accounts/3/followers", null).body());
+        Assert.assertEquals("[2,3]", send("GET", "accounts/1/followers", null).body());
+        HttpResponse<String> feed = send("GET", "accounts/2/feed", null);
+        Assert.assertEquals(Arrays.asList(new Message(1, 1, "test message 1", 1669947792)),
+                objectMapper.readValue(feed.body(), new TypeReference<List<Message>>(){}));
+    }
+
+    /**
+     * With every change forced to the disk before it is acknowledged, concurrent posts all succeed and all come
+     * back from the log after a restart.
+     *
+     * Expected Response:
+     *  Status Code: 200 for every post
+     *  Response Body: every posted message, after the one already there
+     */
+    @Test
+    public void memoryEngineFsyncAlwaysKeepsConcurrentPosts() throws IOException, InterruptedException {
+        System.setProperty("socialmedia.storage.memory.log.fsync", "always");
+        System.setProperty("socialmedia.storage.memory.snapshot.onClose", "false");
+        startApp();
+
+        List<CompletableFuture<HttpResponse<String>>> posts = new ArrayList<>();
+        for(int i = 0; i < 20; i++){
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString(
+                            "{\"posted_by\": 1, \"message_text\": \"concurrent " + i + "\", \"time_posted_epoch\": 1669947793}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            posts.add(webClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+        for(CompletableFuture<HttpResponse<String>> post : posts){
+            Assert.assertEquals(200, post.join().statusCode());
+        }
+        List<Message> before = getAllMessages();
+        Assert.assertEquals(21, before.size());
+
+        restartApp();
+        Assert.assertEquals(before, getAllMessages());
+    }
+}
@@ -0,0 +1,127 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Service.MessageWriteQueue;
+import Util.ConnectionUtil;
+
+public class MessageWriteQueueTest {
+    MessageWriteQueue queue;
+
+    /**
+     * Before every test, reset the database. Each test makes its queue over a MessageDAO with the settings and
+     * onCreated it needs.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        if(queue != null){
+            queue.close();
+        }
+    }
+
+    private static Message message(String text) {
+        return new Message(1, text, 1669947792);
+    }
+
+    /**
+     * A committed message is acknowledged with its message_id even when passing it on to the caches fails, and
+     * the rest of its batch is still passed on
+     */
+    @Test
+    public void onCreatedFailureStillAcknowledgesCommittedMessages() throws Exception {
+        MessageWriteQueue.Settings settings = new MessageWriteQueue.Settings();
+        // Long enough that the three messages share one batch
+        settings.lingerMillis = 500;
+        AtomicInteger passedOn = new AtomicInteger();
+        queue = new MessageWriteQueue(new MessageDAO(), settings, created -> {
+            if(passedOn.getAndIncrement() == 0){
+                throw new IllegalStateException("cache unavailable");
+            }
+        });
+
+        List<CompletableFuture<Message>> futures = new ArrayList<CompletableFuture<Message>>();
+        for(int i = 0; i < 3; i++){
+            futures.add(queue.enqueue(message("message " + i)));
+        }
+        for(int i = 0; i < 3; i++){
+            Assert.assertEquals(new Message(2 + i, 1, "message " + i, 1669947792), futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, queue.getBatchesWritten());
+        Assert.assertEquals(3, passedOn.get());
+    }
+
+    /**
+     * Every enqueue racing with close() is either turned away or written by the time close() returns, so no
+     * poster is left waiting on a message that will never be written
+     */
+    @Test
+    public void closeRejectsOrWritesEveryEnqueue() throws Exception {
+        queue = new MessageWriteQueue(new MessageDAO(), new MessageWriteQueue.Settings(), created -> {});
+        int posters = 4;
+        AtomicBoolean closing = new AtomicBoolean();
+        CountDownLatch started = new CountDownLatch(posters);
+        List<List<CompletableFuture<Message>>> accepted = new ArrayList<List<CompletableFuture<Message>>>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for(int t = 0; t < posters; t++){
+            List<CompletableFuture<Message>> futures = new ArrayList<CompletableFuture<Message>>();
+            accepted.add(futures);
+            Thread thread = new Thread(() -> {
+                started.countDown();
+                while(true){
+                    try{
+                        futures.add(queue.enqueue(message("racing")));
+                    }
+                    catch(RejectedExecutionException e){
+                        // Full for a moment, or closed
+                        if(closing.get()){
+                            return;
+                        }
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        started.await();
+        Thread.sleep(50);
+        closing.set(true);
+        queue.close();
+        for(Thread thread : threads){
+            thread.join();
+        }
+
+        int written = 0;
+        for(List<CompletableFuture<Message>> futures : accepted){
+            for(CompletableFuture<Message> future : futures){
+                Assert.assertTrue("An accepted message was left unwritten by close()", future.isDone());
+                Assert.assertNotNull(future.get());
+                written++;
+            }
+        }
+        Assert.assertEquals(written, queue.getMessagesWritten());
+        try{
+            queue.enqueue(message("after close"));
+            Assert.fail("A message was queued after close()");
+        }
+        catch(RejectedExecutionException e){
+            // Closed for good
+        }
+    }
+}
@@ -0,0 +1,90 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MetricsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * @return the value of the sample with exactly this name and labels, or 0 if it is not there yet
+     */
+    private double sample(String metrics, String series) {
+        for (String line : metrics.split("\n")) {
+            if (line.startsWith(series + " ")) {
+                return Double.parseDouble(line.substring(series.length() + 1));
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/metrics after requests to other routes
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Prometheus text, with the requests counted by route pattern and status code, and timed
+     */
+    @Test
+    public void getMetricsCountsRequests() throws IOException, InterruptedException {
+        String requests = "socialmedia_http_requests_total{method=\"GET\",route=\"messages/{message_id}\",status=\"200\"}";
+        String notFound = "socialmedia_http_requests_total{method=\"GET\",route=\"unmatched\",status=\"404\"}";
+        String before = get("metrics").body();
+
+        Assert.assertEquals(200, get("messages/1").statusCode());
+        Assert.assertEquals(200, get("messages/1").statusCode());
+        Assert.assertEquals(404, get("no/such/route").statusCode());
+
+        HttpResponse<String> response = get("metrics");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain; version=0.0.4"));
+
+        String metrics = response.body();
+        Assert.assertEquals(sample(before, requests) + 2, sample(metrics, requests), 0);
+        Assert.assertEquals(sample(before, notFound) + 1, sample(metrics, notFound), 0);
+        Assert.assertTrue(metrics.contains("# TYPE socialmedia_http_request_duration_seconds summary"));
+        Assert.assertTrue(sample(metrics, "socialmedia_http_request_duration_seconds{method=\"GET\",route=\"messages/{message_id}\",quantile=\"0.99\"}") > 0);
+        // Timed under the message store of whichever engine the suite runs against
+        String dao = "memory".equals(System.getProperty("socialmedia.storage.engine")) ? "MemoryMessageStore" : "MessageDAO";
+        Assert.assertTrue(sample(metrics, "socialmedia_dao_call_duration_seconds_count{dao=\"" + dao + "\",method=\"getMessageByID\"}") >= 1);
+    }
+}
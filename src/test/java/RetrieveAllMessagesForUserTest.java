@@ -69,6 +69,95 @@ public class RetrieveAllMessagesForUserTest {
         Assert.assertEquals(expectedResult, actualResult);
     }
 
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages after posting a newer and an older message
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of the user's messages, newest first
+     */
+    @Test
+    public void getAllMessagesFromUserNewestFirst() throws IOException, InterruptedException {
+        String[] posts = {
+            "{\"posted_by\":1, \"message_text\": \"newer message\", \"time_posted_epoch\": 1669947800}",
+            "{\"posted_by\":1, \"message_text\": \"older message\", \"time_posted_epoch\": 1669947700}"
+        };
+        for(String post : posts){
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString(post))
+                    .header("Content-Type", "application/json")
+                    .build();
+            webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        }
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        int status = response.statusCode();
+
+        Assert.assertEquals(200, status);
+
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(2, 1, "newer message", 1669947800));
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        expectedResult.add(new Message(3, 1, "older message", 1669947700));
+        List<Message> actualResult = objectMapper.readValue(response.body().toString(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(expectedResult, actualResult);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages after the user's messages were viewed
+     * and then a message was posted, one was updated and one was deleted
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of the user's messages reflecting every change
+     */
+    @Test
+    public void getAllMessagesFromUserReflectsWrites() throws IOException, InterruptedException {
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                .build();
+        webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+
+        String[] posts = {
+            "{\"posted_by\":1, \"message_text\": \"second message\", \"time_posted_epoch\": 1669947800}",
+            "{\"posted_by\":1, \"message_text\": \"third message\", \"time_posted_epoch\": 1669947900}"
+        };
+        for(String post : posts){
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString(post))
+                    .header("Content-Type", "application/json")
+                    .build();
+            webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        }
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"edited message\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString());
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build();
+        webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString());
+
+        HttpResponse response = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        int status = response.statusCode();
+
+        Assert.assertEquals(200, status);
+
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(3, 1, "third message", 1669947900));
+        expectedResult.add(new Message(2, 1, "edited message", 1669947800));
+        List<Message> actualResult = objectMapper.readValue(response.body().toString(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(expectedResult, actualResult);
+    }
+
     /**
      * Sending an http request to GET localhost:8080/accounts/1/messages (messages does NOT exist for user) 
      * 
@@ -87,4 +87,65 @@ public class RetrieveMessageByMessageIdTest {
     }
 
 
+    /**
+     * Sending an http request to GET localhost:8080/messages/1 after it has been read once and then updated
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON represenation of the updated message, not the previously read one
+     */
+    @Test
+    public void getMessageGivenMessageIdAfterUpdate() throws IOException, InterruptedException {
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{"+
+                        "\"message_text\": \"updated message\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString());
+
+        HttpResponse response = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        int status = response.statusCode();
+
+        Assert.assertEquals(200, status);
+
+        Message expectedResult = new Message(1, 1, "updated message", 1669947792);
+        Message actualResult = objectMapper.readValue(response.body().toString(), Message.class);
+        Assert.assertEquals(expectedResult, actualResult);
+    }
+
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1 after it has been read once and then deleted
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: 
+     */
+    @Test
+    public void getMessageGivenMessageIdAfterDelete() throws IOException, InterruptedException {
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build();
+        webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString());
+
+        HttpResponse response = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        int status = response.statusCode();
+
+        Assert.assertEquals(200, status);
+        Assert.assertTrue(response.body().toString().isEmpty());
+    }
+
+
 }
@@ -0,0 +1,168 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SearchMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private void postMessage(String text) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    private HttpResponse<String> search(String query) throws IOException, InterruptedException {
+        HttpRequest searchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/search?q=" + URLEncoder.encode(query, StandardCharsets.UTF_8)))
+                .build();
+        return webClient.send(searchRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Message> results(HttpResponse<String> response) throws IOException {
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search with a term, several terms and a prefix
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages containing every term, case insensitively, best match first
+     */
+    @Test
+    public void searchMessagesByTermsAndPrefix() throws IOException, InterruptedException {
+        postMessage("Coffee and cake");
+        postMessage("cake cake cake");
+        postMessage("coffee beans from Colombia");
+
+        List<Message> cake = results(search("CAKE"));
+        Assert.assertEquals(2, cake.size());
+        Assert.assertEquals(3, cake.get(0).getMessage_id());
+        Assert.assertEquals(2, cake.get(1).getMessage_id());
+
+        List<Message> coffeeCake = results(search("coffee cake"));
+        Assert.assertEquals(1, coffeeCake.size());
+        Assert.assertEquals(new Message(2, 1, "Coffee and cake", 1669947792), coffeeCake.get(0));
+
+        Assert.assertEquals(2, results(search("co*")).size());
+        Assert.assertEquals(1, results(search("test message")).size());
+        Assert.assertEquals(0, results(search("tea")).size());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search after messages are updated and deleted
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: matches the current text of the messages
+     */
+    @Test
+    public void searchMessagesFollowsUpdatesAndDeletes() throws IOException, InterruptedException {
+        postMessage("original words");
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"replacement words\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertEquals(0, results(search("original")).size());
+        Assert.assertEquals(1, results(search("replacement")).size());
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertEquals(0, results(search("words")).size());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search one page at a time
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Headers: X-Total-Count, and X-Next-Offset while there are more pages
+     */
+    @Test
+    public void searchMessagesPaged() throws IOException, InterruptedException {
+        for (int i = 0; i < 5; i++) {
+            postMessage("page " + i);
+        }
+
+        HttpRequest firstPage = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/search?q=page&limit=3"))
+                .build();
+        HttpResponse<String> response = webClient.send(firstPage, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(3, results(response).size());
+        Assert.assertEquals("5", response.headers().firstValue("X-Total-Count").orElse(null));
+        Assert.assertEquals("3", response.headers().firstValue("X-Next-Offset").orElse(null));
+
+        HttpRequest secondPage = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/search?q=page&limit=3&offset=3"))
+                .build();
+        response = webClient.send(secondPage, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(2, results(response).size());
+        Assert.assertFalse(response.headers().firstValue("X-Next-Offset").isPresent());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search without a query
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void searchMessagesBlankQuery() throws IOException, InterruptedException {
+        Assert.assertEquals(400, search(" ").statusCode());
+    }
+}
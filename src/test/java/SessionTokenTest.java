@@ -0,0 +1,169 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SessionTokenTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with session tokens required, and create a
+     * new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("socialmedia.session.required", "true");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("socialmedia.session.required");
+    }
+
+    private String login(String username, String password) throws IOException, InterruptedException {
+        HttpRequest loginRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"" + username + "\", " +
+                        "\"password\": \"" + password + "\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(loginRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return response.headers().firstValue("X-Session-Token").orElseThrow();
+    }
+
+    private HttpResponse<String> postMessage(int posted_by, String token) throws IOException, InterruptedException {
+        HttpRequest.Builder postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":" + posted_by + ", " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json");
+        if(token != null){
+            postMessageRequest.header("Authorization", "Bearer " + token);
+        }
+        return webClient.send(postMessageRequest.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages with the token from logging in as the poster
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the created message
+     */
+    @Test
+    public void postMessageWithSessionToken() throws IOException, InterruptedException {
+        String token = login("testuser1", "password");
+        HttpResponse<String> response = postMessage(1, token);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Message(2, 1, "hello message", 1669947792),
+                objectMapper.readValue(response.body(), Message.class));
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages without a token, or with a tampered one
+     *
+     * Expected Response:
+     *  Status Code: 401
+     */
+    @Test
+    public void postMessageWithoutValidSessionToken() throws IOException, InterruptedException {
+        Assert.assertEquals(401, postMessage(1, null).statusCode());
+
+        String token = login("testuser1", "password");
+        char last = token.charAt(token.length() - 1);
+        String tampered = token.substring(0, token.length() - 1) + (last == 'A' ? 'B' : 'A');
+        Assert.assertEquals(401, postMessage(1, tampered).statusCode());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages, and to PATCH and DELETE another account's message,
+     * with a valid token for a different account
+     *
+     * Expected Response:
+     *  Status Code: 403, and the message is unchanged
+     */
+    @Test
+    public void writeAsAnotherAccountForbidden() throws IOException, InterruptedException {
+        HttpRequest registerRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"user\", " +
+                        "\"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(registerRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        String token = login("user", "password");
+
+        Assert.assertEquals(403, postMessage(1, token).statusCode());
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated\"}"))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + token)
+                .build();
+        Assert.assertEquals(403, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .header("Authorization", "Bearer " + token)
+                .build();
+        Assert.assertEquals(403, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        Message message = objectMapper.readValue(
+                webClient.send(getRequest, HttpResponse.BodyHandlers.ofString()).body(), Message.class);
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), message);
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/logout, then using the revoked token
+     *
+     * Expected Response:
+     *  Status Code: 200 for the logout, then 401
+     */
+    @Test
+    public void logoutRevokesSessionToken() throws IOException, InterruptedException {
+        String token = login("testuser1", "password");
+        HttpRequest logoutRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/logout"))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .header("Authorization", "Bearer " + token)
+                .build();
+        Assert.assertEquals(200, webClient.send(logoutRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assert.assertEquals(401, postMessage(1, token).statusCode());
+    }
+}
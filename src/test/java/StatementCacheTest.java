@@ -0,0 +1,157 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+
+public class StatementCacheTest {
+    ConnectionPool pool;
+
+    /**
+     * Before every test, make a pool of one connection to a private in-memory database, caching up to two
+     * statements, so every borrow gets the same connection and its statement cache
+     */
+    @Before
+    public void setUp() throws SQLException {
+        JdbcDataSource source = new JdbcDataSource();
+        source.setURL("jdbc:h2:mem:statement-cache-test;DB_CLOSE_DELAY=-1");
+        source.setUser("sa");
+        source.setPassword("sa");
+        ConnectionPool.Settings settings = new ConnectionPool.Settings();
+        settings.minSize = 0;
+        settings.maxSize = 1;
+        settings.statementCacheSize = 2;
+        pool = new ConnectionPool(source, settings);
+
+        try(Connection connection = pool.getConnection();
+            Statement statement = connection.createStatement()){
+            statement.execute("DROP TABLE IF EXISTS item");
+            statement.execute("CREATE TABLE item (id INT)");
+        }
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    /**
+     * Preparing the same SQL again while the first lease is open gives a private statement that closes for real.
+     * Once the lease is closed, the cached statement is handed out again.
+     */
+    @Test
+    public void sameSqlLeasedTwiceGetsPrivateStatement() throws SQLException {
+        try(Connection connection = pool.getConnection()){
+            PreparedStatement first = connection.prepareStatement("SELECT 1");
+            PreparedStatement second = connection.prepareStatement("SELECT 1");
+            PreparedStatement cached = first.unwrap(PreparedStatement.class);
+            Assert.assertNotSame(cached, second.unwrap(PreparedStatement.class));
+            Assert.assertEquals(2, pool.getStatementCacheMisses());
+            Assert.assertEquals(0, pool.getStatementCacheHits());
+
+            second.close();
+            Assert.assertTrue(second.isClosed());
+            Assert.assertFalse(first.isClosed());
+            first.close();
+            Assert.assertFalse(cached.isClosed());
+
+            try(PreparedStatement again = connection.prepareStatement("SELECT 1")){
+                Assert.assertSame(cached, again.unwrap(PreparedStatement.class));
+                Assert.assertSame(connection, again.getConnection());
+            }
+            Assert.assertEquals(1, pool.getStatementCacheHits());
+        }
+    }
+
+    /**
+     * Closing a lease clears the parameters and batch it left on the statement before the next caller gets it
+     */
+    @Test
+    public void closingLeaseClearsParametersAndBatch() throws SQLException {
+        try(Connection connection = pool.getConnection()){
+            try(PreparedStatement insert = connection.prepareStatement("INSERT INTO item (id) VALUES (?)")){
+                insert.setInt(1, 1);
+                insert.addBatch();
+                insert.setInt(1, 2);
+            }
+            try(PreparedStatement insert = connection.prepareStatement("INSERT INTO item (id) VALUES (?)")){
+                Assert.assertEquals(0, insert.executeBatch().length);
+                try{
+                    insert.executeUpdate();
+                    Assert.fail("The parameter set by the previous lease was kept");
+                }
+                catch(SQLException e){
+                    // The parameter is no longer set
+                }
+            }
+            Assert.assertEquals(1, pool.getStatementCacheHits());
+
+            try(Statement count = connection.createStatement();
+                ResultSet rows = count.executeQuery("SELECT COUNT(*) FROM item")){
+                Assert.assertTrue(rows.next());
+                Assert.assertEquals(0, rows.getInt(1));
+            }
+        }
+    }
+
+    /**
+     * A statement pushed out of the cache by newer ones is closed on the driver
+     */
+    @Test
+    public void evictionClosesStatement() throws SQLException {
+        try(Connection connection = pool.getConnection()){
+            PreparedStatement oldest;
+            try(PreparedStatement statement = connection.prepareStatement("SELECT 1")){
+                oldest = statement.unwrap(PreparedStatement.class);
+            }
+            connection.prepareStatement("SELECT 2").close();
+            Assert.assertFalse(oldest.isClosed());
+
+            connection.prepareStatement("SELECT 3").close();
+            Assert.assertTrue(oldest.isClosed());
+            Assert.assertEquals(3, pool.getStatementCacheMisses());
+        }
+    }
+
+    /**
+     * A lease never closed is taken back when its connection goes back to the pool: the stale lease can no longer
+     * be used, and the next owner gets the cached statement rather than a private one
+     */
+    @Test
+    public void reclaimTakesBackUnclosedLeases() throws SQLException {
+        PreparedStatement leaked;
+        PreparedStatement cached;
+        try(Connection connection = pool.getConnection()){
+            leaked = connection.prepareStatement("SELECT CAST(? AS INT)");
+            leaked.setInt(1, 7);
+            cached = leaked.unwrap(PreparedStatement.class);
+        }
+        Assert.assertTrue(leaked.isClosed());
+        try{
+            leaked.executeQuery();
+            Assert.fail("A reclaimed lease was still usable");
+        }
+        catch(SQLException e){
+            // The lease was revoked with the connection
+        }
+
+        try(Connection connection = pool.getConnection();
+            PreparedStatement statement = connection.prepareStatement("SELECT CAST(? AS INT)")){
+            Assert.assertSame(cached, statement.unwrap(PreparedStatement.class));
+            statement.setInt(1, 8);
+            try(ResultSet rows = statement.executeQuery()){
+                Assert.assertTrue(rows.next());
+                Assert.assertEquals(8, rows.getInt(1));
+            }
+        }
+        Assert.assertEquals(1, pool.getStatementCacheHits());
+    }
+}
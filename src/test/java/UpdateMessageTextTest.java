@@ -1,4 +1,5 @@
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
@@ -9,10 +10,14 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import javax.management.JMX;
+import javax.management.ObjectName;
+
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import Controller.SocialMediaController;
 import Model.Message;
+import Util.CacheMXBean;
 import Util.ConnectionUtil;
 import io.javalin.Javalin;
 
@@ -139,4 +144,48 @@ public class UpdateMessageTextTest {
         Assert.assertEquals(400, status);        
         Assert.assertTrue(response.body().toString().isEmpty());
     }
+
+
+    /**
+     * Sending an http request to GET localhost:8080/messages twice, so message 1 is sent from the JSON cache, then
+     * PATCH localhost:8080/messages/1 and GET both lists again
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the updated message, in the full list and the account's list, rather than its cached JSON
+     */
+    @Test
+    public void updateMessageReplacesCachedJson() throws Exception {
+        CacheMXBean jsonCache = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(),
+                new ObjectName("Util:type=Cache,name=\"messageJson\""), CacheMXBean.class);
+        HttpRequest getMessagesRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+        HttpRequest getUserMessagesRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                .build();
+        webClient.send(getMessagesRequest, HttpResponse.BodyHandlers.ofString());
+        long hits = jsonCache.getHits();
+        String original = webClient.send(getMessagesRequest, HttpResponse.BodyHandlers.ofString()).body();
+        Assert.assertEquals(hits + 1, jsonCache.getHits());
+        Assert.assertEquals("[{\"message_id\":1,\"posted_by\":1,\"message_text\":\"test message 1\",\"time_posted_epoch\":1669947792}]",
+                original);
+
+        HttpRequest patchMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{"+
+                        "\"message_text\": \"updated message\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patchMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Message expectedResult = new Message(1, 1, "updated message", 1669947792);
+        for(HttpRequest request : new HttpRequest[]{getMessagesRequest, getUserMessagesRequest}){
+            HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, response.statusCode());
+            Message[] actualResult = objectMapper.readValue(response.body(), Message[].class);
+            Assert.assertEquals(1, actualResult.length);
+            Assert.assertEquals(expectedResult, actualResult[0]);
+        }
+    }
 }
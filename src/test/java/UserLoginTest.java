@@ -11,6 +11,10 @@ import org.junit.Test;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
 import Controller.SocialMediaController;
 import Model.Account;
 import Util.ConnectionUtil;
@@ -119,4 +123,68 @@ public class UserLoginTest {
         Assert.assertEquals("", response.body().toString());
 
     }
+
+    private HttpResponse<String> login(String username, String password) throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"" + username + "\", " +
+                        "\"password\": \"" + password + "\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private String storedPassword(int account_id) throws SQLException {
+        try(Connection connection = ConnectionUtil.getConnection();
+            ResultSet result = connection.createStatement()
+                .executeQuery("SELECT password FROM Account WHERE account_id = " + account_id)){
+            result.next();
+            return result.getString(1);
+        }
+    }
+
+    /**
+     * Logging in as testuser1, whose password was stored in plaintext before hashing, replaces it with a hash
+     * and later logins still succeed.
+     * 
+     * Expected Response:
+     *  Status Code: 200 for both logins, and 401 for a wrong password afterwards
+     */
+    @Test
+    public void loginRehashesLegacyPassword() throws IOException, InterruptedException, SQLException {
+        Assert.assertEquals("password", storedPassword(1));
+
+        Assert.assertEquals(200, login("testuser1", "password").statusCode());
+        String stored = storedPassword(1);
+        Assert.assertNotEquals("password", stored);
+        Assert.assertTrue(stored.startsWith("pbkdf2-sha256$"));
+
+        Assert.assertEquals(200, login("testuser1", "password").statusCode());
+        Assert.assertEquals(401, login("testuser1", "pass123").statusCode());
+    }
+
+    /**
+     * An account registered through POST localhost:8080/register is stored hashed and can log in.
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of user object, with the password as given
+     */
+    @Test
+    public void loginAfterRegistration() throws IOException, InterruptedException, SQLException {
+        HttpRequest registerRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"user\", " +
+                        "\"password\": \"secret\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(registerRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertTrue(storedPassword(2).startsWith("pbkdf2-sha256$"));
+
+        HttpResponse<String> response = login("user", "secret");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Account(2, "user", "secret"), objectMapper.readValue(response.body(), Account.class));
+    }
 }
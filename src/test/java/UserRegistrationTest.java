@@ -1,4 +1,5 @@
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
@@ -9,10 +10,14 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import javax.management.JMX;
+import javax.management.ObjectName;
+
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import Controller.SocialMediaController;
 import Model.Account;
+import Util.BloomFilterMXBean;
 import Util.ConnectionUtil;
 import io.javalin.Javalin;
 
@@ -141,4 +146,70 @@ public class UserRegistrationTest {
         Assert.assertEquals("", response.body().toString());
 
     }
+
+
+    /**
+     * Sending an http request to POST localhost:8080/register with a username longer than the 255 characters the
+     * account table holds, on either storage engine, then registering a valid user
+     *
+     * Expected Response:
+     *  Status Code: 400, then 200 for the valid user
+     *  Response Body:
+     */
+    @Test
+    public void registerUserUsernameTooLong() throws IOException, InterruptedException {
+        for(int length : new int[]{256, 70_000}){
+            HttpRequest postRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/register"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{" +
+                            "\"username\": \"" + "u".repeat(length) + "\", " +
+                            "\"password\": \"password\" }"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            HttpResponse response = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(400, response.statusCode());
+            Assert.assertEquals("", response.body().toString());
+        }
+
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"" + "u".repeat(255) + "\", " +
+                        "\"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse response = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+    }
+
+
+    /**
+     * Sending an http request to POST localhost:8080/register twice with a new username
+     * 
+     * Expected Response:
+     *  Status Code: 200, then 400 once the username filter has learned the name
+     *  Username filter: the first registration was answered without a lookup
+     */
+    @Test
+    public void registerUserTwiceUsesUsernameFilter() throws Exception {
+        BloomFilterMXBean usernames = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(),
+                new ObjectName("Util:type=BloomFilter,name=\"usernames\""), BloomFilterMXBean.class);
+        long negatives = usernames.getNegatives();
+        long positives = usernames.getPositives();
+
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"newuser\", " +
+                        "\"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertEquals(negatives + 1, usernames.getNegatives());
+
+        HttpResponse<String> response = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(400, response.statusCode());
+        Assert.assertEquals("", response.body());
+        Assert.assertEquals(positives + 1, usernames.getPositives());
+    }
 }
@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class WriteBehindMessageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and create a new webClient and ObjectMapper. Each test starts the
+     * Javalin app itself, once it has chosen how write-behind acknowledges.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        System.setProperty("socialmedia.writeBehind.enabled", "true");
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("socialmedia.writeBehind.enabled");
+        System.clearProperty("socialmedia.writeBehind.ackOnCommit");
+    }
+
+    private void startApp() throws InterruptedException {
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    private HttpResponse<String> postMessage(String text) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * With write-behind acknowledging on commit, POST localhost:8080/messages behaves as without it
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of message object, including its message_id
+     */
+    @Test
+    public void createMessageAckOnCommit() throws IOException, InterruptedException {
+        startApp();
+        HttpResponse<String> response = postMessage("hello message");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Message(2, 1, "hello message", 1669947792),
+                objectMapper.readValue(response.body(), Message.class));
+    }
+
+    /**
+     * With write-behind acknowledging on enqueue, POST localhost:8080/messages answers before the write
+     *
+     * Expected Response:
+     *  Status Code: 202
+     *  Response Body: JSON representation of message object, with message_id 0. The message is written shortly after.
+     */
+    @Test
+    public void createMessageAckOnEnqueue() throws IOException, InterruptedException {
+        System.setProperty("socialmedia.writeBehind.ackOnCommit", "false");
+        startApp();
+        HttpResponse<String> response = postMessage("hello message");
+        Assert.assertEquals(202, response.statusCode());
+        Assert.assertEquals(new Message(0, 1, "hello message", 1669947792),
+                objectMapper.readValue(response.body(), Message.class));
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .build();
+        String body = "";
+        for(int attempt = 0; attempt < 50 && body.isEmpty(); attempt++){
+            Thread.sleep(20);
+            body = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString()).body();
+        }
+        Assert.assertEquals(new Message(2, 1, "hello message", 1669947792),
+                objectMapper.readValue(body, Message.class));
+    }
+
+    /**
+     * Invalid messages are still refused up front when write-behind acknowledges on enqueue
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void createMessageAckOnEnqueueBlank() throws IOException, InterruptedException {
+        System.setProperty("socialmedia.writeBehind.ackOnCommit", "false");
+        startApp();
+        Assert.assertEquals(400, postMessage("").statusCode());
+    }
+}